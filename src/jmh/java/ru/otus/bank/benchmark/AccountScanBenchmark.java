@@ -0,0 +1,98 @@
+package ru.otus.bank.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.dao.ColumnarAccountDao;
+import ru.otus.bank.entity.Account;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Full scans over the object store and the columnar store: balance total, total per agreement, agreement filter,
+// and a keyset-paginated walk over the object store
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AccountScanBenchmark {
+
+    @Param({"100000", "1000000"})
+    int accounts;
+
+    @Param({"100"})
+    int agreements;
+
+    AccountDao accountDao;
+
+    ColumnarAccountDao columnarAccountDao;
+
+    @Setup
+    public void setup() {
+        accountDao = new AccountDao();
+        columnarAccountDao = new ColumnarAccountDao(accounts);
+        for (int i = 0; i < accounts; i++) {
+            long agreementId = i % agreements + 1;
+            BigDecimal amount = BigDecimal.valueOf(i, 2);
+            accountDao.save(account(agreementId, i / agreements, amount));
+            columnarAccountDao.save(account(agreementId, i / agreements, amount));
+        }
+    }
+
+    private static Account account(long agreementId, int type, BigDecimal amount) {
+        Account account = new Account();
+        account.setAgreementId(agreementId);
+        account.setType(type);
+        account.setNumber("acc" + agreementId + "_" + type);
+        account.setAmount(amount);
+        return account;
+    }
+
+    @Benchmark
+    public BigDecimal objectTotal() {
+        return accountDao.stream().map(Account::getAmount).reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    @Benchmark
+    public BigDecimal columnarTotal() {
+        return columnarAccountDao.totalAmount();
+    }
+
+    @Benchmark
+    public BigDecimal objectTotalByAgreement() {
+        return accountDao.stream().filter(account -> account.getAgreementId() == 1L)
+                .map(Account::getAmount).reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    @Benchmark
+    public BigDecimal columnarTotalByAgreement() {
+        return columnarAccountDao.totalAmountByAgreementId(1L);
+    }
+
+    @Benchmark
+    public long objectCountByAgreement() {
+        return accountDao.stream().filter(account -> account.getAgreementId() == 1L).count();
+    }
+
+    @Benchmark
+    public int columnarCountByAgreement() {
+        return columnarAccountDao.countByAgreementId(1L);
+    }
+
+    @Benchmark
+    public long objectPagedWalk() {
+        long seen = 0;
+        List<Account> page = accountDao.findPage(null, 1000);
+        while (!page.isEmpty()) {
+            seen += page.size();
+            page = accountDao.findPage(page.get(page.size() - 1).getId(), 1000);
+        }
+        return seen;
+    }
+}
@@ -0,0 +1,144 @@
+package ru.otus.bank.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.dao.AccountRepository;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.AccountService;
+import ru.otus.bank.service.exception.ContentionException;
+import ru.otus.bank.service.impl.AccountServiceImpl;
+import ru.otus.bank.service.impl.FixedPointAccountServiceImpl;
+import ru.otus.bank.service.impl.HotAccountServiceImpl;
+import ru.otus.bank.service.impl.LedgerAccountServiceImpl;
+import ru.otus.bank.service.impl.OptimisticAccountServiceImpl;
+import ru.otus.bank.service.impl.ShardedAccountServiceImpl;
+import ru.otus.bank.service.impl.StripedLockAccountServiceImpl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AccountServiceBenchmark {
+
+    private static final BigDecimal INITIAL_AMOUNT = new BigDecimal(1_000_000_000);
+
+    private static final BigDecimal SUM = BigDecimal.ONE;
+
+    private static final BigDecimal REFUND = BigDecimal.ONE.negate();
+
+    @Param({"1000", "1000000"})
+    int accounts;
+
+    // "plain" is only meaningful with one thread; "globalLock" is the contended baseline
+    @Param({"plain", "globalLock", "striped", "optimistic", "fixedPoint", "sharded", "ledger", "hotSplit"})
+    String mode;
+
+    // "hot" sends every other operation through the first account, like the bank account in Main
+    @Param({"uniform", "hot"})
+    String workload;
+
+    AccountService accountService;
+
+    Long[] accountIds;
+
+    @Setup
+    public void setup() {
+        accountService = createService(mode, new AccountDao());
+        accountIds = new Long[accounts];
+
+        Agreement agreement = new Agreement();
+        agreement.setId(1L);
+        for (int i = 0; i < accounts; i++) {
+            accountIds[i] = accountService.addAccount(agreement, "acc" + i, i, INITIAL_AMOUNT).getId();
+        }
+        // the account the "hot" workload hammers is split into sub-balances
+        if (accountService instanceof HotAccountServiceImpl hotAccountService) {
+            hotAccountService.makeHot(accountIds[0]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (accountService instanceof Closeable closeable) {
+            closeable.close();
+        }
+    }
+
+    @Benchmark
+    public boolean makeTransfer(Workload state) {
+        Long source = pick(state.random);
+        Long destination = pick(state.random);
+        try {
+            return accountService.makeTransfer(source, destination, SUM);
+        } catch (ContentionException e) {
+            // the optimistic mode gives up under contention; that is a finished, failed operation
+            return false;
+        }
+    }
+
+    @Benchmark
+    public boolean charge(Workload state) {
+        try {
+            return accountService.charge(pick(state.random), state.random.nextBoolean() ? SUM : REFUND);
+        } catch (ContentionException e) {
+            return false;
+        }
+    }
+
+    private Long pick(SplittableRandom random) {
+        if ("hot".equals(workload) && random.nextBoolean()) {
+            return accountIds[0];
+        }
+        return accountIds[random.nextInt(accounts)];
+    }
+
+    static AccountService createService(String mode, AccountRepository accountRepository) {
+        return switch (mode) {
+            case "plain" -> new AccountServiceImpl(accountRepository);
+            case "globalLock" -> new GlobalLockAccountService(accountRepository);
+            case "striped" -> new StripedLockAccountServiceImpl(accountRepository);
+            case "optimistic" -> new OptimisticAccountServiceImpl(accountRepository);
+            case "fixedPoint" -> new FixedPointAccountServiceImpl(accountRepository);
+            case "ledger" -> new LedgerAccountServiceImpl(accountRepository);
+            case "hotSplit" -> new HotAccountServiceImpl(accountRepository);
+            // shards own their own storage, so the repository is not used
+            case "sharded" -> new ShardedAccountServiceImpl(Runtime.getRuntime().availableProcessors());
+            default -> throw new IllegalArgumentException("Unknown mode " + mode);
+        };
+    }
+
+    @State(Scope.Thread)
+    public static class Workload {
+        final SplittableRandom random = new SplittableRandom();
+    }
+
+    static class GlobalLockAccountService extends AccountServiceImpl {
+
+        GlobalLockAccountService(AccountRepository accountRepository) {
+            super(accountRepository);
+        }
+
+        @Override
+        public synchronized boolean makeTransfer(Long sourceAccountId, Long destinationAccountId, BigDecimal sum) {
+            return super.makeTransfer(sourceAccountId, destinationAccountId, sum);
+        }
+
+        @Override
+        public synchronized boolean charge(Long accountId, BigDecimal chargeAmount) {
+            return super.charge(accountId, chargeAmount);
+        }
+    }
+}
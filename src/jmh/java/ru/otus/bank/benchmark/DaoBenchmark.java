@@ -0,0 +1,70 @@
+package ru.otus.bank.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.dao.AgreementDao;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DaoBenchmark {
+
+    @Param({"1000", "1000000"})
+    int agreements;
+
+    @Param({"2"})
+    int accountsPerAgreement;
+
+    AccountDao accountDao;
+
+    AgreementDao agreementDao;
+
+    Long[] agreementIds;
+
+    String[] names;
+
+    @Setup
+    public void setup() {
+        accountDao = new AccountDao();
+        agreementDao = new AgreementDao();
+        agreementIds = new Long[agreements];
+        names = new String[agreements];
+
+        for (int i = 0; i < agreements; i++) {
+            Agreement agreement = agreementDao.addAgreement("Client" + i);
+            agreementIds[i] = agreement.getId();
+            names[i] = agreement.getName();
+            for (int type = 0; type < accountsPerAgreement; type++) {
+                Account account = new Account();
+                account.setAgreementId(agreement.getId());
+                account.setType(type);
+                account.setNumber(agreement.getName() + "_acc" + type);
+                account.setAmount(BigDecimal.TEN);
+                accountDao.save(account);
+            }
+        }
+    }
+
+    @Benchmark
+    public Iterable<Account> findByAgreementId(AccountServiceBenchmark.Workload state) {
+        return accountDao.findByAgreementId(agreementIds[state.random.nextInt(agreements)]);
+    }
+
+    @Benchmark
+    public Optional<Agreement> findByName(AccountServiceBenchmark.Workload state) {
+        return agreementDao.findByName(names[state.random.nextInt(agreements)]);
+    }
+}
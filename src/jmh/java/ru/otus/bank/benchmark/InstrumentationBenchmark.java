@@ -0,0 +1,70 @@
+package ru.otus.bank.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.AccountService;
+import ru.otus.bank.service.impl.InstrumentedAccountServiceImpl;
+import ru.otus.bank.service.metrics.PaymentMetrics;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Cost of the metrics decorator on the transfer hot path, compared with the bare service
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InstrumentationBenchmark {
+
+    private static final BigDecimal AMOUNT = BigDecimal.ONE;
+
+    @Param({"1000"})
+    int accounts;
+
+    @Param({"striped", "optimistic"})
+    String mode;
+
+    @Param({"false", "true"})
+    boolean instrumented;
+
+    AccountService accountService;
+
+    PaymentMetrics metrics;
+
+    Long[] ids;
+
+    @Setup
+    public void setup() {
+        accountService = AccountServiceBenchmark.createService(mode, new AccountDao());
+        if (instrumented) {
+            metrics = new PaymentMetrics();
+            accountService = new InstrumentedAccountServiceImpl(accountService, metrics);
+        }
+
+        Agreement agreement = new Agreement();
+        agreement.setId(1L);
+        ids = new Long[accounts];
+        for (int i = 0; i < accounts; i++) {
+            ids[i] = accountService.addAccount(agreement, "acc" + i, i, new BigDecimal(1_000_000_000)).getId();
+        }
+    }
+
+    @Benchmark
+    public boolean makeTransfer(AccountServiceBenchmark.Workload state) {
+        SplittableRandom random = state.random;
+        return accountService.makeTransfer(ids[random.nextInt(accounts)], ids[random.nextInt(accounts)], AMOUNT);
+    }
+
+    @Benchmark
+    public boolean charge(AccountServiceBenchmark.Workload state) {
+        return accountService.charge(ids[state.random.nextInt(accounts)], AMOUNT);
+    }
+}
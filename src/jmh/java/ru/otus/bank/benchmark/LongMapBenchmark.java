@@ -0,0 +1,87 @@
+package ru.otus.bank.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ru.otus.bank.dao.ConcurrentLongObjectHashMap;
+import ru.otus.bank.dao.LongObjectHashMap;
+
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
+
+// Id -> object lookups at DAO scale. Run the 50M size with a large heap, e.g. -Xmx16g; the gc profiler
+// configured in build.gradle shows that only the boxed-key maps allocate per lookup.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LongMapBenchmark {
+
+    @Param({"1000000", "10000000", "50000000"})
+    int size;
+
+    @Param({"hashMap", "concurrentHashMap", "longObject", "concurrentLongObject"})
+    String map;
+
+    LongFunction<Object> lookup;
+
+    // ids are dense, like the ones the DAOs hand out, and start past the Long cache
+    static final long FIRST_ID = 1_000;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Object value = new Object();
+        switch (map) {
+            case "hashMap" -> {
+                HashMap<Long, Object> target = new HashMap<>(capacity());
+                for (long id = FIRST_ID; id < FIRST_ID + size; id++) {
+                    target.put(id, value);
+                }
+                lookup = target::get;
+            }
+            case "concurrentHashMap" -> {
+                ConcurrentHashMap<Long, Object> target = new ConcurrentHashMap<>(capacity());
+                for (long id = FIRST_ID; id < FIRST_ID + size; id++) {
+                    target.put(id, value);
+                }
+                lookup = target::get;
+            }
+            case "longObject" -> {
+                LongObjectHashMap<Object> target = new LongObjectHashMap<>(size);
+                for (long id = FIRST_ID; id < FIRST_ID + size; id++) {
+                    target.put(id, value);
+                }
+                lookup = target::get;
+            }
+            case "concurrentLongObject" -> {
+                ConcurrentLongObjectHashMap<Object> target = new ConcurrentLongObjectHashMap<>(size);
+                for (long id = FIRST_ID; id < FIRST_ID + size; id++) {
+                    target.put(id, value);
+                }
+                lookup = target::get;
+            }
+            default -> throw new IllegalArgumentException("Unknown map " + map);
+        }
+    }
+
+    private int capacity() {
+        return (int) (size / 0.75f) + 1;
+    }
+
+    @Benchmark
+    public Object get(AccountServiceBenchmark.Workload state) {
+        return lookup.apply(FIRST_ID + state.random.nextInt(size));
+    }
+
+    @Benchmark
+    public Object getMissing(AccountServiceBenchmark.Workload state) {
+        return lookup.apply(-FIRST_ID - state.random.nextInt(size));
+    }
+}
@@ -0,0 +1,78 @@
+package ru.otus.bank.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.impl.AccountServiceImpl;
+import ru.otus.bank.service.impl.FixedPointAccountServiceImpl;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+// Compare gc.alloc.rate.norm: the minor-unit path should allocate close to nothing per transfer
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MoneyRepresentationBenchmark {
+
+    private static final BigDecimal SUM = new BigDecimal("1.25");
+
+    AccountServiceImpl bigDecimalService;
+
+    FixedPointAccountServiceImpl fixedPointService;
+
+    Long bigDecimalSourceId;
+
+    Long bigDecimalDestinationId;
+
+    long sourceId;
+
+    long destinationId;
+
+    long minorSum;
+
+    boolean forward;
+
+    @Setup
+    public void setup() {
+        Agreement agreement = new Agreement();
+        agreement.setId(1L);
+
+        bigDecimalService = new AccountServiceImpl(new AccountDao());
+        bigDecimalSourceId = bigDecimalService.addAccount(agreement, "acc1", 0, new BigDecimal(1_000_000)).getId();
+        bigDecimalDestinationId = bigDecimalService.addAccount(agreement, "acc2", 1, new BigDecimal(1_000_000)).getId();
+
+        fixedPointService = new FixedPointAccountServiceImpl(new AccountDao());
+        sourceId = fixedPointService.addAccount(agreement, "acc1", 0, new BigDecimal(1_000_000)).getId();
+        destinationId = fixedPointService.addAccount(agreement, "acc2", 1, new BigDecimal(1_000_000)).getId();
+        minorSum = 125;
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixedPointService.close();
+    }
+
+    @Benchmark
+    public boolean bigDecimalTransfer() {
+        forward = !forward;
+        return forward
+                ? bigDecimalService.makeTransfer(bigDecimalSourceId, bigDecimalDestinationId, SUM)
+                : bigDecimalService.makeTransfer(bigDecimalDestinationId, bigDecimalSourceId, SUM);
+    }
+
+    @Benchmark
+    public boolean minorUnitTransfer() {
+        forward = !forward;
+        return forward
+                ? fixedPointService.makeTransferMinor(sourceId, destinationId, minorSum)
+                : fixedPointService.makeTransferMinor(destinationId, sourceId, minorSum);
+    }
+}
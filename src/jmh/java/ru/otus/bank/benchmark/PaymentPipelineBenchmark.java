@@ -0,0 +1,77 @@
+package ru.otus.bank.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.AccountService;
+import ru.otus.bank.service.impl.AccountServiceImpl;
+import ru.otus.bank.service.pipeline.PaymentPipeline;
+import ru.otus.bank.service.pipeline.TransferListener;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Compare with PaymentProcessorBenchmark.makeTransfer, which resolves and executes on the calling thread
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PaymentPipelineBenchmark {
+
+    private static final BigDecimal AMOUNT = BigDecimal.ONE;
+
+    @Param({"1000", "100000"})
+    int agreements;
+
+    @Param({"1024", "16384"})
+    int bufferSize;
+
+    PaymentPipeline pipeline;
+
+    Agreement[] agreementList;
+
+    @Setup
+    public void setup() {
+        AccountDao accountDao = new AccountDao();
+        AccountService accountService = new AccountServiceImpl(accountDao);
+
+        agreementList = new Agreement[agreements];
+        for (int i = 0; i < agreements; i++) {
+            Agreement agreement = new Agreement();
+            agreement.setId((long) i + 1);
+            accountService.addAccount(agreement, "Client" + i + "_acc1", 0, new BigDecimal(1_000_000_000));
+            accountService.addAccount(agreement, "Client" + i + "_acc2", 1, new BigDecimal(1_000_000_000));
+            agreementList[i] = agreement;
+        }
+        pipeline = new PaymentPipeline(accountDao, bufferSize, TransferListener.NONE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pipeline.close();
+    }
+
+    // Producer throughput, bounded by the slowest stage once the ring is full
+    @Benchmark
+    public long publish(AccountServiceBenchmark.Workload state) {
+        SplittableRandom random = state.random;
+        return pipeline.publish(agreementList[random.nextInt(agreements)],
+                agreementList[random.nextInt(agreements)], 0, random.nextInt(2), AMOUNT);
+    }
+
+    // Round trip of a single synchronous request, includes the hand-off latency of all three stages
+    @Benchmark
+    public Object makeTransfer(AccountServiceBenchmark.Workload state) {
+        SplittableRandom random = state.random;
+        return pipeline.makeTransfer(agreementList[random.nextInt(agreements)],
+                agreementList[random.nextInt(agreements)], 0, random.nextInt(2), AMOUNT);
+    }
+}
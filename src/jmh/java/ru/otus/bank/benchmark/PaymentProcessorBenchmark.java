@@ -0,0 +1,92 @@
+package ru.otus.bank.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.dao.AgreementDao;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.AccountService;
+import ru.otus.bank.service.AgreementService;
+import ru.otus.bank.service.PaymentProcessor;
+import ru.otus.bank.service.fee.FeeEngine;
+import ru.otus.bank.service.fee.FeeSchedule;
+import ru.otus.bank.service.impl.AgreementServiceImpl;
+import ru.otus.bank.service.impl.CachingAccountServiceImpl;
+import ru.otus.bank.service.impl.PaymentProcessorImpl;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PaymentProcessorBenchmark {
+
+    private static final BigDecimal AMOUNT = BigDecimal.ONE;
+
+    private static final BigDecimal COMISSION_PERCENT = new BigDecimal("0.01");
+
+    @Param({"1000", "100000"})
+    int agreements;
+
+    @Param({"striped"})
+    String mode;
+
+    // resolve agreement and type through CachingAccountServiceImpl instead of listing accounts every call
+    @Param({"false", "true"})
+    boolean cached;
+
+    PaymentProcessor paymentProcessor;
+
+    Agreement[] agreementList;
+
+    @Setup
+    public void setup() {
+        AgreementService agreementService = new AgreementServiceImpl(new AgreementDao());
+        AccountService accountService = AccountServiceBenchmark.createService(mode, new AccountDao());
+        if (cached) {
+            accountService = new CachingAccountServiceImpl(accountService);
+        }
+        Agreement bank = agreementService.addAgreement("Bank");
+        Long feeAccountId = accountService.addAccount(bank, "Bank_fees", 0, BigDecimal.ZERO).getId();
+        paymentProcessor = new PaymentProcessorImpl(accountService,
+                new FeeEngine(FeeSchedule.flat(COMISSION_PERCENT), feeAccountId));
+
+        agreementList = new Agreement[agreements];
+        for (int i = 0; i < agreements; i++) {
+            Agreement agreement = agreementService.addAgreement("Client" + i);
+            accountService.addAccount(agreement, "Client" + i + "_acc1", 0, new BigDecimal(1_000_000_000));
+            accountService.addAccount(agreement, "Client" + i + "_acc2", 1, new BigDecimal(1_000_000_000));
+            agreementList[i] = agreement;
+        }
+    }
+
+    @Benchmark
+    public boolean makeTransfer(AccountServiceBenchmark.Workload state) {
+        SplittableRandom random = state.random;
+        return paymentProcessor.makeTransfer(agreementList[random.nextInt(agreements)],
+                agreementList[random.nextInt(agreements)], 0, random.nextInt(2), AMOUNT);
+    }
+
+    @Benchmark
+    public boolean makeTransferWithComission(AccountServiceBenchmark.Workload state) {
+        SplittableRandom random = state.random;
+        return paymentProcessor.makeTransferWithComission(agreementList[random.nextInt(agreements)],
+                agreementList[random.nextInt(agreements)], 0, random.nextInt(2), AMOUNT, COMISSION_PERCENT);
+    }
+
+    // Same commission as makeTransferWithComission, taken from the precompiled schedule instead of the call
+    @Benchmark
+    public boolean makeTransferWithFee(AccountServiceBenchmark.Workload state) {
+        SplittableRandom random = state.random;
+        return paymentProcessor.makeTransferWithFee(agreementList[random.nextInt(agreements)],
+                agreementList[random.nextInt(agreements)], 0, random.nextInt(2), AMOUNT);
+    }
+}
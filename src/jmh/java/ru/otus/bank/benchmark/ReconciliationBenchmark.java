@@ -0,0 +1,82 @@
+package ru.otus.bank.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.dao.ledger.Ledger;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.impl.LedgerAccountServiceImpl;
+import ru.otus.bank.service.reconciliation.ReconciliationEngine;
+import ru.otus.bank.service.reconciliation.ReconciliationReport;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReconciliationBenchmark {
+
+    @Param({"100000", "1000000"})
+    int accounts;
+
+    // 1 is the single-threaded baseline
+    @Param({"1", "4", "0"})
+    int parallelism;
+
+    AccountDao accountDao;
+
+    ForkJoinPool pool;
+
+    ReconciliationEngine engine;
+
+    @Setup
+    public void setup() {
+        accountDao = new AccountDao();
+        Ledger ledger = new Ledger();
+        LedgerAccountServiceImpl accountService = new LedgerAccountServiceImpl(accountDao, ledger);
+        Long[] ids = new Long[accounts];
+        for (int i = 0; i < accounts; i++) {
+            Agreement agreement = new Agreement();
+            agreement.setId((long) i / 2);
+            ids[i] = accountService.addAccount(agreement, "acc" + i, i % 2, new BigDecimal(1000)).getId();
+        }
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < accounts; i++) {
+            accountService.makeTransfer(ids[random.nextInt(accounts)], ids[random.nextInt(accounts)], BigDecimal.ONE);
+        }
+
+        pool = new ForkJoinPool(parallelism == 0 ? Runtime.getRuntime().availableProcessors() : parallelism);
+        engine = new ReconciliationEngine(accountDao, ledger, pool);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public ReconciliationReport reconcile() {
+        return engine.reconcile();
+    }
+
+    // What a sequential findAll plus BigDecimal adds costs without per-key totals
+    @Benchmark
+    public BigDecimal sequentialSum() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (Account account : accountDao.findAll()) {
+            total = total.add(account.getAmount());
+        }
+        return total;
+    }
+}
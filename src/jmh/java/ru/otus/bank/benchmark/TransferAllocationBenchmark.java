@@ -0,0 +1,87 @@
+package ru.otus.bank.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.TransferCode;
+import ru.otus.bank.service.impl.FixedPointAccountServiceImpl;
+import ru.otus.bank.service.impl.PaymentProcessorImpl;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Read gc.alloc.rate.norm from the gc profiler (on by default in build.gradle):
+// makeTransferMinorCodes and paymentProcessorMinorCodes should report ~0 B/op, makeTransfer pays for BigDecimal,
+// boxing and Optional
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TransferAllocationBenchmark {
+
+    private static final BigDecimal SUM = BigDecimal.ONE;
+
+    private static final long SUM_MINOR = 100;
+
+    @Param({"1000", "1000000"})
+    int accounts;
+
+    FixedPointAccountServiceImpl accountService;
+
+    long[] accountIds;
+
+    Long[] boxedIds;
+
+    PaymentProcessorImpl paymentProcessor;
+
+    Agreement[] agreements;
+
+    @Setup
+    public void setup() {
+        accountService = new FixedPointAccountServiceImpl(new AccountDao());
+        accountIds = new long[accounts];
+        boxedIds = new Long[accounts];
+        paymentProcessor = new PaymentProcessorImpl(accountService);
+        agreements = new Agreement[accounts];
+
+        for (int i = 0; i < accounts; i++) {
+            agreements[i] = new Agreement();
+            agreements[i].setId(i + 1L);
+            boxedIds[i] = accountService.addAccount(agreements[i], "acc" + i, 0, new BigDecimal(1_000_000_000)).getId();
+            accountIds[i] = boxedIds[i];
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        accountService.close();
+    }
+
+    @Benchmark
+    public boolean makeTransfer(AccountServiceBenchmark.Workload state) {
+        SplittableRandom random = state.random;
+        return accountService.makeTransfer(boxedIds[random.nextInt(accounts)], boxedIds[random.nextInt(accounts)], SUM);
+    }
+
+    @Benchmark
+    public TransferCode makeTransferMinorCodes(AccountServiceBenchmark.Workload state) {
+        SplittableRandom random = state.random;
+        return accountService.tryTransferMinor(accountIds[random.nextInt(accounts)], accountIds[random.nextInt(accounts)],
+                SUM_MINOR);
+    }
+
+    @Benchmark
+    public TransferCode paymentProcessorMinorCodes(AccountServiceBenchmark.Workload state) {
+        SplittableRandom random = state.random;
+        return paymentProcessor.tryTransferMinor(agreements[random.nextInt(accounts)],
+                agreements[random.nextInt(accounts)], 0, 0, SUM_MINOR);
+    }
+}
@@ -7,11 +7,16 @@ import ru.otus.bank.entity.Agreement;
 import ru.otus.bank.service.AccountService;
 import ru.otus.bank.service.AgreementService;
 import ru.otus.bank.service.PaymentProcessor;
-import ru.otus.bank.service.impl.AccountServiceImpl;
 import ru.otus.bank.service.impl.AgreementServiceImpl;
+import ru.otus.bank.service.impl.CachingAccountServiceImpl;
+import ru.otus.bank.service.impl.HotAccountServiceImpl;
+import ru.otus.bank.service.impl.InstrumentedAccountServiceImpl;
+import ru.otus.bank.service.impl.InstrumentedPaymentProcessorImpl;
 import ru.otus.bank.service.impl.PaymentProcessorImpl;
+import ru.otus.bank.service.metrics.PaymentMetrics;
 
 import java.math.BigDecimal;
+import java.util.stream.Stream;
 
 public class Main {
 
@@ -20,6 +25,8 @@ public class Main {
 
     public static PaymentProcessor paymentProcessor;
 
+    public static PaymentMetrics metrics;
+
     public static void main(String[] args) {
 
         init();
@@ -58,8 +65,10 @@ public class Main {
         AgreementDao agreementDao = new AgreementDao();
 
         agreementService = new AgreementServiceImpl(agreementDao);
-        accountService = new AccountServiceImpl(accountDao);
-        paymentProcessor = new PaymentProcessorImpl(accountService);
+        metrics = new PaymentMetrics();
+        HotAccountServiceImpl hotAccountService = new HotAccountServiceImpl(accountDao);
+        accountService = new CachingAccountServiceImpl(new InstrumentedAccountServiceImpl(hotAccountService, metrics));
+        paymentProcessor = new InstrumentedPaymentProcessorImpl(new PaymentProcessorImpl(accountService), metrics);
 
         Agreement clientAgreement1 = agreementService.addAgreement("Client1");
         Agreement clientAgreement2 = agreementService.addAgreement("Client2");
@@ -72,9 +81,13 @@ public class Main {
                 clientAgreement2.getName() + "_acc1", 0, new BigDecimal(1000));
         Account bankAccount1 = accountService.addAccount(bankAgreement,
                 bankAgreement.getName() + "_acc1", 0, new BigDecimal(1000000));
+        // every commissioned payment touches the bank's account
+        hotAccountService.makeHot(bankAccount1.getId());
     }
 
     public static void printAccounts() {
-        System.out.println(accountService.getAccounts());
+        try (Stream<Account> accounts = accountService.streamAccounts()) {
+            accounts.forEach(System.out::println);
+        }
     }
 }
\ No newline at end of file
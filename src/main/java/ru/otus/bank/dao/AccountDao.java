@@ -2,41 +2,257 @@ package ru.otus.bank.dao;
 
 import ru.otus.bank.entity.Account;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
 
-public class AccountDao {
+public class AccountDao implements AccountRepository {
 
-    HashMap<Long, Account> accountMap = new HashMap<>();
+    private static final int INDEX_SEGMENTS = 64;
+
+    private static final int INDEX_SHIFT = 64 - Integer.numberOfTrailingZeros(INDEX_SEGMENTS);
+
+    // agreementIndex cannot hold EMPTY_KEY, so it never is a real agreement id; no int type is that small either
+    private static final long NO_AGREEMENT = ConcurrentLongObjectHashMap.EMPTY_KEY;
+
+    private static final long NO_TYPE = Long.MIN_VALUE;
+
+    // keyed by the primitive id, so lookups neither box nor allocate
+    ConcurrentLongObjectHashMap<Account> accountMap = new ConcurrentLongObjectHashMap<>();
+
+    // agreementId -> ids of its accounts in the order they were indexed, replaced on write.
+    // An agreement may hold several accounts of one type.
+    ConcurrentLongObjectHashMap<long[]> agreementIndex = new ConcurrentLongObjectHashMap<>();
+
+    // accountId -> agreement id and type the account was last indexed under, in primitive tables split by account id.
+    // A save compares and replaces both, and moves the id in agreementIndex, under its segment's monitor, so
+    // concurrent saves of one account reindex it one after the other.
+    final IndexSegment[] indexSegments = newIndexSegments();
+
+    final List<LongConsumer> agreementListeners = new CopyOnWriteArrayList<>();
+
+    // ordered account ids for keyset pagination, touched only when an account is first stored
+    ConcurrentSortedLongSet ids = new ConcurrentSortedLongSet();
 
     AtomicLong id = new AtomicLong(1);
 
+    @Override
     public Iterable<Account> findByAgreementId(Long agreementId) {
-        return accountMap.values().stream()
-                .filter(account -> account.getAgreementId().equals(agreementId))
-                .toList();
+        long[] accountIds = agreementId == null ? null : agreementIndex.get(agreementId);
+        if (accountIds == null) {
+            return List.of();
+        }
+        List<Account> result = new ArrayList<>(accountIds.length);
+        for (long accountId : accountIds) {
+            Account account = accountMap.get(accountId);
+            if (account != null) {
+                result.add(account);
+            }
+        }
+        return result;
     }
 
+    // The first indexed account of the type when the agreement has several
+    @Override
+    public Optional<Account> findByAgreementIdAndType(Long agreementId, Integer type) {
+        if (agreementId == null || type == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(getByAgreementIdAndType(agreementId, type));
+    }
+
+    @Override
+    public Account getByAgreementIdAndType(long agreementId, int type) {
+        long[] accountIds = agreementIndex.get(agreementId);
+        if (accountIds == null) {
+            return null;
+        }
+        for (long accountId : accountIds) {
+            Account account = accountMap.get(accountId);
+            if (account != null && account.getType() != null && account.getType() == type) {
+                return account;
+            }
+        }
+        return null;
+    }
+
+    @Override
     public Optional<Account> findById(Long accountId) {
-        if (!accountMap.containsKey(accountId)) {
+        if (accountId == null) {
             return Optional.empty();
         }
-        return Optional.of(accountMap.get(accountId));
+        return Optional.ofNullable(accountMap.get(accountId));
     }
 
+    @Override
+    public Account getById(long accountId) {
+        return accountMap.get(accountId);
+    }
+
+    @Override
     public Account save(Account account) {
+        assignId(account);
+        store(account);
+        return account;
+    }
+
+    protected void assignId(Account account) {
         if (account.getId() == null || account.getId() == 0) {
             account.setId(id.incrementAndGet());
         }
+    }
 
-        accountMap.put(account.getId(), account);
-        return account;
+    @Override
+    public boolean addAgreementListener(LongConsumer listener) {
+        agreementListeners.add(listener);
+        return true;
     }
 
+    @Override
     public Iterable<Account> findAll() {
         return accountMap.values();
     }
 
+    @Override
+    public Stream<Account> stream() {
+        return accountMap.stream();
+    }
+
+    @Override
+    public List<Account> findPage(Long afterId, int limit) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        List<Account> page = new ArrayList<>(Math.min(limit, 1024));
+        long[] batch = new long[Math.min(limit, 1024)];
+        long after = afterId == null ? Long.MIN_VALUE : afterId;
+        while (page.size() < limit) {
+            int wanted = Math.min(batch.length, limit - page.size());
+            int count = ids.copyAfter(after, batch, wanted);
+            for (int i = 0; i < count; i++) {
+                Account account = accountMap.get(batch[i]);
+                if (account != null) {
+                    page.add(account);
+                }
+            }
+            if (count < wanted) {
+                break;
+            }
+            after = batch[count - 1];
+        }
+        return page;
+    }
+
+    protected Account restore(Account account) {
+        store(account);
+        id.accumulateAndGet(account.getId(), Math::max);
+        return account;
+    }
+
+    private void store(Account account) {
+        if (accountMap.put(account.getId(), account) == null) {
+            ids.add(account.getId());
+        }
+        reindex(account);
+    }
+
+    private void reindex(Account account) {
+        long accountId = account.getId();
+        Long agreementId = account.getAgreementId();
+        long agreement = agreementId == null ? NO_AGREEMENT : agreementId;
+        long type = agreementId == null || account.getType() == null ? NO_TYPE : account.getType();
+        long previousAgreement;
+        IndexSegment segment = indexSegments[(int) ((accountId * 0x9E3779B97F4A7C15L) >>> INDEX_SHIFT)];
+        synchronized (segment) {
+            previousAgreement = segment.agreements.get(accountId);
+            long previousType = segment.types.get(accountId);
+            // the common save of an already indexed account writes nothing here
+            if (previousAgreement == agreement && previousType == type) {
+                return;
+            }
+            if (agreement == NO_AGREEMENT) {
+                segment.agreements.remove(accountId);
+            } else {
+                segment.agreements.put(accountId, agreement);
+            }
+            if (type == NO_TYPE) {
+                segment.types.remove(accountId);
+            } else {
+                segment.types.put(accountId, type);
+            }
+            if (previousAgreement != agreement) {
+                if (previousAgreement != NO_AGREEMENT) {
+                    agreementIndex.compute(previousAgreement, accountIds -> without(accountIds, accountId));
+                }
+                if (agreement != NO_AGREEMENT) {
+                    agreementIndex.compute(agreement, accountIds -> with(accountIds, accountId));
+                }
+            }
+        }
+        // listeners may call back into the DAO, so they run after the monitor is released
+        if (previousAgreement != agreement && previousAgreement != NO_AGREEMENT) {
+            agreementChanged(previousAgreement);
+        }
+        if (agreement != NO_AGREEMENT) {
+            agreementChanged(agreement);
+        }
+    }
+
+    private void agreementChanged(long agreementId) {
+        for (LongConsumer listener : agreementListeners) {
+            listener.accept(agreementId);
+        }
+    }
 
+    private static long[] with(long[] accountIds, long accountId) {
+        if (accountIds == null) {
+            return new long[]{accountId};
+        }
+        for (long id : accountIds) {
+            if (id == accountId) {
+                return accountIds;
+            }
+        }
+        long[] result = Arrays.copyOf(accountIds, accountIds.length + 1);
+        result[accountIds.length] = accountId;
+        return result;
+    }
+
+    private static long[] without(long[] accountIds, long accountId) {
+        if (accountIds == null) {
+            return null;
+        }
+        for (int i = 0; i < accountIds.length; i++) {
+            if (accountIds[i] == accountId) {
+                if (accountIds.length == 1) {
+                    return null;
+                }
+                long[] result = new long[accountIds.length - 1];
+                System.arraycopy(accountIds, 0, result, 0, i);
+                System.arraycopy(accountIds, i + 1, result, i, result.length - i);
+                return result;
+            }
+        }
+        return accountIds;
+    }
+
+    private static IndexSegment[] newIndexSegments() {
+        IndexSegment[] segments = new IndexSegment[INDEX_SEGMENTS];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new IndexSegment();
+        }
+        return segments;
+    }
+
+    static final class IndexSegment {
+
+        final LongLongHashMap agreements = new LongLongHashMap(16, NO_AGREEMENT);
+
+        final LongLongHashMap types = new LongLongHashMap(16, NO_TYPE);
+    }
 }
@@ -0,0 +1,74 @@
+package ru.otus.bank.dao;
+
+import ru.otus.bank.entity.Account;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public interface AccountRepository {
+
+    Iterable<Account> findByAgreementId(Long agreementId);
+
+    Optional<Account> findByAgreementIdAndType(Long agreementId, Integer type);
+
+    // Primitive lookup for hot paths: null instead of an empty Optional
+    default Account getByAgreementIdAndType(long agreementId, int type) {
+        return findByAgreementIdAndType(agreementId, type).orElse(null);
+    }
+
+    Optional<Account> findById(Long accountId);
+
+    // Primitive-id lookup for hot paths: null instead of an empty Optional
+    default Account getById(long accountId) {
+        return findById(accountId).orElse(null);
+    }
+
+    Account save(Account account);
+
+    // Saves the accounts of one operation together; durable stores write them as a single unit
+    default void saveAll(Account... accounts) {
+        for (Account account : accounts) {
+            save(account);
+        }
+    }
+
+    Iterable<Account> findAll();
+
+    // Calls listener with the agreement id whenever an account joins, leaves or changes type within it,
+    // including writes made straight through the repository. False if this store does not report changes.
+    default boolean addAgreementListener(LongConsumer listener) {
+        return false;
+    }
+
+    // Lazy view over the stored accounts in no particular order
+    default Stream<Account> stream() {
+        return StreamSupport.stream(findAll().spliterator(), false);
+    }
+
+    // Up to limit accounts with id greater than afterId, ascending by id; pass null for the first page.
+    // This fallback is one pass over all accounts that keeps only the page in memory.
+    default List<Account> findPage(Long afterId, int limit) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        long after = afterId == null ? Long.MIN_VALUE : afterId;
+        PriorityQueue<Account> page = new PriorityQueue<>(limit + 1, Comparator.comparing(Account::getId).reversed());
+        for (Account account : findAll()) {
+            if (account.getId() > after) {
+                page.offer(account);
+                if (page.size() > limit) {
+                    page.poll();
+                }
+            }
+        }
+        List<Account> result = new ArrayList<>(page);
+        result.sort(Comparator.comparing(Account::getId));
+        return result;
+    }
+}
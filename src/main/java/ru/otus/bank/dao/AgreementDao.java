@@ -1,14 +1,21 @@
 package ru.otus.bank.dao;
 
 import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.exception.AgreementException;
 
-import java.util.HashMap;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class AgreementDao {
 
-    HashMap<Long, Agreement> agreementMap = new HashMap<>();
+    ConcurrentLongObjectHashMap<Agreement> agreementMap = new ConcurrentLongObjectHashMap<>();
+
+    // name -> agreementId, names are unique
+    ConcurrentHashMap<String, Long> nameIndex = new ConcurrentHashMap<>();
+
+    // agreementId -> name under which the agreement is currently indexed
+    ConcurrentLongObjectHashMap<String> indexedNames = new ConcurrentLongObjectHashMap<>();
 
     AtomicLong id = new AtomicLong(0);
 
@@ -16,21 +23,73 @@ public class AgreementDao {
     public Agreement addAgreement(String name) {
         Agreement agreement = new Agreement();
         agreement.setName(name);
-        agreement.setId(id.incrementAndGet());
+        Long agreementId = id.incrementAndGet();
 
+        claimName(agreementId, name);
+        agreement.setId(agreementId);
         agreementMap.put(agreement.getId(), agreement);
         return agreement;
     }
 
     public Optional<Agreement> findByName(String name) {
-        return agreementMap.values().stream().filter(agreement -> agreement.getName().equals(name)).findFirst();
+        Long agreementId = nameIndex.get(name);
+        if (agreementId == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(agreementMap.get(agreementId));
     }
 
     public Agreement save(Agreement agreement) {
-        if (agreement.getId() == null || agreement.getId() == 0) {
-            agreement.setId(id.incrementAndGet());
+        Long agreementId = agreement.getId();
+        if (agreementId == null || agreementId == 0) {
+            agreementId = id.incrementAndGet();
         }
+        // the caller's agreement gets an id only once its name is claimed
+        claimName(agreementId, agreement.getName());
+        agreement.setId(agreementId);
         agreementMap.put(agreement.getId(), agreement);
         return agreement;
     }
+
+    public Iterable<Agreement> findAll() {
+        return agreementMap.values();
+    }
+
+    protected Agreement restore(Agreement agreement) {
+        claimName(agreement.getId(), agreement.getName());
+        agreementMap.put(agreement.getId(), agreement);
+        id.accumulateAndGet(agreement.getId(), Math::max);
+        return agreement;
+    }
+
+    protected long nextId() {
+        return id.incrementAndGet();
+    }
+
+    // True when this call took the name, so that a save failing afterwards can release it
+    protected boolean reserveName(long agreementId, String name) {
+        if (name == null) {
+            return false;
+        }
+        Long owner = nameIndex.putIfAbsent(name, agreementId);
+        if (owner != null && owner != agreementId) {
+            throw new AgreementException("Agreement with name " + name + " already exists");
+        }
+        return owner == null;
+    }
+
+    protected void releaseName(long agreementId, String name) {
+        nameIndex.remove(name, agreementId);
+    }
+
+    private void claimName(Long agreementId, String name) {
+        reserveName(agreementId, name);
+
+        String previousName = name == null
+                ? indexedNames.remove(agreementId)
+                : indexedNames.put(agreementId, name);
+        if (previousName != null && !previousName.equals(name)) {
+            nameIndex.remove(previousName, agreementId);
+        }
+    }
 }
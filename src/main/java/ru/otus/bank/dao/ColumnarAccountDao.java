@@ -0,0 +1,476 @@
+package ru.otus.bank.dao;
+
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.FixedPointMoney;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// Keeps accounts column by column: ids, agreement ids, types, balances and number references are parallel
+// primitive arrays that grow one chunk at a time, and numbers are kept once each in a string pool. Accounts
+// handed out read and update their amount in the row itself, so services that change balances through them
+// see one balance per id, as with the heap store; the other fields reach the table through save. Filters and
+// sums walk one or two arrays per chunk in plain counted loops, which the JIT unrolls and vectorizes.
+public class ColumnarAccountDao implements AccountRepository {
+
+    static final int CHUNK_SHIFT = 14;
+
+    static final int CHUNK_ROWS = 1 << CHUNK_SHIFT;
+
+    private static final int CHUNK_MASK = CHUNK_ROWS - 1;
+
+    private static final int NO_ROW = -1;
+
+    // null markers, so the columns stay primitive
+    static final long NO_AGREEMENT = Long.MIN_VALUE;
+
+    static final int NO_TYPE = Integer.MIN_VALUE;
+
+    static final int NO_NUMBER = -1;
+
+    static final int NO_AMOUNT = Integer.MIN_VALUE;
+
+    private static final int ROW_LOCKS = 256;
+
+    // appending rows takes the write lock; row reads and in-place updates take the read lock plus a row lock
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Object[] rowLocks = new Object[ROW_LOCKS];
+
+    private final LongLongHashMap rowById;
+
+    private final StringPool numbers = new StringPool();
+
+    private long[][] ids = new long[0][];
+
+    private long[][] agreementIds = new long[0][];
+
+    private int[][] types = new int[0][];
+
+    // balances in minor units, summed without touching the scale column
+    private long[][] balances = new long[0][];
+
+    // scale the amount was saved with, so views return an equal BigDecimal
+    private int[][] scales = new int[0][];
+
+    private int[][] numberRefs = new int[0][];
+
+    private int rows;
+
+    private long lastId = 1;
+
+    public ColumnarAccountDao() {
+        this(1024);
+    }
+
+    public ColumnarAccountDao(int expectedAccounts) {
+        rowById = new LongLongHashMap(expectedAccounts, NO_ROW);
+        for (int i = 0; i < ROW_LOCKS; i++) {
+            rowLocks[i] = new Object();
+        }
+    }
+
+    @Override
+    public Iterable<Account> findByAgreementId(Long agreementId) {
+        if (agreementId == null) {
+            return List.of();
+        }
+        long target = agreementId;
+        lock.readLock().lock();
+        try {
+            List<Account> result = new ArrayList<>();
+            for (int chunk = 0; chunk < chunkCount(rows); chunk++) {
+                long[] column = agreementIds[chunk];
+                int length = chunkRows(chunk);
+                for (int i = 0; i < length; i++) {
+                    if (column[i] == target) {
+                        result.add(readRow((chunk << CHUNK_SHIFT) + i));
+                    }
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<Account> findByAgreementIdAndType(Long agreementId, Integer type) {
+        if (agreementId == null || type == null) {
+            return Optional.empty();
+        }
+        long targetAgreement = agreementId;
+        int targetType = type;
+        lock.readLock().lock();
+        try {
+            for (int chunk = 0; chunk < chunkCount(rows); chunk++) {
+                long[] agreementColumn = agreementIds[chunk];
+                int[] typeColumn = types[chunk];
+                int length = chunkRows(chunk);
+                for (int i = 0; i < length; i++) {
+                    if (agreementColumn[i] == targetAgreement && typeColumn[i] == targetType) {
+                        return Optional.of(readRow((chunk << CHUNK_SHIFT) + i));
+                    }
+                }
+            }
+            return Optional.empty();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<Account> findById(Long accountId) {
+        if (accountId == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(getById(accountId));
+    }
+
+    @Override
+    public Account getById(long accountId) {
+        lock.readLock().lock();
+        try {
+            int row = (int) rowById.get(accountId);
+            return row == NO_ROW ? null : readRow(row);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Account save(Account account) {
+        checkAgreementId(account.getAgreementId());
+        checkType(account.getType());
+        checkAmount(account.getAmount());
+
+        if (account.getId() != null && account.getId() != 0) {
+            lock.readLock().lock();
+            try {
+                int row = (int) rowById.get(account.getId());
+                if (row != NO_ROW) {
+                    writeRow(row, account);
+                    return account;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (account.getId() == null || account.getId() == 0) {
+                account.setId(++lastId);
+            } else {
+                lastId = Math.max(lastId, account.getId());
+            }
+
+            int row = (int) rowById.get(account.getId());
+            if (row == NO_ROW) {
+                row = appendRow();
+                rowById.put(account.getId(), row);
+            }
+            writeRow(row, account);
+            return account;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Iterable<Account> findAll() {
+        return () -> new Iterator<>() {
+            private int row;
+
+            @Override
+            public boolean hasNext() {
+                return row < size();
+            }
+
+            @Override
+            public Account next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                lock.readLock().lock();
+                try {
+                    return readRow(row++);
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+        };
+    }
+
+    @Override
+    public Stream<Account> stream() {
+        return IntStream.range(0, size()).mapToObj(row -> {
+            lock.readLock().lock();
+            try {
+                return readRow(row);
+            } finally {
+                lock.readLock().unlock();
+            }
+        });
+    }
+
+    // Sum of all balances, accounts without an amount count as zero
+    public BigDecimal totalAmount() {
+        lock.readLock().lock();
+        try {
+            WideSum sum = new WideSum();
+            for (int chunk = 0; chunk < chunkCount(rows); chunk++) {
+                long[] column = balances[chunk];
+                int length = chunkRows(chunk);
+                long high = 0;
+                long low = 0;
+                for (int i = 0; i < length; i++) {
+                    high += column[i] >> 32;
+                    low += column[i] & 0xFFFFFFFFL;
+                }
+                sum.add(high, low);
+            }
+            return sum.value();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public BigDecimal totalAmountByAgreementId(long agreementId) {
+        lock.readLock().lock();
+        try {
+            WideSum sum = new WideSum();
+            for (int chunk = 0; chunk < chunkCount(rows); chunk++) {
+                long[] agreementColumn = agreementIds[chunk];
+                long[] column = balances[chunk];
+                int length = chunkRows(chunk);
+                long high = 0;
+                long low = 0;
+                for (int i = 0; i < length; i++) {
+                    // a branch-free mask instead of an if keeps the loop vectorizable
+                    long balance = agreementColumn[i] == agreementId ? column[i] : 0;
+                    high += balance >> 32;
+                    low += balance & 0xFFFFFFFFL;
+                }
+                sum.add(high, low);
+            }
+            return sum.value();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int countByAgreementId(long agreementId) {
+        lock.readLock().lock();
+        try {
+            int count = 0;
+            for (int chunk = 0; chunk < chunkCount(rows); chunk++) {
+                long[] column = agreementIds[chunk];
+                int length = chunkRows(chunk);
+                for (int i = 0; i < length; i++) {
+                    count += column[i] == agreementId ? 1 : 0;
+                }
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rows;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int getInternedNumbers() {
+        return numbers.size();
+    }
+
+    private Account readRow(int row) {
+        int chunk = row >>> CHUNK_SHIFT;
+        int i = row & CHUNK_MASK;
+        ColumnarAccount account = new ColumnarAccount(balances[chunk], scales[chunk], i, rowLock(row));
+        synchronized (rowLock(row)) {
+            account.setId(ids[chunk][i]);
+            long agreementId = agreementIds[chunk][i];
+            if (agreementId != NO_AGREEMENT) {
+                account.setAgreementId(agreementId);
+            }
+            int type = types[chunk][i];
+            if (type != NO_TYPE) {
+                account.setType(type);
+            }
+            int numberRef = numberRefs[chunk][i];
+            if (numberRef != NO_NUMBER) {
+                account.setNumber(numbers.get(numberRef));
+            }
+        }
+        return account;
+    }
+
+    private static BigDecimal readAmount(long[] balances, int[] scales, int i) {
+        int scale = scales[i];
+        return scale == NO_AMOUNT ? null : FixedPointMoney.toBigDecimal(balances[i]).setScale(scale);
+    }
+
+    private static void writeAmount(long[] balances, int[] scales, int i, BigDecimal amount) {
+        balances[i] = amount == null ? 0 : FixedPointMoney.toMinor(amount);
+        scales[i] = amount == null ? NO_AMOUNT : amount.scale();
+    }
+
+    private void writeRow(int row, Account account) {
+        int chunk = row >>> CHUNK_SHIFT;
+        int i = row & CHUNK_MASK;
+        int numberRef = account.getNumber() == null ? NO_NUMBER : numbers.intern(account.getNumber());
+        synchronized (rowLock(row)) {
+            // a view of this row reads its amount from the row itself, under the same lock
+            BigDecimal amount = account.getAmount();
+            ids[chunk][i] = account.getId();
+            agreementIds[chunk][i] = account.getAgreementId() == null ? NO_AGREEMENT : account.getAgreementId();
+            types[chunk][i] = account.getType() == null ? NO_TYPE : account.getType();
+            numberRefs[chunk][i] = numberRef;
+            writeAmount(balances[chunk], scales[chunk], i, amount);
+        }
+    }
+
+    // Called under the write lock
+    private int appendRow() {
+        int chunk = rows >>> CHUNK_SHIFT;
+        if (chunk == ids.length) {
+            ids = Arrays.copyOf(ids, chunk + 1);
+            ids[chunk] = new long[CHUNK_ROWS];
+            agreementIds = Arrays.copyOf(agreementIds, chunk + 1);
+            agreementIds[chunk] = new long[CHUNK_ROWS];
+            types = Arrays.copyOf(types, chunk + 1);
+            types[chunk] = new int[CHUNK_ROWS];
+            balances = Arrays.copyOf(balances, chunk + 1);
+            balances[chunk] = new long[CHUNK_ROWS];
+            scales = Arrays.copyOf(scales, chunk + 1);
+            scales[chunk] = new int[CHUNK_ROWS];
+            numberRefs = Arrays.copyOf(numberRefs, chunk + 1);
+            numberRefs[chunk] = new int[CHUNK_ROWS];
+        }
+        return rows++;
+    }
+
+    private int chunkRows(int chunk) {
+        return Math.min(CHUNK_ROWS, rows - (chunk << CHUNK_SHIFT));
+    }
+
+    private static int chunkCount(int rows) {
+        return (rows + CHUNK_ROWS - 1) >>> CHUNK_SHIFT;
+    }
+
+    private Object rowLock(int row) {
+        return rowLocks[row & (ROW_LOCKS - 1)];
+    }
+
+    private static void checkAgreementId(Long agreementId) {
+        if (agreementId != null && agreementId == NO_AGREEMENT) {
+            throw new IllegalArgumentException("Agreement id " + agreementId + " is reserved");
+        }
+    }
+
+    private static void checkType(Integer type) {
+        if (type != null && type == NO_TYPE) {
+            throw new IllegalArgumentException("Account type " + type + " is reserved");
+        }
+    }
+
+    private static void checkAmount(BigDecimal amount) {
+        if (amount == null) {
+            return;
+        }
+        if (amount.scale() == NO_AMOUNT) {
+            throw new IllegalArgumentException("Amount scale is out of range: " + amount);
+        }
+        try {
+            FixedPointMoney.toMinor(amount);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Amount does not fit in minor units: " + amount);
+        }
+    }
+
+    // The amount lives in the row, other fields are read once; chunk arrays are never replaced once
+    // allocated, so the view keeps its columns without the store lock
+    private static final class ColumnarAccount extends Account {
+
+        private final long[] balances;
+
+        private final int[] scales;
+
+        private final int index;
+
+        private final Object rowLock;
+
+        ColumnarAccount(long[] balances, int[] scales, int index, Object rowLock) {
+            this.balances = balances;
+            this.scales = scales;
+            this.index = index;
+            this.rowLock = rowLock;
+        }
+
+        @Override
+        public BigDecimal getAmount() {
+            synchronized (rowLock) {
+                return readAmount(balances, scales, index);
+            }
+        }
+
+        @Override
+        public void setAmount(BigDecimal amount) {
+            checkAmount(amount);
+            synchronized (rowLock) {
+                writeAmount(balances, scales, index, amount);
+            }
+        }
+
+        @Override
+        public boolean compareAndSetAmount(BigDecimal expectedAmount, BigDecimal newAmount) {
+            checkAmount(newAmount);
+            synchronized (rowLock) {
+                if (!Objects.equals(readAmount(balances, scales, index), expectedAmount)) {
+                    return false;
+                }
+                writeAmount(balances, scales, index, newAmount);
+                return true;
+            }
+        }
+    }
+
+    // Chunk sums split every balance into a signed high and an unsigned low half, so neither overflows
+    // within a chunk; the halves are combined exactly here
+    private static final class WideSum {
+
+        private BigInteger high = BigInteger.ZERO;
+
+        private long low;
+
+        void add(long chunkHigh, long chunkLow) {
+            high = high.add(BigInteger.valueOf(chunkHigh).add(BigInteger.valueOf(chunkLow >>> 32)));
+            low += chunkLow & 0xFFFFFFFFL;
+            if (low >>> 32 != 0) {
+                high = high.add(BigInteger.valueOf(low >>> 32));
+                low &= 0xFFFFFFFFL;
+            }
+        }
+
+        BigDecimal value() {
+            return new BigDecimal(high.shiftLeft(32).add(BigInteger.valueOf(low)), FixedPointMoney.SCALE);
+        }
+    }
+}
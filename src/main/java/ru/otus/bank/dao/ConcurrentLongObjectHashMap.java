@@ -0,0 +1,306 @@
+package ru.otus.bank.dao;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Concurrent long -> object map: segments of open-addressing tables with linear probing, null values are not allowed.
+// Reads take no lock and allocate nothing; writes lock one segment. A slot's key is published after its value and
+// never changes until the segment is rehashed into a new table, so readers need no retry: removal only clears the
+// value and the tombstone is dropped on the next rehash.
+public class ConcurrentLongObjectHashMap<V> {
+
+    public static final long EMPTY_KEY = LongLongHashMap.EMPTY_KEY;
+
+    private static final int DEFAULT_SEGMENTS = 16;
+
+    private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(Object[].class);
+
+    private final Segment<V>[] segments;
+
+    private final int segmentShift;
+
+    public ConcurrentLongObjectHashMap() {
+        this(16);
+    }
+
+    public ConcurrentLongObjectHashMap(int expectedSize) {
+        this(expectedSize, DEFAULT_SEGMENTS);
+    }
+
+    public ConcurrentLongObjectHashMap(int expectedSize, int segmentCount) {
+        if (segmentCount <= 0 || segmentCount > 1 << 16) {
+            throw new IllegalArgumentException("Segment count must be in [1, 65536]: " + segmentCount);
+        }
+        int count = Integer.highestOneBit(segmentCount - 1) << 1;
+        count = Math.max(1, count);
+        @SuppressWarnings("unchecked")
+        Segment<V>[] created = (Segment<V>[]) new Segment<?>[count];
+        for (int i = 0; i < count; i++) {
+            created[i] = new Segment<>(LongLongHashMap.capacityFor(Math.max(1, expectedSize / count),
+                    LongObjectHashMap.LOAD_FACTOR));
+        }
+        segments = created;
+        segmentShift = 64 - Integer.numberOfTrailingZeros(count);
+    }
+
+    public V get(long key) {
+        if (key == EMPTY_KEY) {
+            return null;
+        }
+        return segmentFor(key).get(key);
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    public V put(long key, V value) {
+        checkEntry(key, value);
+        return segmentFor(key).put(key, value, false);
+    }
+
+    public V putIfAbsent(long key, V value) {
+        checkEntry(key, value);
+        return segmentFor(key).put(key, value, true);
+    }
+
+    // Replaces the value with remapping(current value or null) atomically; a null result removes the entry.
+    // The function runs under the segment lock, so it must be short and must not touch this map.
+    public V compute(long key, UnaryOperator<V> remapping) {
+        if (key == EMPTY_KEY) {
+            throw new IllegalArgumentException("Key " + key + " is reserved");
+        }
+        Segment<V> segment = segmentFor(key);
+        synchronized (segment) {
+            V updated = remapping.apply(segment.get(key));
+            if (updated == null) {
+                segment.remove(key);
+            } else {
+                segment.put(key, updated, false);
+            }
+            return updated;
+        }
+    }
+
+    public V remove(long key) {
+        if (key == EMPTY_KEY) {
+            return null;
+        }
+        return segmentFor(key).remove(key);
+    }
+
+    public int size() {
+        long size = 0;
+        for (Segment<V> segment : segments) {
+            size += segment.size;
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // Weakly consistent, like the views of ConcurrentHashMap: every segment is read from the table current when
+    // the traversal reaches it
+    public Iterable<V> values() {
+        return () -> stream().iterator();
+    }
+
+    // Splits by segment, so parallel streams fan out over up to segments.length workers
+    public Stream<V> stream() {
+        return Arrays.stream(segments).flatMap(Segment::stream);
+    }
+
+    private Segment<V> segmentFor(long key) {
+        return segments[segmentShift == 64 ? 0 : (int) ((key * 0x9E3779B97F4A7C15L) >>> segmentShift)];
+    }
+
+    private static void checkEntry(long key, Object value) {
+        if (key == EMPTY_KEY) {
+            throw new IllegalArgumentException("Key " + key + " is reserved");
+        }
+        if (value == null) {
+            throw new NullPointerException("Null values are not allowed");
+        }
+    }
+
+    private static final class Table {
+
+        final long[] keys;
+
+        final Object[] values;
+
+        final int resizeThreshold;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+            Arrays.fill(keys, EMPTY_KEY);
+            resizeThreshold = (int) (capacity * LongObjectHashMap.LOAD_FACTOR);
+        }
+    }
+
+    private static final class Segment<V> {
+
+        volatile Table table;
+
+        // live entries
+        volatile int size;
+
+        // occupied slots including tombstones, guarded by this
+        int used;
+
+        Segment(int capacity) {
+            table = new Table(capacity);
+        }
+
+        @SuppressWarnings("unchecked")
+        V get(long key) {
+            Table current = table;
+            long[] keys = current.keys;
+            int mask = keys.length - 1;
+            for (int i = LongLongHashMap.index(key, mask); ; i = (i + 1) & mask) {
+                long slotKey = (long) KEYS.getAcquire(keys, i);
+                if (slotKey == key) {
+                    return (V) VALUES.getAcquire(current.values, i);
+                }
+                if (slotKey == EMPTY_KEY) {
+                    return null;
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V put(long key, V value, boolean onlyIfAbsent) {
+            Table current = table;
+            long[] keys = current.keys;
+            int mask = keys.length - 1;
+            for (int i = LongLongHashMap.index(key, mask); ; i = (i + 1) & mask) {
+                long slotKey = keys[i];
+                if (slotKey == key) {
+                    V previous = (V) current.values[i];
+                    if (previous == null) {
+                        size++;
+                    }
+                    if (previous == null || !onlyIfAbsent) {
+                        VALUES.setRelease(current.values, i, value);
+                    }
+                    return previous;
+                }
+                if (slotKey == EMPTY_KEY) {
+                    current.values[i] = value;
+                    // the release store makes the value visible no later than the key
+                    KEYS.setRelease(keys, i, key);
+                    size++;
+                    if (++used > current.resizeThreshold) {
+                        rehash(current);
+                    }
+                    return null;
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V remove(long key) {
+            Table current = table;
+            long[] keys = current.keys;
+            int mask = keys.length - 1;
+            for (int i = LongLongHashMap.index(key, mask); ; i = (i + 1) & mask) {
+                long slotKey = keys[i];
+                if (slotKey == key) {
+                    V previous = (V) current.values[i];
+                    if (previous != null) {
+                        VALUES.setRelease(current.values, i, null);
+                        size--;
+                    }
+                    return previous;
+                }
+                if (slotKey == EMPTY_KEY) {
+                    return null;
+                }
+            }
+        }
+
+        // Grows the table, or only drops tombstones when they are what filled it
+        private void rehash(Table old) {
+            int capacity = old.keys.length;
+            if (size > old.resizeThreshold / 2) {
+                if (capacity == 1 << 30) {
+                    throw new IllegalStateException("Map segment is too large: " + size);
+                }
+                capacity <<= 1;
+            }
+            Table grown = new Table(capacity);
+            int mask = capacity - 1;
+            for (int j = 0; j < old.keys.length; j++) {
+                Object value = old.values[j];
+                if (value != null) {
+                    long key = old.keys[j];
+                    int i = LongLongHashMap.index(key, mask);
+                    while (grown.keys[i] != EMPTY_KEY) {
+                        i = (i + 1) & mask;
+                    }
+                    grown.keys[i] = key;
+                    grown.values[i] = value;
+                }
+            }
+            used = size;
+            table = grown;
+        }
+
+        Stream<V> stream() {
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new ValueIterator<>(table),
+                    Spliterator.NONNULL | Spliterator.CONCURRENT), false);
+        }
+    }
+
+    private static final class ValueIterator<V> implements Iterator<V> {
+
+        private final Table table;
+
+        private int slot = -1;
+
+        private V next;
+
+        ValueIterator(Table table) {
+            this.table = table;
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public V next() {
+            V result = next;
+            if (result == null) {
+                throw new NoSuchElementException();
+            }
+            advance();
+            return result;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            next = null;
+            while (next == null && ++slot < table.keys.length) {
+                if ((long) KEYS.getAcquire(table.keys, slot) != EMPTY_KEY) {
+                    next = (V) VALUES.getAcquire(table.values, slot);
+                }
+            }
+        }
+    }
+}
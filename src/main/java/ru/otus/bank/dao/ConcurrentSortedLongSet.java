@@ -0,0 +1,84 @@
+package ru.otus.bank.dao;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+// Sorted set of longs kept in one growing array: 8 bytes per value instead of a skip-list node plus a boxed Long.
+// Writes take the lock; adding a value larger than every present one is amortized O(1), anything else shifts the
+// tail. Reads copy a range out under an optimistic stamp and fall back to the read lock if a write got in between.
+public class ConcurrentSortedLongSet {
+
+    private final StampedLock lock = new StampedLock();
+
+    private long[] values;
+
+    private int size;
+
+    public ConcurrentSortedLongSet() {
+        this(16);
+    }
+
+    public ConcurrentSortedLongSet(int expectedSize) {
+        values = new long[Math.max(1, expectedSize)];
+    }
+
+    public boolean add(long value) {
+        long stamp = lock.writeLock();
+        try {
+            int index = size;
+            if (size > 0 && values[size - 1] >= value) {
+                index = Arrays.binarySearch(values, 0, size, value);
+                if (index >= 0) {
+                    return false;
+                }
+                index = -index - 1;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            System.arraycopy(values, index, values, index + 1, size - index);
+            values[index] = value;
+            size++;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Copies up to max values greater than after into target, ascending, and returns how many were copied
+    public int copyAfter(long after, long[] target, int max) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            int copied = copy(after, target, max);
+            if (lock.validate(stamp)) {
+                return copied;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return copy(after, target, max);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Under an optimistic stamp the fields may be torn, so every index is bounded by the array actually read
+    private int copy(long after, long[] target, int max) {
+        long[] current = values;
+        int count = Math.min(size, current.length);
+        int from = Arrays.binarySearch(current, 0, count, after);
+        from = from >= 0 ? from + 1 : -from - 1;
+        int copied = Math.max(0, Math.min(Math.min(max, target.length), count - from));
+        System.arraycopy(current, from, target, 0, copied);
+        return copied;
+    }
+}
@@ -0,0 +1,145 @@
+package ru.otus.bank.dao;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+// Open-addressing long -> object map with linear probing. Not thread-safe, null values are not allowed.
+// An entry costs a long key and a reference, about 16 bytes at the 0.75 load factor, against a node and a boxed
+// key in HashMap.
+public class LongObjectHashMap<V> {
+
+    public static final long EMPTY_KEY = LongLongHashMap.EMPTY_KEY;
+
+    static final float LOAD_FACTOR = 0.75f;
+
+    private long[] keys;
+
+    private Object[] values;
+
+    private int size;
+
+    private int resizeThreshold;
+
+    public LongObjectHashMap() {
+        this(16);
+    }
+
+    public LongObjectHashMap(int expectedSize) {
+        allocate(LongLongHashMap.capacityFor(expectedSize, LOAD_FACTOR));
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int mask = keys.length - 1;
+        for (int i = LongLongHashMap.index(key, mask); ; i = (i + 1) & mask) {
+            long current = keys[i];
+            if (current == key) {
+                return (V) values[i];
+            }
+            if (current == EMPTY_KEY) {
+                return null;
+            }
+        }
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (key == EMPTY_KEY) {
+            throw new IllegalArgumentException("Key " + key + " is reserved");
+        }
+        if (value == null) {
+            throw new NullPointerException("Null values are not allowed");
+        }
+        int mask = keys.length - 1;
+        for (int i = LongLongHashMap.index(key, mask); ; i = (i + 1) & mask) {
+            long current = keys[i];
+            if (current == key) {
+                V previous = (V) values[i];
+                values[i] = value;
+                return previous;
+            }
+            if (current == EMPTY_KEY) {
+                keys[i] = key;
+                values[i] = value;
+                if (++size > resizeThreshold) {
+                    rehash(keys.length << 1);
+                }
+                return null;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int mask = keys.length - 1;
+        for (int i = LongLongHashMap.index(key, mask); ; i = (i + 1) & mask) {
+            long current = keys[i];
+            if (current == EMPTY_KEY) {
+                return null;
+            }
+            if (current == key) {
+                V previous = (V) values[i];
+                deleteSlot(i, mask);
+                size--;
+                return previous;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<? super V> action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY_KEY) {
+                action.accept((V) values[i]);
+            }
+        }
+    }
+
+    // Backward-shift deletion keeps probe chains intact without tombstones
+    private void deleteSlot(int slot, int mask) {
+        int gap = slot;
+        for (int i = (gap + 1) & mask; keys[i] != EMPTY_KEY; i = (i + 1) & mask) {
+            int home = LongLongHashMap.index(keys[i], mask);
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        keys[gap] = EMPTY_KEY;
+        values[gap] = null;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            long key = oldKeys[j];
+            if (key != EMPTY_KEY) {
+                int i = LongLongHashMap.index(key, mask);
+                while (keys[i] != EMPTY_KEY) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        Arrays.fill(keys, EMPTY_KEY);
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+}
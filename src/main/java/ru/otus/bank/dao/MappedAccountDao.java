@@ -0,0 +1,528 @@
+package ru.otus.bank.dao;
+
+import ru.otus.bank.entity.Account;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Keeps accounts as fixed-width 64-byte records in a memory-mapped file; the heap only holds
+// primitive id -> slot and agreementId -> first slot indexes. Accounts of one agreement are chained
+// through the records themselves. Records are rewritten in place, so the file is the store.
+// Accounts handed out read and update their amount in the record itself, so services that change
+// balances through them see one balance per id, as with the heap store.
+public class MappedAccountDao implements AccountRepository, Closeable {
+
+    static final int RECORD_SIZE = 64;
+
+    static final int HEADER_SIZE = 64;
+
+    static final int MAX_NUMBER_BYTES = 29;
+
+    private static final int MAGIC = 0x41434354;
+
+    private static final int VERSION = 1;
+
+    private static final int CHUNK_SHIFT = 20;
+
+    private static final int CHUNK_RECORDS = 1 << CHUNK_SHIFT;
+
+    private static final long CHUNK_BYTES = (long) CHUNK_RECORDS * RECORD_SIZE;
+
+    private static final int NO_SLOT = -1;
+
+    // record layout
+    private static final int ID = 0;
+    private static final int AGREEMENT_ID = 8;
+    private static final int UNSCALED_AMOUNT = 16;
+    private static final int NEXT_IN_AGREEMENT = 24;
+    private static final int TYPE = 28;
+    private static final int SCALE = 32;
+    private static final int FLAGS = 33;
+    private static final int NUMBER_LENGTH = 34;
+    private static final int NUMBER = 35;
+
+    private static final byte HAS_AGREEMENT = 1;
+    private static final byte HAS_TYPE = 2;
+    private static final byte HAS_NUMBER = 4;
+    private static final byte HAS_AMOUNT = 8;
+
+    // header layout
+    private static final int HEADER_SLOTS = 8;
+    private static final int HEADER_NEXT_ID = 16;
+
+    private static final int RECORD_LOCKS = 256;
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer header;
+
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+
+    // structural changes take the write lock; record reads and in-place updates take the read lock plus a record lock
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Object[] recordLocks = new Object[RECORD_LOCKS];
+
+    private final LongLongHashMap slotById;
+
+    private final LongLongHashMap firstSlotByAgreement;
+
+    private int slots;
+
+    private long lastId;
+
+    public MappedAccountDao(Path file) throws IOException {
+        this(file, 1024);
+    }
+
+    public MappedAccountDao(Path file, int expectedAccounts) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean created = channel.size() == 0;
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        if (created) {
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putLong(HEADER_SLOTS, 0);
+            header.putLong(HEADER_NEXT_ID, 1);
+        } else if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            channel.close();
+            throw new IOException("Not an account store " + file);
+        }
+        for (int i = 0; i < RECORD_LOCKS; i++) {
+            recordLocks[i] = new Object();
+        }
+
+        slots = (int) header.getLong(HEADER_SLOTS);
+        lastId = header.getLong(HEADER_NEXT_ID);
+        slotById = new LongLongHashMap(Math.max(expectedAccounts, slots), NO_SLOT);
+        firstSlotByAgreement = new LongLongHashMap(Math.max(16, Math.max(expectedAccounts, slots) / 4), NO_SLOT);
+        for (int chunk = 0; chunk < chunkCount(slots); chunk++) {
+            mapChunk(chunk);
+        }
+        rebuildIndexes();
+    }
+
+    @Override
+    public Iterable<Account> findByAgreementId(Long agreementId) {
+        if (agreementId == null) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            List<Account> result = new ArrayList<>();
+            for (int slot = (int) firstSlotByAgreement.get(agreementId); slot != NO_SLOT; slot = nextInAgreement(slot)) {
+                result.add(readAccount(slot));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<Account> findByAgreementIdAndType(Long agreementId, Integer type) {
+        if (agreementId == null || type == null) {
+            return Optional.empty();
+        }
+        lock.readLock().lock();
+        try {
+            for (int slot = (int) firstSlotByAgreement.get(agreementId); slot != NO_SLOT; slot = nextInAgreement(slot)) {
+                MappedByteBuffer chunk = chunk(slot);
+                int offset = offset(slot);
+                if ((chunk.get(offset + FLAGS) & HAS_TYPE) != 0 && chunk.getInt(offset + TYPE) == type) {
+                    return Optional.of(readAccount(slot));
+                }
+            }
+            return Optional.empty();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<Account> findById(Long accountId) {
+        if (accountId == null) {
+            return Optional.empty();
+        }
+        lock.readLock().lock();
+        try {
+            int slot = (int) slotById.get(accountId);
+            return slot == NO_SLOT ? Optional.empty() : Optional.of(readAccount(slot));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Account getById(long accountId) {
+        lock.readLock().lock();
+        try {
+            int slot = (int) slotById.get(accountId);
+            return slot == NO_SLOT ? null : readAccount(slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Account save(Account account) {
+        checkNumber(account.getNumber());
+        checkAmount(account.getAmount());
+
+        if (account.getId() != null && account.getId() != 0) {
+            lock.readLock().lock();
+            try {
+                int slot = (int) slotById.get(account.getId());
+                if (slot != NO_SLOT && sameAgreement(slot, account.getAgreementId())) {
+                    writeAccount(slot, account);
+                    return account;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (account.getId() == null || account.getId() == 0) {
+                account.setId(++lastId);
+                header.putLong(HEADER_NEXT_ID, lastId);
+            } else if (account.getId() > lastId) {
+                lastId = account.getId();
+                header.putLong(HEADER_NEXT_ID, lastId);
+            }
+
+            int slot = (int) slotById.get(account.getId());
+            if (slot == NO_SLOT) {
+                slot = allocateSlot();
+                slotById.put(account.getId(), slot);
+                chunk(slot).putInt(offset(slot) + NEXT_IN_AGREEMENT, NO_SLOT);
+            } else {
+                unlink(slot);
+            }
+            writeAccount(slot, account);
+            link(slot);
+            return account;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Iterable<Account> findAll() {
+        return () -> new Iterator<>() {
+            private int slot;
+
+            @Override
+            public boolean hasNext() {
+                return slot < size();
+            }
+
+            @Override
+            public Account next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                lock.readLock().lock();
+                try {
+                    return readAccount(slot++);
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+        };
+    }
+
+    public Optional<BigDecimal> getAmount(long accountId) {
+        lock.readLock().lock();
+        try {
+            int slot = (int) slotById.get(accountId);
+            if (slot == NO_SLOT) {
+                return Optional.empty();
+            }
+            synchronized (recordLock(slot)) {
+                return Optional.ofNullable(readAmount(chunk(slot), offset(slot)));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean setAmount(long accountId, BigDecimal amount) {
+        checkAmount(amount);
+        lock.readLock().lock();
+        try {
+            int slot = (int) slotById.get(accountId);
+            if (slot == NO_SLOT) {
+                return false;
+            }
+            synchronized (recordLock(slot)) {
+                writeAmount(chunk(slot), offset(slot), amount);
+            }
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slots;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void force() {
+        lock.writeLock().lock();
+        try {
+            header.force();
+            for (MappedByteBuffer chunk : chunks) {
+                chunk.force();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private Account readAccount(int slot) {
+        MappedByteBuffer chunk = chunk(slot);
+        int offset = offset(slot);
+        MappedAccount account = new MappedAccount(chunk, offset, recordLock(slot));
+        synchronized (recordLock(slot)) {
+            byte flags = chunk.get(offset + FLAGS);
+            account.setId(chunk.getLong(offset + ID));
+            if ((flags & HAS_AGREEMENT) != 0) {
+                account.setAgreementId(chunk.getLong(offset + AGREEMENT_ID));
+            }
+            if ((flags & HAS_TYPE) != 0) {
+                account.setType(chunk.getInt(offset + TYPE));
+            }
+            if ((flags & HAS_NUMBER) != 0) {
+                byte[] number = new byte[chunk.get(offset + NUMBER_LENGTH)];
+                chunk.get(offset + NUMBER, number);
+                account.setNumber(new String(number, StandardCharsets.UTF_8));
+            }
+        }
+        return account;
+    }
+
+    private void writeAccount(int slot, Account account) {
+        MappedByteBuffer chunk = chunk(slot);
+        int offset = offset(slot);
+        byte flags = 0;
+        synchronized (recordLock(slot)) {
+            // read before the flags are rewritten, a view of this record reads its amount from them
+            BigDecimal amount = account.getAmount();
+            chunk.putLong(offset + ID, account.getId());
+            if (account.getAgreementId() != null) {
+                flags |= HAS_AGREEMENT;
+                chunk.putLong(offset + AGREEMENT_ID, account.getAgreementId());
+            }
+            if (account.getType() != null) {
+                flags |= HAS_TYPE;
+                chunk.putInt(offset + TYPE, account.getType());
+            }
+            if (account.getNumber() != null) {
+                flags |= HAS_NUMBER;
+                byte[] number = account.getNumber().getBytes(StandardCharsets.UTF_8);
+                chunk.put(offset + NUMBER_LENGTH, (byte) number.length);
+                chunk.put(offset + NUMBER, number);
+            }
+            chunk.put(offset + FLAGS, flags);
+            writeAmount(chunk, offset, amount);
+        }
+    }
+
+    private static BigDecimal readAmount(MappedByteBuffer chunk, int offset) {
+        if ((chunk.get(offset + FLAGS) & HAS_AMOUNT) == 0) {
+            return null;
+        }
+        return BigDecimal.valueOf(chunk.getLong(offset + UNSCALED_AMOUNT), chunk.get(offset + SCALE));
+    }
+
+    private static void writeAmount(MappedByteBuffer chunk, int offset, BigDecimal amount) {
+        byte flags = chunk.get(offset + FLAGS);
+        if (amount == null) {
+            chunk.put(offset + FLAGS, (byte) (flags & ~HAS_AMOUNT));
+            return;
+        }
+        chunk.putLong(offset + UNSCALED_AMOUNT, amount.unscaledValue().longValueExact());
+        chunk.put(offset + SCALE, (byte) amount.scale());
+        chunk.put(offset + FLAGS, (byte) (flags | HAS_AMOUNT));
+    }
+
+    private boolean sameAgreement(int slot, Long agreementId) {
+        MappedByteBuffer chunk = chunk(slot);
+        int offset = offset(slot);
+        boolean hasAgreement = (chunk.get(offset + FLAGS) & HAS_AGREEMENT) != 0;
+        if (agreementId == null) {
+            return !hasAgreement;
+        }
+        return hasAgreement && chunk.getLong(offset + AGREEMENT_ID) == agreementId;
+    }
+
+    private void link(int slot) {
+        MappedByteBuffer chunk = chunk(slot);
+        int offset = offset(slot);
+        if ((chunk.get(offset + FLAGS) & HAS_AGREEMENT) == 0) {
+            chunk.putInt(offset + NEXT_IN_AGREEMENT, NO_SLOT);
+            return;
+        }
+        long agreementId = chunk.getLong(offset + AGREEMENT_ID);
+        chunk.putInt(offset + NEXT_IN_AGREEMENT, (int) firstSlotByAgreement.get(agreementId));
+        firstSlotByAgreement.put(agreementId, slot);
+    }
+
+    private void unlink(int slot) {
+        MappedByteBuffer chunk = chunk(slot);
+        int offset = offset(slot);
+        if ((chunk.get(offset + FLAGS) & HAS_AGREEMENT) == 0) {
+            return;
+        }
+        long agreementId = chunk.getLong(offset + AGREEMENT_ID);
+        int next = nextInAgreement(slot);
+        int current = (int) firstSlotByAgreement.get(agreementId);
+        if (current == slot) {
+            if (next == NO_SLOT) {
+                firstSlotByAgreement.remove(agreementId);
+            } else {
+                firstSlotByAgreement.put(agreementId, next);
+            }
+            return;
+        }
+        while (current != NO_SLOT) {
+            int following = nextInAgreement(current);
+            if (following == slot) {
+                chunk(current).putInt(offset(current) + NEXT_IN_AGREEMENT, next);
+                return;
+            }
+            current = following;
+        }
+    }
+
+    private void rebuildIndexes() {
+        for (int slot = 0; slot < slots; slot++) {
+            slotById.put(chunk(slot).getLong(offset(slot) + ID), slot);
+            link(slot);
+        }
+    }
+
+    private int allocateSlot() {
+        int slot = slots;
+        if (slot == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Account store is full");
+        }
+        if (chunkCount(slot + 1) > chunks.size()) {
+            mapChunk(chunks.size());
+        }
+        slots++;
+        header.putLong(HEADER_SLOTS, slots);
+        return slot;
+    }
+
+    private void mapChunk(int chunk) {
+        try {
+            chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + chunk * CHUNK_BYTES, CHUNK_BYTES));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot map account store chunk " + chunk, e);
+        }
+    }
+
+    private int nextInAgreement(int slot) {
+        return chunk(slot).getInt(offset(slot) + NEXT_IN_AGREEMENT);
+    }
+
+    private MappedByteBuffer chunk(int slot) {
+        return chunks.get(slot >>> CHUNK_SHIFT);
+    }
+
+    private static int offset(int slot) {
+        return (slot & (CHUNK_RECORDS - 1)) * RECORD_SIZE;
+    }
+
+    private Object recordLock(int slot) {
+        return recordLocks[slot & (RECORD_LOCKS - 1)];
+    }
+
+    // The amount lives in the record, other fields are read once; chunks are never unmapped or moved,
+    // so the view keeps its chunk without the store lock
+    private static final class MappedAccount extends Account {
+
+        private final MappedByteBuffer chunk;
+
+        private final int offset;
+
+        private final Object recordLock;
+
+        MappedAccount(MappedByteBuffer chunk, int offset, Object recordLock) {
+            this.chunk = chunk;
+            this.offset = offset;
+            this.recordLock = recordLock;
+        }
+
+        @Override
+        public BigDecimal getAmount() {
+            synchronized (recordLock) {
+                return readAmount(chunk, offset);
+            }
+        }
+
+        @Override
+        public void setAmount(BigDecimal amount) {
+            checkAmount(amount);
+            synchronized (recordLock) {
+                writeAmount(chunk, offset, amount);
+            }
+        }
+
+        @Override
+        public boolean compareAndSetAmount(BigDecimal expectedAmount, BigDecimal newAmount) {
+            checkAmount(newAmount);
+            synchronized (recordLock) {
+                if (!Objects.equals(readAmount(chunk, offset), expectedAmount)) {
+                    return false;
+                }
+                writeAmount(chunk, offset, newAmount);
+                return true;
+            }
+        }
+    }
+
+    private static int chunkCount(int slots) {
+        return (slots + CHUNK_RECORDS - 1) >>> CHUNK_SHIFT;
+    }
+
+    private static void checkNumber(String number) {
+        if (number != null && number.getBytes(StandardCharsets.UTF_8).length > MAX_NUMBER_BYTES) {
+            throw new IllegalArgumentException("Account number is longer than " + MAX_NUMBER_BYTES + " bytes: " + number);
+        }
+    }
+
+    private static void checkAmount(BigDecimal amount) {
+        if (amount != null && (amount.scale() < Byte.MIN_VALUE || amount.scale() > Byte.MAX_VALUE
+                || amount.unscaledValue().bitLength() > 63)) {
+            throw new IllegalArgumentException("Amount does not fit a 64-bit fixed-point value: " + amount);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package ru.otus.bank.dao;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+// Interned strings addressed by int reference, so a column can hold an int instead of a pointer.
+// Equal strings share one reference; strings are never removed.
+final class StringPool {
+
+    private static final int CHUNK_SHIFT = 12;
+
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    private final HashMap<String, Integer> refs = new HashMap<>();
+
+    // A reader gets a reference only through a column written after intern returned it,
+    // which orders the element write before the read
+    private volatile String[][] chunks = new String[0][];
+
+    private int size;
+
+    synchronized int intern(String value) {
+        Integer ref = refs.get(value);
+        if (ref != null) {
+            return ref;
+        }
+        int chunk = size >>> CHUNK_SHIFT;
+        String[][] current = chunks;
+        if (chunk == current.length) {
+            current = Arrays.copyOf(current, chunk + 1);
+            current[chunk] = new String[CHUNK_SIZE];
+        }
+        current[chunk][size & (CHUNK_SIZE - 1)] = value;
+        chunks = current;
+        refs.put(value, size);
+        return size++;
+    }
+
+    String get(int ref) {
+        return chunks[ref >>> CHUNK_SHIFT][ref & (CHUNK_SIZE - 1)];
+    }
+
+    synchronized int size() {
+        return size;
+    }
+}
@@ -0,0 +1,417 @@
+package ru.otus.bank.dao.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ObjLongConsumer;
+import java.util.zip.CRC32;
+
+// Frame layout: int payloadLength, long sequence, byte recordType, payload, int crc32.
+// The checksum covers sequence, type and payload; replay stops at the first torn or corrupt frame.
+// The journal is a directory of segments named after the first sequence they may contain.
+public class Journal implements Closeable {
+
+    static final int FRAME_OVERHEAD = Integer.BYTES + Long.BYTES + 1 + Integer.BYTES;
+
+    private static final String SEGMENT_PREFIX = "journal-";
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+
+    private final JournalConfig config;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition flushNeeded = lock.newCondition();
+
+    private final Condition spaceAvailable = lock.newCondition();
+
+    private final Condition durable = lock.newCondition();
+
+    private final CRC32 appendCrc = new CRC32();
+
+    // the record being appended is serialized here first, so a record that fails to write leaves no torn frame
+    private final ByteBuffer scratch;
+
+    // first sequence -> segment file, the last entry is the segment being written
+    private final TreeMap<Long, Path> segments = new TreeMap<>();
+
+    // written only during recovery and by the flusher thread
+    private FileChannel channel;
+
+    private ByteBuffer active;
+
+    private ByteBuffer spare;
+
+    private int pending;
+
+    private boolean flushRequested;
+
+    private boolean recovered;
+
+    private boolean closed;
+
+    private long lastSequence;
+
+    private long durableSequence;
+
+    private IOException failure;
+
+    private Thread flusher;
+
+    public Journal(Path directory, JournalConfig config) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.config = config;
+        this.active = ByteBuffer.allocateDirect(config.bufferSize());
+        this.spare = ByteBuffer.allocateDirect(config.bufferSize());
+        this.scratch = ByteBuffer.allocate(config.bufferSize() - FRAME_OVERHEAD);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public long recover(ObjLongConsumer<JournalRecord> handler) throws IOException {
+        return recover(0, handler);
+    }
+
+    // Replays every intact record after fromSequence, cuts off a torn tail and opens the journal for appends
+    public long recover(long fromSequence, ObjLongConsumer<JournalRecord> handler) throws IOException {
+        lock.lock();
+        try {
+            if (recovered) {
+                throw new IllegalStateException("Journal is already recovered");
+            }
+            loadSegments();
+            if (!segments.isEmpty() && segments.firstKey() > fromSequence + 1) {
+                throw new IOException("Journal has no records between " + fromSequence
+                        + " and " + segments.firstKey());
+            }
+
+            lastSequence = fromSequence;
+            List<Map.Entry<Long, Path>> entries = new ArrayList<>(segments.entrySet());
+            for (int i = 0; i < entries.size(); i++) {
+                boolean last = i == entries.size() - 1;
+                if (!last && entries.get(i + 1).getKey() - 1 <= fromSequence) {
+                    continue;
+                }
+                Path segment = entries.get(i).getValue();
+                FileChannel segmentChannel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                try {
+                    JournalReader.Result result = JournalReader.read(segmentChannel, config.bufferSize(),
+                            (record, sequence) -> {
+                                if (sequence > fromSequence) {
+                                    handler.accept(record, sequence);
+                                }
+                            });
+                    if (result.validLength() < segmentChannel.size()) {
+                        if (!last) {
+                            throw new IOException("Corrupt journal segment " + segment);
+                        }
+                        segmentChannel.truncate(result.validLength());
+                    }
+                    lastSequence = Math.max(lastSequence, result.lastSequence());
+                } catch (IOException | RuntimeException e) {
+                    segmentChannel.close();
+                    throw e;
+                }
+                if (last) {
+                    segmentChannel.position(segmentChannel.size());
+                    channel = segmentChannel;
+                } else {
+                    segmentChannel.close();
+                }
+            }
+            if (channel == null) {
+                channel = openSegment(lastSequence + 1);
+            }
+            durableSequence = lastSequence;
+            recovered = true;
+
+            flusher = new Thread(this::flushLoop, "journal-flusher-" + directory.getFileName());
+            flusher.setDaemon(true);
+            flusher.start();
+            return lastSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long append(JournalRecord record) {
+        int frameSize = FRAME_OVERHEAD + record.size();
+        if (frameSize > config.bufferSize()) {
+            throw new IllegalArgumentException("Journal record of " + frameSize + " bytes exceeds the buffer size");
+        }
+
+        lock.lock();
+        try {
+            checkWritable();
+            while (active.remaining() < frameSize) {
+                flushRequested = true;
+                flushNeeded.signal();
+                spaceAvailable.awaitUninterruptibly();
+                checkWritable();
+            }
+
+            scratch.clear();
+            record.write(scratch);
+            if (scratch.position() != record.size()) {
+                throw new IllegalStateException("Journal record wrote " + scratch.position()
+                        + " bytes instead of " + record.size());
+            }
+            scratch.flip();
+
+            long sequence = ++lastSequence;
+            int start = active.position();
+            active.putInt(frameSize - FRAME_OVERHEAD);
+            active.putLong(sequence);
+            active.put(record.type());
+            active.put(scratch);
+
+            ByteBuffer checksummed = active.duplicate();
+            checksummed.position(start + Integer.BYTES).limit(active.position());
+            appendCrc.reset();
+            appendCrc.update(checksummed);
+            active.putInt((int) appendCrc.getValue());
+
+            if (++pending >= config.groupCommitSize()) {
+                flushNeeded.signal();
+            }
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Blocks until the record is forced to disk; concurrent callers share one fsync
+    public void sync(long sequence) {
+        lock.lock();
+        try {
+            while (durableSequence < sequence) {
+                checkFailure();
+                if (closed) {
+                    throw new IllegalStateException("Journal is closed");
+                }
+                flushRequested = true;
+                flushNeeded.signal();
+                durable.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getLastSequence() {
+        lock.lock();
+        try {
+            return lastSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getDurableSequence() {
+        lock.lock();
+        try {
+            return durableSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public List<Path> getSegments() {
+        lock.lock();
+        try {
+            return List.copyOf(segments.values());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Drops closed segments whose records all have a sequence not greater than the given one
+    public int deleteSegmentsUpTo(long sequence) throws IOException {
+        List<Path> covered = new ArrayList<>();
+        lock.lock();
+        try {
+            Long first = segments.isEmpty() ? null : segments.firstKey();
+            while (first != null) {
+                Long next = segments.higherKey(first);
+                if (next == null || next - 1 > sequence) {
+                    break;
+                }
+                covered.add(segments.remove(first));
+                first = next;
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (Path segment : covered) {
+            Files.deleteIfExists(segment);
+        }
+        return covered.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        Thread flusherThread;
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            flushNeeded.signal();
+            spaceAvailable.signalAll();
+            flusherThread = flusher;
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            if (flusherThread != null) {
+                flusherThread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+        lock.lock();
+        try {
+            checkFailure();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            ByteBuffer toWrite;
+            long upTo;
+            lock.lock();
+            try {
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.groupCommitMillis());
+                while (!closed && !flushRequested && pending < config.groupCommitSize()) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        if (pending > 0) {
+                            break;
+                        }
+                        deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.groupCommitMillis());
+                        remaining = deadline - System.nanoTime();
+                    }
+                    flushNeeded.awaitNanos(remaining);
+                }
+                if (pending == 0) {
+                    flushRequested = false;
+                    if (closed) {
+                        return;
+                    }
+                    continue;
+                }
+                toWrite = active;
+                active = spare;
+                spare = null;
+                upTo = lastSequence;
+                pending = 0;
+                flushRequested = false;
+                spaceAvailable.signalAll();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            try {
+                toWrite.flip();
+                while (toWrite.hasRemaining()) {
+                    channel.write(toWrite);
+                }
+                channel.force(false);
+                if (channel.size() >= config.segmentSize()) {
+                    FileChannel next = openSegment(upTo + 1);
+                    channel.close();
+                    channel = next;
+                }
+            } catch (IOException e) {
+                error = e;
+            }
+            toWrite.clear();
+
+            lock.lock();
+            try {
+                spare = toWrite;
+                if (error != null) {
+                    failure = error;
+                    closed = true;
+                } else {
+                    durableSequence = upTo;
+                }
+                durable.signalAll();
+                spaceAvailable.signalAll();
+                if (error != null) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private FileChannel openSegment(long firstSequence) throws IOException {
+        Path segment = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+        FileChannel segmentChannel = FileChannel.open(segment, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        lock.lock();
+        try {
+            segments.put(firstSequence, segment);
+        } finally {
+            lock.unlock();
+        }
+        return segmentChannel;
+    }
+
+    private void loadSegments() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String sequence = name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length());
+                segments.put(Long.parseLong(sequence), file);
+            }
+        }
+    }
+
+    private void checkWritable() {
+        checkFailure();
+        if (!recovered) {
+            throw new IllegalStateException("Journal must be recovered before appending");
+        }
+        if (closed) {
+            throw new IllegalStateException("Journal is closed");
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new UncheckedIOException("Journal write failed", failure);
+        }
+    }
+}
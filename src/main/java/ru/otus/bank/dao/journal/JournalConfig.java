@@ -0,0 +1,21 @@
+package ru.otus.bank.dao.journal;
+
+public record JournalConfig(int groupCommitSize, long groupCommitMillis, int bufferSize, long segmentSize) {
+
+    public static final JournalConfig DEFAULT = new JournalConfig(4096, 10, 1 << 20, 256L << 20);
+
+    public JournalConfig {
+        if (groupCommitSize <= 0) {
+            throw new IllegalArgumentException("groupCommitSize must be positive: " + groupCommitSize);
+        }
+        if (groupCommitMillis <= 0) {
+            throw new IllegalArgumentException("groupCommitMillis must be positive: " + groupCommitMillis);
+        }
+        if (bufferSize < 1024) {
+            throw new IllegalArgumentException("bufferSize must be at least 1024: " + bufferSize);
+        }
+        if (segmentSize < bufferSize) {
+            throw new IllegalArgumentException("segmentSize must not be less than bufferSize: " + segmentSize);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package ru.otus.bank.dao.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.function.ObjLongConsumer;
+import java.util.zip.CRC32;
+
+final class JournalReader {
+
+    private JournalReader() {
+    }
+
+    static Result read(FileChannel channel, int bufferSize, ObjLongConsumer<JournalRecord> handler) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+        CRC32 crc = new CRC32();
+        long fileSize = channel.size();
+        long position = 0;
+        long validLength = 0;
+        long lastSequence = 0;
+
+        buffer.limit(0);
+        while (true) {
+            if (buffer.remaining() < Integer.BYTES || buffer.remaining() < frameSize(buffer)) {
+                if (position >= fileSize) {
+                    break;
+                }
+                buffer.compact();
+                int read = channel.read(buffer, position);
+                buffer.flip();
+                if (read <= 0) {
+                    break;
+                }
+                position += read;
+                continue;
+            }
+
+            int frameSize = frameSize(buffer);
+            if (frameSize < Journal.FRAME_OVERHEAD || frameSize > bufferSize) {
+                break;
+            }
+
+            int start = buffer.position();
+            ByteBuffer checksummed = buffer.duplicate();
+            checksummed.position(start + Integer.BYTES).limit(start + frameSize - Integer.BYTES);
+            crc.reset();
+            crc.update(checksummed);
+            if ((int) crc.getValue() != buffer.getInt(start + frameSize - Integer.BYTES)) {
+                break;
+            }
+
+            buffer.position(start + Integer.BYTES);
+            long sequence = buffer.getLong();
+            byte type = buffer.get();
+            ByteBuffer payload = buffer.slice(buffer.position(), frameSize - Journal.FRAME_OVERHEAD);
+            handler.accept(JournalRecord.read(type, payload), sequence);
+
+            buffer.position(start + frameSize);
+            validLength += frameSize;
+            lastSequence = sequence;
+        }
+        return new Result(validLength, lastSequence);
+    }
+
+    private static int frameSize(ByteBuffer buffer) {
+        if (buffer.remaining() < Integer.BYTES) {
+            return Integer.MAX_VALUE;
+        }
+        return Journal.FRAME_OVERHEAD + buffer.getInt(buffer.position());
+    }
+
+    record Result(long validLength, long lastSequence) {
+    }
+}
@@ -0,0 +1,238 @@
+package ru.otus.bank.dao.journal;
+
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public sealed interface JournalRecord {
+
+    byte ACCOUNT_SAVED = 1;
+
+    byte AGREEMENT_SAVED = 2;
+
+    byte ACCOUNTS_SAVED = 3;
+
+    byte type();
+
+    int size();
+
+    void write(ByteBuffer buffer);
+
+    static JournalRecord read(byte type, ByteBuffer buffer) {
+        return switch (type) {
+            case ACCOUNT_SAVED -> AccountSaved.read(buffer);
+            case AGREEMENT_SAVED -> AgreementSaved.read(buffer);
+            case ACCOUNTS_SAVED -> AccountsSaved.read(buffer);
+            default -> throw new IllegalStateException("Unknown journal record type " + type);
+        };
+    }
+
+    record AccountSaved(long id, Long agreementId, Integer accountType,
+                        String number, BigDecimal amount) implements JournalRecord {
+
+        private static final byte HAS_AGREEMENT = 1;
+        private static final byte HAS_TYPE = 2;
+        private static final byte HAS_NUMBER = 4;
+        private static final byte HAS_AMOUNT = 8;
+
+        public static AccountSaved of(Account account) {
+            return new AccountSaved(account.getId(), account.getAgreementId(), account.getType(),
+                    account.getNumber(), account.getAmount());
+        }
+
+        public Account toAccount() {
+            Account account = new Account();
+            account.setId(id);
+            account.setAgreementId(agreementId);
+            account.setType(accountType);
+            account.setNumber(number);
+            account.setAmount(amount);
+            return account;
+        }
+
+        @Override
+        public byte type() {
+            return ACCOUNT_SAVED;
+        }
+
+        @Override
+        public int size() {
+            int size = Long.BYTES + 1;
+            if (agreementId != null) {
+                size += Long.BYTES;
+            }
+            if (accountType != null) {
+                size += Integer.BYTES;
+            }
+            if (number != null) {
+                size += stringSize(number);
+            }
+            if (amount != null) {
+                size += decimalSize(amount);
+            }
+            return size;
+        }
+
+        @Override
+        public void write(ByteBuffer buffer) {
+            byte flags = 0;
+            flags |= agreementId != null ? HAS_AGREEMENT : 0;
+            flags |= accountType != null ? HAS_TYPE : 0;
+            flags |= number != null ? HAS_NUMBER : 0;
+            flags |= amount != null ? HAS_AMOUNT : 0;
+
+            buffer.putLong(id);
+            buffer.put(flags);
+            if (agreementId != null) {
+                buffer.putLong(agreementId);
+            }
+            if (accountType != null) {
+                buffer.putInt(accountType);
+            }
+            if (number != null) {
+                writeString(buffer, number);
+            }
+            if (amount != null) {
+                writeDecimal(buffer, amount);
+            }
+        }
+
+        static AccountSaved read(ByteBuffer buffer) {
+            long id = buffer.getLong();
+            byte flags = buffer.get();
+            Long agreementId = (flags & HAS_AGREEMENT) != 0 ? buffer.getLong() : null;
+            Integer accountType = (flags & HAS_TYPE) != 0 ? buffer.getInt() : null;
+            String number = (flags & HAS_NUMBER) != 0 ? readString(buffer) : null;
+            BigDecimal amount = (flags & HAS_AMOUNT) != 0 ? readDecimal(buffer) : null;
+            return new AccountSaved(id, agreementId, accountType, number, amount);
+        }
+    }
+
+    // Accounts saved together, e.g. both sides of a transfer: replay applies all of them or, on a torn frame, none
+    record AccountsSaved(List<AccountSaved> accounts) implements JournalRecord {
+
+        public static AccountsSaved of(Account... accounts) {
+            List<AccountSaved> saved = new ArrayList<>(accounts.length);
+            for (Account account : accounts) {
+                saved.add(AccountSaved.of(account));
+            }
+            return new AccountsSaved(saved);
+        }
+
+        @Override
+        public byte type() {
+            return ACCOUNTS_SAVED;
+        }
+
+        @Override
+        public int size() {
+            int size = Integer.BYTES;
+            for (AccountSaved account : accounts) {
+                size += account.size();
+            }
+            return size;
+        }
+
+        @Override
+        public void write(ByteBuffer buffer) {
+            buffer.putInt(accounts.size());
+            for (AccountSaved account : accounts) {
+                account.write(buffer);
+            }
+        }
+
+        static AccountsSaved read(ByteBuffer buffer) {
+            int count = buffer.getInt();
+            List<AccountSaved> accounts = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                accounts.add(AccountSaved.read(buffer));
+            }
+            return new AccountsSaved(accounts);
+        }
+    }
+
+    record AgreementSaved(long id, String name) implements JournalRecord {
+
+        public static AgreementSaved of(Agreement agreement) {
+            return new AgreementSaved(agreement.getId(), agreement.getName());
+        }
+
+        public Agreement toAgreement() {
+            Agreement agreement = new Agreement();
+            agreement.setId(id);
+            agreement.setName(name);
+            return agreement;
+        }
+
+        @Override
+        public byte type() {
+            return AGREEMENT_SAVED;
+        }
+
+        @Override
+        public int size() {
+            return Long.BYTES + 1 + (name != null ? stringSize(name) : 0);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer) {
+            buffer.putLong(id);
+            buffer.put((byte) (name != null ? 1 : 0));
+            if (name != null) {
+                writeString(buffer, name);
+            }
+        }
+
+        static AgreementSaved read(ByteBuffer buffer) {
+            long id = buffer.getLong();
+            String name = buffer.get() != 0 ? readString(buffer) : null;
+            return new AgreementSaved(id, name);
+        }
+    }
+
+    private static int stringSize(String value) {
+        return Short.BYTES + value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static void writeString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("String is too long for a journal record: " + bytes.length + " bytes");
+        }
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int decimalSize(BigDecimal value) {
+        return Integer.BYTES + 1 + value.unscaledValue().toByteArray().length;
+    }
+
+    private static void writeDecimal(ByteBuffer buffer, BigDecimal value) {
+        byte[] unscaled = value.unscaledValue().toByteArray();
+        if (unscaled.length > 0xFF) {
+            throw new IllegalArgumentException("Amount is too large for a journal record: " + value);
+        }
+        buffer.putInt(value.scale());
+        buffer.put((byte) unscaled.length);
+        buffer.put(unscaled);
+    }
+
+    private static BigDecimal readDecimal(ByteBuffer buffer) {
+        int scale = buffer.getInt();
+        byte[] unscaled = new byte[Byte.toUnsignedInt(buffer.get())];
+        buffer.get(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+}
@@ -0,0 +1,171 @@
+package ru.otus.bank.dao.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class JournalStore implements Closeable {
+
+    static final int RETAINED_SNAPSHOTS = 2;
+
+    private final Path directory;
+
+    private final JournalConfig config;
+
+    private final Journal journal;
+
+    private final JournaledAccountDao accountDao;
+
+    private final JournaledAgreementDao agreementDao;
+
+    private ScheduledExecutorService snapshotScheduler;
+
+    private volatile long snapshotSequence;
+
+    private volatile Exception lastSnapshotFailure;
+
+    private JournalStore(Path directory, JournalConfig config, Journal journal) {
+        this.directory = directory;
+        this.config = config;
+        this.journal = journal;
+        this.accountDao = new JournaledAccountDao(journal);
+        this.agreementDao = new JournaledAgreementDao(journal);
+    }
+
+    // Loads the newest readable snapshot and replays only the journal records written after it
+    public static JournalStore open(Path directory, JournalConfig config) throws IOException {
+        Files.createDirectories(directory);
+        for (Path snapshot : Snapshot.list(directory)) {
+            JournalStore store = new JournalStore(directory, config, new Journal(directory, config));
+            try {
+                store.snapshotSequence = Snapshot.read(snapshot, config.bufferSize(), store::apply);
+            } catch (IOException | RuntimeException e) {
+                continue;
+            }
+            return store.recover();
+        }
+        return new JournalStore(directory, config, new Journal(directory, config)).recover();
+    }
+
+    private JournalStore recover() throws IOException {
+        try {
+            journal.recover(snapshotSequence, (record, sequence) -> apply(record));
+        } catch (IOException | RuntimeException e) {
+            journal.close();
+            throw e;
+        }
+        return this;
+    }
+
+    void apply(JournalRecord record) {
+        if (record instanceof JournalRecord.AccountSaved accountSaved) {
+            accountDao.replay(accountSaved);
+        } else if (record instanceof JournalRecord.AccountsSaved accountsSaved) {
+            accountsSaved.accounts().forEach(accountDao::replay);
+        } else if (record instanceof JournalRecord.AgreementSaved agreementSaved) {
+            agreementDao.replay(agreementSaved);
+        }
+    }
+
+    public Journal getJournal() {
+        return journal;
+    }
+
+    public JournaledAccountDao getAccountDao() {
+        return accountDao;
+    }
+
+    public JournaledAgreementDao getAgreementDao() {
+        return agreementDao;
+    }
+
+    public long getSnapshotSequence() {
+        return snapshotSequence;
+    }
+
+    public Exception getLastSnapshotFailure() {
+        return lastSnapshotFailure;
+    }
+
+    public void sync() {
+        journal.sync(journal.getLastSequence());
+    }
+
+    // The journaled state is copied holding both DAOs' cuts, so it is exactly the state after record `sequence`.
+    // Saves are held only for the copy and keep running while the snapshot is written.
+    public synchronized long snapshot() throws IOException {
+        long sequence;
+        List<JournalRecord> records = new ArrayList<>();
+        agreementDao.locks.lockCut();
+        accountDao.locks.lockCut();
+        try {
+            sequence = journal.getLastSequence();
+            agreementDao.capture(records);
+            accountDao.capture(records);
+        } finally {
+            accountDao.locks.unlockCut();
+            agreementDao.locks.unlockCut();
+        }
+
+        try (Snapshot snapshot = Snapshot.create(directory, sequence, config.bufferSize())) {
+            for (JournalRecord record : records) {
+                snapshot.write(record);
+            }
+            journal.sync(sequence);
+            snapshot.commit();
+        }
+        snapshotSequence = sequence;
+
+        // Older snapshots stay as fallbacks with the journal after them, in case the newest cannot be read
+        List<Path> snapshots = Snapshot.list(directory);
+        for (int i = RETAINED_SNAPSHOTS; i < snapshots.size(); i++) {
+            Files.deleteIfExists(snapshots.get(i));
+        }
+        if (snapshots.size() >= RETAINED_SNAPSHOTS) {
+            journal.deleteSegmentsUpTo(Snapshot.sequenceOf(snapshots.get(RETAINED_SNAPSHOTS - 1)));
+        }
+        return sequence;
+    }
+
+    public synchronized void startSnapshots(long periodMillis) {
+        if (snapshotScheduler != null) {
+            throw new IllegalStateException("Snapshots are already scheduled");
+        }
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-snapshot-" + directory.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot();
+                lastSnapshotFailure = null;
+            } catch (Exception e) {
+                lastSnapshotFailure = e;
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() throws IOException {
+        ScheduledExecutorService scheduler;
+        synchronized (this) {
+            scheduler = snapshotScheduler;
+        }
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        journal.close();
+    }
+}
@@ -0,0 +1,79 @@
+package ru.otus.bank.dao.journal;
+
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.dao.ConcurrentLongObjectHashMap;
+import ru.otus.bank.entity.Account;
+
+import java.util.List;
+
+// A save returns once its record is on disk. The record is appended before the account is stored, so a failed
+// append leaves memory as it was; the wait for the fsync happens after the locks are released, where concurrent
+// saves share one.
+public class JournaledAccountDao extends AccountDao {
+
+    private final Journal journal;
+
+    // orders the in-memory update of each account together with its journal record; the cut is held by snapshots
+    final SaveLocks locks = new SaveLocks();
+
+    // accountId -> the state last written to the journal; services change accounts before saving them,
+    // so snapshots copy these records instead of the live accounts
+    private final ConcurrentLongObjectHashMap<JournalRecord.AccountSaved> journaled =
+            new ConcurrentLongObjectHashMap<>();
+
+    public JournaledAccountDao(Journal journal) {
+        this.journal = journal;
+    }
+
+    @Override
+    public Account save(Account account) {
+        assignId(account);
+        long accountId = account.getId();
+        long sequence;
+        locks.lock(accountId);
+        try {
+            JournalRecord.AccountSaved record = JournalRecord.AccountSaved.of(account);
+            sequence = journal.append(record);
+            super.save(account);
+            journaled.put(accountId, record);
+        } finally {
+            locks.unlock(accountId);
+        }
+        journal.sync(sequence);
+        return account;
+    }
+
+    @Override
+    public void saveAll(Account... accounts) {
+        long[] ids = new long[accounts.length];
+        for (int i = 0; i < accounts.length; i++) {
+            assignId(accounts[i]);
+            ids[i] = accounts[i].getId();
+        }
+        long sequence;
+        int[] stripes = locks.lock(ids);
+        try {
+            JournalRecord.AccountsSaved record = JournalRecord.AccountsSaved.of(accounts);
+            sequence = journal.append(record);
+            for (Account account : accounts) {
+                super.save(account);
+            }
+            for (JournalRecord.AccountSaved saved : record.accounts()) {
+                journaled.put(saved.id(), saved);
+            }
+        } finally {
+            locks.unlock(stripes);
+        }
+        journal.sync(sequence);
+    }
+
+    // the caller holds the cut
+    void capture(List<JournalRecord> records) {
+        journaled.values().forEach(records::add);
+    }
+
+    void replay(JournalRecord.AccountSaved record) {
+        restore(record.toAccount());
+        journaled.put(record.id(), record);
+    }
+}
@@ -0,0 +1,70 @@
+package ru.otus.bank.dao.journal;
+
+import ru.otus.bank.dao.AgreementDao;
+import ru.otus.bank.dao.ConcurrentLongObjectHashMap;
+import ru.otus.bank.entity.Agreement;
+
+import java.util.List;
+
+// Like JournaledAccountDao: the record is appended before the agreement is stored and the save waits for its
+// fsync. Only the name is reserved ahead of the append, and released again if the append fails.
+public class JournaledAgreementDao extends AgreementDao {
+
+    private final Journal journal;
+
+    // orders the in-memory update of each agreement together with its journal record; the cut is held by snapshots
+    final SaveLocks locks = new SaveLocks();
+
+    // agreementId -> the state last written to the journal
+    private final ConcurrentLongObjectHashMap<JournalRecord.AgreementSaved> journaled =
+            new ConcurrentLongObjectHashMap<>();
+
+    public JournaledAgreementDao(Journal journal) {
+        this.journal = journal;
+    }
+
+    @Override
+    public Agreement addAgreement(String name) {
+        Agreement agreement = new Agreement();
+        agreement.setName(name);
+        return save(agreement);
+    }
+
+    @Override
+    public Agreement save(Agreement agreement) {
+        Long id = agreement.getId();
+        long agreementId = id == null || id == 0 ? nextId() : id;
+        String name = agreement.getName();
+        long sequence;
+        locks.lock(agreementId);
+        try {
+            boolean reserved = reserveName(agreementId, name);
+            JournalRecord.AgreementSaved record = new JournalRecord.AgreementSaved(agreementId, name);
+            try {
+                sequence = journal.append(record);
+            } catch (RuntimeException e) {
+                if (reserved) {
+                    releaseName(agreementId, name);
+                }
+                throw e;
+            }
+            agreement.setId(agreementId);
+            super.save(agreement);
+            journaled.put(agreementId, record);
+        } finally {
+            locks.unlock(agreementId);
+        }
+        journal.sync(sequence);
+        return agreement;
+    }
+
+    // the caller holds the cut
+    void capture(List<JournalRecord> records) {
+        journaled.values().forEach(records::add);
+    }
+
+    void replay(JournalRecord.AgreementSaved record) {
+        restore(record.toAgreement());
+        journaled.put(record.id(), record);
+    }
+}
@@ -0,0 +1,75 @@
+package ru.otus.bank.dao.journal;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Saves of different ids share the read side and append to the journal concurrently. A save holds the stripe of
+// each id it writes across its append and the in-memory update, so per id the memory changes in journal sequence
+// order and replay ends in the same state. Snapshots take the write side and never see a save half done.
+final class SaveLocks {
+
+    // a power of two: stripe() takes the top bits of the hash
+    private static final int STRIPES = 64;
+
+    private final ReentrantReadWriteLock cut = new ReentrantReadWriteLock();
+
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+    SaveLocks() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    void lock(long id) {
+        cut.readLock().lock();
+        stripes[stripe(id)].lock();
+    }
+
+    void unlock(long id) {
+        stripes[stripe(id)].unlock();
+        cut.readLock().unlock();
+    }
+
+    // Stripes are taken in ascending order, so two batches sharing ids cannot deadlock
+    int[] lock(long[] ids) {
+        int[] order = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            order[i] = stripe(ids[i]);
+        }
+        Arrays.sort(order);
+        int count = 0;
+        for (int i = 0; i < order.length; i++) {
+            if (i == 0 || order[i] != order[i - 1]) {
+                order[count++] = order[i];
+            }
+        }
+        order = Arrays.copyOf(order, count);
+
+        cut.readLock().lock();
+        for (int stripe : order) {
+            stripes[stripe].lock();
+        }
+        return order;
+    }
+
+    void unlock(int[] order) {
+        for (int i = order.length - 1; i >= 0; i--) {
+            stripes[order[i]].unlock();
+        }
+        cut.readLock().unlock();
+    }
+
+    void lockCut() {
+        cut.writeLock().lock();
+    }
+
+    void unlockCut() {
+        cut.writeLock().unlock();
+    }
+
+    private static int stripe(long id) {
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> (64 - Integer.numberOfTrailingZeros(STRIPES)));
+    }
+}
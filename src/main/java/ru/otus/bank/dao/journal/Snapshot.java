@@ -0,0 +1,214 @@
+package ru.otus.bank.dao.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// Layout: int magic, int version, long sequence, then entries of byte recordType, int payloadLength, payload,
+// then the trailer byte 0, long entryCount, int crc32 of everything before the trailer's checksum.
+public class Snapshot implements Closeable {
+
+    private static final int MAGIC = 0x424E4B53;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES + Long.BYTES;
+
+    private static final String PREFIX = "snapshot-";
+
+    private static final String SUFFIX = ".snap";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path file;
+
+    private final Path tempFile;
+
+    private final long sequence;
+
+    private final FileChannel channel;
+
+    private final ByteBuffer buffer;
+
+    private final CRC32 crc = new CRC32();
+
+    private long count;
+
+    private boolean committed;
+
+    private Snapshot(Path directory, long sequence, int bufferSize) throws IOException {
+        this.file = directory.resolve(fileName(sequence));
+        this.tempFile = directory.resolve(fileName(sequence) + TEMP_SUFFIX);
+        this.sequence = sequence;
+        this.channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(sequence);
+    }
+
+    public static Snapshot create(Path directory, long sequence, int bufferSize) throws IOException {
+        return new Snapshot(directory, sequence, bufferSize);
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void write(JournalRecord record) throws IOException {
+        int size = 1 + Integer.BYTES + record.size();
+        if (buffer.remaining() < size) {
+            drain();
+            if (buffer.remaining() < size) {
+                throw new IllegalArgumentException("Snapshot record of " + size + " bytes exceeds the buffer size");
+            }
+        }
+        buffer.put(record.type());
+        buffer.putInt(record.size());
+        record.write(buffer);
+        count++;
+    }
+
+    // Forces the snapshot to disk and atomically publishes it under its final name
+    public Path commit() throws IOException {
+        if (buffer.remaining() < 1 + Long.BYTES + Integer.BYTES) {
+            drain();
+        }
+        buffer.put((byte) 0).putLong(count);
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        channel.force(true);
+        channel.close();
+        Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        committed = true;
+        forceDirectory(file.getParent());
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!committed) {
+            channel.close();
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private void drain() throws IOException {
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Newest first; unfinished temporary snapshots are removed
+    public static List<Path> list(Path directory) throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    Files.deleteIfExists(file);
+                } else if (name.endsWith(SUFFIX)) {
+                    snapshots.add(file);
+                }
+            }
+        }
+        snapshots.sort(Comparator.comparing((Path file) -> file.getFileName().toString()).reversed());
+        return snapshots;
+    }
+
+    // Streams the entries to the handler and returns the snapshot sequence, or throws if the file is damaged
+    public static long read(Path file, int bufferSize, Consumer<JournalRecord> handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+            CRC32 crc = new CRC32();
+            buffer.limit(0);
+
+            fill(channel, buffer, crc, HEADER_SIZE);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Not a snapshot file " + file);
+            }
+            long sequence = buffer.getLong();
+
+            long count = 0;
+            while (true) {
+                fill(channel, buffer, crc, 1);
+                byte type = buffer.get();
+                if (type == 0) {
+                    break;
+                }
+                fill(channel, buffer, crc, Integer.BYTES);
+                int size = buffer.getInt();
+                if (size < 0 || size > bufferSize) {
+                    throw new IOException("Corrupt snapshot entry in " + file);
+                }
+                fill(channel, buffer, crc, size);
+                ByteBuffer payload = buffer.slice(buffer.position(), size);
+                handler.accept(JournalRecord.read(type, payload));
+                buffer.position(buffer.position() + size);
+                count++;
+            }
+
+            fill(channel, buffer, crc, Long.BYTES);
+            long expectedCount = buffer.getLong();
+            crc.update(buffer.array(), 0, buffer.position());
+            int expectedCrc = (int) crc.getValue();
+            fill(channel, buffer, null, Integer.BYTES);
+            if (expectedCount != count || buffer.getInt() != expectedCrc) {
+                throw new IOException("Snapshot checksum mismatch in " + file);
+            }
+            return sequence;
+        }
+    }
+
+    // Makes at least `required` bytes available; bytes consumed so far are added to the checksum before compaction
+    private static void fill(FileChannel channel, ByteBuffer buffer, CRC32 crc, int required) throws IOException {
+        if (buffer.remaining() >= required) {
+            return;
+        }
+        if (crc != null) {
+            crc.update(buffer.array(), 0, buffer.position());
+        }
+        buffer.compact();
+        while (buffer.position() < required) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Unexpected end of snapshot file");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // not every platform can open a directory; the rename is still atomic there
+        }
+    }
+
+    static long sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    static String fileName(long sequence) {
+        return String.format("%s%020d%s", PREFIX, sequence, SUFFIX);
+    }
+}
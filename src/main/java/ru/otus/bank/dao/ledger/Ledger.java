@@ -0,0 +1,254 @@
+package ru.otus.bank.dao.ledger;
+
+import ru.otus.bank.entity.FixedPointMoney;
+import ru.otus.bank.service.exception.AccountException;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+
+// Append-only double-entry ledger. Every transaction posts legs that sum to zero; charges and unbalanced
+// batches are balanced against EXTERNAL_ACCOUNT, so the sum of all balances always equals the sum of opening balances.
+public class Ledger {
+
+    // Counterparty of charges and of transactions with more than two legs
+    public static final long EXTERNAL_ACCOUNT = 0;
+
+    public static final long NO_TRANSACTION = -1;
+
+    private final ConcurrentHashMap<Long, PostingHistory> histories = new ConcurrentHashMap<>();
+
+    private final AtomicLong transactionId = new AtomicLong();
+
+    private final Clock clock;
+
+    public Ledger() {
+        this(Clock.systemUTC());
+    }
+
+    public Ledger(Clock clock) {
+        this.clock = clock;
+        histories.put(EXTERNAL_ACCOUNT, new PostingHistory(EXTERNAL_ACCOUNT, 0));
+    }
+
+    public void openAccount(long accountId, BigDecimal openingBalance) {
+        if (histories.putIfAbsent(accountId, new PostingHistory(accountId, FixedPointMoney.toMinor(openingBalance))) != null) {
+            throw new AccountException("Account " + accountId + " is already open");
+        }
+    }
+
+    public void openAccountIfAbsent(long accountId, BigDecimal openingBalance) {
+        if (!histories.containsKey(accountId)) {
+            histories.putIfAbsent(accountId, new PostingHistory(accountId, FixedPointMoney.toMinor(openingBalance)));
+        }
+    }
+
+    public boolean isOpen(long accountId) {
+        return histories.containsKey(accountId);
+    }
+
+    // Returns the transaction id, or NO_TRANSACTION if the source cannot cover the amount
+    public long transfer(long sourceAccountId, long destinationAccountId, BigDecimal amount) {
+        long amountMinor = FixedPointMoney.toMinor(amount);
+        PostingHistory source = history(sourceAccountId);
+        PostingHistory destination = history(destinationAccountId);
+        if (amountMinor <= 0) {
+            return NO_TRANSACTION;
+        }
+        if (source == destination) {
+            source.lock.lock();
+            try {
+                return source.getBalance() < amountMinor ? NO_TRANSACTION : post(source, destination, amountMinor);
+            } finally {
+                source.lock.unlock();
+            }
+        }
+
+        PostingHistory first = sourceAccountId < destinationAccountId ? source : destination;
+        PostingHistory second = first == source ? destination : source;
+        first.lock.lock();
+        try {
+            second.lock.lock();
+            try {
+                return source.getBalance() < amountMinor ? NO_TRANSACTION : post(source, destination, amountMinor);
+            } finally {
+                second.lock.unlock();
+            }
+        } finally {
+            first.lock.unlock();
+        }
+    }
+
+    // Debits the account and credits EXTERNAL_ACCOUNT; a negative amount is a refund
+    public long charge(long accountId, BigDecimal amount) {
+        long amountMinor = FixedPointMoney.toMinor(amount);
+        PostingHistory account = history(accountId);
+        PostingHistory external = histories.get(EXTERNAL_ACCOUNT);
+        // Locks are taken in account id order and EXTERNAL_ACCOUNT has the lowest id
+        external.lock.lock();
+        try {
+            account.lock.lock();
+            try {
+                return post(account, external, amountMinor);
+            } finally {
+                account.lock.unlock();
+            }
+        } finally {
+            external.lock.unlock();
+        }
+    }
+
+    // Debits sum + fee from the source and credits sum to the destination and fee to the fee account as one
+    // transaction; NO_TRANSACTION if the source cannot cover both
+    public long transfer(long sourceAccountId, long destinationAccountId, BigDecimal amount,
+                         long feeAccountId, BigDecimal fee) {
+        long amountMinor = FixedPointMoney.toMinor(amount);
+        long feeMinor = FixedPointMoney.toMinor(fee);
+        history(sourceAccountId);
+        history(destinationAccountId);
+        history(feeAccountId);
+        if (amountMinor <= 0 || feeMinor < 0) {
+            return NO_TRANSACTION;
+        }
+        Map<Long, BigDecimal> legs = new LinkedHashMap<>();
+        legs.merge(sourceAccountId, FixedPointMoney.toBigDecimal(-FixedPointMoney.add(amountMinor, feeMinor)), BigDecimal::add);
+        legs.merge(destinationAccountId, amount, BigDecimal::add);
+        if (feeMinor > 0) {
+            legs.merge(feeAccountId, fee, BigDecimal::add);
+        }
+        legs.values().removeIf(leg -> leg.signum() == 0);
+        return post(legs, true);
+    }
+
+    // One transaction with a leg per entry; whatever the legs do not balance is posted to EXTERNAL_ACCOUNT
+    public long post(Map<Long, BigDecimal> legs) {
+        return post(legs, false);
+    }
+
+    // Like post, but every debited account must cover its leg, or nothing is posted and NO_TRANSACTION is returned
+    public long postCovered(Map<Long, BigDecimal> legs) {
+        return post(legs, true);
+    }
+
+    // With coverage checked, every debited account other than EXTERNAL_ACCOUNT must cover its leg
+    // once all locks are held, or nothing is posted
+    private long post(Map<Long, BigDecimal> legs, boolean checkCoverage) {
+        int size = legs.size();
+        PostingHistory[] accounts = new PostingHistory[size + 1];
+        long[] amounts = new long[size + 1];
+        long imbalance = 0;
+        int i = 0;
+        for (Map.Entry<Long, BigDecimal> leg : legs.entrySet()) {
+            accounts[i] = history(leg.getKey());
+            amounts[i] = FixedPointMoney.toMinor(leg.getValue());
+            imbalance = FixedPointMoney.subtract(imbalance, amounts[i]);
+            i++;
+        }
+        int legCount = size;
+        if (imbalance != 0) {
+            accounts[legCount] = histories.get(EXTERNAL_ACCOUNT);
+            amounts[legCount] = imbalance;
+            legCount++;
+        }
+
+        Integer[] order = new Integer[legCount];
+        for (i = 0; i < legCount; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (left, right) -> Long.compare(accounts[left].getAccountId(), accounts[right].getAccountId()));
+
+        int locked = 0;
+        try {
+            for (Integer index : order) {
+                accounts[index].lock.lock();
+                locked++;
+            }
+            if (checkCoverage) {
+                for (i = 0; i < legCount; i++) {
+                    if (amounts[i] < 0 && accounts[i].getAccountId() != EXTERNAL_ACCOUNT
+                            && accounts[i].getBalance() < -amounts[i]) {
+                        return NO_TRANSACTION;
+                    }
+                }
+            }
+            long id = transactionId.incrementAndGet();
+            long timestamp = clock.millis();
+            for (i = 0; i < legCount; i++) {
+                long counterparty = legCount == 2 ? accounts[1 - i].getAccountId() : EXTERNAL_ACCOUNT;
+                accounts[i].append(id, counterparty, amounts[i], timestamp);
+            }
+            return id;
+        } finally {
+            for (int j = locked - 1; j >= 0; j--) {
+                accounts[order[j]].lock.unlock();
+            }
+        }
+    }
+
+    public BigDecimal getBalance(long accountId) {
+        return FixedPointMoney.toBigDecimal(history(accountId).getBalance());
+    }
+
+    public long getBalanceMinor(long accountId) {
+        return history(accountId).getBalance();
+    }
+
+    public int getPostingCount(long accountId) {
+        return history(accountId).size();
+    }
+
+    // Oldest first; from is the index of the first posting of the page
+    public List<Posting> getHistory(long accountId, int from, int limit) {
+        if (from < 0 || limit < 0) {
+            throw new IllegalArgumentException("from and limit must not be negative");
+        }
+        return history(accountId).read(from, limit);
+    }
+
+    public long getTransactionCount() {
+        return transactionId.get();
+    }
+
+    // Balance as of a transaction id taken from getTransactionCount(). Any transaction with a smaller id holds the
+    // locks of all its accounts until every leg is posted, so reading under the account lock never sees half of one.
+    public long getBalanceMinorAt(long accountId, long transactionId) {
+        PostingHistory history = history(accountId);
+        history.lock.lock();
+        try {
+            return history.balanceAt(transactionId);
+        } finally {
+            history.lock.unlock();
+        }
+    }
+
+    public long getOpeningBalanceMinor(long accountId) {
+        return history(accountId).getOpeningBalance();
+    }
+
+    // Including EXTERNAL_ACCOUNT
+    public LongStream accountIds() {
+        return histories.keySet().stream().mapToLong(Long::longValue);
+    }
+
+    private long post(PostingHistory debit, PostingHistory credit, long amountMinor) {
+        long id = transactionId.incrementAndGet();
+        long timestamp = clock.millis();
+        debit.append(id, credit.getAccountId(), -amountMinor, timestamp);
+        credit.append(id, debit.getAccountId(), amountMinor, timestamp);
+        return id;
+    }
+
+    private PostingHistory history(long accountId) {
+        PostingHistory history = histories.get(accountId);
+        if (history == null) {
+            throw new AccountException("No account " + accountId);
+        }
+        return history;
+    }
+}
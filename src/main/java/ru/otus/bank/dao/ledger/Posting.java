@@ -0,0 +1,14 @@
+package ru.otus.bank.dao.ledger;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+// Materialized only when history is read; the ledger itself keeps postings as columns of longs.
+// A negative amount is a debit, a positive one a credit.
+public record Posting(long transactionId, long accountId, long counterpartyAccountId,
+                      BigDecimal amount, BigDecimal balance, Instant timestamp) {
+
+    public boolean isDebit() {
+        return amount.signum() < 0;
+    }
+}
@@ -0,0 +1,156 @@
+package ru.otus.bank.dao.ledger;
+
+import ru.otus.bank.entity.FixedPointMoney;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Postings of one account, appended under the lock and read without it.
+// Writers fill the columns before publishing the new size, so a reader that sees size n sees the first n postings.
+final class PostingHistory {
+
+    static final int CHUNK_SIZE = 1024;
+
+    // Most accounts have few postings, so the first chunk starts small and grows up to CHUNK_SIZE
+    static final int FIRST_CHUNK_SIZE = 8;
+
+    final ReentrantLock lock = new ReentrantLock();
+
+    private final long accountId;
+
+    private final long openingBalance;
+
+    private volatile Chunk[] chunks = new Chunk[0];
+
+    private volatile int size;
+
+    private volatile long balance;
+
+    PostingHistory(long accountId, long openingBalance) {
+        this.accountId = accountId;
+        this.openingBalance = openingBalance;
+        this.balance = openingBalance;
+    }
+
+    long getAccountId() {
+        return accountId;
+    }
+
+    long getOpeningBalance() {
+        return openingBalance;
+    }
+
+    long getBalance() {
+        return balance;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Caller holds the lock
+    void append(long transactionId, long counterpartyAccountId, long amount, long timestamp) {
+        long newBalance = FixedPointMoney.add(balance, amount);
+        int index = size;
+        Chunk chunk = writableChunk(index);
+        int offset = index % CHUNK_SIZE;
+        chunk.transactionIds[offset] = transactionId;
+        chunk.counterparties[offset] = counterpartyAccountId;
+        chunk.amounts[offset] = amount;
+        chunk.balances[offset] = newBalance;
+        chunk.timestamps[offset] = timestamp;
+        balance = newBalance;
+        size = index + 1;
+    }
+
+    // Balance after the last posting with transaction id <= transactionId; ids only grow within one account
+    long balanceAt(long transactionId) {
+        int low = 0;
+        int high = size - 1;
+        Chunk[] current = chunks;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (current[middle / CHUNK_SIZE].transactionIds[middle % CHUNK_SIZE] <= transactionId) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (high < 0) {
+            return openingBalance;
+        }
+        return current[high / CHUNK_SIZE].balances[high % CHUNK_SIZE];
+    }
+
+    List<Posting> read(int from, int limit) {
+        int end = (int) Math.min(size, (long) from + limit);
+        Chunk[] current = chunks;
+        List<Posting> result = new ArrayList<>(Math.max(end - from, 0));
+        for (int index = from; index < end; index++) {
+            Chunk chunk = current[index / CHUNK_SIZE];
+            int offset = index % CHUNK_SIZE;
+            result.add(new Posting(chunk.transactionIds[offset], accountId, chunk.counterparties[offset],
+                    FixedPointMoney.toBigDecimal(chunk.amounts[offset]),
+                    FixedPointMoney.toBigDecimal(chunk.balances[offset]),
+                    Instant.ofEpochMilli(chunk.timestamps[offset])));
+        }
+        return result;
+    }
+
+    private Chunk writableChunk(int index) {
+        Chunk[] current = chunks;
+        int chunkIndex = index / CHUNK_SIZE;
+        int offset = index % CHUNK_SIZE;
+        if (chunkIndex == current.length) {
+            Chunk[] grown = Arrays.copyOf(current, chunkIndex + 1);
+            grown[chunkIndex] = new Chunk(chunkIndex == 0 ? FIRST_CHUNK_SIZE : CHUNK_SIZE);
+            chunks = grown;
+            return grown[chunkIndex];
+        }
+        Chunk chunk = current[chunkIndex];
+        if (offset == chunk.capacity()) {
+            // Readers holding the old chunk only look at postings it already contains
+            chunk = chunk.grow(Math.min(chunk.capacity() * 2, CHUNK_SIZE));
+            current[chunkIndex] = chunk;
+        }
+        return chunk;
+    }
+
+    private static final class Chunk {
+
+        final long[] transactionIds;
+
+        final long[] counterparties;
+
+        final long[] amounts;
+
+        final long[] balances;
+
+        final long[] timestamps;
+
+        Chunk(int capacity) {
+            this(new long[capacity], new long[capacity], new long[capacity], new long[capacity], new long[capacity]);
+        }
+
+        private Chunk(long[] transactionIds, long[] counterparties, long[] amounts, long[] balances, long[] timestamps) {
+            this.transactionIds = transactionIds;
+            this.counterparties = counterparties;
+            this.amounts = amounts;
+            this.balances = balances;
+            this.timestamps = timestamps;
+        }
+
+        int capacity() {
+            return amounts.length;
+        }
+
+        Chunk grow(int capacity) {
+            return new Chunk(Arrays.copyOf(transactionIds, capacity), Arrays.copyOf(counterparties, capacity),
+                    Arrays.copyOf(amounts, capacity), Arrays.copyOf(balances, capacity),
+                    Arrays.copyOf(timestamps, capacity));
+        }
+    }
+}
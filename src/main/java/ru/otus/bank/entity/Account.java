@@ -1,11 +1,12 @@
 package ru.otus.bank.entity;
 
 import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class Account {
 
     private long id;
-    private BigDecimal amount;
+    private final AtomicReference<BigDecimal> amount = new AtomicReference<>();
 
     private Integer type;
 
@@ -22,11 +23,15 @@ public class Account {
     }
 
     public BigDecimal getAmount() {
-        return amount;
+        return amount.get();
     }
 
     public void setAmount(BigDecimal amount) {
-        this.amount = amount;
+        this.amount.set(amount);
+    }
+
+    public boolean compareAndSetAmount(BigDecimal expectedAmount, BigDecimal newAmount) {
+        return amount.compareAndSet(expectedAmount, newAmount);
     }
 
     public Integer getType() {
@@ -57,7 +62,7 @@ public class Account {
     public String toString() {
         return "Account{" +
                 "id=" + id +
-                ", amount=" + amount +
+                ", amount=" + getAmount() +
                 ", type=" + type +
                 ", number='" + number + '\'' +
                 ", agreementId=" + agreementId +
@@ -0,0 +1,92 @@
+package ru.otus.bank.entity;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+public final class FixedPointMoney {
+
+    // Balances are kept in minor units: 1 unit = 100 minor units
+    public static final int SCALE = 2;
+
+    public static final long MINOR_PER_UNIT = 100;
+
+    // Commission rates are kept in parts per million: 0.1 = 100_000
+    public static final int RATE_SCALE = 6;
+
+    public static final long RATE_ONE = 1_000_000;
+
+    public static final RoundingMode COMMISSION_ROUNDING = RoundingMode.HALF_UP;
+
+    private FixedPointMoney() {
+    }
+
+    public static long toMinor(BigDecimal amount) {
+        return amount.setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+    }
+
+    // For amounts that may carry more digits than a balance keeps, e.g. a computed commission
+    public static long toMinor(BigDecimal amount, RoundingMode roundingMode) {
+        return amount.setScale(SCALE, roundingMode).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal toBigDecimal(long minor) {
+        return BigDecimal.valueOf(minor, SCALE);
+    }
+
+    public static long toRate(BigDecimal rate) {
+        return rate.setScale(RATE_SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+    }
+
+    public static long add(long left, long right) {
+        return Math.addExact(left, right);
+    }
+
+    public static long subtract(long left, long right) {
+        return Math.subtractExact(left, right);
+    }
+
+    public static long commission(long amountMinor, long rate) {
+        return commission(amountMinor, rate, COMMISSION_ROUNDING);
+    }
+
+    // amount * rate rounded to minor units with COMMISSION_ROUNDING, the rule for every commission that enters
+    // a balance; long arithmetic when both fit, BigDecimal otherwise, with the same result
+    public static BigDecimal commission(BigDecimal amount, BigDecimal rate) {
+        if (amount.scale() <= SCALE && rate.scale() <= RATE_SCALE) {
+            try {
+                return toBigDecimal(commission(toMinor(amount), toRate(rate)));
+            } catch (ArithmeticException e) {
+                // out of long range
+            }
+        }
+        return amount.multiply(rate).setScale(SCALE, COMMISSION_ROUNDING);
+    }
+
+    public static long commission(long amountMinor, long rate, RoundingMode roundingMode) {
+        return divide(Math.multiplyExact(amountMinor, rate), RATE_ONE, roundingMode);
+    }
+
+    static long divide(long dividend, long divisor, RoundingMode roundingMode) {
+        long quotient = dividend / divisor;
+        long remainder = dividend % divisor;
+        if (remainder == 0) {
+            return quotient;
+        }
+
+        int sign = (dividend < 0) == (divisor < 0) ? 1 : -1;
+        long twiceRemainder = Math.abs(remainder) * 2;
+        long absDivisor = Math.abs(divisor);
+        boolean increment = switch (roundingMode) {
+            case DOWN -> false;
+            case UP -> true;
+            case FLOOR -> sign < 0;
+            case CEILING -> sign > 0;
+            case HALF_UP -> twiceRemainder >= absDivisor;
+            case HALF_DOWN -> twiceRemainder > absDivisor;
+            case HALF_EVEN -> twiceRemainder > absDivisor
+                    || (twiceRemainder == absDivisor && (quotient & 1) != 0);
+            case UNNECESSARY -> throw new ArithmeticException("Rounding necessary");
+        };
+        return increment ? quotient + sign : quotient;
+    }
+}
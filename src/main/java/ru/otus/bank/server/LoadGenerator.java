@@ -0,0 +1,145 @@
+package ru.otus.bank.server;
+
+import ru.otus.bank.service.RequestExecutors;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// Usage: LoadGenerator [baseUri] [secondsPerLevel] [concurrency...]
+// Each client alternates Client1 -> Client2 and Client2 -> Client1 transfers of the demo data.
+public class LoadGenerator {
+
+    private final URI baseUri;
+
+    private final HttpClient client;
+
+    public LoadGenerator(URI baseUri) {
+        this.baseUri = baseUri;
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        URI baseUri = URI.create(args.length > 0 ? args[0] : "http://localhost:8080");
+        long seconds = args.length > 1 ? Long.parseLong(args[1]) : 10;
+        int[] levels = args.length > 2
+                ? Arrays.stream(args, 2, args.length).mapToInt(Integer::parseInt).toArray()
+                : new int[]{1, 16, 64, 256, 1024};
+
+        LoadGenerator generator = new LoadGenerator(baseUri);
+        System.out.printf("%12s %14s %12s %12s %12s%n", "concurrency", "requests/s", "p50 us", "p99 us", "errors");
+        for (int concurrency : levels) {
+            Report report = generator.run(concurrency, Duration.ofSeconds(seconds));
+            System.out.printf("%12d %14.1f %12d %12d %12d%n", concurrency, report.throughput(),
+                    report.p50Micros(), report.p99Micros(), report.errors());
+        }
+    }
+
+    public Report run(int concurrency, Duration duration) throws Exception {
+        HttpRequest forward = transfer("Client1", "Client2");
+        HttpRequest backward = transfer("Client2", "Client1");
+        long started = System.nanoTime();
+        long deadline = started + duration.toNanos();
+
+        ExecutorService clients = RequestExecutors.perRequest();
+        try {
+            Future<?>[] futures = new Future<?>[concurrency];
+            Recorder[] recorders = new Recorder[concurrency];
+            for (int i = 0; i < concurrency; i++) {
+                Recorder recorder = new Recorder();
+                recorders[i] = recorder;
+                futures[i] = clients.submit(() -> {
+                    boolean direction = false;
+                    while (System.nanoTime() < deadline) {
+                        direction = !direction;
+                        long start = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = client.send(direction ? forward : backward,
+                                    HttpResponse.BodyHandlers.discarding());
+                            recorder.record(start, System.nanoTime(), response.statusCode() != 200);
+                        } catch (Exception e) {
+                            recorder.record(start, System.nanoTime(), true);
+                        }
+                    }
+                    return null;
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            return Report.of(recorders, started);
+        } finally {
+            clients.shutdownNow();
+            clients.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private HttpRequest transfer(String source, String destination) {
+        return HttpRequest.newBuilder(baseUri.resolve("/transfer?source=" + source + "&destination=" + destination
+                        + "&sourceType=0&destinationType=0&amount=1"))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .timeout(Duration.ofSeconds(30))
+                .build();
+    }
+
+    static class Recorder {
+        long[] latencies = new long[1 << 16];
+        int count;
+        int errors;
+        long lastCompletion;
+
+        void record(long startNanos, long endNanos, boolean error) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count << 1);
+            }
+            latencies[count++] = endNanos - startNanos;
+            lastCompletion = endNanos;
+            if (error) {
+                errors++;
+            }
+        }
+    }
+
+    public record Report(long requests, long errors, double throughput, long p50Micros, long p99Micros) {
+
+        // Throughput counts from the start to the last completion, which runs past the deadline
+        // by up to one request per client
+        static Report of(Recorder[] recorders, long startNanos) {
+            int total = 0;
+            long errors = 0;
+            long lastCompletion = startNanos;
+            for (Recorder recorder : recorders) {
+                total += recorder.count;
+                errors += recorder.errors;
+                if (recorder.count > 0) {
+                    lastCompletion = Math.max(lastCompletion, recorder.lastCompletion);
+                }
+            }
+            long[] all = new long[total];
+            int position = 0;
+            for (Recorder recorder : recorders) {
+                System.arraycopy(recorder.latencies, 0, all, position, recorder.count);
+                position += recorder.count;
+            }
+            Arrays.sort(all);
+            double seconds = (lastCompletion - startNanos) / 1e9;
+            return new Report(total, errors, total == 0 ? 0 : total / seconds,
+                    percentile(all, 0.50) / 1000, percentile(all, 0.99) / 1000);
+        }
+
+        private static long percentile(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)];
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package ru.otus.bank.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import ru.otus.bank.Main;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.AccountService;
+import ru.otus.bank.service.AgreementService;
+import ru.otus.bank.service.PaymentProcessor;
+import ru.otus.bank.service.RequestExecutors;
+import ru.otus.bank.service.TransferResult;
+import ru.otus.bank.service.exception.AccountException;
+import ru.otus.bank.service.exception.AgreementException;
+import ru.otus.bank.service.impl.AsyncPaymentService;
+import ru.otus.bank.service.impl.IdempotentTransferService;
+import ru.otus.bank.service.metrics.PaymentMetrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+// GET  /agreements?name=Client1
+// GET  /accounts?agreement=Client1
+// POST /transfer?source=Client1&destination=Bank&sourceType=0&destinationType=0&amount=10
+// POST /charge?account=2&amount=10
+// GET  /metrics (plain text, only when the server was given PaymentMetrics)
+// POST requests carrying an Idempotency-Key header are executed once per key; retries get the first result
+// Transfers and charges complete asynchronously, so no server thread is held while a payment is in flight
+public class TransferServer implements Closeable {
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    private final AgreementService agreementService;
+
+    private final AccountService accountService;
+
+    private final PaymentProcessor paymentProcessor;
+
+    private final IdempotentTransferService idempotentTransferService;
+
+    private final AsyncPaymentService asyncPaymentService;
+
+    public TransferServer(InetSocketAddress address, AgreementService agreementService,
+                          AccountService accountService, PaymentProcessor paymentProcessor) throws IOException {
+        this(address, agreementService, accountService, paymentProcessor, RequestExecutors.perRequest());
+    }
+
+    public TransferServer(InetSocketAddress address, AgreementService agreementService,
+                          AccountService accountService, PaymentProcessor paymentProcessor,
+                          ExecutorService executor) throws IOException {
+        this(address, agreementService, accountService, paymentProcessor, executor, null);
+    }
+
+    public TransferServer(InetSocketAddress address, AgreementService agreementService,
+                          AccountService accountService, PaymentProcessor paymentProcessor,
+                          ExecutorService executor, PaymentMetrics metrics) throws IOException {
+        this.agreementService = agreementService;
+        this.accountService = accountService;
+        this.paymentProcessor = paymentProcessor;
+        this.idempotentTransferService = new IdempotentTransferService(paymentProcessor, accountService);
+        this.asyncPaymentService = new AsyncPaymentService(agreementService, accountService, paymentProcessor, executor);
+        this.executor = executor;
+
+        server = HttpServer.create(address, 4096);
+        server.setExecutor(executor);
+        server.createContext("/agreements", exchange -> handle(exchange, "GET", (parameters, key) -> findAgreement(parameters)));
+        server.createContext("/accounts", exchange -> handle(exchange, "GET", (parameters, key) -> listAccounts(parameters)));
+        server.createContext("/transfer", exchange -> handleAsync(exchange, "POST", this::transfer));
+        server.createContext("/charge", exchange -> handleAsync(exchange, "POST", this::charge));
+        if (metrics != null) {
+            server.createContext("/metrics", exchange -> metrics(exchange, metrics));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        Main.init();
+        Main.metrics.registerMBeans();
+        TransferServer server = new TransferServer(new InetSocketAddress(port), Main.agreementService,
+                Main.accountService, Main.paymentProcessor, RequestExecutors.perRequest(), Main.metrics);
+        server.start();
+        System.out.println("Transfer server is listening on port " + server.getPort());
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    private String findAgreement(Map<String, String> parameters) {
+        return toJson(agreement(parameters, "name"));
+    }
+
+    private String listAccounts(Map<String, String> parameters) {
+        List<Account> accounts = accountService.getAccounts(agreement(parameters, "agreement"));
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < accounts.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(toJson(accounts.get(i)));
+        }
+        return json.append(']').toString();
+    }
+
+    private CompletableFuture<Response> transfer(Map<String, String> parameters, String idempotencyKey) {
+        String source = required(parameters, "source");
+        String destination = required(parameters, "destination");
+        int sourceType = Integer.parseInt(parameters.getOrDefault("sourceType", "0"));
+        int destinationType = Integer.parseInt(parameters.getOrDefault("destinationType", "0"));
+        BigDecimal amount = new BigDecimal(required(parameters, "amount"));
+        if (idempotencyKey == null) {
+            return asyncPaymentService.makeTransferAsync(source, destination, sourceType, destinationType, amount)
+                    .thenApply(TransferServer::toResponse);
+        }
+        boolean result = idempotentTransferService.makeTransfer(idempotencyKey, agreement(parameters, "source"),
+                agreement(parameters, "destination"), sourceType, destinationType, amount);
+        return CompletableFuture.completedFuture(new Response(200, "{\"success\":" + result + "}"));
+    }
+
+    private CompletableFuture<Response> charge(Map<String, String> parameters, String idempotencyKey) {
+        Long accountId = Long.parseLong(required(parameters, "account"));
+        BigDecimal amount = new BigDecimal(required(parameters, "amount"));
+        if (idempotencyKey == null) {
+            return asyncPaymentService.chargeAsync(accountId, amount).thenApply(TransferServer::toResponse);
+        }
+        boolean result = idempotentTransferService.charge(idempotencyKey, accountId, amount);
+        return CompletableFuture.completedFuture(new Response(200, "{\"success\":" + result + "}"));
+    }
+
+    // A failed result is a missing agreement or account, reported the same way as the exceptions below
+    private static Response toResponse(TransferResult result) {
+        if (result.status() == TransferResult.Status.FAILED) {
+            return new Response(404, error(result.message()));
+        }
+        return new Response(200, "{\"success\":" + result.isSuccess() + "}");
+    }
+
+    private Agreement agreement(Map<String, String> parameters, String name) {
+        String agreementName = required(parameters, name);
+        return agreementService.findByName(agreementName)
+                .orElseThrow(() -> new AgreementException("No agreement " + agreementName));
+    }
+
+    private void handle(HttpExchange exchange, String method, Handler handler) {
+        handleAsync(exchange, method, (parameters, idempotencyKey) ->
+                CompletableFuture.completedFuture(new Response(200, handler.handle(parameters, idempotencyKey))));
+    }
+
+    private void handleAsync(HttpExchange exchange, String method, AsyncHandler handler) {
+        CompletableFuture<Response> response;
+        if (!method.equals(exchange.getRequestMethod())) {
+            response = CompletableFuture.completedFuture(new Response(405, error("Method not allowed")));
+        } else {
+            try {
+                response = handler.handle(parseQuery(exchange.getRequestURI().getRawQuery()),
+                        exchange.getRequestHeaders().getFirst("Idempotency-Key"));
+            } catch (RuntimeException e) {
+                response = CompletableFuture.failedFuture(e);
+            }
+        }
+        response.whenComplete((result, error) -> send(exchange, error == null ? result : toResponse(error)));
+    }
+
+    private static Response toResponse(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof AccountException || cause instanceof AgreementException) {
+            return new Response(404, error(cause.getMessage()));
+        }
+        if (cause instanceof IllegalArgumentException || cause instanceof ArithmeticException) {
+            return new Response(400, error(cause.getMessage()));
+        }
+        return new Response(500, error(cause.toString()));
+    }
+
+    private static void send(HttpExchange exchange, Response response) {
+        byte[] bytes = response.body().getBytes(StandardCharsets.UTF_8);
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(response.status(), bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } catch (IOException e) {
+            // the client went away; nothing left to tell it
+            exchange.close();
+        }
+    }
+
+    private static void metrics(HttpExchange exchange, PaymentMetrics metrics) throws IOException {
+        byte[] bytes = metrics.render().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            String key = separator < 0 ? pair : pair.substring(0, separator);
+            String value = separator < 0 ? "" : pair.substring(separator + 1);
+            parameters.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static String required(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing parameter " + name);
+        }
+        return value;
+    }
+
+    private static String toJson(Agreement agreement) {
+        return "{\"id\":" + agreement.getId() + ",\"name\":" + quote(agreement.getName()) + "}";
+    }
+
+    private static String toJson(Account account) {
+        return "{\"id\":" + account.getId()
+                + ",\"agreementId\":" + account.getAgreementId()
+                + ",\"type\":" + account.getType()
+                + ",\"number\":" + quote(account.getNumber())
+                + ",\"amount\":" + (account.getAmount() == null ? "null" : account.getAmount().toPlainString())
+                + "}";
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + quote(message) + "}";
+    }
+
+    private static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        String handle(Map<String, String> parameters, String idempotencyKey);
+    }
+
+    @FunctionalInterface
+    private interface AsyncHandler {
+        CompletableFuture<Response> handle(Map<String, String> parameters, String idempotencyKey);
+    }
+
+    private record Response(int status, String body) {
+    }
+}
@@ -0,0 +1,149 @@
+package ru.otus.bank.service;
+
+import ru.otus.bank.entity.Account;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+// Writes accounts one at a time as they come out of the stream, so memory use does not depend on the account count
+public final class AccountExporter {
+
+    public static final String CSV_HEADER = "id,agreementId,type,number,amount";
+
+    static final int BINARY_MAGIC = 0x41434354;
+
+    static final int BINARY_VERSION = 1;
+
+    private static final int RECORD = 1;
+
+    private static final int END = 0;
+
+    private AccountExporter() {
+    }
+
+    public static long writeCsv(Stream<Account> accounts, Writer writer) throws IOException {
+        writer.write(CSV_HEADER);
+        writer.write('\n');
+        long count = 0;
+        for (Iterator<Account> iterator = accounts.iterator(); iterator.hasNext(); count++) {
+            Account account = iterator.next();
+            writer.write(String.valueOf(account.getId()));
+            writer.write(',');
+            writer.write(account.getAgreementId() == null ? "" : account.getAgreementId().toString());
+            writer.write(',');
+            writer.write(account.getType() == null ? "" : account.getType().toString());
+            writer.write(',');
+            writer.write(csvField(account.getNumber()));
+            writer.write(',');
+            writer.write(account.getAmount() == null ? "" : account.getAmount().toPlainString());
+            writer.write('\n');
+        }
+        writer.flush();
+        return count;
+    }
+
+    // magic, version, then a record marker and fields per account, then an end marker; nullable fields carry a flag
+    public static long writeBinary(Stream<Account> accounts, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(BINARY_MAGIC);
+        data.writeInt(BINARY_VERSION);
+        long count = 0;
+        for (Iterator<Account> iterator = accounts.iterator(); iterator.hasNext(); count++) {
+            Account account = iterator.next();
+            data.writeByte(RECORD);
+            data.writeLong(account.getId());
+            data.writeBoolean(account.getAgreementId() != null);
+            if (account.getAgreementId() != null) {
+                data.writeLong(account.getAgreementId());
+            }
+            data.writeBoolean(account.getType() != null);
+            if (account.getType() != null) {
+                data.writeInt(account.getType());
+            }
+            data.writeBoolean(account.getNumber() != null);
+            if (account.getNumber() != null) {
+                data.writeUTF(account.getNumber());
+            }
+            data.writeBoolean(account.getAmount() != null);
+            if (account.getAmount() != null) {
+                byte[] unscaled = account.getAmount().unscaledValue().toByteArray();
+                data.writeInt(account.getAmount().scale());
+                data.writeShort(unscaled.length);
+                data.write(unscaled);
+            }
+        }
+        data.writeByte(END);
+        data.flush();
+        return count;
+    }
+
+    public static long readBinary(InputStream in, Consumer<Account> consumer) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != BINARY_MAGIC) {
+            throw new IOException("Not an account export");
+        }
+        int version = data.readInt();
+        if (version != BINARY_VERSION) {
+            throw new IOException("Unsupported account export version " + version);
+        }
+        long count = 0;
+        try {
+            while (data.readByte() == RECORD) {
+                Account account = new Account();
+                account.setId(data.readLong());
+                if (data.readBoolean()) {
+                    account.setAgreementId(data.readLong());
+                }
+                if (data.readBoolean()) {
+                    account.setType(data.readInt());
+                }
+                if (data.readBoolean()) {
+                    account.setNumber(data.readUTF());
+                }
+                if (data.readBoolean()) {
+                    int scale = data.readInt();
+                    byte[] unscaled = new byte[data.readUnsignedShort()];
+                    data.readFully(unscaled);
+                    account.setAmount(new BigDecimal(new BigInteger(unscaled), scale));
+                }
+                consumer.accept(account);
+                count++;
+            }
+        } catch (EOFException e) {
+            throw new IOException("Account export is truncated after " + count + " accounts", e);
+        }
+        return count;
+    }
+
+    public static long exportCsv(AccountService accountService, Writer writer) throws IOException {
+        try (Stream<Account> accounts = accountService.streamAccounts()) {
+            return writeCsv(accounts, writer);
+        }
+    }
+
+    public static long exportBinary(AccountService accountService, OutputStream out) throws IOException {
+        try (Stream<Account> accounts = accountService.streamAccounts()) {
+            return writeBinary(accounts, out);
+        }
+    }
+
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
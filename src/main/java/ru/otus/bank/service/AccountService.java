@@ -2,9 +2,15 @@ package ru.otus.bank.service;
 
 import ru.otus.bank.entity.Account;
 import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.entity.FixedPointMoney;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
 
 public interface AccountService {
 
@@ -14,7 +20,69 @@ public interface AccountService {
 
     List<Account> getAccounts(Agreement agreement);
 
+    // Id of the first account of the type under the agreement, or null if it has none
+    default Long findAccountId(Agreement agreement, int type) {
+        for (Account account : getAccounts(agreement)) {
+            if (account.getType() != null && account.getType() == type) {
+                return account.getId();
+            }
+        }
+        return null;
+    }
+
+    // Services that wait on locks or retry compare-and-sets report it here; decorators forward the listener
+    default void setContentionListener(ContentionListener contentionListener) {
+    }
+
+    // See AccountRepository.addAgreementListener; decorators forward it to the service that owns the accounts
+    default boolean addAgreementListener(LongConsumer listener) {
+        return false;
+    }
+
     boolean makeTransfer(Long sourceAccountId, Long destinationAccountId, BigDecimal sum);
 
+    // Moves sum to the destination and fee to the fee account in one balance update; false if the source
+    // cannot cover sum + fee, in which case nothing changes
+    boolean makeTransfer(Long sourceAccountId, Long destinationAccountId, BigDecimal sum,
+                         Long feeAccountId, BigDecimal fee);
+
+    // Result-code variant of makeTransfer in minor units. Services that keep minor-unit balances answer it
+    // without allocating; this default converts the sum, delegates and still throws for a missing account.
+    default TransferCode tryTransferMinor(long sourceAccountId, long destinationAccountId, long sumMinor) {
+        if (sumMinor <= 0) {
+            return TransferCode.NON_POSITIVE_SUM;
+        }
+        return makeTransfer(sourceAccountId, destinationAccountId, FixedPointMoney.toBigDecimal(sumMinor))
+                ? TransferCode.OK : TransferCode.INSUFFICIENT_FUNDS;
+    }
+
     boolean charge(Long accountId, BigDecimal chargeAmount);
+
+    // Non-blocking variants. The defaults run the blocking operation on the executor; services that complete
+    // operations on their own threads override them and leave the executor unused.
+    default CompletableFuture<Boolean> makeTransferAsync(Long sourceAccountId, Long destinationAccountId,
+                                                         BigDecimal sum, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> makeTransfer(sourceAccountId, destinationAccountId, sum), executor);
+    }
+
+    default CompletableFuture<Boolean> makeTransferAsync(Long sourceAccountId, Long destinationAccountId,
+                                                         BigDecimal sum, Long feeAccountId, BigDecimal fee,
+                                                         Executor executor) {
+        return CompletableFuture.supplyAsync(
+                () -> makeTransfer(sourceAccountId, destinationAccountId, sum, feeAccountId, fee), executor);
+    }
+
+    default CompletableFuture<Boolean> chargeAsync(Long accountId, BigDecimal chargeAmount, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> charge(accountId, chargeAmount), executor);
+    }
+
+    // Adds every change as one update. Negative changes are checked against the balances at that moment:
+    // if one would take its account below zero, InsufficientFundsException is thrown and nothing changes.
+    void applyBalanceChanges(Map<Long, BigDecimal> changes);
+
+    // Lazily walks all accounts without copying them into a list; close the stream when done
+    Stream<Account> streamAccounts();
+
+    // Keyset pagination: accounts with id greater than afterId (null for the first page), ascending by id
+    List<Account> getAccountsPage(Long afterId, int limit);
 }
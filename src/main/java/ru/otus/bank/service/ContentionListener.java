@@ -0,0 +1,11 @@
+package ru.otus.bank.service;
+
+// Told when an operation had to wait for a lock or retry a compare-and-set; called on the contending thread
+@FunctionalInterface
+public interface ContentionListener {
+
+    ContentionListener NONE = operation -> {
+    };
+
+    void onContention(String operation);
+}
@@ -0,0 +1,174 @@
+package ru.otus.bank.service;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+// Remembers the outcome of an operation by idempotency key, so a retried request gets the original result
+// instead of running again. Keys are spread over independently locked segments; each segment keeps its entries
+// in insertion order, which with a fixed time to live is also expiry order, so eviction only looks at the head.
+// Entries whose operation is still running are never evicted, or a retry would run it a second time.
+public final class IdempotencyCache<K, V> {
+
+    public static final int DEFAULT_STRIPES = 64;
+
+    private final Segment<K, V>[] segments;
+
+    private final int mask;
+
+    private final long ttlNanos;
+
+    private final LongSupplier nanoTime;
+
+    public IdempotencyCache(int maxEntries, Duration ttl) {
+        this(maxEntries, ttl, DEFAULT_STRIPES, System::nanoTime);
+    }
+
+    IdempotencyCache(int maxEntries, Duration ttl, int stripes, LongSupplier nanoTime) {
+        if (maxEntries <= 0 || stripes <= 0 || Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("maxEntries must be positive and stripes a power of two");
+        }
+        this.ttlNanos = ttl.toNanos();
+        this.nanoTime = nanoTime;
+        int perSegment = Math.max(1, maxEntries / stripes);
+        @SuppressWarnings("unchecked")
+        Segment<K, V>[] created = (Segment<K, V>[]) new Segment<?, ?>[stripes];
+        for (int i = 0; i < stripes; i++) {
+            created[i] = new Segment<>(perSegment);
+        }
+        segments = created;
+        mask = stripes - 1;
+    }
+
+    // The fingerprint identifies the request the key was first used with; reusing the key for another request fails.
+    // Concurrent calls with the same key wait for the first one. If it throws, the key is released for a retry.
+    public V execute(K key, int fingerprint, Supplier<V> action) {
+        Segment<K, V> segment = segment(key);
+        Entry<V> entry;
+        boolean owner = false;
+        segment.lock.lock();
+        try {
+            long now = nanoTime.getAsLong();
+            segment.evictExpired(now);
+            entry = segment.entries.get(key);
+            if (entry == null) {
+                entry = new Entry<>(fingerprint, now + ttlNanos);
+                segment.entries.put(key, entry);
+                segment.evictOverflow();
+                owner = true;
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+
+        if (!owner) {
+            if (entry.fingerprint != fingerprint) {
+                throw new IllegalArgumentException("Idempotency key " + key + " was used for a different request");
+            }
+            try {
+                return entry.result.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                if (e.getCause() instanceof Error cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+
+        try {
+            V value = action.get();
+            entry.result.complete(value);
+            return value;
+        } catch (Throwable e) {
+            // whatever the action throws, the waiters are released and the key is free for a retry
+            segment.remove(key, entry);
+            entry.result.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            segment.lock.lock();
+            try {
+                size += segment.entries.size();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    private Segment<K, V> segment(K key) {
+        int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & mask];
+    }
+
+    private static final class Segment<K, V> {
+
+        final ReentrantLock lock = new ReentrantLock();
+
+        final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>();
+
+        private final int maxEntries;
+
+        Segment(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        void evictExpired(long now) {
+            Iterator<Entry<V>> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry<V> entry = iterator.next();
+                if (entry.expiresAt - now > 0) {
+                    return;
+                }
+                if (entry.result.isDone()) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        // Drops the oldest finished entries; the segment may stay over its bound by the operations still running
+        void evictOverflow() {
+            Iterator<Entry<V>> iterator = entries.values().iterator();
+            while (entries.size() > maxEntries && iterator.hasNext()) {
+                if (iterator.next().result.isDone()) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        void remove(K key, Entry<V> entry) {
+            lock.lock();
+            try {
+                entries.remove(key, entry);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static final class Entry<V> {
+
+        final int fingerprint;
+
+        final long expiresAt;
+
+        final CompletableFuture<V> result = new CompletableFuture<>();
+
+        Entry(int fingerprint, long expiresAt) {
+            this.fingerprint = fingerprint;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
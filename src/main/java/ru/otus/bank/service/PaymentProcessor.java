@@ -3,6 +3,7 @@ package ru.otus.bank.service;
 import ru.otus.bank.entity.Agreement;
 
 import java.math.BigDecimal;
+import java.util.List;
 
 
 public interface PaymentProcessor {
@@ -13,5 +14,11 @@ public interface PaymentProcessor {
                                       int sourceType, int destinationType,
                                       BigDecimal amount,
                                       BigDecimal comissionPercent);
+
+    // The fee comes from the processor's fee schedules and is posted together with the transfer
+    boolean makeTransferWithFee(Agreement source, Agreement destination, int sourceType, int destinationType,
+                                BigDecimal amount);
+
+    List<TransferResult> makeTransfers(List<TransferRequest> requests);
 }
 
@@ -0,0 +1,32 @@
+package ru.otus.bank.service;
+
+// Outcome of the allocation-free transfer path; returned instead of thrown so that routine failures cost nothing
+public enum TransferCode {
+    OK(null),
+    NON_POSITIVE_SUM("Non-positive sum"),
+    INSUFFICIENT_FUNDS("Insufficient funds"),
+    NO_SOURCE_ACCOUNT("No source account"),
+    NO_DESTINATION_ACCOUNT("No destination account"),
+    NO_FEE_ACCOUNT("No fee account"),
+    BALANCE_OVERFLOW("Balance overflow");
+
+    private final String message;
+
+    TransferCode(String message) {
+        this.message = message;
+    }
+
+    public String message() {
+        return message;
+    }
+
+    public boolean isSuccess() {
+        return this == OK;
+    }
+
+    // A missing account or an overflow is an error; the other codes are ordinary rejections
+    public boolean isError() {
+        return this == NO_SOURCE_ACCOUNT || this == NO_DESTINATION_ACCOUNT || this == NO_FEE_ACCOUNT
+                || this == BALANCE_OVERFLOW;
+    }
+}
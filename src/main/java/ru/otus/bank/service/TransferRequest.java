@@ -0,0 +1,10 @@
+package ru.otus.bank.service;
+
+import ru.otus.bank.entity.Agreement;
+
+import java.math.BigDecimal;
+
+public record TransferRequest(Agreement source, Agreement destination,
+                              int sourceType, int destinationType,
+                              BigDecimal amount) {
+}
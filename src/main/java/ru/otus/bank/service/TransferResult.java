@@ -0,0 +1,30 @@
+package ru.otus.bank.service;
+
+public record TransferResult(Status status, String message) {
+
+    private static final TransferResult SUCCESS = new TransferResult(Status.SUCCESS, null);
+
+    private static final TransferResult REJECTED = new TransferResult(Status.REJECTED, null);
+
+    public static TransferResult success() {
+        return SUCCESS;
+    }
+
+    public static TransferResult rejected() {
+        return REJECTED;
+    }
+
+    public static TransferResult failed(String message) {
+        return new TransferResult(Status.FAILED, message);
+    }
+
+    public boolean isSuccess() {
+        return status == Status.SUCCESS;
+    }
+
+    public enum Status {
+        SUCCESS,
+        REJECTED,
+        FAILED
+    }
+}
@@ -4,4 +4,9 @@ public class AccountException extends RuntimeException {
     public AccountException(String message) {
         super(message);
     }
+
+    // Routine business failures do not need a stack trace, and filling one in dominates the cost of throwing
+    public AccountException(String message, boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+    }
 }
@@ -0,0 +1,8 @@
+package ru.otus.bank.service.exception;
+
+// An operation gave up after its compare-and-set retries ran out; nothing is changed and it may be retried
+public class ContentionException extends AccountException {
+    public ContentionException(String message) {
+        super(message, false);
+    }
+}
@@ -0,0 +1,8 @@
+package ru.otus.bank.service.exception;
+
+// A batch of balance changes that would take a debited account below zero once applied; nothing is changed
+public class InsufficientFundsException extends AccountException {
+    public InsufficientFundsException(String message) {
+        super(message, false);
+    }
+}
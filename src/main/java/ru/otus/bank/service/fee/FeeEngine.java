@@ -0,0 +1,62 @@
+package ru.otus.bank.service.fee;
+
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.entity.FixedPointMoney;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Picks the agreement's own schedule if it has one, the default otherwise. Per-agreement schedules are kept
+// in a sorted id array searched without boxing; the engine is immutable, build a new one to change fees.
+public final class FeeEngine {
+
+    private final FeeSchedule defaultSchedule;
+
+    private final long[] agreementIds;
+
+    private final FeeSchedule[] agreementSchedules;
+
+    private final Long feeAccountId;
+
+    public FeeEngine(FeeSchedule defaultSchedule, Long feeAccountId) {
+        this(defaultSchedule, Map.of(), feeAccountId);
+    }
+
+    public FeeEngine(FeeSchedule defaultSchedule, Map<Long, FeeSchedule> schedulesByAgreement, Long feeAccountId) {
+        if (feeAccountId == null) {
+            throw new IllegalArgumentException("Fee account is required");
+        }
+        this.defaultSchedule = defaultSchedule;
+        this.feeAccountId = feeAccountId;
+        TreeMap<Long, FeeSchedule> sorted = new TreeMap<>(schedulesByAgreement);
+        agreementIds = new long[sorted.size()];
+        agreementSchedules = new FeeSchedule[sorted.size()];
+        int i = 0;
+        for (Map.Entry<Long, FeeSchedule> entry : sorted.entrySet()) {
+            agreementIds[i] = entry.getKey();
+            agreementSchedules[i] = entry.getValue();
+            i++;
+        }
+    }
+
+    public FeeSchedule scheduleFor(long agreementId) {
+        int index = Arrays.binarySearch(agreementIds, agreementId);
+        return index >= 0 ? agreementSchedules[index] : defaultSchedule;
+    }
+
+    public long feeMinor(long agreementId, long amountMinor) {
+        return scheduleFor(agreementId).feeMinor(amountMinor);
+    }
+
+    // The payer's agreement decides the fee; an amount finer than minor units is rounded like a commission first
+    public BigDecimal fee(Agreement payer, BigDecimal amount) {
+        return FixedPointMoney.toBigDecimal(feeMinor(payer.getId(),
+                FixedPointMoney.toMinor(amount, FixedPointMoney.COMMISSION_ROUNDING)));
+    }
+
+    public Long getFeeAccountId() {
+        return feeAccountId;
+    }
+}
@@ -0,0 +1,81 @@
+package ru.otus.bank.service.fee;
+
+import ru.otus.bank.entity.FixedPointMoney;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// Tiers compiled into parallel arrays in minor units and parts per million, so a fee is a binary search
+// over the thresholds plus one multiplication, with no BigDecimal arithmetic per payment
+public final class FeeSchedule {
+
+    public static final FeeSchedule FREE = new FeeSchedule(List.of());
+
+    private final long[] thresholds;
+
+    private final long[] rates;
+
+    private final long[] fixedFees;
+
+    public FeeSchedule(List<FeeTier> tiers) {
+        List<FeeTier> sorted = new ArrayList<>(tiers);
+        sorted.sort(Comparator.comparing(FeeTier::from));
+        int size = sorted.size();
+        thresholds = new long[size];
+        rates = new long[size];
+        fixedFees = new long[size];
+        for (int i = 0; i < size; i++) {
+            FeeTier tier = sorted.get(i);
+            thresholds[i] = FixedPointMoney.toMinor(tier.from());
+            rates[i] = FixedPointMoney.toRate(tier.rate());
+            fixedFees[i] = FixedPointMoney.toMinor(tier.fixed());
+            if (i > 0 && thresholds[i] == thresholds[i - 1]) {
+                throw new IllegalArgumentException("Two tiers start at " + tier.from());
+            }
+            if (rates[i] < 0 || fixedFees[i] < 0) {
+                throw new IllegalArgumentException("Negative fee in tier " + tier);
+            }
+        }
+    }
+
+    public static FeeSchedule flat(BigDecimal rate) {
+        return new FeeSchedule(List.of(FeeTier.rate(BigDecimal.ZERO, rate)));
+    }
+
+    // Zero below the first threshold and for non-positive amounts
+    public long feeMinor(long amountMinor) {
+        if (amountMinor <= 0) {
+            return 0;
+        }
+        int tier = tier(amountMinor);
+        if (tier < 0) {
+            return 0;
+        }
+        return FixedPointMoney.add(fixedFees[tier], FixedPointMoney.commission(amountMinor, rates[tier]));
+    }
+
+    public BigDecimal fee(BigDecimal amount) {
+        return FixedPointMoney.toBigDecimal(feeMinor(FixedPointMoney.toMinor(amount, FixedPointMoney.COMMISSION_ROUNDING)));
+    }
+
+    public int getTierCount() {
+        return thresholds.length;
+    }
+
+    // Index of the last tier whose threshold is not above the amount, or -1
+    private int tier(long amountMinor) {
+        int low = 0;
+        int high = thresholds.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (thresholds[middle] <= amountMinor) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+}
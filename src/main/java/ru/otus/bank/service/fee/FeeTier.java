@@ -0,0 +1,11 @@
+package ru.otus.bank.service.fee;
+
+import java.math.BigDecimal;
+
+// Applies to amounts from the given threshold up to the next tier: fee = fixed + amount * rate
+public record FeeTier(BigDecimal from, BigDecimal rate, BigDecimal fixed) {
+
+    public static FeeTier rate(BigDecimal from, BigDecimal rate) {
+        return new FeeTier(from, rate, BigDecimal.ZERO);
+    }
+}
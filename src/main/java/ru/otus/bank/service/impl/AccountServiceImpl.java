@@ -1,23 +1,35 @@
 package ru.otus.bank.service.impl;
 
-import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.dao.AccountRepository;
 import ru.otus.bank.entity.Account;
 import ru.otus.bank.entity.Agreement;
 import ru.otus.bank.service.AccountService;
+import ru.otus.bank.service.ContentionListener;
 import ru.otus.bank.service.exception.AccountException;
+import ru.otus.bank.service.exception.InsufficientFundsException;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
 
 public class AccountServiceImpl implements AccountService {
 
-    private AccountDao accountDao;
+    protected AccountRepository accountDao;
 
-    public AccountServiceImpl(AccountDao accountDao) {
+    protected volatile ContentionListener contentionListener = ContentionListener.NONE;
+
+    public AccountServiceImpl(AccountRepository accountDao) {
         this.accountDao = accountDao;
     }
 
+    @Override
+    public void setContentionListener(ContentionListener contentionListener) {
+        this.contentionListener = contentionListener;
+    }
+
     @Override
     public Account addAccount(Agreement agreement, String accountNumber, Integer type, BigDecimal amount) {
         Account account = new Account();
@@ -34,6 +46,21 @@ public class AccountServiceImpl implements AccountService {
         return iterableToList(accountDao.findAll());
     }
 
+    @Override
+    public boolean addAgreementListener(LongConsumer listener) {
+        return accountDao.addAgreementListener(listener);
+    }
+
+    @Override
+    public Stream<Account> streamAccounts() {
+        return accountDao.stream();
+    }
+
+    @Override
+    public List<Account> getAccountsPage(Long afterId, int limit) {
+        return accountDao.findPage(afterId, limit);
+    }
+
     private <T> List<T> iterableToList(Iterable<T> src) {
         ArrayList<T> result = new ArrayList<>();
         src.forEach(result::add);
@@ -53,27 +80,89 @@ public class AccountServiceImpl implements AccountService {
         return iterableToList(accountDao.findByAgreementId(agreement.getId()));
     }
 
+    // Goes straight to the repository index instead of copying the agreement's accounts
+    @Override
+    public Long findAccountId(Agreement agreement, int type) {
+        if (agreement.getId() == null) {
+            return null;
+        }
+        Account account = accountDao.getByAgreementIdAndType(agreement.getId(), type);
+        return account == null ? null : account.getId();
+    }
+
     public boolean makeTransfer(Long sourceAccountId, Long destinationAccountId, BigDecimal sum) {
         Account sourceAccount = accountDao.findById(sourceAccountId)
                 .orElseThrow(() -> new AccountException("No source account"));
         Account destinationAccount = accountDao.findById(destinationAccountId)
                 .orElseThrow(() -> new AccountException("No destination account"));
 
+        if (sum.compareTo(BigDecimal.ZERO) <= 0) {
+            return false;
+        }
+
+        if (sourceAccount.getAmount().compareTo(sum) < 0) {
+            return false;
+        }
+
         sourceAccount.setAmount(sourceAccount.getAmount().subtract(sum));
         destinationAccount.setAmount(destinationAccount.getAmount().add(sum));
 
-        if (sourceAccount.getAmount().compareTo(sum) < 0) {
+        accountDao.saveAll(sourceAccount, destinationAccount);
+
+        return true;
+    }
+
+    @Override
+    public boolean makeTransfer(Long sourceAccountId, Long destinationAccountId, BigDecimal sum,
+                                Long feeAccountId, BigDecimal fee) {
+        Account sourceAccount = accountDao.findById(sourceAccountId)
+                .orElseThrow(() -> new AccountException("No source account"));
+        Account destinationAccount = accountDao.findById(destinationAccountId)
+                .orElseThrow(() -> new AccountException("No destination account"));
+        Account feeAccount = accountDao.findById(feeAccountId)
+                .orElseThrow(() -> new AccountException("No fee account"));
+
+        if (sum.compareTo(BigDecimal.ZERO) <= 0 || fee.signum() < 0) {
             return false;
         }
 
-        if (sum.compareTo(BigDecimal.ZERO) <= 0) {
+        BigDecimal total = sum.add(fee);
+        if (sourceAccount.getAmount().compareTo(total) < 0) {
             return false;
         }
 
-        accountDao.save(sourceAccount);
-        accountDao.save(destinationAccount);
+        // The same account may play two roles, so each step reads the amount the previous one left
+        sourceAccount.setAmount(sourceAccount.getAmount().subtract(total));
+        destinationAccount.setAmount(destinationAccount.getAmount().add(sum));
+        feeAccount.setAmount(feeAccount.getAmount().add(fee));
 
+        if (feeAccount != sourceAccount && feeAccount != destinationAccount) {
+            accountDao.saveAll(sourceAccount, destinationAccount, feeAccount);
+        } else {
+            accountDao.saveAll(sourceAccount, destinationAccount);
+        }
         return true;
     }
 
+    @Override
+    public void applyBalanceChanges(Map<Long, BigDecimal> changes) {
+        List<Account> accounts = new ArrayList<>(changes.size());
+        for (Long accountId : changes.keySet()) {
+            accounts.add(accountDao.findById(accountId)
+                    .orElseThrow(() -> new AccountException("No account " + accountId)));
+        }
+
+        for (Account account : accounts) {
+            BigDecimal change = changes.get(account.getId());
+            if (change.signum() < 0 && account.getAmount().add(change).signum() < 0) {
+                throw new InsufficientFundsException("Insufficient funds on account " + account.getId());
+            }
+        }
+
+        for (Account account : accounts) {
+            account.setAmount(account.getAmount().add(changes.get(account.getId())));
+            accountDao.save(account);
+        }
+    }
+
 }
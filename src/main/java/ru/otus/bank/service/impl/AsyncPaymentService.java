@@ -0,0 +1,139 @@
+package ru.otus.bank.service.impl;
+
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.AccountService;
+import ru.otus.bank.service.AgreementService;
+import ru.otus.bank.service.PaymentProcessor;
+import ru.otus.bank.service.RequestExecutors;
+import ru.otus.bank.service.TransferRequest;
+import ru.otus.bank.service.TransferResult;
+import ru.otus.bank.service.exception.AccountException;
+import ru.otus.bank.service.exception.AgreementException;
+
+import java.io.Closeable;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+// Non-blocking counterparts of AccountService and PaymentProcessor. Blocking services run on the executor
+// (virtual threads on JDK 21+, see RequestExecutors); services with their own async operations, such as
+// ShardedAccountServiceImpl, complete on their own threads, also when wrapped in decorators.
+// Missing agreements and accounts complete as TransferResult.failed, a false result as TransferResult.rejected.
+public class AsyncPaymentService implements Closeable {
+
+    private final AgreementService agreementService;
+
+    private final AccountService accountService;
+
+    private final PaymentProcessor paymentProcessor;
+
+    private final Executor executor;
+
+    private final boolean ownsExecutor;
+
+    public AsyncPaymentService(AgreementService agreementService, AccountService accountService,
+                               PaymentProcessor paymentProcessor) {
+        this(agreementService, accountService, paymentProcessor, RequestExecutors.perRequest(), true);
+    }
+
+    public AsyncPaymentService(AgreementService agreementService, AccountService accountService,
+                               PaymentProcessor paymentProcessor, Executor executor) {
+        this(agreementService, accountService, paymentProcessor, executor, false);
+    }
+
+    private AsyncPaymentService(AgreementService agreementService, AccountService accountService,
+                                PaymentProcessor paymentProcessor, Executor executor, boolean ownsExecutor) {
+        this.agreementService = agreementService;
+        this.accountService = accountService;
+        this.paymentProcessor = paymentProcessor;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    public CompletableFuture<TransferResult> makeTransferAsync(Long sourceAccountId, Long destinationAccountId,
+                                                               BigDecimal sum) {
+        return accountService.makeTransferAsync(sourceAccountId, destinationAccountId, sum, executor)
+                .handle(AsyncPaymentService::toResult);
+    }
+
+    public CompletableFuture<TransferResult> chargeAsync(Long accountId, BigDecimal chargeAmount) {
+        return accountService.chargeAsync(accountId, chargeAmount, executor)
+                .handle(AsyncPaymentService::toResult);
+    }
+
+    // Both agreements are looked up concurrently, then the accounts are resolved and the transfer is chained on
+    public CompletableFuture<TransferResult> makeTransferAsync(String sourceAgreement, String destinationAgreement,
+                                                               int sourceType, int destinationType,
+                                                               BigDecimal amount) {
+        CompletableFuture<Agreement> source = supply(() -> findAgreement(sourceAgreement));
+        CompletableFuture<Agreement> destination = supply(() -> findAgreement(destinationAgreement));
+        return source.thenCombine(destination, (sourceFound, destinationFound) -> new Agreement[]{sourceFound, destinationFound})
+                .thenCompose(agreements -> makeTransferAsync(agreements[0], agreements[1], sourceType, destinationType, amount))
+                .exceptionally(AsyncPaymentService::toFailure);
+    }
+
+    public CompletableFuture<TransferResult> makeTransferAsync(Agreement source, Agreement destination,
+                                                               int sourceType, int destinationType,
+                                                               BigDecimal amount) {
+        return supply(() -> new Long[]{
+                PaymentProcessorImpl.findAccountId(accountService, source, sourceType),
+                PaymentProcessorImpl.findAccountId(accountService, destination, destinationType)})
+                .thenCompose(accountIds -> makeTransferAsync(accountIds[0], accountIds[1], amount))
+                .exceptionally(AsyncPaymentService::toFailure);
+    }
+
+    public CompletableFuture<TransferResult> makeTransferWithComissionAsync(Agreement source, Agreement destination,
+                                                                            int sourceType, int destinationType,
+                                                                            BigDecimal amount,
+                                                                            BigDecimal comissionPercent) {
+        return supply(() -> paymentProcessor.makeTransferWithComission(source, destination, sourceType,
+                destinationType, amount, comissionPercent))
+                .handle(AsyncPaymentService::toResult);
+    }
+
+    public CompletableFuture<TransferResult> makeTransferWithFeeAsync(Agreement source, Agreement destination,
+                                                                      int sourceType, int destinationType,
+                                                                      BigDecimal amount) {
+        return supply(() -> paymentProcessor.makeTransferWithFee(source, destination, sourceType, destinationType, amount))
+                .handle(AsyncPaymentService::toResult);
+    }
+
+    public CompletableFuture<List<TransferResult>> makeTransfersAsync(List<TransferRequest> requests) {
+        return supply(() -> paymentProcessor.makeTransfers(requests));
+    }
+
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            ((ExecutorService) executor).shutdown();
+        }
+    }
+
+    private Agreement findAgreement(String name) {
+        return agreementService.findByName(name)
+                .orElseThrow(() -> new AgreementException("No agreement " + name));
+    }
+
+    private <T> CompletableFuture<T> supply(Supplier<T> supplier) {
+        return CompletableFuture.supplyAsync(supplier, executor);
+    }
+
+    private static TransferResult toResult(Boolean success, Throwable error) {
+        if (error != null) {
+            return toFailure(error);
+        }
+        return success ? TransferResult.success() : TransferResult.rejected();
+    }
+
+    private static TransferResult toFailure(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof AccountException || cause instanceof AgreementException) {
+            return TransferResult.failed(cause.getMessage());
+        }
+        throw error instanceof CompletionException completion ? completion : new CompletionException(cause);
+    }
+}
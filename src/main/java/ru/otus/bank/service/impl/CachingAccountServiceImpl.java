@@ -0,0 +1,254 @@
+package ru.otus.bank.service.impl;
+
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.AccountService;
+import ru.otus.bank.service.ContentionListener;
+import ru.otus.bank.service.TransferCode;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+
+// Read-through cache of agreementId -> (type -> accountId) in front of another AccountService.
+// One miss loads every account of the agreement, so both sides of repeated payments resolve without the DAO.
+// Entries are dropped when the underlying store reports a change to the agreement's accounts; stores that
+// cannot report changes rely on addAccount and explicit invalidate calls.
+// At most maxAgreements entries are held. The cache is split into up to 64 LRU segments (fewer for small caches)
+// whose capacities add up to maxAgreements, so a full segment evicts even while another still has room.
+public class CachingAccountServiceImpl implements AccountService {
+
+    public static final int DEFAULT_MAX_AGREEMENTS = 1 << 16;
+
+    private static final int STRIPES = 64;
+
+    private final AccountService accountService;
+
+    private final Segment[] segments;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    public CachingAccountServiceImpl(AccountService accountService) {
+        this(accountService, DEFAULT_MAX_AGREEMENTS);
+    }
+
+    public CachingAccountServiceImpl(AccountService accountService, int maxAgreements) {
+        if (maxAgreements <= 0) {
+            throw new IllegalArgumentException("maxAgreements must be positive: " + maxAgreements);
+        }
+        this.accountService = accountService;
+        int count = Math.min(STRIPES, Integer.highestOneBit(maxAgreements));
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            // the remainder goes one entry each to the first segments
+            segments[i] = new Segment(maxAgreements / count + (i < maxAgreements % count ? 1 : 0));
+        }
+        accountService.addAgreementListener(agreementId -> invalidate(agreementId));
+    }
+
+    @Override
+    public Account addAccount(Agreement agreement, String accountNumber, Integer type, BigDecimal amount) {
+        Account account = accountService.addAccount(agreement, accountNumber, type, amount);
+        invalidate(agreement.getId());
+        return account;
+    }
+
+    @Override
+    public List<Account> getAccounts() {
+        return accountService.getAccounts();
+    }
+
+    @Override
+    public List<Account> getAccounts(Agreement agreement) {
+        return accountService.getAccounts(agreement);
+    }
+
+    @Override
+    public void setContentionListener(ContentionListener contentionListener) {
+        accountService.setContentionListener(contentionListener);
+    }
+
+    @Override
+    public boolean addAgreementListener(LongConsumer listener) {
+        return accountService.addAgreementListener(listener);
+    }
+
+    @Override
+    public Stream<Account> streamAccounts() {
+        return accountService.streamAccounts();
+    }
+
+    @Override
+    public List<Account> getAccountsPage(Long afterId, int limit) {
+        return accountService.getAccountsPage(afterId, limit);
+    }
+
+    @Override
+    public boolean makeTransfer(Long sourceAccountId, Long destinationAccountId, BigDecimal sum) {
+        return accountService.makeTransfer(sourceAccountId, destinationAccountId, sum);
+    }
+
+    @Override
+    public boolean makeTransfer(Long sourceAccountId, Long destinationAccountId, BigDecimal sum,
+                                Long feeAccountId, BigDecimal fee) {
+        return accountService.makeTransfer(sourceAccountId, destinationAccountId, sum, feeAccountId, fee);
+    }
+
+    @Override
+    public TransferCode tryTransferMinor(long sourceAccountId, long destinationAccountId, long sumMinor) {
+        return accountService.tryTransferMinor(sourceAccountId, destinationAccountId, sumMinor);
+    }
+
+    @Override
+    public boolean charge(Long accountId, BigDecimal chargeAmount) {
+        return accountService.charge(accountId, chargeAmount);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> makeTransferAsync(Long sourceAccountId, Long destinationAccountId,
+                                                        BigDecimal sum, Executor executor) {
+        return accountService.makeTransferAsync(sourceAccountId, destinationAccountId, sum, executor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> makeTransferAsync(Long sourceAccountId, Long destinationAccountId,
+                                                        BigDecimal sum, Long feeAccountId, BigDecimal fee,
+                                                        Executor executor) {
+        return accountService.makeTransferAsync(sourceAccountId, destinationAccountId, sum, feeAccountId, fee,
+                executor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> chargeAsync(Long accountId, BigDecimal chargeAmount, Executor executor) {
+        return accountService.chargeAsync(accountId, chargeAmount, executor);
+    }
+
+    @Override
+    public void applyBalanceChanges(Map<Long, BigDecimal> changes) {
+        accountService.applyBalanceChanges(changes);
+    }
+
+    @Override
+    public Long findAccountId(Agreement agreement, int type) {
+        Long agreementId = agreement.getId();
+        Segment segment = segment(agreementId);
+        long generation;
+        segment.lock.lock();
+        try {
+            Map<Integer, Long> accountsByType = segment.entries.get(agreementId);
+            if (accountsByType != null) {
+                hits.increment();
+                return accountsByType.get(type);
+            }
+            generation = segment.generation;
+        } finally {
+            segment.lock.unlock();
+        }
+
+        misses.increment();
+        Map<Integer, Long> accountsByType = new HashMap<>();
+        for (Account account : accountService.getAccounts(agreement)) {
+            // the first account of a type wins, as in AccountDao.findByAgreementIdAndType
+            accountsByType.putIfAbsent(account.getType(), account.getId());
+        }
+
+        segment.lock.lock();
+        try {
+            // An invalidation while loading means the result may already be stale
+            if (segment.generation == generation) {
+                segment.entries.put(agreementId, accountsByType);
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+        return accountsByType.get(type);
+    }
+
+    // For callers that move accounts between agreements behind the service's back
+    public void invalidate(Long agreementId) {
+        Segment segment = segment(agreementId);
+        segment.lock.lock();
+        try {
+            segment.generation++;
+            segment.entries.remove(agreementId);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                segment.generation++;
+                segment.entries.clear();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                size += segment.entries.size();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    private Segment segment(Long agreementId) {
+        int hash = agreementId == null ? 0 : agreementId.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+    }
+
+    private final class Segment {
+
+        final ReentrantLock lock = new ReentrantLock();
+
+        final LinkedHashMap<Long, Map<Integer, Long>> entries;
+
+        long generation;
+
+        Segment(int maxEntries) {
+            entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Map<Integer, Long>> eldest) {
+                    if (size() > maxEntries) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package ru.otus.bank.service.impl;
+
+import ru.otus.bank.dao.AccountRepository;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.entity.FixedPointMoney;
+import ru.otus.bank.service.TransferCode;
+import ru.otus.bank.service.exception.AccountException;
+import ru.otus.bank.service.exception.InsufficientFundsException;
+
+import java.io.Closeable;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Balances live in minor units in compare-and-set cells, the source of truth for this mode. A committed change
+// marks its account dirty; a background pass writes the dirty balances back to the repository in one saveAll,
+// so the repository trails the service by at most the flush interval (call flush() for an exact copy).
+// Like the optimistic mode, a transfer's two legs may land in different flushes.
+public class FixedPointAccountServiceImpl extends AccountServiceImpl implements Closeable {
+
+    public static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofMillis(10);
+
+    // accountId -> balance in minor units
+    private final ConcurrentHashMap<Long, Balance> balances = new ConcurrentHashMap<>();
+
+    // balances changed since the last flush, each queued once until the flush picks it up
+    private final ConcurrentLinkedQueue<Balance> dirty = new ConcurrentLinkedQueue<>();
+
+    private final ScheduledExecutorService flusher;
+
+    // Ids handed out by the DAOs are dense, so the same balances are also indexed by id in an array.
+    // Lookups through it neither box the id nor allocate; ids past its end fall back to the map.
+    private static final int MAX_DENSE_ID = 1 << 24;
+
+    private volatile AtomicReferenceArray<Balance> balancesById = new AtomicReferenceArray<>(64);
+
+    public FixedPointAccountServiceImpl(AccountRepository accountDao) {
+        this(accountDao, DEFAULT_FLUSH_INTERVAL);
+    }
+
+    public FixedPointAccountServiceImpl(AccountRepository accountDao, Duration flushInterval) {
+        super(accountDao);
+        flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "fixed-point-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = flushInterval.toNanos();
+        flusher.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public Account addAccount(Agreement agreement, String accountNumber, Integer type, BigDecimal amount) {
+        Account account = super.addAccount(agreement, accountNumber, type, amount);
+        Balance balance = new Balance(account.getId(), FixedPointMoney.toMinor(amount));
+        balances.put(account.getId(), balance);
+        index(account.getId(), balance);
+        return account;
+    }
+
+    // Writes every balance changed since the last flush back to the repository in one batch
+    public synchronized void flush() {
+        List<Account> changed = new ArrayList<>();
+        Balance balance;
+        while ((balance = dirty.poll()) != null) {
+            // unmarked before the read, so a change racing with this flush queues the balance again
+            Balance.QUEUED.set(balance, 0);
+            long amountMinor = balance.get();
+            if (amountMinor == balance.saved) {
+                continue;
+            }
+            Account account = accountDao.getById(balance.accountId);
+            if (account != null) {
+                account.setAmount(FixedPointMoney.toBigDecimal(amountMinor));
+                changed.add(account);
+                balance.saved = amountMinor;
+            }
+        }
+        if (!changed.isEmpty()) {
+            accountDao.saveAll(changed.toArray(new Account[0]));
+        }
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+        flush();
+    }
+
+    @Override
+    public List<Account> getAccounts() {
+        return copies(super.getAccounts());
+    }
+
+    @Override
+    public List<Account> getAccounts(Agreement agreement) {
+        return copies(super.getAccounts(agreement));
+    }
+
+    @Override
+    public Stream<Account> streamAccounts() {
+        return super.streamAccounts().map(this::copy);
+    }
+
+    @Override
+    public List<Account> getAccountsPage(Long afterId, int limit) {
+        return copies(super.getAccountsPage(afterId, limit));
+    }
+
+    @Override
+    public boolean charge(Long accountId, BigDecimal chargeAmount) {
+        // charges are commission legs, rounded by the commission rule instead of rejected
+        return chargeMinor(accountId, FixedPointMoney.toMinor(chargeAmount, FixedPointMoney.COMMISSION_ROUNDING));
+    }
+
+    @Override
+    public boolean makeTransfer(Long sourceAccountId, Long destinationAccountId, BigDecimal sum) {
+        return makeTransferMinor(sourceAccountId, destinationAccountId, FixedPointMoney.toMinor(sum));
+    }
+
+    public boolean chargeMinor(long accountId, long chargeMinor) {
+        TransferCode code = tryChargeMinor(accountId, chargeMinor);
+        if (code.isError()) {
+            throw new AccountException(code.message(), false);
+        }
+        return code.isSuccess();
+    }
+
+    public boolean makeTransferMinor(long sourceAccountId, long destinationAccountId, long sumMinor) {
+        TransferCode code = tryTransferMinor(sourceAccountId, destinationAccountId, sumMinor);
+        if (code.isError()) {
+            throw new AccountException(code.message(), false);
+        }
+        return code.isSuccess();
+    }
+
+    // Hot path: primitive ids and amounts, no Optional, no lambdas and no exceptions, so a transfer between
+    // known accounts allocates nothing beyond queueing an account the first time it changes after a flush
+    public TransferCode tryChargeMinor(long accountId, long chargeMinor) {
+        Balance balance = findBalance(accountId);
+        if (balance == null) {
+            return TransferCode.NO_SOURCE_ACCOUNT;
+        }
+        long current;
+        long updated;
+        do {
+            current = balance.get();
+            updated = current - chargeMinor;
+            if (((current ^ chargeMinor) & (current ^ updated)) < 0) {
+                return TransferCode.BALANCE_OVERFLOW;
+            }
+        } while (!balance.compareAndSet(current, updated));
+        markDirty(balance);
+        return TransferCode.OK;
+    }
+
+    @Override
+    public TransferCode tryTransferMinor(long sourceAccountId, long destinationAccountId, long sumMinor) {
+        Balance source = findBalance(sourceAccountId);
+        if (source == null) {
+            return TransferCode.NO_SOURCE_ACCOUNT;
+        }
+        Balance destination = findBalance(destinationAccountId);
+        if (destination == null) {
+            return TransferCode.NO_DESTINATION_ACCOUNT;
+        }
+
+        if (sumMinor <= 0) {
+            return TransferCode.NON_POSITIVE_SUM;
+        }
+
+        long current;
+        do {
+            current = source.get();
+            if (current < sumMinor) {
+                return TransferCode.INSUFFICIENT_FUNDS;
+            }
+        } while (!source.compareAndSet(current, current - sumMinor));
+
+        if (!credit(destination, sumMinor)) {
+            source.addAndGet(sumMinor);
+            return TransferCode.BALANCE_OVERFLOW;
+        }
+        markDirty(source);
+        markDirty(destination);
+        return TransferCode.OK;
+    }
+
+    @Override
+    public boolean makeTransfer(Long sourceAccountId, Long destinationAccountId, BigDecimal sum,
+                                Long feeAccountId, BigDecimal fee) {
+        TransferCode code = tryTransferMinor(sourceAccountId, destinationAccountId, FixedPointMoney.toMinor(sum),
+                feeAccountId, FixedPointMoney.toMinor(fee));
+        if (code.isError()) {
+            throw new AccountException(code.message(), false);
+        }
+        return code.isSuccess();
+    }
+
+    // sum + fee leave the source in one compare-and-set, then the two credits follow
+    public TransferCode tryTransferMinor(long sourceAccountId, long destinationAccountId, long sumMinor,
+                                         long feeAccountId, long feeMinor) {
+        Balance source = findBalance(sourceAccountId);
+        if (source == null) {
+            return TransferCode.NO_SOURCE_ACCOUNT;
+        }
+        Balance destination = findBalance(destinationAccountId);
+        if (destination == null) {
+            return TransferCode.NO_DESTINATION_ACCOUNT;
+        }
+        Balance feeBalance = findBalance(feeAccountId);
+        if (feeBalance == null) {
+            return TransferCode.NO_FEE_ACCOUNT;
+        }
+
+        if (sumMinor <= 0 || feeMinor < 0) {
+            return TransferCode.NON_POSITIVE_SUM;
+        }
+        long total = sumMinor + feeMinor;
+        if (total < sumMinor) {
+            return TransferCode.BALANCE_OVERFLOW;
+        }
+
+        long current;
+        do {
+            current = source.get();
+            if (current < total) {
+                return TransferCode.INSUFFICIENT_FUNDS;
+            }
+        } while (!source.compareAndSet(current, current - total));
+
+        if (!credit(destination, sumMinor)) {
+            source.addAndGet(total);
+            return TransferCode.BALANCE_OVERFLOW;
+        }
+        if (!credit(feeBalance, feeMinor)) {
+            destination.addAndGet(-sumMinor);
+            source.addAndGet(total);
+            return TransferCode.BALANCE_OVERFLOW;
+        }
+        markDirty(source);
+        markDirty(destination);
+        markDirty(feeBalance);
+        return TransferCode.OK;
+    }
+
+    private static boolean credit(AtomicLong balance, long amountMinor) {
+        long current;
+        long updated;
+        do {
+            current = balance.get();
+            updated = current + amountMinor;
+            if (updated < current) {
+                return false;
+            }
+        } while (!balance.compareAndSet(current, updated));
+        return true;
+    }
+
+    @Override
+    public void applyBalanceChanges(Map<Long, BigDecimal> changes) {
+        int size = changes.size();
+        Balance[] targets = new Balance[size];
+        long[] deltas = new long[size];
+        int i = 0;
+        for (Map.Entry<Long, BigDecimal> change : changes.entrySet()) {
+            targets[i] = balance(change.getKey(), "No account " + change.getKey());
+            deltas[i] = FixedPointMoney.toMinor(change.getValue());
+            i++;
+        }
+
+        // Debits first, each checked by its compare-and-set; one that no longer fits undoes the ones before it
+        for (i = 0; i < size; i++) {
+            if (deltas[i] < 0 && !debit(targets[i], -deltas[i])) {
+                for (int j = 0; j < i; j++) {
+                    if (deltas[j] < 0) {
+                        targets[j].addAndGet(-deltas[j]);
+                    }
+                }
+                throw new InsufficientFundsException("Insufficient funds");
+            }
+        }
+        for (i = 0; i < size; i++) {
+            if (deltas[i] > 0) {
+                long current;
+                do {
+                    current = targets[i].get();
+                } while (!targets[i].compareAndSet(current, FixedPointMoney.add(current, deltas[i])));
+            }
+            markDirty(targets[i]);
+        }
+    }
+
+    private static boolean debit(AtomicLong balance, long amountMinor) {
+        long current;
+        do {
+            current = balance.get();
+            if (current < amountMinor) {
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - amountMinor));
+        return true;
+    }
+
+    public long getAmountMinor(long accountId) {
+        return balance(accountId, "No account").get();
+    }
+
+    private Balance balance(long accountId, String missingMessage) {
+        Balance balance = findBalance(accountId);
+        if (balance == null) {
+            throw new AccountException(missingMessage, false);
+        }
+        return balance;
+    }
+
+    private Balance findBalance(long accountId) {
+        AtomicReferenceArray<Balance> byId = balancesById;
+        if (accountId >= 0 && accountId < byId.length()) {
+            Balance balance = byId.get((int) accountId);
+            if (balance != null) {
+                return balance;
+            }
+        }
+        return loadBalance(accountId);
+    }
+
+    private Balance loadBalance(long accountId) {
+        Balance balance = balances.get(accountId);
+        if (balance == null) {
+            Account account = accountDao.getById(accountId);
+            if (account == null) {
+                return null;
+            }
+            Balance loaded = new Balance(accountId, FixedPointMoney.toMinor(account.getAmount()));
+            Balance existing = balances.putIfAbsent(accountId, loaded);
+            balance = existing == null ? loaded : existing;
+        }
+        index(accountId, balance);
+        return balance;
+    }
+
+    // Grows the array by copying under the monitor; readers of the old array just miss and use the map
+    private void index(long accountId, Balance balance) {
+        if (accountId < 0 || accountId >= MAX_DENSE_ID) {
+            return;
+        }
+        AtomicReferenceArray<Balance> byId = balancesById;
+        if (accountId >= byId.length()) {
+            synchronized (this) {
+                byId = balancesById;
+                if (accountId >= byId.length()) {
+                    int length = byId.length();
+                    while (length <= accountId) {
+                        length <<= 1;
+                    }
+                    AtomicReferenceArray<Balance> grown = new AtomicReferenceArray<>(length);
+                    for (int i = 0; i < byId.length(); i++) {
+                        grown.set(i, byId.get(i));
+                    }
+                    balancesById = grown;
+                }
+                byId = balancesById;
+            }
+        }
+        byId.set((int) accountId, balance);
+    }
+
+    private void markDirty(Balance balance) {
+        if (balance.queued == 0 && Balance.QUEUED.compareAndSet(balance, 0, 1)) {
+            dirty.add(balance);
+        }
+    }
+
+    private List<Account> copies(List<Account> accounts) {
+        List<Account> result = new ArrayList<>(accounts.size());
+        for (Account account : accounts) {
+            result.add(copy(account));
+        }
+        return result;
+    }
+
+    // Readers get a detached copy carrying the live balance; the repository's entity is only written by flush
+    private Account copy(Account account) {
+        Account copy = new Account();
+        copy.setId(account.getId());
+        copy.setAgreementId(account.getAgreementId());
+        copy.setType(account.getType());
+        copy.setNumber(account.getNumber());
+        Balance balance = balances.get(account.getId());
+        copy.setAmount(balance != null ? FixedPointMoney.toBigDecimal(balance.get()) : account.getAmount());
+        return copy;
+    }
+
+    private static final class Balance extends AtomicLong {
+
+        private static final long serialVersionUID = 1L;
+
+        static final AtomicIntegerFieldUpdater<Balance> QUEUED =
+                AtomicIntegerFieldUpdater.newUpdater(Balance.class, "queued");
+
+        final long accountId;
+
+        volatile int queued;
+
+        // last amount written to the repository, touched only by flush
+        long saved;
+
+        Balance(long accountId, long amountMinor) {
+            super(amountMinor);
+            this.accountId = accountId;
+            this.saved = amountMinor;
+        }
+    }
+}
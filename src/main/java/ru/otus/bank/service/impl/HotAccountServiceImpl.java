@@ -0,0 +1,404 @@
+package ru.otus.bank.service.impl;
+
+import ru.otus.bank.dao.AccountRepository;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.entity.FixedPointMoney;
+import ru.otus.bank.service.exception.AccountException;
+import ru.otus.bank.service.exception.InsufficientFundsException;
+
+import java.io.Closeable;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+// Striped locking, except for designated hot accounts (the bank's house account), whose balance is split
+// into per-thread sub-balances in minor units. Credits to a hot account are a lock-free add to the caller's
+// sub-balance; debits take from it when it covers the amount and otherwise drain all sub-balances under the
+// account's lock. A background pass nets the sub-balances back into one and saves the account.
+// Amounts touching a hot account must fit FixedPointMoney.SCALE.
+public class HotAccountServiceImpl extends StripedLockAccountServiceImpl implements Closeable {
+
+    public static final Duration DEFAULT_NETTING_INTERVAL = Duration.ofMillis(10);
+
+    private final ConcurrentHashMap<Long, HotBalance> hotBalances = new ConcurrentHashMap<>();
+
+    private final int subBalances;
+
+    private final ScheduledExecutorService netting;
+
+    public HotAccountServiceImpl(AccountRepository accountDao) {
+        this(accountDao, 2 * Runtime.getRuntime().availableProcessors(), DEFAULT_NETTING_INTERVAL);
+    }
+
+    public HotAccountServiceImpl(AccountRepository accountDao, int subBalances, Duration nettingInterval) {
+        super(accountDao);
+        if (subBalances <= 0) {
+            throw new IllegalArgumentException("subBalances must be positive: " + subBalances);
+        }
+        int size = 1;
+        while (size < subBalances) {
+            size <<= 1;
+        }
+        this.subBalances = size;
+        netting = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "hot-account-netting");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = nettingInterval.toNanos();
+        netting.scheduleWithFixedDelay(this::net, interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    // Call before the account takes traffic: operations already past their hot check still update Account.amount
+    public void makeHot(Long accountId) {
+        ReentrantLock lock = lockStripe(accountId, "makeHot");
+        try {
+            Account account = accountDao.findById(accountId)
+                    .orElseThrow(() -> new AccountException("No account " + accountId));
+            hotBalances.computeIfAbsent(accountId, id -> new HotBalance(account, subBalances));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isHot(Long accountId) {
+        return accountId != null && hotBalances.containsKey(accountId);
+    }
+
+    public int getSubBalanceCount() {
+        return subBalances;
+    }
+
+    // Folds every hot account's sub-balances into one and writes the total back to the repository
+    public void net() {
+        for (HotBalance hot : hotBalances.values()) {
+            hot.net(accountDao);
+        }
+    }
+
+    @Override
+    public void close() {
+        netting.shutdown();
+        net();
+    }
+
+    @Override
+    public List<Account> getAccounts() {
+        return refresh(super.getAccounts());
+    }
+
+    @Override
+    public List<Account> getAccounts(Agreement agreement) {
+        return refresh(super.getAccounts(agreement));
+    }
+
+    @Override
+    public Stream<Account> streamAccounts() {
+        return super.streamAccounts().map(this::refresh);
+    }
+
+    @Override
+    public List<Account> getAccountsPage(Long afterId, int limit) {
+        return refresh(super.getAccountsPage(afterId, limit));
+    }
+
+    @Override
+    public boolean charge(Long accountId, BigDecimal chargeAmount) {
+        HotBalance hot = hot(accountId);
+        if (hot == null) {
+            return super.charge(accountId, chargeAmount);
+        }
+        // charges are commission legs, rounded by the commission rule like in the fixed-point mode
+        long chargeMinor = FixedPointMoney.toMinor(chargeAmount, FixedPointMoney.COMMISSION_ROUNDING);
+        if (chargeMinor < 0) {
+            hot.credit(-chargeMinor);
+        } else {
+            hot.charge(chargeMinor);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean makeTransfer(Long sourceAccountId, Long destinationAccountId, BigDecimal sum) {
+        HotBalance source = hot(sourceAccountId);
+        HotBalance destination = hot(destinationAccountId);
+        if (source == null && destination == null) {
+            return super.makeTransfer(sourceAccountId, destinationAccountId, sum);
+        }
+        requireAccount(sourceAccountId, source, "No source account");
+        requireAccount(destinationAccountId, destination, "No destination account");
+
+        if (sum.compareTo(BigDecimal.ZERO) <= 0) {
+            return false;
+        }
+        if (!debit(sourceAccountId, source, sum)) {
+            return false;
+        }
+        credit(destinationAccountId, destination, sum);
+        return true;
+    }
+
+    @Override
+    public boolean makeTransfer(Long sourceAccountId, Long destinationAccountId, BigDecimal sum,
+                                Long feeAccountId, BigDecimal fee) {
+        HotBalance source = hot(sourceAccountId);
+        HotBalance destination = hot(destinationAccountId);
+        HotBalance feeAccount = hot(feeAccountId);
+        if (source == null && destination == null && feeAccount == null) {
+            return super.makeTransfer(sourceAccountId, destinationAccountId, sum, feeAccountId, fee);
+        }
+        requireAccount(sourceAccountId, source, "No source account");
+        requireAccount(destinationAccountId, destination, "No destination account");
+        requireAccount(feeAccountId, feeAccount, "No fee account");
+
+        if (sum.compareTo(BigDecimal.ZERO) <= 0 || fee.signum() < 0) {
+            return false;
+        }
+        // sum + fee leave the source in one step, so the payment is never half paid
+        if (!debit(sourceAccountId, source, sum.add(fee))) {
+            return false;
+        }
+        credit(destinationAccountId, destination, sum);
+        if (fee.signum() > 0) {
+            credit(feeAccountId, feeAccount, fee);
+        }
+        return true;
+    }
+
+    @Override
+    public void applyBalanceChanges(Map<Long, BigDecimal> changes) {
+        Map<Long, BigDecimal> plain = new HashMap<>(changes);
+        plain.keySet().removeAll(hotBalances.keySet());
+        if (plain.size() == changes.size()) {
+            super.applyBalanceChanges(changes);
+            return;
+        }
+        // Hot debits are checked and taken first, then the plain accounts are updated under their stripe locks;
+        // if either step fails, the hot debits already taken are returned
+        List<Map.Entry<HotBalance, Long>> hotChanges = new ArrayList<>();
+        for (Map.Entry<Long, BigDecimal> change : changes.entrySet()) {
+            HotBalance hot = hot(change.getKey());
+            if (hot != null) {
+                hotChanges.add(Map.entry(hot, FixedPointMoney.toMinor(change.getValue())));
+            }
+        }
+        List<Map.Entry<HotBalance, Long>> debited = new ArrayList<>();
+        try {
+            for (Map.Entry<HotBalance, Long> change : hotChanges) {
+                if (change.getValue() < 0) {
+                    if (!change.getKey().debit(-change.getValue())) {
+                        throw new InsufficientFundsException("Insufficient funds");
+                    }
+                    debited.add(change);
+                }
+            }
+            super.applyBalanceChanges(plain);
+        } catch (RuntimeException e) {
+            for (Map.Entry<HotBalance, Long> change : debited) {
+                change.getKey().credit(-change.getValue());
+            }
+            throw e;
+        }
+        for (Map.Entry<HotBalance, Long> change : hotChanges) {
+            if (change.getValue() > 0) {
+                change.getKey().credit(change.getValue());
+            }
+        }
+    }
+
+    private HotBalance hot(Long accountId) {
+        return accountId == null ? null : hotBalances.get(accountId);
+    }
+
+    private void requireAccount(Long accountId, HotBalance hot, String missingMessage) {
+        if (hot == null && accountDao.findById(accountId).isEmpty()) {
+            throw new AccountException(missingMessage);
+        }
+    }
+
+    private boolean debit(Long accountId, HotBalance hot, BigDecimal amount) {
+        if (hot != null) {
+            return hot.debit(FixedPointMoney.toMinor(amount));
+        }
+        ReentrantLock lock = lockStripe(accountId, "makeTransfer");
+        try {
+            Account account = accountDao.findById(accountId)
+                    .orElseThrow(() -> new AccountException("No source account"));
+            if (account.getAmount().compareTo(amount) < 0) {
+                return false;
+            }
+            account.setAmount(account.getAmount().subtract(amount));
+            accountDao.save(account);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void credit(Long accountId, HotBalance hot, BigDecimal amount) {
+        if (hot != null) {
+            hot.credit(FixedPointMoney.toMinor(amount));
+            return;
+        }
+        ReentrantLock lock = lockStripe(accountId, "makeTransfer");
+        try {
+            Account account = accountDao.findById(accountId)
+                    .orElseThrow(() -> new AccountException("No destination account"));
+            account.setAmount(account.getAmount().add(amount));
+            accountDao.save(account);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<Account> refresh(List<Account> accounts) {
+        for (Account account : accounts) {
+            refresh(account);
+        }
+        return accounts;
+    }
+
+    private Account refresh(Account account) {
+        HotBalance hot = hot(account.getId());
+        if (hot != null) {
+            account.setAmount(FixedPointMoney.toBigDecimal(hot.sum()));
+        }
+        return account;
+    }
+
+    private static final class HotBalance {
+
+        // Each sub-balance gets a cache line of its own so that writers on different cores do not share one
+        private static final int PAD = 8;
+
+        private final Account account;
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final AtomicLongArray cells;
+
+        private final int mask;
+
+        // Set while a charge may have overdrawn the account; debits then skip the per-thread fast path,
+        // which only sees its own sub-balance and could spend money the account no longer has
+        private volatile boolean overdrawn;
+
+        // Total last written to the repository, guarded by lock
+        private long saved;
+
+        HotBalance(Account account, int subBalances) {
+            this.account = account;
+            cells = new AtomicLongArray(subBalances * PAD);
+            mask = subBalances - 1;
+            long opening = FixedPointMoney.toMinor(account.getAmount());
+            cells.set(0, opening);
+            overdrawn = opening < 0;
+            saved = opening;
+        }
+
+        void credit(long amountMinor) {
+            cells.getAndAdd(cell(), amountMinor);
+        }
+
+        boolean debit(long amountMinor) {
+            if (!overdrawn) {
+                int cell = cell();
+                long current = cells.get(cell);
+                while (current >= amountMinor) {
+                    if (cells.compareAndSet(cell, current, current - amountMinor)) {
+                        if (!overdrawn) {
+                            return true;
+                        }
+                        // a charge started meanwhile; give the money back and decide under the lock
+                        cells.getAndAdd(cell, amountMinor);
+                        break;
+                    }
+                    current = cells.get(cell);
+                }
+            }
+            lock.lock();
+            try {
+                long total = drain();
+                boolean covered = total >= amountMinor;
+                cells.getAndAdd(0, covered ? total - amountMinor : total);
+                return covered;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Like AccountServiceImpl.charge there is no funds check, so this may overdraw the account
+        void charge(long amountMinor) {
+            lock.lock();
+            try {
+                overdrawn = true;
+                long total = drain() - amountMinor;
+                cells.getAndAdd(0, total);
+                overdrawn = total < 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Exact once writers are quiet; taken under the lock so that a drain in progress is never seen
+        long sum() {
+            lock.lock();
+            try {
+                long total = 0;
+                for (int i = 0; i < cells.length(); i += PAD) {
+                    total += cells.get(i);
+                }
+                return total;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Spreads a positive total evenly so that debits from any thread find money in their own sub-balance
+        void net(AccountRepository accountDao) {
+            lock.lock();
+            try {
+                long total = drain();
+                long share = total > 0 ? total / (mask + 1) : 0;
+                for (int i = PAD; i < cells.length(); i += PAD) {
+                    cells.getAndAdd(i, share);
+                }
+                cells.getAndAdd(0, total - share * mask);
+                overdrawn = total < 0;
+                // an idle account is netted every interval; only a changed total is worth a write
+                if (total != saved) {
+                    account.setAmount(FixedPointMoney.toBigDecimal(total));
+                    accountDao.save(account);
+                    saved = total;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private long drain() {
+            long total = 0;
+            for (int i = 0; i < cells.length(); i += PAD) {
+                total += cells.getAndSet(i, 0);
+            }
+            return total;
+        }
+
+        private int cell() {
+            long id = Thread.currentThread().getId();
+            int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+            return ((hash ^ (hash >>> 16)) & mask) * PAD;
+        }
+    }
+}
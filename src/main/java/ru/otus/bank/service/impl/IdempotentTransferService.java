@@ -0,0 +1,47 @@
+package ru.otus.bank.service.impl;
+
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.AccountService;
+import ru.otus.bank.service.IdempotencyCache;
+import ru.otus.bank.service.PaymentProcessor;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Objects;
+
+public class IdempotentTransferService {
+
+    // About 200 bytes per remembered key, so the default caps the cache at roughly 200 MB
+    public static final int DEFAULT_MAX_ENTRIES = 1 << 20;
+
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(10);
+
+    private final PaymentProcessor paymentProcessor;
+
+    private final AccountService accountService;
+
+    private final IdempotencyCache<String, Boolean> results;
+
+    public IdempotentTransferService(PaymentProcessor paymentProcessor, AccountService accountService) {
+        this(paymentProcessor, accountService, new IdempotencyCache<>(DEFAULT_MAX_ENTRIES, DEFAULT_TTL));
+    }
+
+    public IdempotentTransferService(PaymentProcessor paymentProcessor, AccountService accountService,
+                                     IdempotencyCache<String, Boolean> results) {
+        this.paymentProcessor = paymentProcessor;
+        this.accountService = accountService;
+        this.results = results;
+    }
+
+    public boolean makeTransfer(String idempotencyKey, Agreement source, Agreement destination,
+                                int sourceType, int destinationType, BigDecimal amount) {
+        int fingerprint = Objects.hash("transfer", source.getId(), destination.getId(), sourceType, destinationType, amount);
+        return results.execute(idempotencyKey, fingerprint,
+                () -> paymentProcessor.makeTransfer(source, destination, sourceType, destinationType, amount));
+    }
+
+    public boolean charge(String idempotencyKey, Long accountId, BigDecimal chargeAmount) {
+        int fingerprint = Objects.hash("charge", accountId, chargeAmount);
+        return results.execute(idempotencyKey, fingerprint, () -> accountService.charge(accountId, chargeAmount));
+    }
+}
@@ -0,0 +1,275 @@
+package ru.otus.bank.service.impl;
+
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.AccountService;
+import ru.otus.bank.service.ContentionListener;
+import ru.otus.bank.service.TransferCode;
+import ru.otus.bank.service.metrics.OperationMetrics;
+import ru.otus.bank.service.metrics.PaymentMetrics;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+
+// Records latency, outcome and contention of the balance-changing operations of another AccountService
+public class InstrumentedAccountServiceImpl implements AccountService {
+
+    public static final String NON_POSITIVE_SUM = "non-positive sum";
+
+    // Services report giving up under contention with a ContentionException, so a false from a transfer with a
+    // valid sum is a shortage of funds
+    public static final String INSUFFICIENT_FUNDS = "insufficient funds";
+
+    // charge has no precondition, so a false from it is the wrapped service declining it for its own reasons
+    public static final String REJECTED = "rejected";
+
+    private final AccountService accountService;
+
+    private final OperationMetrics makeTransfer;
+
+    private final OperationMetrics makeTransferWithFee;
+
+    private final OperationMetrics charge;
+
+    private final OperationMetrics applyBalanceChanges;
+
+    private final ContentionListener metricsListener;
+
+    public InstrumentedAccountServiceImpl(AccountService accountService, PaymentMetrics metrics) {
+        this.accountService = accountService;
+        this.makeTransfer = metrics.operation("makeTransfer");
+        this.makeTransferWithFee = metrics.operation("makeTransferWithFee");
+        this.charge = metrics.operation("charge");
+        this.applyBalanceChanges = metrics.operation("applyBalanceChanges");
+        this.metricsListener = operation -> metrics.operation(operation).recordContention();
+        accountService.setContentionListener(metricsListener);
+    }
+
+    @Override
+    public Account addAccount(Agreement agreement, String accountNumber, Integer type, BigDecimal amount) {
+        return accountService.addAccount(agreement, accountNumber, type, amount);
+    }
+
+    @Override
+    public List<Account> getAccounts() {
+        return accountService.getAccounts();
+    }
+
+    @Override
+    public List<Account> getAccounts(Agreement agreement) {
+        return accountService.getAccounts(agreement);
+    }
+
+    @Override
+    public Long findAccountId(Agreement agreement, int type) {
+        return accountService.findAccountId(agreement, type);
+    }
+
+    // The metrics keep receiving contention alongside the given listener
+    @Override
+    public void setContentionListener(ContentionListener contentionListener) {
+        accountService.setContentionListener(operation -> {
+            metricsListener.onContention(operation);
+            contentionListener.onContention(operation);
+        });
+    }
+
+    @Override
+    public boolean addAgreementListener(LongConsumer listener) {
+        return accountService.addAgreementListener(listener);
+    }
+
+    @Override
+    public Stream<Account> streamAccounts() {
+        return accountService.streamAccounts();
+    }
+
+    @Override
+    public List<Account> getAccountsPage(Long afterId, int limit) {
+        return accountService.getAccountsPage(afterId, limit);
+    }
+
+    @Override
+    public boolean makeTransfer(Long sourceAccountId, Long destinationAccountId, BigDecimal sum) {
+        long start = System.nanoTime();
+        boolean result;
+        try {
+            result = accountService.makeTransfer(sourceAccountId, destinationAccountId, sum);
+        } catch (RuntimeException e) {
+            failed(makeTransfer, start, reason(e));
+            throw e;
+        }
+        if (result) {
+            succeeded(makeTransfer, start);
+        } else {
+            failed(makeTransfer, start, sum.compareTo(BigDecimal.ZERO) <= 0 ? NON_POSITIVE_SUM : INSUFFICIENT_FUNDS);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean makeTransfer(Long sourceAccountId, Long destinationAccountId, BigDecimal sum,
+                                Long feeAccountId, BigDecimal fee) {
+        long start = System.nanoTime();
+        boolean result;
+        try {
+            result = accountService.makeTransfer(sourceAccountId, destinationAccountId, sum, feeAccountId, fee);
+        } catch (RuntimeException e) {
+            failed(makeTransferWithFee, start, reason(e));
+            throw e;
+        }
+        if (result) {
+            succeeded(makeTransferWithFee, start);
+        } else {
+            failed(makeTransferWithFee, start, sum.compareTo(BigDecimal.ZERO) <= 0 || fee.signum() < 0
+                    ? NON_POSITIVE_SUM : INSUFFICIENT_FUNDS);
+        }
+        return result;
+    }
+
+    // Counted as makeTransfer: it is the same operation with a result code instead of a boolean
+    @Override
+    public TransferCode tryTransferMinor(long sourceAccountId, long destinationAccountId, long sumMinor) {
+        long start = System.nanoTime();
+        TransferCode code;
+        try {
+            code = accountService.tryTransferMinor(sourceAccountId, destinationAccountId, sumMinor);
+        } catch (RuntimeException e) {
+            failed(makeTransfer, start, reason(e));
+            throw e;
+        }
+        if (code.isSuccess()) {
+            succeeded(makeTransfer, start);
+        } else {
+            failed(makeTransfer, start, reason(code));
+        }
+        return code;
+    }
+
+    @Override
+    public boolean charge(Long accountId, BigDecimal chargeAmount) {
+        long start = System.nanoTime();
+        boolean result;
+        try {
+            result = accountService.charge(accountId, chargeAmount);
+        } catch (RuntimeException e) {
+            failed(charge, start, reason(e));
+            throw e;
+        }
+        if (result) {
+            succeeded(charge, start);
+        } else {
+            failed(charge, start, REJECTED);
+        }
+        return result;
+    }
+
+    // Latency runs from the call to the completion of the future
+    @Override
+    public CompletableFuture<Boolean> makeTransferAsync(Long sourceAccountId, Long destinationAccountId,
+                                                        BigDecimal sum, Executor executor) {
+        long start = System.nanoTime();
+        return accountService.makeTransferAsync(sourceAccountId, destinationAccountId, sum, executor)
+                .whenComplete((result, error) -> completed(makeTransfer, start, result, error,
+                        sum.compareTo(BigDecimal.ZERO) <= 0 ? NON_POSITIVE_SUM : INSUFFICIENT_FUNDS));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> makeTransferAsync(Long sourceAccountId, Long destinationAccountId,
+                                                        BigDecimal sum, Long feeAccountId, BigDecimal fee,
+                                                        Executor executor) {
+        long start = System.nanoTime();
+        return accountService.makeTransferAsync(sourceAccountId, destinationAccountId, sum, feeAccountId, fee, executor)
+                .whenComplete((result, error) -> completed(makeTransferWithFee, start, result, error,
+                        sum.compareTo(BigDecimal.ZERO) <= 0 || fee.signum() < 0 ? NON_POSITIVE_SUM : INSUFFICIENT_FUNDS));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> chargeAsync(Long accountId, BigDecimal chargeAmount, Executor executor) {
+        long start = System.nanoTime();
+        return accountService.chargeAsync(accountId, chargeAmount, executor)
+                .whenComplete((result, error) -> completed(charge, start, result, error, REJECTED));
+    }
+
+    @Override
+    public void applyBalanceChanges(Map<Long, BigDecimal> changes) {
+        long start = System.nanoTime();
+        try {
+            accountService.applyBalanceChanges(changes);
+        } catch (RuntimeException e) {
+            failed(applyBalanceChanges, start, reason(e));
+            throw e;
+        }
+        succeeded(applyBalanceChanges, start);
+    }
+
+    private static void completed(OperationMetrics metrics, long start, Boolean result, Throwable error,
+                                  String rejection) {
+        if (error != null) {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            failed(metrics, start, cause instanceof RuntimeException e ? reason(e) : cause.getClass().getSimpleName());
+        } else if (result) {
+            succeeded(metrics, start);
+        } else {
+            failed(metrics, start, rejection);
+        }
+    }
+
+    static void succeeded(OperationMetrics metrics, long start) {
+        metrics.recordLatency(System.nanoTime() - start);
+        metrics.recordSuccess();
+    }
+
+    static void failed(OperationMetrics metrics, long start, String reason) {
+        metrics.recordLatency(System.nanoTime() - start);
+        metrics.recordFailure(reason);
+    }
+
+    // Ids are cut out so that "No account 42" and "No account 43" count as one reason
+    static String reason(RuntimeException e) {
+        String message = e.getMessage();
+        return message == null ? e.getClass().getSimpleName() : reason(message);
+    }
+
+    static String reason(TransferCode code) {
+        return switch (code) {
+            case NON_POSITIVE_SUM -> NON_POSITIVE_SUM;
+            case INSUFFICIENT_FUNDS -> INSUFFICIENT_FUNDS;
+            default -> code.message();
+        };
+    }
+
+    // Each run of digits becomes one N; no regex, and a message without digits is returned as it is
+    static String reason(String message) {
+        int first = 0;
+        while (first < message.length() && !isDigit(message.charAt(first))) {
+            first++;
+        }
+        if (first == message.length()) {
+            return message;
+        }
+        StringBuilder reason = new StringBuilder(message.length()).append(message, 0, first);
+        boolean inNumber = false;
+        for (int i = first; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (!isDigit(c)) {
+                reason.append(c);
+                inNumber = false;
+            } else if (!inNumber) {
+                reason.append('N');
+                inNumber = true;
+            }
+        }
+        return reason.toString();
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
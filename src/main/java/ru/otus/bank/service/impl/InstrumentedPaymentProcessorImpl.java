@@ -0,0 +1,118 @@
+package ru.otus.bank.service.impl;
+
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.PaymentProcessor;
+import ru.otus.bank.service.TransferRequest;
+import ru.otus.bank.service.TransferResult;
+import ru.otus.bank.service.metrics.OperationMetrics;
+import ru.otus.bank.service.metrics.PaymentMetrics;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static ru.otus.bank.service.impl.InstrumentedAccountServiceImpl.INSUFFICIENT_FUNDS;
+import static ru.otus.bank.service.impl.InstrumentedAccountServiceImpl.NON_POSITIVE_SUM;
+import static ru.otus.bank.service.impl.InstrumentedAccountServiceImpl.failed;
+import static ru.otus.bank.service.impl.InstrumentedAccountServiceImpl.reason;
+import static ru.otus.bank.service.impl.InstrumentedAccountServiceImpl.succeeded;
+
+public class InstrumentedPaymentProcessorImpl implements PaymentProcessor {
+
+    private final PaymentProcessor paymentProcessor;
+
+    private final OperationMetrics transfer;
+
+    private final OperationMetrics transferWithComission;
+
+    private final OperationMetrics transferWithFee;
+
+    private final OperationMetrics transfers;
+
+    public InstrumentedPaymentProcessorImpl(PaymentProcessor paymentProcessor, PaymentMetrics metrics) {
+        this.paymentProcessor = paymentProcessor;
+        this.transfer = metrics.operation("payment.makeTransfer");
+        this.transferWithComission = metrics.operation("payment.makeTransferWithComission");
+        this.transferWithFee = metrics.operation("payment.makeTransferWithFee");
+        this.transfers = metrics.operation("payment.makeTransfers");
+    }
+
+    @Override
+    public boolean makeTransfer(Agreement source, Agreement destination, int sourceType,
+                                int destinationType, BigDecimal amount) {
+        long start = System.nanoTime();
+        boolean result;
+        try {
+            result = paymentProcessor.makeTransfer(source, destination, sourceType, destinationType, amount);
+        } catch (RuntimeException e) {
+            failed(transfer, start, reason(e));
+            throw e;
+        }
+        record(transfer, start, result, amount);
+        return result;
+    }
+
+    @Override
+    public boolean makeTransferWithComission(Agreement source, Agreement destination,
+                                             int sourceType, int destinationType,
+                                             BigDecimal amount,
+                                             BigDecimal comissionPercent) {
+        long start = System.nanoTime();
+        boolean result;
+        try {
+            result = paymentProcessor.makeTransferWithComission(source, destination, sourceType, destinationType,
+                    amount, comissionPercent);
+        } catch (RuntimeException e) {
+            failed(transferWithComission, start, reason(e));
+            throw e;
+        }
+        record(transferWithComission, start, result, amount);
+        return result;
+    }
+
+    @Override
+    public boolean makeTransferWithFee(Agreement source, Agreement destination, int sourceType,
+                                       int destinationType, BigDecimal amount) {
+        long start = System.nanoTime();
+        boolean result;
+        try {
+            result = paymentProcessor.makeTransferWithFee(source, destination, sourceType, destinationType, amount);
+        } catch (RuntimeException e) {
+            failed(transferWithFee, start, reason(e));
+            throw e;
+        }
+        record(transferWithFee, start, result, amount);
+        return result;
+    }
+
+    // One latency sample per batch, one outcome per item
+    @Override
+    public List<TransferResult> makeTransfers(List<TransferRequest> requests) {
+        long start = System.nanoTime();
+        List<TransferResult> results;
+        try {
+            results = paymentProcessor.makeTransfers(requests);
+        } catch (RuntimeException e) {
+            failed(transfers, start, reason(e));
+            throw e;
+        }
+        transfers.recordLatency(System.nanoTime() - start);
+        for (int i = 0; i < results.size(); i++) {
+            TransferResult result = results.get(i);
+            switch (result.status()) {
+                case SUCCESS -> transfers.recordSuccess();
+                case REJECTED -> transfers.recordFailure(requests.get(i).amount().compareTo(BigDecimal.ZERO) <= 0
+                        ? NON_POSITIVE_SUM : INSUFFICIENT_FUNDS);
+                case FAILED -> transfers.recordFailure(result.message() == null ? "failed" : reason(result.message()));
+            }
+        }
+        return results;
+    }
+
+    private static void record(OperationMetrics metrics, long start, boolean result, BigDecimal amount) {
+        if (result) {
+            succeeded(metrics, start);
+        } else {
+            failed(metrics, start, amount.compareTo(BigDecimal.ZERO) <= 0 ? NON_POSITIVE_SUM : INSUFFICIENT_FUNDS);
+        }
+    }
+}
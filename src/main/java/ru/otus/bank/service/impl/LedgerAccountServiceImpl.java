@@ -0,0 +1,132 @@
+package ru.otus.bank.service.impl;
+
+import ru.otus.bank.dao.AccountRepository;
+import ru.otus.bank.dao.ledger.Ledger;
+import ru.otus.bank.dao.ledger.Posting;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.entity.FixedPointMoney;
+import ru.otus.bank.service.exception.AccountException;
+import ru.otus.bank.service.exception.InsufficientFundsException;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public class LedgerAccountServiceImpl extends AccountServiceImpl {
+
+    // The source of truth for balances in this mode; Account.amount is refreshed from it on read
+    private final Ledger ledger;
+
+    public LedgerAccountServiceImpl(AccountRepository accountDao) {
+        this(accountDao, new Ledger());
+    }
+
+    public LedgerAccountServiceImpl(AccountRepository accountDao, Ledger ledger) {
+        super(accountDao);
+        this.ledger = ledger;
+    }
+
+    @Override
+    public Account addAccount(Agreement agreement, String accountNumber, Integer type, BigDecimal amount) {
+        Account account = super.addAccount(agreement, accountNumber, type, amount);
+        ledger.openAccount(account.getId(), amount);
+        return account;
+    }
+
+    @Override
+    public List<Account> getAccounts() {
+        return refresh(super.getAccounts());
+    }
+
+    @Override
+    public List<Account> getAccounts(Agreement agreement) {
+        return refresh(super.getAccounts(agreement));
+    }
+
+    @Override
+    public Stream<Account> streamAccounts() {
+        return super.streamAccounts().map(this::refresh);
+    }
+
+    @Override
+    public List<Account> getAccountsPage(Long afterId, int limit) {
+        return refresh(super.getAccountsPage(afterId, limit));
+    }
+
+    @Override
+    public boolean charge(Long accountId, BigDecimal chargeAmount) {
+        ledger.charge(open(accountId, "No source account"), commissionLeg(chargeAmount));
+        return true;
+    }
+
+    @Override
+    public boolean makeTransfer(Long sourceAccountId, Long destinationAccountId, BigDecimal sum) {
+        long source = open(sourceAccountId, "No source account");
+        long destination = open(destinationAccountId, "No destination account");
+        return ledger.transfer(source, destination, sum) != Ledger.NO_TRANSACTION;
+    }
+
+    @Override
+    public boolean makeTransfer(Long sourceAccountId, Long destinationAccountId, BigDecimal sum,
+                                Long feeAccountId, BigDecimal fee) {
+        long source = open(sourceAccountId, "No source account");
+        long destination = open(destinationAccountId, "No destination account");
+        long feeAccount = open(feeAccountId, "No fee account");
+        return ledger.transfer(source, destination, sum, feeAccount, commissionLeg(fee)) != Ledger.NO_TRANSACTION;
+    }
+
+    @Override
+    public void applyBalanceChanges(Map<Long, BigDecimal> changes) {
+        for (Long accountId : changes.keySet()) {
+            open(accountId, "No account " + accountId);
+        }
+        // checked under the ledger's account locks; the imbalance, if any, goes to the external account
+        if (ledger.postCovered(changes) == Ledger.NO_TRANSACTION) {
+            throw new InsufficientFundsException("Insufficient funds");
+        }
+    }
+
+    public List<Posting> getHistory(Long accountId, int from, int limit) {
+        return ledger.getHistory(open(accountId, "No account"), from, limit);
+    }
+
+    public Ledger getLedger() {
+        return ledger;
+    }
+
+    // Accounts that existed before this service was created are opened with their stored balance.
+    // The ledger's external account is open from the start but is not a customer account, so it is never found.
+    private long open(Long accountId, String missingMessage) {
+        if (accountId != null && accountId == Ledger.EXTERNAL_ACCOUNT) {
+            throw new AccountException(missingMessage);
+        }
+        if (accountId != null && ledger.isOpen(accountId)) {
+            return accountId;
+        }
+        Account account = accountDao.findById(accountId)
+                .orElseThrow(() -> new AccountException(missingMessage));
+        ledger.openAccountIfAbsent(account.getId(), account.getAmount());
+        return account.getId();
+    }
+
+    private List<Account> refresh(List<Account> accounts) {
+        for (Account account : accounts) {
+            refresh(account);
+        }
+        return accounts;
+    }
+
+    private Account refresh(Account account) {
+        if (ledger.isOpen(account.getId())) {
+            account.setAmount(ledger.getBalance(account.getId()));
+        }
+        return account;
+    }
+
+    // charges and fees are commission legs, rounded by the commission rule instead of rejected by the ledger
+    private static BigDecimal commissionLeg(BigDecimal amount) {
+        return amount.setScale(FixedPointMoney.SCALE, FixedPointMoney.COMMISSION_ROUNDING);
+    }
+}
@@ -0,0 +1,244 @@
+package ru.otus.bank.service.impl;
+
+import ru.otus.bank.dao.AccountRepository;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.service.exception.AccountException;
+import ru.otus.bank.service.exception.ContentionException;
+import ru.otus.bank.service.exception.InsufficientFundsException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Consistency model: every balance is its own compare-and-set cell, so each account on its own is linearizable
+// and a debit never takes a balance below zero. A transfer is not atomic across accounts: the debit commits
+// first and the credit lands a few instructions later. Until then readers see the sum missing from both
+// accounts, and a total over all balances is short by the transfers in flight; it is exact once they finish.
+// Use the striped-lock or ledger mode where readers need a consistent cut. A debit or charge that keeps losing its
+// compare-and-set gives up after maxRetries with a ContentionException, so a false still means a rejected payment.
+public class OptimisticAccountServiceImpl extends AccountServiceImpl {
+
+    public static final int DEFAULT_MAX_RETRIES = 64;
+
+    public static final int TRACKED_ACCOUNTS = 256;
+
+    private final int maxRetries;
+
+    private final LongAdder commits = new LongAdder();
+
+    private final LongAdder retries = new LongAdder();
+
+    private final LongAdder contentionFailures = new LongAdder();
+
+    // accountId -> failed compare-and-set attempts, filled only on contention. At most TRACKED_ACCOUNTS entries:
+    // a new account pushes out the least retried one, so the hot accounts stay and the map cannot grow unbounded
+    private final ConcurrentHashMap<Long, LongAdder> retriesByAccount = new ConcurrentHashMap<>();
+
+    public OptimisticAccountServiceImpl(AccountRepository accountDao) {
+        this(accountDao, DEFAULT_MAX_RETRIES);
+    }
+
+    public OptimisticAccountServiceImpl(AccountRepository accountDao, int maxRetries) {
+        super(accountDao);
+        if (maxRetries <= 0) {
+            throw new IllegalArgumentException("maxRetries must be positive: " + maxRetries);
+        }
+        this.maxRetries = maxRetries;
+    }
+
+    @Override
+    public boolean charge(Long accountId, BigDecimal chargeAmount) {
+        Account account = accountDao.findById(accountId)
+                .orElseThrow(() -> new AccountException("No source account"));
+
+        for (int attempt = 0; attempt < maxRetries; attempt++) {
+            BigDecimal current = account.getAmount();
+            if (account.compareAndSetAmount(current, current.subtract(chargeAmount))) {
+                accountDao.save(account);
+                commits.increment();
+                return true;
+            }
+            recordRetry(account, "charge");
+        }
+        contentionFailures.increment();
+        throw new ContentionException("Charge gave up after " + maxRetries + " retries");
+    }
+
+    @Override
+    public boolean makeTransfer(Long sourceAccountId, Long destinationAccountId, BigDecimal sum) {
+        Account sourceAccount = accountDao.findById(sourceAccountId)
+                .orElseThrow(() -> new AccountException("No source account"));
+        Account destinationAccount = accountDao.findById(destinationAccountId)
+                .orElseThrow(() -> new AccountException("No destination account"));
+
+        if (sum.compareTo(BigDecimal.ZERO) <= 0) {
+            return false;
+        }
+
+        if (!debit(sourceAccount, sum)) {
+            return false;
+        }
+        // The credit has no precondition, so it is retried until it lands: the debited sum is never lost,
+        // but it is in flight and visible to no account in between
+        credit(destinationAccount, sum, "makeTransfer");
+
+        accountDao.saveAll(sourceAccount, destinationAccount);
+        commits.increment();
+        return true;
+    }
+
+    @Override
+    public boolean makeTransfer(Long sourceAccountId, Long destinationAccountId, BigDecimal sum,
+                                Long feeAccountId, BigDecimal fee) {
+        Account sourceAccount = accountDao.findById(sourceAccountId)
+                .orElseThrow(() -> new AccountException("No source account"));
+        Account destinationAccount = accountDao.findById(destinationAccountId)
+                .orElseThrow(() -> new AccountException("No destination account"));
+        Account feeAccount = accountDao.findById(feeAccountId)
+                .orElseThrow(() -> new AccountException("No fee account"));
+
+        if (sum.compareTo(BigDecimal.ZERO) <= 0 || fee.signum() < 0) {
+            return false;
+        }
+
+        // One compare-and-set takes sum and fee together, so the payment either happens in full or not at all
+        if (!debit(sourceAccount, sum.add(fee))) {
+            return false;
+        }
+        credit(destinationAccount, sum, "makeTransfer");
+        if (fee.signum() > 0) {
+            credit(feeAccount, fee, "makeTransfer");
+        }
+
+        if (feeAccount != sourceAccount && feeAccount != destinationAccount) {
+            accountDao.saveAll(sourceAccount, destinationAccount, feeAccount);
+        } else {
+            accountDao.saveAll(sourceAccount, destinationAccount);
+        }
+        commits.increment();
+        return true;
+    }
+
+    @Override
+    public void applyBalanceChanges(Map<Long, BigDecimal> changes) {
+        List<Account> accounts = new ArrayList<>(changes.size());
+        for (Long accountId : changes.keySet()) {
+            accounts.add(accountDao.findById(accountId)
+                    .orElseThrow(() -> new AccountException("No account " + accountId)));
+        }
+
+        // Debits first, each checked by its compare-and-set; one that no longer fits undoes the ones before it
+        List<Account> debited = new ArrayList<>();
+        for (Account account : accounts) {
+            BigDecimal change = changes.get(account.getId());
+            if (change.signum() < 0) {
+                if (!debitChecked(account, change.negate())) {
+                    for (Account undo : debited) {
+                        credit(undo, changes.get(undo.getId()).negate(), "applyBalanceChanges");
+                    }
+                    throw new InsufficientFundsException("Insufficient funds on account " + account.getId());
+                }
+                debited.add(account);
+            }
+        }
+        for (Account account : accounts) {
+            BigDecimal change = changes.get(account.getId());
+            if (change.signum() > 0) {
+                credit(account, change, "applyBalanceChanges");
+            }
+            accountDao.save(account);
+        }
+        commits.increment();
+    }
+
+    // Unlike debit, retries until the balance decides instead of giving up with a ContentionException
+    private boolean debitChecked(Account account, BigDecimal sum) {
+        while (true) {
+            BigDecimal current = account.getAmount();
+            if (current.compareTo(sum) < 0) {
+                return false;
+            }
+            if (account.compareAndSetAmount(current, current.subtract(sum))) {
+                return true;
+            }
+            recordRetry(account, "applyBalanceChanges");
+        }
+    }
+
+    private boolean debit(Account account, BigDecimal sum) {
+        for (int attempt = 0; attempt < maxRetries; attempt++) {
+            BigDecimal current = account.getAmount();
+            if (current.compareTo(sum) < 0) {
+                return false;
+            }
+            if (account.compareAndSetAmount(current, current.subtract(sum))) {
+                return true;
+            }
+            recordRetry(account, "makeTransfer");
+        }
+        contentionFailures.increment();
+        throw new ContentionException("Transfer gave up after " + maxRetries + " retries");
+    }
+
+    private void credit(Account account, BigDecimal sum, String operation) {
+        while (true) {
+            BigDecimal current = account.getAmount();
+            if (account.compareAndSetAmount(current, current.add(sum))) {
+                return;
+            }
+            recordRetry(account, operation);
+        }
+    }
+
+    private void recordRetry(Account account, String operation) {
+        retries.increment();
+        contentionListener.onContention(operation);
+        LongAdder accountRetries = retriesByAccount.get(account.getId());
+        if (accountRetries == null) {
+            accountRetries = track(account.getId());
+        }
+        accountRetries.increment();
+    }
+
+    private synchronized LongAdder track(Long accountId) {
+        LongAdder accountRetries = retriesByAccount.get(accountId);
+        if (accountRetries != null) {
+            return accountRetries;
+        }
+        if (retriesByAccount.size() >= TRACKED_ACCOUNTS) {
+            Long coldest = null;
+            long coldestRetries = Long.MAX_VALUE;
+            for (Map.Entry<Long, LongAdder> entry : retriesByAccount.entrySet()) {
+                long sum = entry.getValue().sum();
+                if (sum < coldestRetries) {
+                    coldest = entry.getKey();
+                    coldestRetries = sum;
+                }
+            }
+            retriesByAccount.remove(coldest);
+        }
+        accountRetries = new LongAdder();
+        retriesByAccount.put(accountId, accountRetries);
+        return accountRetries;
+    }
+
+    public long getCommits() {
+        return commits.sum();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    public long getRetries(Long accountId) {
+        LongAdder accountRetries = retriesByAccount.get(accountId);
+        return accountRetries == null ? 0 : accountRetries.sum();
+    }
+
+    public long getContentionFailures() {
+        return contentionFailures.sum();
+    }
+}
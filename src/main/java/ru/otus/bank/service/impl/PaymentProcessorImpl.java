@@ -2,33 +2,60 @@ package ru.otus.bank.service.impl;
 
 import ru.otus.bank.entity.Account;
 import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.entity.FixedPointMoney;
 import ru.otus.bank.service.AccountService;
 import ru.otus.bank.service.PaymentProcessor;
+import ru.otus.bank.service.TransferCode;
+import ru.otus.bank.service.TransferRequest;
+import ru.otus.bank.service.TransferResult;
 import ru.otus.bank.service.exception.AccountException;
+import ru.otus.bank.service.exception.InsufficientFundsException;
+import ru.otus.bank.service.fee.FeeEngine;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class PaymentProcessorImpl implements PaymentProcessor {
     private AccountService accountService;
 
+    private FeeEngine feeEngine;
+
     public PaymentProcessorImpl(AccountService accountService) {
         this.accountService = accountService;
     }
 
+    public PaymentProcessorImpl(AccountService accountService, FeeEngine feeEngine) {
+        this.accountService = accountService;
+        this.feeEngine = feeEngine;
+    }
+
     public boolean makeTransfer(Agreement source, Agreement destination, int sourceType,
                                 int destinationType, BigDecimal amount) {
 
-        Account sourceAccount = accountService.getAccounts(source).stream()
-                .filter(account -> account.getType() == sourceType)
-                .findAny()
-                .orElseThrow(() -> new AccountException("Account not found"));
+        Long sourceAccountId = findAccountId(source, sourceType);
+        Long destinationAccountId = findAccountId(destination, destinationType);
 
-        Account destinationAccount = accountService.getAccounts(destination).stream()
-                .filter(account -> account.getType() == destinationType)
-                .findAny()
-                .orElseThrow(() -> new AccountException("Account not found"));
+        return accountService.makeTransfer(sourceAccountId, destinationAccountId, amount);
+    }
 
-        return accountService.makeTransfer(sourceAccount.getId(), destinationAccount.getId(), amount);
+    // Minor-unit variant of makeTransfer that reports failures as codes. With an account service that
+    // implements tryTransferMinor natively (FixedPointAccountServiceImpl), a transfer between known
+    // accounts allocates nothing: ids come from the repository index or the cache, not from account lists.
+    public TransferCode tryTransferMinor(Agreement source, Agreement destination, int sourceType,
+                                         int destinationType, long amountMinor) {
+        Long sourceAccountId = accountService.findAccountId(source, sourceType);
+        if (sourceAccountId == null) {
+            return TransferCode.NO_SOURCE_ACCOUNT;
+        }
+        Long destinationAccountId = accountService.findAccountId(destination, destinationType);
+        if (destinationAccountId == null) {
+            return TransferCode.NO_DESTINATION_ACCOUNT;
+        }
+        return accountService.tryTransferMinor(sourceAccountId, destinationAccountId, amountMinor);
     }
 
     @Override
@@ -37,18 +64,126 @@ public class PaymentProcessorImpl implements PaymentProcessor {
                                              BigDecimal amount,
                                              BigDecimal comissionPercent) {
 
-        Account sourceAccount = accountService.getAccounts(source).stream()
-                .filter(account -> account.getType() == sourceType)
-                .findAny()
-                .orElseThrow(() -> new AccountException("Account not found"));
+        Long sourceAccountId = findAccountId(source, sourceType);
+        Long destinationAccountId = findAccountId(destination, destinationType);
+
+        // rounded to minor units here, so every account service receives a commission it can post exactly
+        BigDecimal commission = FixedPointMoney.commission(amount, comissionPercent);
+        if (feeEngine != null) {
+            // the commission goes to the fee account in the same balance update as the transfer
+            return accountService.makeTransfer(sourceAccountId, destinationAccountId, amount,
+                    feeEngine.getFeeAccountId(), commission);
+        }
 
-        Account destinationAccount = accountService.getAccounts(destination).stream()
-                .filter(account -> account.getType() == destinationType)
-                .findAny()
-                .orElseThrow(() -> new AccountException("Account not found"));
+        // Without a fee engine there is no fee account to credit, so the commission is a separate charge to the
+        // source. Taken first like in the fee-account path, so the source has to cover both, and refunded if the
+        // transfer does not go through
+        if (!accountService.charge(sourceAccountId, commission)) {
+            return false;
+        }
+        boolean transferred;
+        try {
+            transferred = accountService.makeTransfer(sourceAccountId, destinationAccountId, amount);
+        } catch (RuntimeException e) {
+            accountService.charge(sourceAccountId, commission.negate());
+            throw e;
+        }
+        if (!transferred) {
+            accountService.charge(sourceAccountId, commission.negate());
+        }
+        return transferred;
+    }
+
+    @Override
+    public boolean makeTransferWithFee(Agreement source, Agreement destination, int sourceType,
+                                       int destinationType, BigDecimal amount) {
+        if (feeEngine == null) {
+            throw new IllegalStateException("No fee engine configured");
+        }
+        Long sourceAccountId = findAccountId(source, sourceType);
+        Long destinationAccountId = findAccountId(destination, destinationType);
+
+        return accountService.makeTransfer(sourceAccountId, destinationAccountId, amount,
+                feeEngine.getFeeAccountId(), feeEngine.fee(source, amount));
+    }
 
-        accountService.charge(sourceAccount.getId(), amount.negate().multiply(comissionPercent));
+    @Override
+    public List<TransferResult> makeTransfers(List<TransferRequest> requests) {
+        List<TransferResult> results = new ArrayList<>(requests.size());
+        // agreementId -> accounts, resolved once per agreement for the whole batch
+        Map<Long, List<Account>> accountsByAgreement = new HashMap<>();
+        // accountId -> balance after the items applied so far
+        Map<Long, BigDecimal> balances = new HashMap<>();
+        // accountId -> net change to write back, one update per touched account
+        Map<Long, BigDecimal> changes = new LinkedHashMap<>();
+        // indexes of the items counted into changes
+        List<Integer> accepted = new ArrayList<>();
+
+        for (TransferRequest request : requests) {
+            Account sourceAccount = findAccount(accountsByAgreement, request.source(), request.sourceType());
+            Account destinationAccount = findAccount(accountsByAgreement, request.destination(), request.destinationType());
+            if (sourceAccount == null || destinationAccount == null) {
+                results.add(TransferResult.failed("Account not found"));
+                continue;
+            }
+
+            BigDecimal amount = request.amount();
+            BigDecimal sourceBalance = balances.computeIfAbsent(sourceAccount.getId(), id -> sourceAccount.getAmount());
+            if (amount.compareTo(BigDecimal.ZERO) <= 0 || sourceBalance.compareTo(amount) < 0) {
+                results.add(TransferResult.rejected());
+                continue;
+            }
+
+            balances.put(sourceAccount.getId(), sourceBalance.subtract(amount));
+            balances.merge(destinationAccount.getId(), destinationAccount.getAmount().add(amount),
+                    (balance, ignored) -> balance.add(amount));
+            changes.merge(sourceAccount.getId(), amount.negate(), BigDecimal::add);
+            changes.merge(destinationAccount.getId(), amount, BigDecimal::add);
+            accepted.add(results.size());
+            results.add(TransferResult.success());
+        }
+
+        changes.values().removeIf(change -> change.signum() == 0);
+        if (!changes.isEmpty()) {
+            try {
+                accountService.applyBalanceChanges(changes);
+            } catch (InsufficientFundsException e) {
+                // Balances moved since they were read and the batch no longer fits as a whole:
+                // the accepted items run one by one, each checked by the account service
+                for (int index : accepted) {
+                    TransferRequest request = requests.get(index);
+                    Account sourceAccount = findAccount(accountsByAgreement, request.source(), request.sourceType());
+                    Account destinationAccount = findAccount(accountsByAgreement, request.destination(),
+                            request.destinationType());
+                    boolean transferred = accountService.makeTransfer(sourceAccount.getId(),
+                            destinationAccount.getId(), request.amount());
+                    results.set(index, transferred ? TransferResult.success() : TransferResult.rejected());
+                }
+            }
+        }
+        return results;
+    }
+
+    private Long findAccountId(Agreement agreement, int type) {
+        return findAccountId(accountService, agreement, type);
+    }
+
+    static Long findAccountId(AccountService accountService, Agreement agreement, int type) {
+        Long accountId = accountService.findAccountId(agreement, type);
+        if (accountId == null) {
+            throw new AccountException("Account not found", false);
+        }
+        return accountId;
+    }
 
-        return accountService.makeTransfer(sourceAccount.getId(), destinationAccount.getId(), amount);
+    private Account findAccount(Map<Long, List<Account>> accountsByAgreement, Agreement agreement, int type) {
+        List<Account> accounts = accountsByAgreement.computeIfAbsent(agreement.getId(),
+                id -> accountService.getAccounts(agreement));
+        for (Account account : accounts) {
+            if (account.getType() == type) {
+                return account;
+            }
+        }
+        return null;
     }
 }
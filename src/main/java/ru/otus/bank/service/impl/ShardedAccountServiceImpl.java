@@ -0,0 +1,489 @@
+package ru.otus.bank.service.impl;
+
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.AccountService;
+import ru.otus.bank.service.exception.AccountException;
+import ru.otus.bank.service.exception.InsufficientFundsException;
+
+import java.io.Closeable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// Accounts are partitioned by id; every balance change runs on the single thread that owns the shard,
+// so account state needs no locks. A cross-shard transfer is a debit on the source shard followed by a
+// credit on the destination shard. The credit has no precondition and the destination is checked before
+// the debit, so once money leaves the source it always arrives. Closing stops admitting operations and
+// waits for the admitted ones, credits included, before any shard stops.
+public class ShardedAccountServiceImpl implements AccountService, Closeable {
+
+    private final Shard[] shards;
+
+    private final AtomicLong id = new AtomicLong(1);
+
+    // guards closed and inFlight; close waits on it for the admitted operations to finish
+    private final Object shutdownLock = new Object();
+
+    private boolean closed;
+
+    private int inFlight;
+
+    public ShardedAccountServiceImpl(int shardCount) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("shardCount must be positive: " + shardCount);
+        }
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i);
+        }
+    }
+
+    @Override
+    public Account addAccount(Agreement agreement, String accountNumber, Integer type, BigDecimal amount) {
+        Account account = new Account();
+        account.setId(id.incrementAndGet());
+        account.setAgreementId(agreement.getId());
+        account.setNumber(accountNumber);
+        account.setType(type);
+        account.setAmount(amount);
+
+        Shard shard = shard(account.getId());
+        return await(admit(() -> shard.submit(() -> shard.accountDao.save(account))));
+    }
+
+    @Override
+    public List<Account> getAccounts() {
+        List<Account> result = new ArrayList<>();
+        for (Shard shard : shards) {
+            shard.accountDao.findAll().forEach(result::add);
+        }
+        return result;
+    }
+
+    @Override
+    public List<Account> getAccounts(Agreement agreement) {
+        List<Account> result = new ArrayList<>();
+        for (Shard shard : shards) {
+            shard.accountDao.findByAgreementId(agreement.getId()).forEach(result::add);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean addAgreementListener(LongConsumer listener) {
+        for (Shard shard : shards) {
+            shard.accountDao.addAgreementListener(listener);
+        }
+        return true;
+    }
+
+    @Override
+    public Stream<Account> streamAccounts() {
+        return Arrays.stream(shards).flatMap(shard -> shard.accountDao.stream());
+    }
+
+    // Every shard contributes its own first page; the merged page keeps the smallest ids
+    @Override
+    public List<Account> getAccountsPage(Long afterId, int limit) {
+        List<Account> result = new ArrayList<>();
+        for (Shard shard : shards) {
+            result.addAll(shard.accountDao.findPage(afterId, limit));
+        }
+        result.sort(Comparator.comparing(Account::getId));
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    @Override
+    public boolean charge(Long accountId, BigDecimal chargeAmount) {
+        return await(chargeAsync(accountId, chargeAmount));
+    }
+
+    @Override
+    public boolean makeTransfer(Long sourceAccountId, Long destinationAccountId, BigDecimal sum) {
+        return await(makeTransferAsync(sourceAccountId, destinationAccountId, sum));
+    }
+
+    // The shard threads complete the async operations, so the executor is never used
+    @Override
+    public CompletableFuture<Boolean> chargeAsync(Long accountId, BigDecimal chargeAmount, Executor executor) {
+        return chargeAsync(accountId, chargeAmount);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> makeTransferAsync(Long sourceAccountId, Long destinationAccountId,
+                                                        BigDecimal sum, Executor executor) {
+        return makeTransferAsync(sourceAccountId, destinationAccountId, sum);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> makeTransferAsync(Long sourceAccountId, Long destinationAccountId,
+                                                        BigDecimal sum, Long feeAccountId, BigDecimal fee,
+                                                        Executor executor) {
+        return makeTransferAsync(sourceAccountId, destinationAccountId, sum, feeAccountId, fee);
+    }
+
+    public CompletableFuture<Boolean> chargeAsync(Long accountId, BigDecimal chargeAmount) {
+        Shard shard = shard(accountId);
+        return admit(() -> shard.submit(() -> {
+            Account account = shard.find(accountId, "No source account");
+            account.setAmount(account.getAmount().subtract(chargeAmount));
+            return true;
+        }));
+    }
+
+    public CompletableFuture<Boolean> makeTransferAsync(Long sourceAccountId, Long destinationAccountId, BigDecimal sum) {
+        return admit(() -> transfer(sourceAccountId, destinationAccountId, sum));
+    }
+
+    private CompletableFuture<Boolean> transfer(Long sourceAccountId, Long destinationAccountId, BigDecimal sum) {
+        Shard source = shard(sourceAccountId);
+        Shard destination = shard(destinationAccountId);
+
+        if (source == destination) {
+            return source.submit(() -> {
+                Account sourceAccount = source.find(sourceAccountId, "No source account");
+                Account destinationAccount = source.find(destinationAccountId, "No destination account");
+                if (!debit(sourceAccount, sum)) {
+                    return false;
+                }
+                credit(destinationAccount, sum);
+                return true;
+            });
+        }
+
+        // Accounts are never removed, so checking the destination up front makes the credit step infallible
+        return source.submit(() -> {
+            Account sourceAccount = source.find(sourceAccountId, "No source account");
+            if (destination.accountDao.findById(destinationAccountId).isEmpty()) {
+                throw new AccountException("No destination account");
+            }
+            return debit(sourceAccount, sum);
+        }).thenCompose(debited -> {
+            if (!debited) {
+                return CompletableFuture.completedFuture(false);
+            }
+            return destination.submit(() -> {
+                credit(destination.find(destinationAccountId, "No destination account"), sum);
+                return true;
+            });
+        });
+    }
+
+    @Override
+    public boolean makeTransfer(Long sourceAccountId, Long destinationAccountId, BigDecimal sum,
+                                Long feeAccountId, BigDecimal fee) {
+        return await(makeTransferAsync(sourceAccountId, destinationAccountId, sum, feeAccountId, fee));
+    }
+
+    // sum + fee are debited in one step on the source shard; the credits then run on their own shards
+    public CompletableFuture<Boolean> makeTransferAsync(Long sourceAccountId, Long destinationAccountId, BigDecimal sum,
+                                                        Long feeAccountId, BigDecimal fee) {
+        return admit(() -> transfer(sourceAccountId, destinationAccountId, sum, feeAccountId, fee));
+    }
+
+    private CompletableFuture<Boolean> transfer(Long sourceAccountId, Long destinationAccountId, BigDecimal sum,
+                                                Long feeAccountId, BigDecimal fee) {
+        Shard source = shard(sourceAccountId);
+        Shard destination = shard(destinationAccountId);
+        Shard feeShard = shard(feeAccountId);
+
+        return source.submit(() -> {
+            Account sourceAccount = source.find(sourceAccountId, "No source account");
+            if (destination.accountDao.getById(destinationAccountId) == null) {
+                throw new AccountException("No destination account");
+            }
+            if (feeShard.accountDao.getById(feeAccountId) == null) {
+                throw new AccountException("No fee account");
+            }
+            if (sum.compareTo(BigDecimal.ZERO) <= 0 || fee.signum() < 0) {
+                return false;
+            }
+            return debit(sourceAccount, sum.add(fee));
+        }).thenCompose(debited -> {
+            if (!debited) {
+                return CompletableFuture.completedFuture(false);
+            }
+            CompletableFuture<Boolean> credited = destination.submit(() -> {
+                credit(destination.find(destinationAccountId, "No destination account"), sum);
+                return true;
+            });
+            CompletableFuture<Boolean> feeCredited = feeShard.submit(() -> {
+                credit(feeShard.find(feeAccountId, "No fee account"), fee);
+                return true;
+            });
+            return credited.thenCombine(feeCredited, (destinationDone, feeDone) -> true);
+        });
+    }
+
+    @Override
+    public void applyBalanceChanges(Map<Long, BigDecimal> changes) {
+        if (!enter()) {
+            throw new IllegalStateException("Account service is closed");
+        }
+        try {
+            applyAdmitted(changes);
+        } finally {
+            exit();
+        }
+    }
+
+    private void applyAdmitted(Map<Long, BigDecimal> changes) {
+        for (Long accountId : changes.keySet()) {
+            if (shard(accountId).accountDao.findById(accountId).isEmpty()) {
+                throw new AccountException("No account " + accountId);
+            }
+        }
+
+        Map<Shard, Map<Long, BigDecimal>> changesByShard = new HashMap<>();
+        for (Map.Entry<Long, BigDecimal> change : changes.entrySet()) {
+            changesByShard.computeIfAbsent(shard(change.getKey()), shard -> new HashMap<>())
+                    .put(change.getKey(), change.getValue());
+        }
+
+        // Like a transfer: every shard checks and takes its debits on its own thread, all or none of them,
+        // and only when every shard succeeded are the credits sent; otherwise the taken debits are returned
+        Map<Shard, CompletableFuture<Boolean>> debits = new HashMap<>();
+        for (Map.Entry<Shard, Map<Long, BigDecimal>> shardChanges : changesByShard.entrySet()) {
+            Shard shard = shardChanges.getKey();
+            debits.put(shard, shard.submit(() -> debitAll(shard, shardChanges.getValue())));
+        }
+        boolean covered = true;
+        for (CompletableFuture<Boolean> debit : debits.values()) {
+            covered &= await(debit);
+        }
+
+        List<CompletableFuture<Boolean>> results = new ArrayList<>(changesByShard.size());
+        for (Map.Entry<Shard, Map<Long, BigDecimal>> shardChanges : changesByShard.entrySet()) {
+            Shard shard = shardChanges.getKey();
+            if (!covered && !debits.get(shard).join()) {
+                continue;
+            }
+            boolean apply = covered;
+            results.add(shard.submit(() -> {
+                for (Map.Entry<Long, BigDecimal> change : shardChanges.getValue().entrySet()) {
+                    BigDecimal amount = change.getValue();
+                    if (apply ? amount.signum() > 0 : amount.signum() < 0) {
+                        credit(shard.find(change.getKey(), "No account " + change.getKey()), amount.abs());
+                    }
+                }
+                return true;
+            }));
+        }
+        await(CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])));
+        if (!covered) {
+            throw new InsufficientFundsException("Insufficient funds");
+        }
+    }
+
+    // Runs on the shard's thread: false, with nothing taken, if any debit of the shard does not fit
+    private static boolean debitAll(Shard shard, Map<Long, BigDecimal> changes) {
+        for (Map.Entry<Long, BigDecimal> change : changes.entrySet()) {
+            BigDecimal amount = change.getValue();
+            if (amount.signum() < 0
+                    && shard.find(change.getKey(), "No account " + change.getKey()).getAmount().add(amount).signum() < 0) {
+                return false;
+            }
+        }
+        for (Map.Entry<Long, BigDecimal> change : changes.entrySet()) {
+            if (change.getValue().signum() < 0) {
+                credit(shard.find(change.getKey(), "No account " + change.getKey()), change.getValue());
+            }
+        }
+        return true;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    // New operations are rejected at once; the admitted ones finish, so no credit meets a stopped shard.
+    // Every shard stops accepting before any is joined.
+    @Override
+    public void close() {
+        boolean interrupted = false;
+        synchronized (shutdownLock) {
+            closed = true;
+            while (inFlight > 0) {
+                try {
+                    shutdownLock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        for (Shard shard : shards) {
+            shard.stopAccepting();
+        }
+        for (Shard shard : shards) {
+            interrupted |= shard.join();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> CompletableFuture<T> admit(Supplier<CompletableFuture<T>> operation) {
+        if (!enter()) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Account service is closed"));
+        }
+        CompletableFuture<T> result;
+        try {
+            result = operation.get();
+        } catch (RuntimeException | Error e) {
+            exit();
+            throw e;
+        }
+        return result.whenComplete((value, error) -> exit());
+    }
+
+    private boolean enter() {
+        synchronized (shutdownLock) {
+            if (closed) {
+                return false;
+            }
+            inFlight++;
+            return true;
+        }
+    }
+
+    private void exit() {
+        synchronized (shutdownLock) {
+            if (--inFlight == 0) {
+                shutdownLock.notifyAll();
+            }
+        }
+    }
+
+    private static boolean debit(Account account, BigDecimal sum) {
+        if (sum.compareTo(BigDecimal.ZERO) <= 0) {
+            return false;
+        }
+        if (account.getAmount().compareTo(sum) < 0) {
+            return false;
+        }
+        account.setAmount(account.getAmount().subtract(sum));
+        return true;
+    }
+
+    private static void credit(Account account, BigDecimal sum) {
+        account.setAmount(account.getAmount().add(sum));
+    }
+
+    private Shard shard(Long accountId) {
+        if (accountId == null) {
+            throw new AccountException("No account");
+        }
+        return shards[(int) Math.floorMod(accountId, (long) shards.length)];
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static final class Shard {
+
+        private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+        final AccountDao accountDao = new AccountDao();
+
+        private final ConcurrentLinkedQueue<Runnable> queue = new ConcurrentLinkedQueue<>();
+
+        private final Thread worker;
+
+        private volatile boolean parked;
+
+        // written under the shard's monitor, which submit holds from the check to the offer
+        private volatile boolean running = true;
+
+        Shard(int index) {
+            worker = new Thread(this::run, "account-shard-" + index);
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        <T> CompletableFuture<T> submit(Supplier<T> command) {
+            CompletableFuture<T> result = new CompletableFuture<>();
+            synchronized (this) {
+                if (!running) {
+                    result.completeExceptionally(new IllegalStateException("Shard is stopped"));
+                    return result;
+                }
+                queue.offer(() -> {
+                    try {
+                        result.complete(command.get());
+                    } catch (Throwable e) {
+                        result.completeExceptionally(e);
+                    }
+                });
+            }
+            if (parked) {
+                LockSupport.unpark(worker);
+            }
+            return result;
+        }
+
+        Account find(Long accountId, String missingMessage) {
+            return accountDao.findById(accountId).orElseThrow(() -> new AccountException(missingMessage));
+        }
+
+        synchronized void stopAccepting() {
+            running = false;
+            LockSupport.unpark(worker);
+        }
+
+        // Waits for the worker to drain the queue; true if the wait was interrupted
+        boolean join() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    worker.join();
+                    return interrupted;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+
+        private void run() {
+            while (true) {
+                Runnable command = queue.poll();
+                if (command != null) {
+                    command.run();
+                    continue;
+                }
+                // every command offered before running was cleared is visible by now
+                if (!running && queue.isEmpty()) {
+                    return;
+                }
+                parked = true;
+                if (queue.isEmpty() && running) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                parked = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package ru.otus.bank.service.impl;
+
+import ru.otus.bank.dao.AccountRepository;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class StripedLockAccountServiceImpl extends AccountServiceImpl {
+
+    public static final int DEFAULT_STRIPES = 1024;
+
+    private final ReentrantLock[] locks;
+
+    private final int mask;
+
+    public StripedLockAccountServiceImpl(AccountRepository accountDao) {
+        this(accountDao, DEFAULT_STRIPES);
+    }
+
+    public StripedLockAccountServiceImpl(AccountRepository accountDao, int stripes) {
+        super(accountDao);
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("stripes must be positive: " + stripes);
+        }
+        int size = 1;
+        while (size < stripes) {
+            size <<= 1;
+        }
+        locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        mask = size - 1;
+    }
+
+    @Override
+    public boolean charge(Long accountId, BigDecimal chargeAmount) {
+        ReentrantLock lock = locks[stripe(accountId)];
+        lock(lock, "charge");
+        try {
+            return super.charge(accountId, chargeAmount);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean makeTransfer(Long sourceAccountId, Long destinationAccountId, BigDecimal sum) {
+        int sourceStripe = stripe(sourceAccountId);
+        int destinationStripe = stripe(destinationAccountId);
+        if (sourceStripe == destinationStripe) {
+            ReentrantLock lock = locks[sourceStripe];
+            lock(lock, "makeTransfer");
+            try {
+                return super.makeTransfer(sourceAccountId, destinationAccountId, sum);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Several ids share a stripe, so the global order is the stripe order, not the raw id order
+        ReentrantLock first = locks[Math.min(sourceStripe, destinationStripe)];
+        ReentrantLock second = locks[Math.max(sourceStripe, destinationStripe)];
+        lock(first, "makeTransfer");
+        try {
+            lock(second, "makeTransfer");
+            try {
+                return super.makeTransfer(sourceAccountId, destinationAccountId, sum);
+            } finally {
+                second.unlock();
+            }
+        } finally {
+            first.unlock();
+        }
+    }
+
+    @Override
+    public boolean makeTransfer(Long sourceAccountId, Long destinationAccountId, BigDecimal sum,
+                                Long feeAccountId, BigDecimal fee) {
+        int sourceStripe = stripe(sourceAccountId);
+        int destinationStripe = stripe(destinationAccountId);
+        int feeStripe = stripe(feeAccountId);
+        int low = Math.min(sourceStripe, Math.min(destinationStripe, feeStripe));
+        int high = Math.max(sourceStripe, Math.max(destinationStripe, feeStripe));
+        int middle = sourceStripe + destinationStripe + feeStripe - low - high;
+
+        // The fee account is usually hot, so it is locked in stripe order like the other two
+        lock(locks[low], "makeTransfer");
+        try {
+            if (middle != low) {
+                lock(locks[middle], "makeTransfer");
+            }
+            try {
+                if (high != middle) {
+                    lock(locks[high], "makeTransfer");
+                }
+                try {
+                    return super.makeTransfer(sourceAccountId, destinationAccountId, sum, feeAccountId, fee);
+                } finally {
+                    if (high != middle) {
+                        locks[high].unlock();
+                    }
+                }
+            } finally {
+                if (middle != low) {
+                    locks[middle].unlock();
+                }
+            }
+        } finally {
+            locks[low].unlock();
+        }
+    }
+
+    @Override
+    public void applyBalanceChanges(Map<Long, BigDecimal> changes) {
+        TreeSet<Integer> stripes = new TreeSet<>();
+        for (Long accountId : changes.keySet()) {
+            stripes.add(stripe(accountId));
+        }
+
+        List<ReentrantLock> held = new ArrayList<>(stripes.size());
+        try {
+            for (Integer stripe : stripes) {
+                ReentrantLock lock = locks[stripe];
+                lock(lock, "applyBalanceChanges");
+                held.add(lock);
+            }
+            super.applyBalanceChanges(changes);
+        } finally {
+            for (int i = held.size() - 1; i >= 0; i--) {
+                held.get(i).unlock();
+            }
+        }
+    }
+
+    // For subclasses that update one account outside the methods above; the caller unlocks
+    ReentrantLock lockStripe(Long accountId, String operation) {
+        ReentrantLock lock = locks[stripe(accountId)];
+        lock(lock, operation);
+        return lock;
+    }
+
+    private void lock(ReentrantLock lock, String operation) {
+        if (!lock.tryLock()) {
+            contentionListener.onContention(operation);
+            lock.lock();
+        }
+    }
+
+    int stripe(Long accountId) {
+        if (accountId == null) {
+            return 0;
+        }
+        long id = accountId;
+        int hash = (int) (id ^ (id >>> 32));
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,114 @@
+package ru.otus.bank.service.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+public class OperationMetrics implements OperationMetricsMXBean {
+
+    // Reasons come from exception messages; past this many distinct ones they are counted together
+    static final int MAX_REASONS = 32;
+
+    static final String OTHER_REASON = "other";
+
+    private final String name;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private final LongAdder successes = new LongAdder();
+
+    private final LongAdder contention = new LongAdder();
+
+    private final ConcurrentHashMap<String, LongAdder> failures = new ConcurrentHashMap<>();
+
+    OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    public void recordLatency(long nanos) {
+        latency.record(nanos);
+    }
+
+    public void recordSuccess() {
+        successes.increment();
+    }
+
+    public void recordFailure(String reason) {
+        LongAdder counter = failures.get(reason);
+        if (counter == null) {
+            String key = failures.size() < MAX_REASONS ? reason : OTHER_REASON;
+            counter = failures.computeIfAbsent(key, ignored -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    public void recordContention() {
+        contention.increment();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCount() {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getSuccesses() {
+        return successes.sum();
+    }
+
+    @Override
+    public long getFailures() {
+        long total = 0;
+        for (LongAdder counter : failures.values()) {
+            total += counter.sum();
+        }
+        return total;
+    }
+
+    @Override
+    public Map<String, Long> getFailuresByReason() {
+        Map<String, Long> result = new TreeMap<>();
+        failures.forEach((reason, counter) -> result.put(reason, counter.sum()));
+        return result;
+    }
+
+    @Override
+    public long getContention() {
+        return contention.sum();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return latency.getMean() / 1000;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return latency.getPercentile(50) / 1000.0;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return latency.getPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return latency.getPercentile(99.9) / 1000.0;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return latency.getMax() / 1000.0;
+    }
+}
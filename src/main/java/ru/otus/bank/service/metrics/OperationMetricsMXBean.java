@@ -0,0 +1,28 @@
+package ru.otus.bank.service.metrics;
+
+import java.util.Map;
+
+public interface OperationMetricsMXBean {
+
+    String getName();
+
+    long getCount();
+
+    long getSuccesses();
+
+    long getFailures();
+
+    Map<String, Long> getFailuresByReason();
+
+    long getContention();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+}
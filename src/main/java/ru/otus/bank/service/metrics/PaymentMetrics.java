@@ -0,0 +1,110 @@
+package ru.otus.bank.service.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// Registry of per-operation metrics, published as one MXBean per operation and as a plain text page
+public class PaymentMetrics {
+
+    public static final String JMX_DOMAIN = "ru.otus.bank";
+
+    private final ConcurrentSkipListMap<String, OperationMetrics> operations = new ConcurrentSkipListMap<>();
+
+    private final Map<String, ObjectName> registered = new ConcurrentHashMap<>();
+
+    private volatile MBeanServer mBeanServer;
+
+    public OperationMetrics operation(String name) {
+        OperationMetrics metrics = operations.get(name);
+        if (metrics != null) {
+            return metrics;
+        }
+        metrics = operations.computeIfAbsent(name, OperationMetrics::new);
+        MBeanServer server = mBeanServer;
+        if (server != null) {
+            register(server, metrics);
+        }
+        return metrics;
+    }
+
+    public Iterable<OperationMetrics> getOperations() {
+        return operations.values();
+    }
+
+    public void registerMBeans() {
+        registerMBeans(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    public synchronized void registerMBeans(MBeanServer server) {
+        mBeanServer = server;
+        for (OperationMetrics metrics : operations.values()) {
+            register(server, metrics);
+        }
+    }
+
+    public synchronized void unregisterMBeans() {
+        MBeanServer server = mBeanServer;
+        mBeanServer = null;
+        if (server == null) {
+            return;
+        }
+        for (ObjectName name : registered.values()) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                // already gone
+            }
+        }
+        registered.clear();
+    }
+
+    // One line per value in the Prometheus text format
+    public String render() {
+        StringBuilder text = new StringBuilder();
+        for (OperationMetrics metrics : operations.values()) {
+            String operation = "operation=\"" + escape(metrics.getName()) + "\"";
+            line(text, "payment_operation_count", operation, metrics.getCount());
+            line(text, "payment_operation_successes", operation, metrics.getSuccesses());
+            for (Map.Entry<String, Long> failure : metrics.getFailuresByReason().entrySet()) {
+                line(text, "payment_operation_failures", operation + ",reason=\"" + escape(failure.getKey()) + "\"",
+                        failure.getValue());
+            }
+            line(text, "payment_operation_contention", operation, metrics.getContention());
+            line(text, "payment_operation_latency_micros", operation + ",quantile=\"0.5\"", metrics.getP50Micros());
+            line(text, "payment_operation_latency_micros", operation + ",quantile=\"0.99\"", metrics.getP99Micros());
+            line(text, "payment_operation_latency_micros", operation + ",quantile=\"0.999\"", metrics.getP999Micros());
+            line(text, "payment_operation_latency_micros_max", operation, metrics.getMaxMicros());
+            line(text, "payment_operation_latency_micros_mean", operation, metrics.getMeanMicros());
+        }
+        return text.toString();
+    }
+
+    private void register(MBeanServer server, OperationMetrics metrics) {
+        try {
+            ObjectName name = new ObjectName(JMX_DOMAIN + ":type=PaymentMetrics,operation=" + ObjectName.quote(metrics.getName()));
+            if (registered.putIfAbsent(metrics.getName(), name) == null && !server.isRegistered(name)) {
+                server.registerMBean(metrics, name);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register metrics for " + metrics.getName(), e);
+        }
+    }
+
+    private static void line(StringBuilder text, String metric, String labels, long value) {
+        text.append(metric).append('{').append(labels).append("} ").append(value).append('\n');
+    }
+
+    private static void line(StringBuilder text, String metric, String labels, double value) {
+        text.append(metric).append('{').append(labels).append("} ").append(String.format(Locale.ROOT, "%.3f", value)).append('\n');
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
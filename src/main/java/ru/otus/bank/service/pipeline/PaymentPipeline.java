@@ -0,0 +1,306 @@
+package ru.otus.bank.service.pipeline;
+
+import ru.otus.bank.dao.AccountRepository;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.TransferRequest;
+import ru.otus.bank.service.TransferResult;
+
+import java.io.Closeable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Transfers flow through a preallocated ring of slots: resolve (agreement and type -> account),
+// execute (balance check and update) and publish (save through the repository and notify).
+// Each stage is one thread that owns a sequence counter and follows the stage before it, so slots
+// are handed over by publishing sequences and whole runs of ready slots are processed at once.
+// The execute stage is the only writer of balances, so the pipeline must own the accounts it moves money between.
+public class PaymentPipeline implements Closeable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 14;
+
+    static final TransferResult ACCOUNT_NOT_FOUND = TransferResult.failed("Account not found");
+
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final AccountRepository accountDao;
+
+    private final TransferListener listener;
+
+    private final TransferSlot[] slots;
+
+    private final int mask;
+
+    // slot index -> sequence last written into it, lets the resolve stage see slots filled out of claim order
+    private final AtomicLongArray available;
+
+    private final AtomicLong claimed = new AtomicLong(-1);
+
+    private final AtomicLong resolved = new AtomicLong(-1);
+
+    private final AtomicLong executed = new AtomicLong(-1);
+
+    private final AtomicLong published = new AtomicLong(-1);
+
+    private final List<Thread> stages = new ArrayList<>(3);
+
+    private final AtomicLong listenerFailures = new AtomicLong();
+
+    private volatile RuntimeException lastListenerFailure;
+
+    // publishers between their check of accepting and the slot they fill; close waits for them to drain
+    private final AtomicInteger publishing = new AtomicInteger();
+
+    private volatile boolean accepting = true;
+
+    // stages stop once this is cleared and every claimed slot is published
+    private volatile boolean running = true;
+
+    public PaymentPipeline(AccountRepository accountDao) {
+        this(accountDao, DEFAULT_BUFFER_SIZE, TransferListener.NONE);
+    }
+
+    public PaymentPipeline(AccountRepository accountDao, int bufferSize, TransferListener listener) {
+        if (bufferSize <= 0 || Integer.bitCount(bufferSize) != 1) {
+            throw new IllegalArgumentException("bufferSize must be a power of two: " + bufferSize);
+        }
+        this.accountDao = accountDao;
+        this.listener = listener;
+        slots = new TransferSlot[bufferSize];
+        available = new AtomicLongArray(bufferSize);
+        for (int i = 0; i < bufferSize; i++) {
+            slots[i] = new TransferSlot();
+            available.set(i, -1);
+        }
+        mask = bufferSize - 1;
+
+        startStage("resolve", this::availableUpTo, resolved, this::resolve);
+        startStage("execute", next -> resolved.get(), executed, this::execute);
+        startStage("publish", next -> executed.get(), published, this::publish);
+    }
+
+    // Fire-and-forget submission, the outcome is delivered to the listener
+    public long publish(Agreement source, Agreement destination, int sourceType, int destinationType, BigDecimal amount) {
+        return publish(source, destination, sourceType, destinationType, amount, null);
+    }
+
+    public TransferResult makeTransfer(Agreement source, Agreement destination, int sourceType,
+                                       int destinationType, BigDecimal amount) {
+        CompletableFuture<TransferResult> completion = new CompletableFuture<>();
+        publish(source, destination, sourceType, destinationType, amount, completion);
+        return completion.join();
+    }
+
+    public List<TransferResult> makeTransfers(List<TransferRequest> requests) {
+        List<CompletableFuture<TransferResult>> completions = new ArrayList<>(requests.size());
+        for (TransferRequest request : requests) {
+            CompletableFuture<TransferResult> completion = new CompletableFuture<>();
+            publish(request.source(), request.destination(), request.sourceType(), request.destinationType(),
+                    request.amount(), completion);
+            completions.add(completion);
+        }
+
+        List<TransferResult> results = new ArrayList<>(requests.size());
+        for (CompletableFuture<TransferResult> completion : completions) {
+            results.add(completion.join());
+        }
+        return results;
+    }
+
+    public void awaitPublished(long sequence) {
+        int idle = 0;
+        while (published.get() < sequence) {
+            idle = idle(idle);
+        }
+    }
+
+    public long getPublishedSequence() {
+        return published.get();
+    }
+
+    public int getBufferSize() {
+        return slots.length;
+    }
+
+    public long getListenerFailures() {
+        return listenerFailures.get();
+    }
+
+    public RuntimeException getLastListenerFailure() {
+        return lastListenerFailure;
+    }
+
+    // Stops after everything already claimed has been published. Publishers that got past the accepting check
+    // finish filling their slot first, so no claimed slot is left behind for stages that have already stopped.
+    @Override
+    public void close() {
+        accepting = false;
+        int idle = 0;
+        while (publishing.get() != 0) {
+            idle = idle(idle);
+        }
+        running = false;
+        for (Thread stage : stages) {
+            LockSupport.unpark(stage);
+        }
+        for (Thread stage : stages) {
+            try {
+                stage.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private long publish(Agreement source, Agreement destination, int sourceType, int destinationType,
+                         BigDecimal amount, CompletableFuture<TransferResult> completion) {
+        publishing.incrementAndGet();
+        try {
+            if (!accepting) {
+                throw new IllegalStateException("Pipeline is closed");
+            }
+            long sequence = claimed.incrementAndGet();
+            int idle = 0;
+            while (published.get() < sequence - slots.length) {
+                idle = idle(idle);
+            }
+
+            TransferSlot slot = slots[index(sequence)];
+            slot.sourceAgreementId = source.getId();
+            slot.destinationAgreementId = destination.getId();
+            slot.sourceType = sourceType;
+            slot.destinationType = destinationType;
+            slot.amount = amount;
+            slot.sourceAccount = null;
+            slot.destinationAccount = null;
+            slot.result = null;
+            slot.completion = completion;
+            available.lazySet(index(sequence), sequence);
+            return sequence;
+        } finally {
+            publishing.decrementAndGet();
+        }
+    }
+
+    private void resolve(long sequence, TransferSlot slot) {
+        slot.sourceAccount = accountDao.findByAgreementIdAndType(slot.sourceAgreementId, slot.sourceType).orElse(null);
+        slot.destinationAccount = accountDao.findByAgreementIdAndType(slot.destinationAgreementId, slot.destinationType)
+                .orElse(null);
+        if (slot.sourceAccount == null || slot.destinationAccount == null) {
+            slot.result = ACCOUNT_NOT_FOUND;
+        }
+    }
+
+    private void execute(long sequence, TransferSlot slot) {
+        if (slot.result != null) {
+            return;
+        }
+        Account source = slot.sourceAccount;
+        BigDecimal amount = slot.amount;
+        if (amount.compareTo(BigDecimal.ZERO) <= 0 || source.getAmount().compareTo(amount) < 0) {
+            slot.result = TransferResult.rejected();
+            return;
+        }
+        source.setAmount(source.getAmount().subtract(amount));
+        slot.destinationAccount.setAmount(slot.destinationAccount.getAmount().add(amount));
+        slot.result = TransferResult.success();
+    }
+
+    private void publish(long sequence, TransferSlot slot) {
+        try {
+            if (slot.result.isSuccess()) {
+                accountDao.saveAll(slot.sourceAccount, slot.destinationAccount);
+            }
+        } catch (RuntimeException e) {
+            slot.result = TransferResult.failed(e.getMessage());
+        }
+
+        CompletableFuture<TransferResult> completion = slot.completion;
+        slot.completion = null;
+        try {
+            listener.onTransfer(sequence, slot);
+        } catch (RuntimeException e) {
+            // a failing listener must not stop the pipeline, the failure is counted and kept instead
+            listenerFailures.incrementAndGet();
+            lastListenerFailure = e;
+        }
+        if (completion != null) {
+            completion.complete(slot.result);
+        }
+    }
+
+    private void startStage(String name, UpstreamSequence upstream, AtomicLong sequence, SlotHandler handler) {
+        Thread stage = new Thread(() -> runStage(upstream, sequence, handler), "payment-pipeline-" + name);
+        stage.setDaemon(true);
+        stages.add(stage);
+        stage.start();
+    }
+
+    private void runStage(UpstreamSequence upstream, AtomicLong sequence, SlotHandler handler) {
+        long next = sequence.get() + 1;
+        int idle = 0;
+        while (true) {
+            long last = Math.min(upstream.highest(next), next + mask);
+            if (last < next) {
+                if (!running && next > claimed.get()) {
+                    return;
+                }
+                idle = idle(idle);
+                continue;
+            }
+
+            for (long current = next; current <= last; current++) {
+                TransferSlot slot = slots[index(current)];
+                try {
+                    handler.handle(current, slot);
+                } catch (RuntimeException e) {
+                    slot.result = TransferResult.failed(e.getMessage());
+                }
+            }
+            sequence.lazySet(last);
+            next = last + 1;
+            idle = 0;
+        }
+    }
+
+    private long availableUpTo(long next) {
+        long sequence = next;
+        while (available.get(index(sequence)) == sequence) {
+            sequence++;
+        }
+        return sequence - 1;
+    }
+
+    private int index(long sequence) {
+        return (int) sequence & mask;
+    }
+
+    private static int idle(int idle) {
+        if (idle < 100) {
+            Thread.onSpinWait();
+        } else if (idle < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return idle + 1;
+    }
+
+    @FunctionalInterface
+    private interface UpstreamSequence {
+        long highest(long next);
+    }
+
+    @FunctionalInterface
+    private interface SlotHandler {
+        void handle(long sequence, TransferSlot slot);
+    }
+}
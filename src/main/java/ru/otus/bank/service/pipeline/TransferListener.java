@@ -0,0 +1,11 @@
+package ru.otus.bank.service.pipeline;
+
+// Called on the publish stage thread; the slot is reused once the call returns
+@FunctionalInterface
+public interface TransferListener {
+
+    TransferListener NONE = (sequence, slot) -> {
+    };
+
+    void onTransfer(long sequence, TransferSlot slot);
+}
@@ -0,0 +1,64 @@
+package ru.otus.bank.service.pipeline;
+
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.service.TransferResult;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+
+// Preallocated, reused ring buffer entry. Every field is written by exactly one stage per sequence.
+public final class TransferSlot {
+
+    Long sourceAgreementId;
+
+    Long destinationAgreementId;
+
+    int sourceType;
+
+    int destinationType;
+
+    BigDecimal amount;
+
+    Account sourceAccount;
+
+    Account destinationAccount;
+
+    TransferResult result;
+
+    CompletableFuture<TransferResult> completion;
+
+    TransferSlot() {
+    }
+
+    public Long getSourceAgreementId() {
+        return sourceAgreementId;
+    }
+
+    public Long getDestinationAgreementId() {
+        return destinationAgreementId;
+    }
+
+    public int getSourceType() {
+        return sourceType;
+    }
+
+    public int getDestinationType() {
+        return destinationType;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public Account getSourceAccount() {
+        return sourceAccount;
+    }
+
+    public Account getDestinationAccount() {
+        return destinationAccount;
+    }
+
+    public TransferResult getResult() {
+        return result;
+    }
+}
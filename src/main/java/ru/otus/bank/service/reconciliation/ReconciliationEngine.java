@@ -0,0 +1,144 @@
+package ru.otus.bank.service.reconciliation;
+
+import ru.otus.bank.dao.AccountRepository;
+import ru.otus.bank.dao.ledger.Ledger;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.FixedPointMoney;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+// End-of-day totals per agreement, per account type and overall, split over a fork-join pool.
+// Balances come from the ledger as of one transaction id, so the totals are a consistent cut even while
+// transfers keep running. Accounts the ledger has not opened yet are opened with their stored amount, as the
+// ledger service does on first use, so they take part in the cut as well. Each stored amount is then compared
+// with the account's ledger balance at the cut and the differences are reported.
+public class ReconciliationEngine {
+
+    private final AccountRepository accountDao;
+
+    private final Ledger ledger;
+
+    private final ForkJoinPool pool;
+
+    public ReconciliationEngine(AccountRepository accountDao, Ledger ledger) {
+        this(accountDao, ledger, ForkJoinPool.commonPool());
+    }
+
+    public ReconciliationEngine(AccountRepository accountDao, Ledger ledger, ForkJoinPool pool) {
+        this.accountDao = accountDao;
+        this.ledger = ledger;
+        this.pool = pool;
+    }
+
+    public ReconciliationReport reconcile() {
+        long transactionId = ledger.getTransactionCount();
+        // Streams run their parallel stages in the pool of the task that starts them
+        return pool.submit(() -> reconcile(transactionId)).join();
+    }
+
+    private ReconciliationReport reconcile(long transactionId) {
+        Totals totals = accountDao.stream().parallel()
+                .collect(Totals::new, (result, account) -> result.add(account, transactionId), Totals::merge);
+
+        Sum[] ledgerSums = ledger.accountIds().parallel()
+                .collect(() -> new Sum[]{new Sum(), new Sum()}, (result, accountId) -> {
+                    result[0].add(ledger.getOpeningBalanceMinor(accountId));
+                    result[1].add(ledger.getBalanceMinorAt(accountId, transactionId));
+                }, (left, right) -> {
+                    left[0].merge(right[0]);
+                    left[1].merge(right[1]);
+                });
+
+        Map<Long, BigDecimal> totalsByAgreement = new HashMap<>(totals.byAgreement.size() * 2);
+        totals.byAgreement.forEach((agreementId, sum) -> totalsByAgreement.put(agreementId, sum.value()));
+        Map<Integer, BigDecimal> totalsByType = new HashMap<>(totals.byType.size() * 2);
+        totals.byType.forEach((type, sum) -> totalsByType.put(type, sum.value()));
+
+        return new ReconciliationReport(transactionId, totals.count, totals.total.value(),
+                totalsByAgreement, totalsByType, totals.storeTotal.value(), totals.differences,
+                ledgerSums[0].value(), ledgerSums[1].value(),
+                FixedPointMoney.toBigDecimal(ledger.getBalanceMinorAt(Ledger.EXTERNAL_ACCOUNT, transactionId)));
+    }
+
+    private final class Totals {
+
+        final Map<Long, Sum> byAgreement = new HashMap<>();
+
+        final Map<Integer, Sum> byType = new HashMap<>();
+
+        final Sum total = new Sum();
+
+        final Sum storeTotal = new Sum();
+
+        // accountId -> stored amount minus ledger balance at the cut, only accounts where they differ
+        final Map<Long, BigDecimal> differences = new HashMap<>();
+
+        long count;
+
+        void add(Account account, long transactionId) {
+            BigDecimal stored = account.getAmount() == null ? BigDecimal.ZERO : account.getAmount();
+            // postings made after opening all have ids above transactionId, so a freshly opened account is
+            // at its opening balance in the cut
+            ledger.openAccountIfAbsent(account.getId(), stored);
+            long balance = ledger.getBalanceMinorAt(account.getId(), transactionId);
+
+            byAgreement.computeIfAbsent(account.getAgreementId(), key -> new Sum()).add(balance);
+            byType.computeIfAbsent(account.getType(), key -> new Sum()).add(balance);
+            total.add(balance);
+            storeTotal.add(stored);
+            BigDecimal difference = stored.subtract(FixedPointMoney.toBigDecimal(balance));
+            if (difference.signum() != 0) {
+                differences.put(account.getId(), difference);
+            }
+            count++;
+        }
+
+        Totals merge(Totals other) {
+            other.byAgreement.forEach((key, sum) -> byAgreement.merge(key, sum, Sum::merge));
+            other.byType.forEach((key, sum) -> byType.merge(key, sum, Sum::merge));
+            total.merge(other.total);
+            storeTotal.merge(other.storeTotal);
+            differences.putAll(other.differences);
+            count += other.count;
+            return this;
+        }
+    }
+
+    // Exact sum: minor units while they fit in a long, BigDecimal for the rest
+    private static final class Sum {
+
+        long minor;
+
+        BigDecimal exact = BigDecimal.ZERO;
+
+        void add(long amountMinor) {
+            try {
+                minor = Math.addExact(minor, amountMinor);
+            } catch (ArithmeticException e) {
+                exact = exact.add(FixedPointMoney.toBigDecimal(amountMinor));
+            }
+        }
+
+        void add(BigDecimal amount) {
+            if (amount.scale() <= FixedPointMoney.SCALE && amount.precision() - amount.scale() < 17) {
+                add(FixedPointMoney.toMinor(amount));
+            } else {
+                exact = exact.add(amount);
+            }
+        }
+
+        Sum merge(Sum other) {
+            add(other.minor);
+            exact = exact.add(other.exact);
+            return this;
+        }
+
+        BigDecimal value() {
+            BigDecimal result = FixedPointMoney.toBigDecimal(minor);
+            return exact.signum() == 0 ? result : result.add(exact);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package ru.otus.bank.service.reconciliation;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+// Ledger amounts are as of transactionId; storeTotal and differences compare them with the amounts in the account
+// repository, read while the reconciliation ran. ledgerTotal includes externalBalance, the net of charges and
+// unbalanced batches.
+public record ReconciliationReport(long transactionId, long accountCount, BigDecimal total,
+                                   Map<Long, BigDecimal> totalsByAgreement, Map<Integer, BigDecimal> totalsByType,
+                                   BigDecimal storeTotal, Map<Long, BigDecimal> differences,
+                                   BigDecimal ledgerOpeningTotal, BigDecimal ledgerTotal, BigDecimal externalBalance) {
+
+    // Every stored amount matches the account's ledger balance at the cut
+    public boolean isBalanced() {
+        return differences.isEmpty();
+    }
+
+    // Stored total minus ledger total over the accounts in the repository, the sum of differences
+    public BigDecimal difference() {
+        return storeTotal.subtract(total);
+    }
+}
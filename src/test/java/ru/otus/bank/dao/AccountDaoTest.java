@@ -0,0 +1,143 @@
+package ru.otus.bank.dao;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.entity.Account;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AccountDaoTest {
+
+    AccountDao accountDao;
+
+    @BeforeEach
+    public void init() {
+        accountDao = new AccountDao();
+    }
+
+    @Test
+    public void testFindByAgreementId() {
+        Account first = accountDao.save(account(1L, 0));
+        Account second = accountDao.save(account(1L, 1));
+        accountDao.save(account(2L, 0));
+
+        List<Account> result = (List<Account>) accountDao.findByAgreementId(1L);
+
+        assertEquals(2, result.size());
+        assertTrue(result.contains(first));
+        assertTrue(result.contains(second));
+        assertTrue(((List<Account>) accountDao.findByAgreementId(3L)).isEmpty());
+    }
+
+    @Test
+    public void testFindByAgreementIdAndType() {
+        Account account = accountDao.save(account(1L, 1));
+
+        Optional<Account> result = accountDao.findByAgreementIdAndType(1L, 1);
+
+        assertTrue(result.isPresent());
+        assertSame(account, result.get());
+        assertFalse(accountDao.findByAgreementIdAndType(1L, 0).isPresent());
+    }
+
+    @Test
+    public void testSeveralAccountsOfOneType() {
+        Account first = accountDao.save(account(1L, 0));
+        Account second = accountDao.save(account(1L, 0));
+
+        assertEquals(List.of(first, second), accountDao.findByAgreementId(1L));
+        assertSame(first, accountDao.findByAgreementIdAndType(1L, 0).get());
+
+        first.setAgreementId(2L);
+        accountDao.save(first);
+        assertEquals(List.of(second), accountDao.findByAgreementId(1L));
+        assertSame(second, accountDao.findByAgreementIdAndType(1L, 0).get());
+    }
+
+    @Test
+    public void testIndexFollowsSave() {
+        Account account = accountDao.save(account(1L, 0));
+
+        account.setAgreementId(2L);
+        account.setType(1);
+        accountDao.save(account);
+
+        assertFalse(accountDao.findByAgreementIdAndType(1L, 0).isPresent());
+        assertSame(account, accountDao.findByAgreementIdAndType(2L, 1).get());
+        assertFalse(accountDao.agreementIndex.containsKey(1L));
+    }
+
+    @Test
+    public void testFindPageIsOrderedById() {
+        for (long id : new long[]{50, 7, 30, 1000, 8}) {
+            Account account = account(1L, (int) id);
+            account.setId(id);
+            accountDao.save(account);
+        }
+        accountDao.save(accountDao.getById(30L));
+
+        assertEquals(List.of(7L, 8L, 30L), accountDao.findPage(null, 3).stream().map(Account::getId).toList());
+        assertEquals(List.of(50L, 1000L), accountDao.findPage(30L, 3).stream().map(Account::getId).toList());
+        assertTrue(accountDao.findPage(1000L, 3).isEmpty());
+        assertEquals(5, accountDao.stream().count());
+    }
+
+    @Test
+    public void testConcurrentSavesOfOneAccountLeaveOneIndexEntry() throws InterruptedException {
+        long accountId = accountDao.save(account(1L, 0)).getId();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            long agreementId = t + 1;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    Account copy = account(i % 2 == 0 ? agreementId : 1L, 0);
+                    copy.setId(accountId);
+                    accountDao.save(copy);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Long agreementId = accountDao.getById(accountId).getAgreementId();
+        for (long id = 1; id <= 4; id++) {
+            boolean indexed = accountDao.findByAgreementId(id).iterator().hasNext();
+            assertEquals(id == agreementId, indexed, "agreement " + id);
+        }
+    }
+
+    @Test
+    public void testListenersHearTypeChangesAndMoves() {
+        List<Long> changed = new ArrayList<>();
+        accountDao.addAgreementListener(changed::add);
+        Account account = accountDao.save(account(1L, 0));
+        accountDao.save(account);
+        account.setType(1);
+        accountDao.save(account);
+        account.setAgreementId(2L);
+        accountDao.save(account);
+        account.setAgreementId(null);
+        accountDao.save(account);
+
+        assertEquals(List.of(1L, 1L, 1L, 2L, 2L), changed);
+    }
+
+    private Account account(Long agreementId, Integer type) {
+        Account account = new Account();
+        account.setAgreementId(agreementId);
+        account.setType(type);
+        account.setAmount(BigDecimal.TEN);
+        return account;
+    }
+}
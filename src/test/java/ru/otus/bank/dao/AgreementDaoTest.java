@@ -0,0 +1,85 @@
+package ru.otus.bank.dao;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.exception.AgreementException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AgreementDaoTest {
+
+    AgreementDao agreementDao;
+
+    @BeforeEach
+    public void init() {
+        agreementDao = new AgreementDao();
+    }
+
+    @Test
+    public void testFindByName() {
+        Agreement agreement = agreementDao.addAgreement("Client1");
+        agreementDao.addAgreement("Client2");
+
+        assertEquals(agreement.getId(), agreementDao.findByName("Client1").get().getId());
+        assertFalse(agreementDao.findByName("Client3").isPresent());
+    }
+
+    @Test
+    public void testDuplicateNameRejected() {
+        agreementDao.addAgreement("Client1");
+
+        Agreement duplicate = new Agreement();
+        duplicate.setName("Client1");
+
+        AgreementException result = assertThrows(AgreementException.class, () -> agreementDao.save(duplicate));
+        assertEquals("Agreement with name Client1 already exists", result.getLocalizedMessage());
+        assertNull(duplicate.getId());
+        assertThrows(AgreementException.class, () -> agreementDao.addAgreement("Client1"));
+    }
+
+    @Test
+    public void testRename() {
+        Agreement agreement = agreementDao.addAgreement("Client1");
+
+        agreement.setName("Client2");
+        agreementDao.save(agreement);
+
+        assertFalse(agreementDao.findByName("Client1").isPresent());
+        assertTrue(agreementDao.findByName("Client2").isPresent());
+        agreementDao.addAgreement("Client1");
+    }
+
+    @Test
+    public void testConcurrentAddAgreement() throws InterruptedException {
+        int threads = 8;
+        int agreementsPerThread = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            executor.execute(() -> {
+                for (int i = 0; i < agreementsPerThread; i++) {
+                    agreementDao.addAgreement("Client" + thread + "_" + i);
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        assertEquals(threads * agreementsPerThread, agreementDao.agreementMap.size());
+        assertEquals(threads * agreementsPerThread, agreementDao.nameIndex.size());
+        assertTrue(agreementDao.findByName("Client7_999").isPresent());
+    }
+}
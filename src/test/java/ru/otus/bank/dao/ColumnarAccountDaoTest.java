@@ -0,0 +1,204 @@
+package ru.otus.bank.dao;
+
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.impl.OptimisticAccountServiceImpl;
+import ru.otus.bank.service.impl.StripedLockAccountServiceImpl;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ColumnarAccountDaoTest {
+
+    @Test
+    public void testSaveAndFind() {
+        ColumnarAccountDao accountDao = new ColumnarAccountDao();
+        Account account = accountDao.save(account(1L, 0, "Client1_acc1", new BigDecimal("10.50")));
+        accountDao.save(account(1L, 1, "Client1_acc2", BigDecimal.ONE));
+        accountDao.save(account(2L, 0, "Client2_acc1", null));
+
+        Account found = accountDao.findById(account.getId()).get();
+        assertEquals("Client1_acc1", found.getNumber());
+        assertEquals(new BigDecimal("10.50"), found.getAmount());
+        assertEquals(0, found.getType());
+        assertEquals(1L, found.getAgreementId());
+
+        assertEquals(2, ((List<Account>) accountDao.findByAgreementId(1L)).size());
+        assertEquals("Client1_acc2", accountDao.findByAgreementIdAndType(1L, 1).get().getNumber());
+        assertFalse(accountDao.findByAgreementIdAndType(2L, 1).isPresent());
+        assertNull(accountDao.findByAgreementIdAndType(2L, 0).get().getAmount());
+        assertFalse(accountDao.findById(100L).isPresent());
+        assertNull(accountDao.getById(100L));
+        assertEquals(3, accountDao.stream().count());
+    }
+
+    @Test
+    public void testUpdatesAreVisibleToScans() {
+        ColumnarAccountDao accountDao = new ColumnarAccountDao();
+        List<Long> ids = new ArrayList<>();
+        // more rows than one chunk, so the scans cross chunk boundaries
+        for (int i = 0; i < ColumnarAccountDao.CHUNK_ROWS * 2 + 10; i++) {
+            ids.add(accountDao.save(account((long) i % 3, i, "acc" + i, new BigDecimal(i))).getId());
+        }
+
+        Account moved = accountDao.findById(ids.get(1)).get();
+        moved.setAgreementId(0L);
+        moved.setAmount(new BigDecimal("-0.99"));
+        accountDao.save(moved);
+
+        BigDecimal expectedTotal = BigDecimal.ZERO;
+        BigDecimal expectedAgreement0 = BigDecimal.ZERO;
+        int expectedCount0 = 0;
+        for (Account account : accountDao.findAll()) {
+            expectedTotal = expectedTotal.add(account.getAmount());
+            if (account.getAgreementId() == 0L) {
+                expectedAgreement0 = expectedAgreement0.add(account.getAmount());
+                expectedCount0++;
+            }
+        }
+        assertEquals(0, expectedTotal.compareTo(accountDao.totalAmount()));
+        assertEquals(0, expectedAgreement0.compareTo(accountDao.totalAmountByAgreementId(0L)));
+        assertEquals(expectedCount0, accountDao.countByAgreementId(0L));
+        assertEquals(expectedCount0, ((List<Account>) accountDao.findByAgreementId(0L)).size());
+        assertEquals(ids.get(1), accountDao.findByAgreementIdAndType(0L, 1).get().getId());
+    }
+
+    @Test
+    public void testTotalOfLargeBalancesIsExact() {
+        ColumnarAccountDao accountDao = new ColumnarAccountDao();
+        BigDecimal large = new BigDecimal(Long.MAX_VALUE / 2).movePointLeft(2);
+        BigDecimal expected = BigDecimal.ZERO;
+        for (int i = 0; i < 8; i++) {
+            accountDao.save(account(1L, i, "acc" + i, large));
+            expected = expected.add(large);
+        }
+        accountDao.save(account(1L, 8, "acc8", large.negate()));
+        expected = expected.subtract(large);
+
+        assertEquals(0, expected.compareTo(accountDao.totalAmount()));
+        assertEquals(0, expected.compareTo(accountDao.totalAmountByAgreementId(1L)));
+    }
+
+    @Test
+    public void testNumbersAreInterned() {
+        ColumnarAccountDao accountDao = new ColumnarAccountDao();
+        Account account = accountDao.save(account(1L, 0, "shared", BigDecimal.ONE));
+        accountDao.save(account(2L, 0, "shared", BigDecimal.ONE));
+        accountDao.save(account);
+
+        assertEquals(1, accountDao.getInternedNumbers());
+        assertEquals("shared", accountDao.getById(account.getId()).getNumber());
+    }
+
+    @Test
+    public void testConcurrentTransfers() throws InterruptedException {
+        ColumnarAccountDao accountDao = new ColumnarAccountDao();
+        StripedLockAccountServiceImpl accountService = new StripedLockAccountServiceImpl(accountDao);
+        Agreement agreement = new Agreement();
+        agreement.setId(1L);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            ids.add(accountService.addAccount(agreement, "acc" + i, i, new BigDecimal(100)).getId());
+        }
+
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 10_000; i++) {
+                    // self-transfers included: both sides are views of the same row
+                    accountService.makeTransfer(ids.get(random.nextInt(ids.size())),
+                            ids.get(random.nextInt(ids.size())), new BigDecimal(random.nextInt(1, 20)));
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        assertEquals(0, new BigDecimal(1000).compareTo(accountDao.totalAmount()));
+    }
+
+    @Test
+    public void testRejectsUnrepresentableValues() {
+        ColumnarAccountDao accountDao = new ColumnarAccountDao();
+        assertThrows(IllegalArgumentException.class,
+                () -> accountDao.save(account(1L, 0, "acc", new BigDecimal("0.001"))));
+        assertThrows(IllegalArgumentException.class,
+                () -> accountDao.save(account(ColumnarAccountDao.NO_AGREEMENT, 0, "acc", BigDecimal.ONE)));
+    }
+
+    @Test
+    public void testAccountsShareTheRowBalance() {
+        ColumnarAccountDao accountDao = new ColumnarAccountDao();
+        StripedLockAccountServiceImpl accountService = new StripedLockAccountServiceImpl(accountDao);
+        Agreement agreement = new Agreement();
+        agreement.setId(1L);
+        Long source = accountService.addAccount(agreement, "acc1", 0, new BigDecimal(100)).getId();
+        Long destination = accountService.addAccount(agreement, "acc2", 1, BigDecimal.ZERO).getId();
+
+        Account view = accountDao.findById(source).get();
+        assertTrue(accountService.makeTransfer(source, source, BigDecimal.TEN));
+        assertTrue(accountService.makeTransfer(source, destination, BigDecimal.TEN, source, BigDecimal.ONE));
+
+        assertEquals(new BigDecimal(90), accountDao.getById(source).getAmount());
+        assertEquals(new BigDecimal(90), view.getAmount());
+        assertEquals(BigDecimal.TEN, accountDao.getById(destination).getAmount());
+        assertEquals(0, new BigDecimal(100).compareTo(accountDao.totalAmount()));
+        assertThrows(IllegalArgumentException.class, () -> view.setAmount(new BigDecimal("0.001")));
+    }
+
+    @Test
+    public void testOptimisticTransfersConserveTotal() throws InterruptedException {
+        ColumnarAccountDao accountDao = new ColumnarAccountDao();
+        OptimisticAccountServiceImpl accountService = new OptimisticAccountServiceImpl(accountDao);
+        Agreement agreement = new Agreement();
+        agreement.setId(1L);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            ids.add(accountService.addAccount(agreement, "acc" + i, i, new BigDecimal(1000)).getId());
+        }
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 5000; i++) {
+                    accountService.makeTransfer(ids.get(random.nextInt(ids.size())),
+                            ids.get(random.nextInt(ids.size())), BigDecimal.ONE);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, new BigDecimal(8000).compareTo(accountDao.totalAmount()));
+    }
+
+    private Account account(Long agreementId, Integer type, String number, BigDecimal amount) {
+        Account account = new Account();
+        account.setAgreementId(agreementId);
+        account.setType(type);
+        account.setNumber(number);
+        account.setAmount(amount);
+        return account;
+    }
+}
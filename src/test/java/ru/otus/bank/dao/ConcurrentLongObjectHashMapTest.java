@@ -0,0 +1,89 @@
+package ru.otus.bank.dao;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConcurrentLongObjectHashMapTest {
+
+    @Test
+    public void testMatchesHashMap() {
+        ConcurrentLongObjectHashMap<String> map = new ConcurrentLongObjectHashMap<>(4, 4);
+        Map<Long, String> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100_000; i++) {
+            long key = random.nextInt(5000) - 2500;
+            switch (random.nextInt(4)) {
+                case 0 -> assertEquals(expected.remove(key), map.remove(key));
+                case 1 -> assertEquals(expected.putIfAbsent(key, "p" + i), map.putIfAbsent(key, "p" + i));
+                default -> assertEquals(expected.put(key, "v" + i), map.put(key, "v" + i));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (long key = -2500; key < 2500; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+        assertEquals(new HashSet<>(expected.values()), map.stream().collect(Collectors.toSet()));
+        assertNull(map.get(ConcurrentLongObjectHashMap.EMPTY_KEY));
+    }
+
+    @Test
+    public void testReadersSeeEveryPublishedEntry() throws InterruptedException {
+        ConcurrentLongObjectHashMap<Long> map = new ConcurrentLongObjectHashMap<>();
+        int writers = 4;
+        int keysPerWriter = 50_000;
+        ExecutorService executor = Executors.newFixedThreadPool(writers + 2);
+        CountDownLatch written = new CountDownLatch(writers);
+        AtomicInteger mismatches = new AtomicInteger();
+
+        for (int w = 0; w < writers; w++) {
+            long first = (long) w * keysPerWriter;
+            executor.execute(() -> {
+                for (long key = first; key < first + keysPerWriter; key++) {
+                    map.put(key, key);
+                    // a key this writer has put must be readable with its value, even while other segments grow
+                    Long value = map.get(key);
+                    if (value == null || value != key) {
+                        mismatches.incrementAndGet();
+                    }
+                }
+                written.countDown();
+            });
+        }
+        for (int r = 0; r < 2; r++) {
+            executor.execute(() -> {
+                while (written.getCount() > 0) {
+                    for (Long value : map.values()) {
+                        if (map.get(value) != value) {
+                            mismatches.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        assertTrue(written.await(30, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(0, mismatches.get());
+        assertEquals(writers * keysPerWriter, map.size());
+        Set<Long> values = map.stream().parallel().collect(Collectors.toSet());
+        assertEquals(writers * keysPerWriter, values.size());
+    }
+}
@@ -0,0 +1,83 @@
+package ru.otus.bank.dao;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConcurrentSortedLongSetTest {
+
+    @Test
+    public void testMatchesTreeSet() {
+        ConcurrentSortedLongSet set = new ConcurrentSortedLongSet(2);
+        TreeSet<Long> expected = new TreeSet<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 20_000; i++) {
+            // mostly increasing like DAO ids, with some restored out of order
+            long value = random.nextInt(10) == 0 ? random.nextInt(5000) - 2500 : i;
+            assertEquals(expected.add(value), set.add(value));
+        }
+
+        assertEquals(expected.size(), set.size());
+        long[] page = new long[100];
+        for (long after : new long[]{Long.MIN_VALUE, -2500, -1, 0, 4999, 19_900, 20_000}) {
+            int count = set.copyAfter(after, page, 100);
+            List<Long> actual = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                actual.add(page[i]);
+            }
+            assertEquals(expected.tailSet(after, false).stream().limit(100).toList(), actual);
+        }
+        assertEquals(3, set.copyAfter(Long.MIN_VALUE, page, 3));
+    }
+
+    @Test
+    public void testConcurrentAddsAndScans() throws InterruptedException {
+        ConcurrentSortedLongSet set = new ConcurrentSortedLongSet();
+        AtomicBoolean unordered = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int t = 0; t < 3; t++) {
+                int offset = t;
+                executor.execute(() -> {
+                    for (long value = offset; value < 30_000; value += 3) {
+                        set.add(value);
+                    }
+                });
+            }
+            executor.execute(() -> {
+                long[] page = new long[64];
+                while (set.size() < 30_000) {
+                    int count = set.copyAfter(Long.MIN_VALUE, page, page.length);
+                    for (int i = 1; i < count; i++) {
+                        if (page[i - 1] >= page[i]) {
+                            unordered.set(true);
+                        }
+                    }
+                }
+            });
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        assertFalse(unordered.get());
+
+        assertEquals(30_000, set.size());
+        long[] all = new long[30_000];
+        assertEquals(30_000, set.copyAfter(-1, all, all.length));
+        for (int i = 0; i < all.length; i++) {
+            assertEquals(i, all[i]);
+        }
+    }
+}
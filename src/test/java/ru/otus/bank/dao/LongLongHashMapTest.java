@@ -0,0 +1,38 @@
+package ru.otus.bank.dao;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class LongLongHashMapTest {
+
+    @Test
+    public void testMatchesHashMap() {
+        LongLongHashMap map = new LongLongHashMap(4, -1);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100_000; i++) {
+            long key = random.nextInt(5000) - 2500;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.getOrDefault(key, -1L), map.remove(key));
+                expected.remove(key);
+            } else {
+                long value = random.nextInt(1000);
+                assertEquals(expected.getOrDefault(key, -1L), map.put(key, value));
+                expected.put(key, value);
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (long key = -2500; key < 2500; key++) {
+            assertEquals(expected.getOrDefault(key, -1L), map.get(key));
+        }
+        assertFalse(map.containsKey(3000));
+    }
+}
@@ -0,0 +1,43 @@
+package ru.otus.bank.dao;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class LongObjectHashMapTest {
+
+    @Test
+    public void testMatchesHashMap() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>(4);
+        Map<Long, String> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100_000; i++) {
+            long key = random.nextInt(5000) - 2500;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                String value = "v" + random.nextInt(1000);
+                assertEquals(expected.put(key, value), map.put(key, value));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (long key = -2500; key < 2500; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+        int[] values = new int[1];
+        map.forEachValue(value -> values[0]++);
+        assertEquals(expected.size(), values[0]);
+        assertFalse(map.containsKey(3000));
+        assertNull(map.get(LongObjectHashMap.EMPTY_KEY));
+        assertThrows(IllegalArgumentException.class, () -> map.put(LongObjectHashMap.EMPTY_KEY, "v"));
+    }
+}
@@ -0,0 +1,185 @@
+package ru.otus.bank.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.impl.OptimisticAccountServiceImpl;
+import ru.otus.bank.service.impl.StripedLockAccountServiceImpl;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MappedAccountDaoTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testFindPage() throws IOException {
+        try (MappedAccountDao accountDao = new MappedAccountDao(dir.resolve("accounts.dat"))) {
+            List<Long> ids = new ArrayList<>();
+            for (int i = 0; i < 25; i++) {
+                ids.add(accountDao.save(account(1L, i, "acc" + i, BigDecimal.ONE)).getId());
+            }
+
+            List<Long> paged = new ArrayList<>();
+            Long afterId = null;
+            List<Account> page;
+            while (!(page = accountDao.findPage(afterId, 10)).isEmpty()) {
+                page.forEach(account -> paged.add(account.getId()));
+                afterId = page.get(page.size() - 1).getId();
+            }
+            assertEquals(ids, paged);
+            assertEquals(25, accountDao.stream().count());
+        }
+    }
+
+    @Test
+    public void testSaveAndFind() throws IOException {
+        try (MappedAccountDao accountDao = new MappedAccountDao(dir.resolve("accounts.dat"))) {
+            Account account = accountDao.save(account(1L, 0, "Client1_acc1", new BigDecimal("10.50")));
+            accountDao.save(account(1L, 1, "Client1_acc2", BigDecimal.ONE));
+            accountDao.save(account(2L, 0, "Client2_acc1", BigDecimal.ZERO));
+
+            Account found = accountDao.findById(account.getId()).get();
+            assertEquals("Client1_acc1", found.getNumber());
+            assertEquals(new BigDecimal("10.50"), found.getAmount());
+            assertEquals(0, found.getType());
+            assertEquals(1L, found.getAgreementId());
+
+            assertEquals(2, ((List<Account>) accountDao.findByAgreementId(1L)).size());
+            assertEquals("Client1_acc2", accountDao.findByAgreementIdAndType(1L, 1).get().getNumber());
+            assertFalse(accountDao.findByAgreementIdAndType(2L, 1).isPresent());
+            assertFalse(accountDao.findById(100L).isPresent());
+            assertEquals("Client1_acc1", accountDao.getById(account.getId()).getNumber());
+            assertNull(accountDao.getById(100L));
+        }
+    }
+
+    @Test
+    public void testAgreementChange() throws IOException {
+        try (MappedAccountDao accountDao = new MappedAccountDao(dir.resolve("accounts.dat"))) {
+            Account first = accountDao.save(account(1L, 0, "acc1", BigDecimal.ONE));
+            Account second = accountDao.save(account(1L, 1, "acc2", BigDecimal.ONE));
+
+            first.setAgreementId(2L);
+            accountDao.save(first);
+
+            List<Account> accounts = (List<Account>) accountDao.findByAgreementId(1L);
+            assertEquals(1, accounts.size());
+            assertEquals(second.getId(), accounts.get(0).getId());
+            assertEquals(first.getId(), accountDao.findByAgreementIdAndType(2L, 0).get().getId());
+        }
+    }
+
+    @Test
+    public void testStoreSurvivesReopen() throws IOException {
+        Path file = dir.resolve("accounts.dat");
+        List<Long> ids = new ArrayList<>();
+        try (MappedAccountDao accountDao = new MappedAccountDao(file)) {
+            StripedLockAccountServiceImpl accountService = new StripedLockAccountServiceImpl(accountDao);
+            Agreement agreement = new Agreement();
+            agreement.setId(1L);
+            for (int i = 0; i < 10; i++) {
+                ids.add(accountService.addAccount(agreement, "acc" + i, i, new BigDecimal(100)).getId());
+            }
+            assertTrue(accountService.makeTransfer(ids.get(0), ids.get(1), new BigDecimal(30)));
+            assertTrue(accountDao.setAmount(ids.get(2), new BigDecimal("99.99")));
+        }
+
+        try (MappedAccountDao accountDao = new MappedAccountDao(file)) {
+            assertEquals(10, accountDao.size());
+            assertEquals(new BigDecimal(70), accountDao.getAmount(ids.get(0)).get());
+            assertEquals(new BigDecimal(130), accountDao.findById(ids.get(1)).get().getAmount());
+            assertEquals(new BigDecimal("99.99"), accountDao.findById(ids.get(2)).get().getAmount());
+            assertEquals(10, ((List<Account>) accountDao.findByAgreementId(1L)).size());
+
+            Account account = accountDao.save(account(1L, 10, "acc10", BigDecimal.ZERO));
+            assertEquals(ids.get(9) + 1, account.getId());
+        }
+    }
+
+    @Test
+    public void testRejectsOversizedValues() throws IOException {
+        try (MappedAccountDao accountDao = new MappedAccountDao(dir.resolve("accounts.dat"))) {
+            assertThrows(IllegalArgumentException.class,
+                    () -> accountDao.save(account(1L, 0, "a".repeat(30), BigDecimal.ONE)));
+            assertThrows(IllegalArgumentException.class,
+                    () -> accountDao.save(account(1L, 0, "acc", new BigDecimal("1e30").setScale(2))));
+        }
+    }
+
+    @Test
+    public void testAccountsShareTheRecordBalance() throws IOException {
+        try (MappedAccountDao accountDao = new MappedAccountDao(dir.resolve("accounts.dat"))) {
+            StripedLockAccountServiceImpl accountService = new StripedLockAccountServiceImpl(accountDao);
+            Agreement agreement = new Agreement();
+            agreement.setId(1L);
+            Long source = accountService.addAccount(agreement, "acc1", 0, new BigDecimal(100)).getId();
+            Long destination = accountService.addAccount(agreement, "acc2", 1, BigDecimal.ZERO).getId();
+
+            Account view = accountDao.findById(source).get();
+            assertTrue(accountService.makeTransfer(source, source, BigDecimal.TEN));
+            assertTrue(accountService.makeTransfer(source, destination, BigDecimal.TEN, source, BigDecimal.ONE));
+
+            assertEquals(new BigDecimal(90), accountDao.getAmount(source).get());
+            assertEquals(new BigDecimal(90), view.getAmount());
+            assertEquals(BigDecimal.TEN, accountDao.getAmount(destination).get());
+        }
+    }
+
+    @Test
+    public void testOptimisticTransfersConserveTotal() throws Exception {
+        try (MappedAccountDao accountDao = new MappedAccountDao(dir.resolve("accounts.dat"))) {
+            OptimisticAccountServiceImpl accountService = new OptimisticAccountServiceImpl(accountDao);
+            Agreement agreement = new Agreement();
+            agreement.setId(1L);
+            List<Long> ids = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                ids.add(accountService.addAccount(agreement, "acc" + i, i, new BigDecimal(1000)).getId());
+            }
+
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                Thread thread = new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 5000; i++) {
+                        accountService.makeTransfer(ids.get(random.nextInt(ids.size())),
+                                ids.get(random.nextInt(ids.size())), BigDecimal.ONE);
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            BigDecimal total = BigDecimal.ZERO;
+            for (Long id : ids) {
+                total = total.add(accountDao.getAmount(id).get());
+            }
+            assertEquals(new BigDecimal(8000), total);
+        }
+    }
+
+    private Account account(Long agreementId, Integer type, String number, BigDecimal amount) {
+        Account account = new Account();
+        account.setAgreementId(agreementId);
+        account.setType(type);
+        account.setNumber(number);
+        account.setAmount(amount);
+        return account;
+    }
+}
@@ -0,0 +1,323 @@
+package ru.otus.bank.dao.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.impl.AccountServiceImpl;
+import ru.otus.bank.service.impl.AgreementServiceImpl;
+import ru.otus.bank.service.impl.StripedLockAccountServiceImpl;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class JournalStoreTest {
+
+    private static final JournalConfig CONFIG = new JournalConfig(64, 5, 4096, 8192);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testReplayRestoresState() throws IOException {
+        Path path = dir.resolve("journal");
+        Long sourceId;
+        Long destinationId;
+
+        try (JournalStore store = JournalStore.open(path, CONFIG)) {
+            AgreementServiceImpl agreementService = new AgreementServiceImpl(store.getAgreementDao());
+            AccountServiceImpl accountService = new AccountServiceImpl(store.getAccountDao());
+
+            Agreement client = agreementService.addAgreement("Client1");
+            Agreement bank = agreementService.addAgreement("Bank");
+            sourceId = accountService.addAccount(bank, "Bank_acc1", 0, new BigDecimal(1000)).getId();
+            destinationId = accountService.addAccount(client, "Client1_acc1", 0, new BigDecimal("0.50")).getId();
+
+            for (int i = 0; i < 1000; i++) {
+                accountService.makeTransfer(sourceId, destinationId, BigDecimal.ONE);
+            }
+            store.sync();
+        }
+
+        try (JournalStore store = JournalStore.open(path, CONFIG)) {
+            Account source = store.getAccountDao().findById(sourceId).get();
+            Account destination = store.getAccountDao().findById(destinationId).get();
+
+            assertEquals(new BigDecimal(0), source.getAmount());
+            assertEquals(new BigDecimal("1000.50"), destination.getAmount());
+            assertEquals("Bank_acc1", source.getNumber());
+            assertTrue(store.getAgreementDao().findByName("Client1").isPresent());
+            assertEquals(destination, store.getAccountDao().findByAgreementIdAndType(
+                    store.getAgreementDao().findByName("Client1").get().getId(), 0).get());
+
+            Agreement agreement = store.getAgreementDao().addAgreement("Client2");
+            assertEquals(3L, agreement.getId());
+        }
+    }
+
+    @Test
+    public void testTornTailIsDropped() throws IOException {
+        Path path = dir.resolve("journal");
+        try (JournalStore store = JournalStore.open(path, CONFIG)) {
+            store.getAgreementDao().addAgreement("Client1");
+            store.getAgreementDao().addAgreement("Client2");
+            store.sync();
+        }
+
+        long length;
+        try (FileChannel channel = FileChannel.open(path.resolve("journal-00000000000000000001.log"),
+                StandardOpenOption.WRITE)) {
+            length = channel.size();
+            channel.truncate(length - 3);
+        }
+
+        try (JournalStore store = JournalStore.open(path, CONFIG)) {
+            assertTrue(store.getAgreementDao().findByName("Client1").isPresent());
+            assertTrue(store.getAgreementDao().findByName("Client2").isEmpty());
+            assertEquals(1, store.getJournal().getLastSequence());
+
+            store.getAgreementDao().addAgreement("Client3");
+            store.sync();
+        }
+
+        try (JournalStore store = JournalStore.open(path, CONFIG)) {
+            assertTrue(store.getAgreementDao().findByName("Client3").isPresent());
+            assertEquals(2, store.getJournal().getLastSequence());
+        }
+    }
+
+    @Test
+    public void testSnapshotCompactsJournal() throws IOException {
+        Path path = dir.resolve("journal");
+        Long accountId;
+
+        try (JournalStore store = JournalStore.open(path, CONFIG)) {
+            AccountServiceImpl accountService = new AccountServiceImpl(store.getAccountDao());
+            Agreement agreement = store.getAgreementDao().addAgreement("Client1");
+            accountId = accountService.addAccount(agreement, "Client1_acc1", 0, BigDecimal.ZERO).getId();
+            for (int i = 0; i < 2000; i++) {
+                accountService.charge(accountId, BigDecimal.ONE.negate());
+                if (i % 100 == 0) {
+                    store.sync();
+                }
+            }
+            store.sync();
+            assertTrue(store.getJournal().getSegments().size() > 2);
+
+            int segments = store.getJournal().getSegments().size();
+            long sequence = store.snapshot();
+
+            // the first snapshot has no fallback yet, so the journal before it is kept
+            assertEquals(store.getJournal().getLastSequence(), sequence);
+            assertEquals(segments, store.getJournal().getSegments().size());
+            accountService.charge(accountId, BigDecimal.ONE.negate());
+            store.sync();
+
+            store.snapshot();
+            assertEquals(1, store.getJournal().getSegments().size());
+        }
+
+        try (JournalStore store = JournalStore.open(path, CONFIG)) {
+            assertTrue(store.getSnapshotSequence() > 0);
+            assertEquals(new BigDecimal(2001), store.getAccountDao().findById(accountId).get().getAmount());
+            assertEquals(2L, store.getAgreementDao().addAgreement("Client2").getId());
+            assertEquals(JournalStore.RETAINED_SNAPSHOTS, Snapshot.list(path).size());
+        }
+    }
+
+    @Test
+    public void testSnapshotDuringTransfers() throws Exception {
+        Path path = dir.resolve("journal");
+        List<Long> accountIds = new ArrayList<>();
+        Map<Long, BigDecimal> expected = new HashMap<>();
+
+        try (JournalStore store = JournalStore.open(path, CONFIG)) {
+            StripedLockAccountServiceImpl accountService = new StripedLockAccountServiceImpl(store.getAccountDao());
+            Agreement agreement = store.getAgreementDao().addAgreement("Client1");
+            for (int i = 0; i < 20; i++) {
+                accountIds.add(accountService.addAccount(agreement, "acc" + i, i, new BigDecimal(100)).getId());
+            }
+
+            AtomicBoolean running = new AtomicBoolean(true);
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                Thread thread = new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (running.get()) {
+                        accountService.makeTransfer(accountIds.get(random.nextInt(accountIds.size())),
+                                accountIds.get(random.nextInt(accountIds.size())), BigDecimal.ONE);
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            for (int i = 0; i < 5; i++) {
+                store.snapshot();
+            }
+            running.set(false);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            store.sync();
+            for (Account account : accountService.getAccounts()) {
+                expected.put(account.getId(), account.getAmount());
+            }
+        }
+
+        try (JournalStore store = JournalStore.open(path, CONFIG)) {
+            BigDecimal total = BigDecimal.ZERO;
+            for (Long accountId : accountIds) {
+                BigDecimal amount = store.getAccountDao().findById(accountId).get().getAmount();
+                assertEquals(expected.get(accountId), amount);
+                total = total.add(amount);
+            }
+            assertEquals(new BigDecimal(2000), total);
+        }
+    }
+
+    @Test
+    public void testTransferIsOneRecord() throws IOException {
+        Path path = dir.resolve("journal");
+        Long sourceId;
+        Long destinationId;
+        try (JournalStore store = JournalStore.open(path, CONFIG)) {
+            AccountServiceImpl accountService = new AccountServiceImpl(store.getAccountDao());
+            Agreement agreement = store.getAgreementDao().addAgreement("Client1");
+            sourceId = accountService.addAccount(agreement, "acc1", 0, new BigDecimal(100)).getId();
+            destinationId = accountService.addAccount(agreement, "acc2", 1, BigDecimal.ZERO).getId();
+            long before = store.getJournal().getLastSequence();
+
+            accountService.makeTransfer(sourceId, destinationId, BigDecimal.TEN);
+            store.sync();
+            assertEquals(before + 1, store.getJournal().getLastSequence());
+        }
+
+        try (FileChannel channel = FileChannel.open(path.resolve("journal-00000000000000000001.log"),
+                StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        // the torn transfer is dropped as a whole, neither side keeps half of it
+        try (JournalStore store = JournalStore.open(path, CONFIG)) {
+            assertEquals(new BigDecimal(100), store.getAccountDao().findById(sourceId).get().getAmount());
+            assertEquals(BigDecimal.ZERO, store.getAccountDao().findById(destinationId).get().getAmount());
+        }
+    }
+
+    @Test
+    public void testUnwritableRecordLeavesNoFrame() throws IOException {
+        Path path = dir.resolve("journal");
+        BigDecimal tooLarge = new BigDecimal(BigInteger.ONE.shiftLeft(300 * 8));
+        try (JournalStore store = JournalStore.open(path, CONFIG)) {
+            assertThrows(IllegalArgumentException.class, () -> store.getJournal().append(
+                    new JournalRecord.AccountSaved(1L, null, null, null, tooLarge)));
+            store.getAgreementDao().addAgreement("Client1");
+            store.sync();
+            assertEquals(1, store.getJournal().getLastSequence());
+        }
+
+        try (JournalStore store = JournalStore.open(path, CONFIG)) {
+            assertTrue(store.getAgreementDao().findByName("Client1").isPresent());
+            assertEquals(1, store.getJournal().getLastSequence());
+        }
+    }
+
+    @Test
+    public void testFallsBackToPreviousSnapshot() throws IOException {
+        Path path = dir.resolve("journal");
+        Long accountId;
+        try (JournalStore store = JournalStore.open(path, CONFIG)) {
+            AccountServiceImpl accountService = new AccountServiceImpl(store.getAccountDao());
+            Agreement agreement = store.getAgreementDao().addAgreement("Client1");
+            accountId = accountService.addAccount(agreement, "Client1_acc1", 0, BigDecimal.ZERO).getId();
+            for (int i = 0; i < 3; i++) {
+                for (int j = 0; j < 500; j++) {
+                    accountService.charge(accountId, BigDecimal.ONE.negate());
+                }
+                store.sync();
+                store.snapshot();
+            }
+            accountService.charge(accountId, BigDecimal.ONE.negate());
+            store.sync();
+        }
+
+        List<Path> snapshots = Snapshot.list(path);
+        assertEquals(JournalStore.RETAINED_SNAPSHOTS, snapshots.size());
+        try (FileChannel channel = FileChannel.open(snapshots.get(0), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+
+        try (JournalStore store = JournalStore.open(path, CONFIG)) {
+            assertEquals(Snapshot.sequenceOf(snapshots.get(1)), store.getSnapshotSequence());
+            assertEquals(new BigDecimal(1501), store.getAccountDao().findById(accountId).get().getAmount());
+        }
+    }
+
+    @Test
+    public void testSnapshotHoldsOnlyJournaledState() throws IOException {
+        Path path = dir.resolve("journal");
+        Long sourceId;
+        Long destinationId;
+        try (JournalStore store = JournalStore.open(path, CONFIG)) {
+            AccountServiceImpl accountService = new AccountServiceImpl(store.getAccountDao());
+            Agreement agreement = store.getAgreementDao().addAgreement("Client1");
+            sourceId = accountService.addAccount(agreement, "acc1", 0, new BigDecimal(100)).getId();
+            destinationId = accountService.addAccount(agreement, "acc2", 1, BigDecimal.ZERO).getId();
+
+            // a transfer half way through: the debit is applied in memory but not saved yet
+            store.getAccountDao().findById(sourceId).get().setAmount(new BigDecimal(90));
+            store.snapshot();
+        }
+
+        try (JournalStore store = JournalStore.open(path, CONFIG)) {
+            assertEquals(new BigDecimal(100), store.getAccountDao().findById(sourceId).get().getAmount());
+            assertEquals(BigDecimal.ZERO, store.getAccountDao().findById(destinationId).get().getAmount());
+        }
+    }
+
+    @Test
+    public void testSaveReturnsOnceDurable() throws IOException {
+        try (JournalStore store = JournalStore.open(dir.resolve("journal"), CONFIG)) {
+            AccountServiceImpl accountService = new AccountServiceImpl(store.getAccountDao());
+            Agreement agreement = store.getAgreementDao().addAgreement("Client1");
+            assertEquals(1, store.getJournal().getDurableSequence());
+
+            Long sourceId = accountService.addAccount(agreement, "acc1", 0, new BigDecimal(100)).getId();
+            Long destinationId = accountService.addAccount(agreement, "acc2", 1, BigDecimal.ZERO).getId();
+            accountService.makeTransfer(sourceId, destinationId, BigDecimal.TEN);
+
+            assertEquals(4, store.getJournal().getDurableSequence());
+        }
+    }
+
+    @Test
+    public void testFailedAppendLeavesMemoryUnchanged() throws IOException {
+        try (JournalStore store = JournalStore.open(dir.resolve("journal"), CONFIG)) {
+            AccountServiceImpl accountService = new AccountServiceImpl(store.getAccountDao());
+            Agreement agreement = store.getAgreementDao().addAgreement("Client1");
+            store.getJournal().close();
+
+            assertThrows(IllegalStateException.class,
+                    () -> accountService.addAccount(agreement, "acc1", 0, new BigDecimal(100)));
+            assertThrows(IllegalStateException.class, () -> store.getAgreementDao().addAgreement("Client2"));
+
+            assertFalse(store.getAccountDao().findAll().iterator().hasNext());
+            assertFalse(store.getAgreementDao().findByName("Client2").isPresent());
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package ru.otus.bank.dao.ledger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.service.exception.AccountException;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LedgerTest {
+
+    private static final Instant NOW = Instant.parse("2024-01-01T00:00:00Z");
+
+    Ledger ledger;
+
+    @BeforeEach
+    public void init() {
+        ledger = new Ledger(Clock.fixed(NOW, ZoneOffset.UTC));
+        ledger.openAccount(1, new BigDecimal(100));
+        ledger.openAccount(2, BigDecimal.ZERO);
+    }
+
+    @Test
+    public void testTransferPostsBothLegs() {
+        long transactionId = ledger.transfer(1, 2, new BigDecimal("30.50"));
+
+        assertEquals(new BigDecimal("69.50"), ledger.getBalance(1));
+        assertEquals(new BigDecimal("30.50"), ledger.getBalance(2));
+
+        Posting debit = ledger.getHistory(1, 0, 10).get(0);
+        Posting credit = ledger.getHistory(2, 0, 10).get(0);
+        assertEquals(new Posting(transactionId, 1, 2, new BigDecimal("-30.50"), new BigDecimal("69.50"), NOW), debit);
+        assertEquals(new Posting(transactionId, 2, 1, new BigDecimal("30.50"), new BigDecimal("30.50"), NOW), credit);
+        assertTrue(debit.isDebit());
+        assertFalse(credit.isDebit());
+    }
+
+    @Test
+    public void testTransferWithFeeIsOneTransaction() {
+        ledger.openAccount(3, BigDecimal.ZERO);
+
+        long transactionId = ledger.transfer(1, 2, new BigDecimal(50), 3, new BigDecimal("0.50"));
+
+        assertEquals(1, ledger.getTransactionCount());
+        assertEquals(new BigDecimal("49.50"), ledger.getBalance(1));
+        assertEquals(new BigDecimal("50.00"), ledger.getBalance(2));
+        assertEquals(new BigDecimal("0.50"), ledger.getBalance(3));
+        assertEquals(transactionId, ledger.getHistory(3, 0, 1).get(0).transactionId());
+
+        assertEquals(Ledger.NO_TRANSACTION, ledger.transfer(1, 2, new BigDecimal(49), 3, BigDecimal.ONE));
+        assertEquals(1, ledger.getTransactionCount());
+        assertEquals(new BigDecimal("49.50"), ledger.getBalance(1));
+    }
+
+    @Test
+    public void testRejectedTransferPostsNothing() {
+        assertEquals(Ledger.NO_TRANSACTION, ledger.transfer(1, 2, new BigDecimal(101)));
+        assertEquals(Ledger.NO_TRANSACTION, ledger.transfer(1, 2, BigDecimal.ZERO));
+        assertEquals(0, ledger.getPostingCount(1));
+        assertEquals(0, ledger.getTransactionCount());
+        assertThrows(AccountException.class, () -> ledger.transfer(1, 3, BigDecimal.ONE));
+    }
+
+    @Test
+    public void testChargeAndBatchBalanceAgainstExternalAccount() {
+        ledger.charge(1, BigDecimal.TEN);
+        ledger.post(Map.of(1L, new BigDecimal(-5), 2L, new BigDecimal(2)));
+
+        assertEquals(new BigDecimal("85.00"), ledger.getBalance(1));
+        assertEquals(new BigDecimal("2.00"), ledger.getBalance(2));
+        assertEquals(new BigDecimal("13.00"), ledger.getBalance(Ledger.EXTERNAL_ACCOUNT));
+        assertEquals(Ledger.EXTERNAL_ACCOUNT, ledger.getHistory(2, 0, 1).get(0).counterpartyAccountId());
+    }
+
+    @Test
+    public void testHistoryPagesAcrossChunks() {
+        int postings = PostingHistory.CHUNK_SIZE * 3 + 17;
+        ledger.openAccount(3, new BigDecimal(postings));
+        for (int i = 0; i < postings; i++) {
+            ledger.transfer(3, 2, BigDecimal.ONE);
+        }
+
+        assertEquals(postings, ledger.getPostingCount(3));
+        assertEquals(new BigDecimal("0.00"), ledger.getBalance(3));
+
+        List<Posting> all = new ArrayList<>();
+        for (int from = 0; from < postings; from += 100) {
+            all.addAll(ledger.getHistory(3, from, 100));
+        }
+        assertEquals(postings, all.size());
+        for (int i = 0; i < postings; i++) {
+            assertEquals(i + 1, all.get(i).transactionId());
+            assertEquals(new BigDecimal(postings - i - 1).setScale(2), all.get(i).balance());
+        }
+        assertTrue(ledger.getHistory(3, postings, 10).isEmpty());
+    }
+
+    @Test
+    public void testConcurrentTransfersConserveTotal() throws InterruptedException {
+        int accounts = 20;
+        for (long id = 10; id < 10 + accounts; id++) {
+            ledger.openAccount(id, new BigDecimal(1000));
+        }
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 10_000; i++) {
+                    long source = 10 + random.nextInt(accounts);
+                    long destination = 10 + random.nextInt(accounts);
+                    if (random.nextInt(10) == 0) {
+                        ledger.charge(source, BigDecimal.ONE);
+                    } else {
+                        ledger.transfer(source, destination, new BigDecimal(random.nextInt(1, 50)));
+                    }
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        BigDecimal total = ledger.getBalance(Ledger.EXTERNAL_ACCOUNT);
+        for (long id = 10; id < 10 + accounts; id++) {
+            BigDecimal balance = ledger.getBalance(id);
+            List<Posting> history = ledger.getHistory(id, 0, ledger.getPostingCount(id));
+            BigDecimal replayed = new BigDecimal(1000);
+            for (Posting posting : history) {
+                replayed = replayed.add(posting.amount());
+            }
+            assertEquals(0, replayed.compareTo(balance));
+            total = total.add(balance);
+        }
+        assertEquals(0, new BigDecimal(1000 * accounts).compareTo(total));
+    }
+}
@@ -0,0 +1,62 @@
+package ru.otus.bank.entity;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class FixedPointMoneyTest {
+
+    @Test
+    public void testConversion() {
+        assertEquals(2200, FixedPointMoney.toMinor(new BigDecimal(22)));
+        assertEquals(-150, FixedPointMoney.toMinor(new BigDecimal("-1.5")));
+        assertEquals(new BigDecimal("22.00"), FixedPointMoney.toBigDecimal(2200));
+        assertEquals(100_000, FixedPointMoney.toRate(new BigDecimal("0.1")));
+    }
+
+    @Test
+    public void testConversionRejectsLostPrecision() {
+        assertThrows(ArithmeticException.class, () -> FixedPointMoney.toMinor(new BigDecimal("0.001")));
+    }
+
+    @Test
+    public void testCommissionOfDecimals() {
+        assertEquals(new BigDecimal("2.26"), FixedPointMoney.commission(new BigDecimal("22.55"), new BigDecimal("0.1")));
+        assertEquals(new BigDecimal("-2.26"), FixedPointMoney.commission(new BigDecimal("-22.55"), new BigDecimal("0.1")));
+        assertEquals(new BigDecimal("0.01"), FixedPointMoney.commission(new BigDecimal("0.005"), BigDecimal.ONE));
+        assertEquals(new BigDecimal("1e20").setScale(2),
+                FixedPointMoney.commission(new BigDecimal("1e21"), new BigDecimal("0.1")));
+        assertEquals(226, FixedPointMoney.toMinor(new BigDecimal("2.255"), RoundingMode.HALF_UP));
+    }
+
+    @Test
+    public void testOverflow() {
+        assertThrows(ArithmeticException.class, () -> FixedPointMoney.add(Long.MAX_VALUE, 1));
+        assertThrows(ArithmeticException.class, () -> FixedPointMoney.subtract(Long.MIN_VALUE, 1));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "25, 100000, HALF_UP, 3",
+            "25, 100000, HALF_EVEN, 2",
+            "25, 100000, DOWN, 2",
+            "-25, 100000, HALF_UP, -3",
+            "-25, 100000, FLOOR, -3",
+            "-25, 100000, CEILING, -2",
+            "2200, 100000, HALF_UP, 220",
+            "7, 333333, UP, 3"
+    })
+    public void testCommission(long amountMinor, long rate, RoundingMode roundingMode, long expected) {
+        long result = FixedPointMoney.commission(amountMinor, rate, roundingMode);
+
+        assertEquals(expected, result);
+        assertEquals(BigDecimal.valueOf(amountMinor).multiply(BigDecimal.valueOf(rate, 6))
+                .setScale(0, roundingMode).longValueExact(), result);
+    }
+}
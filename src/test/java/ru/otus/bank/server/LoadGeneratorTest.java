@@ -0,0 +1,36 @@
+package ru.otus.bank.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LoadGeneratorTest {
+
+    @Test
+    public void testThroughputCountsToLastCompletion() {
+        long start = 1_000;
+        LoadGenerator.Recorder fast = new LoadGenerator.Recorder();
+        LoadGenerator.Recorder slow = new LoadGenerator.Recorder();
+        for (int i = 1; i <= 3; i++) {
+            fast.record(start, start + TimeUnit.MILLISECONDS.toNanos(500L * i), false);
+        }
+        // the last request of this client finishes well after the others
+        slow.record(start, start + TimeUnit.SECONDS.toNanos(4), true);
+
+        LoadGenerator.Report report = LoadGenerator.Report.of(new LoadGenerator.Recorder[]{fast, slow}, start);
+
+        assertEquals(4, report.requests());
+        assertEquals(1, report.errors());
+        assertEquals(1.0, report.throughput(), 1e-9);
+    }
+
+    @Test
+    public void testNoRequests() {
+        LoadGenerator.Report report = LoadGenerator.Report.of(new LoadGenerator.Recorder[]{new LoadGenerator.Recorder()}, 0);
+
+        assertEquals(0, report.requests());
+        assertEquals(0.0, report.throughput());
+    }
+}
@@ -0,0 +1,118 @@
+package ru.otus.bank.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.dao.AgreementDao;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.AccountService;
+import ru.otus.bank.service.AgreementService;
+import ru.otus.bank.service.impl.AgreementServiceImpl;
+import ru.otus.bank.service.impl.PaymentProcessorImpl;
+import ru.otus.bank.service.impl.StripedLockAccountServiceImpl;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TransferServerTest {
+
+    TransferServer server;
+
+    AccountService accountService;
+
+    HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    public void init() throws IOException {
+        AgreementService agreementService = new AgreementServiceImpl(new AgreementDao());
+        accountService = new StripedLockAccountServiceImpl(new AccountDao());
+
+        Agreement client1 = agreementService.addAgreement("Client1");
+        Agreement client2 = agreementService.addAgreement("Client2");
+        accountService.addAccount(client1, "Client1_acc1", 0, new BigDecimal(1000));
+        accountService.addAccount(client2, "Client2_acc1", 0, new BigDecimal(1000));
+
+        server = new TransferServer(new InetSocketAddress("localhost", 0), agreementService,
+                accountService, new PaymentProcessorImpl(accountService));
+        server.start();
+    }
+
+    @AfterEach
+    public void stop() {
+        server.close();
+    }
+
+    @Test
+    public void testTransferAndListAccounts() throws Exception {
+        HttpResponse<String> transfer = send("POST", "/transfer?source=Client1&destination=Client2&amount=10");
+        assertEquals(200, transfer.statusCode());
+        assertEquals("{\"success\":true}", transfer.body());
+
+        HttpResponse<String> accounts = send("GET", "/accounts?agreement=Client2");
+        assertEquals(200, accounts.statusCode());
+        assertTrue(accounts.body().contains("\"amount\":1010"));
+
+        HttpResponse<String> agreement = send("GET", "/agreements?name=Client1");
+        assertEquals("{\"id\":1,\"name\":\"Client1\"}", agreement.body());
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        assertEquals(404, send("GET", "/agreements?name=Unknown").statusCode());
+        assertEquals(400, send("POST", "/transfer?source=Client1&destination=Client2").statusCode());
+        assertEquals(405, send("GET", "/transfer?source=Client1&destination=Client2&amount=1").statusCode());
+        assertEquals(404, send("POST", "/charge?account=100&amount=1").statusCode());
+    }
+
+    @Test
+    public void testIdempotentRetry() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            HttpResponse<String> transfer = send("POST", "/transfer?source=Client1&destination=Client2&amount=10", "key-1");
+            assertEquals("{\"success\":true}", transfer.body());
+        }
+        assertEquals(400, send("POST", "/transfer?source=Client1&destination=Client2&amount=20", "key-1").statusCode());
+        send("POST", "/transfer?source=Client1&destination=Client2&amount=10", "key-2");
+
+        HttpResponse<String> accounts = send("GET", "/accounts?agreement=Client2");
+        assertTrue(accounts.body().contains("\"amount\":1020"));
+    }
+
+    @Test
+    public void testLoadGenerator() throws Exception {
+        LoadGenerator generator = new LoadGenerator(URI.create("http://localhost:" + server.getPort()));
+
+        LoadGenerator.Report report = generator.run(8, Duration.ofMillis(500));
+
+        assertTrue(report.requests() > 0);
+        assertEquals(0, report.errors());
+        BigDecimal total = BigDecimal.ZERO;
+        for (Account account : accountService.getAccounts()) {
+            total = total.add(account.getAmount());
+        }
+        assertEquals(new BigDecimal(2000), total);
+    }
+
+    private HttpResponse<String> send(String method, String path) throws Exception {
+        return send(method, path, null);
+    }
+
+    private HttpResponse<String> send(String method, String path, String idempotencyKey) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path))
+                .method(method, HttpRequest.BodyPublishers.noBody());
+        if (idempotencyKey != null) {
+            request.header("Idempotency-Key", idempotencyKey);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
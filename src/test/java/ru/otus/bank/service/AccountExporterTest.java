@@ -0,0 +1,86 @@
+package ru.otus.bank.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.impl.AccountServiceImpl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AccountExporterTest {
+
+    AccountService accountService;
+
+    @BeforeEach
+    public void init() {
+        accountService = new AccountServiceImpl(new AccountDao());
+        Agreement agreement = new Agreement();
+        agreement.setId(1L);
+        for (int i = 0; i < 250; i++) {
+            accountService.addAccount(agreement, "acc" + i, i, new BigDecimal("10.25").multiply(new BigDecimal(i)));
+        }
+        accountService.addAccount(agreement, "with, comma \"quoted\"", 1000, new BigDecimal("-1.5"));
+    }
+
+    @Test
+    public void testKeysetPagination() {
+        List<Account> all = new ArrayList<>();
+        Long afterId = null;
+        List<Account> page;
+        while (!(page = accountService.getAccountsPage(afterId, 100)).isEmpty()) {
+            assertTrue(page.size() <= 100);
+            all.addAll(page);
+            afterId = page.get(page.size() - 1).getId();
+        }
+
+        assertEquals(251, all.size());
+        for (int i = 1; i < all.size(); i++) {
+            assertTrue(all.get(i - 1).getId() < all.get(i).getId());
+        }
+    }
+
+    @Test
+    public void testCsvExport() throws IOException {
+        StringWriter writer = new StringWriter();
+
+        assertEquals(251, AccountExporter.exportCsv(accountService, writer));
+
+        String[] lines = writer.toString().split("\n");
+        assertEquals(252, lines.length);
+        assertEquals(AccountExporter.CSV_HEADER, lines[0]);
+        assertTrue(writer.toString().contains(",1000,\"with, comma \"\"quoted\"\"\",-1.5\n"));
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(251, AccountExporter.exportBinary(accountService, out));
+
+        List<Account> imported = new ArrayList<>();
+        assertEquals(251, AccountExporter.readBinary(new ByteArrayInputStream(out.toByteArray()), imported::add));
+
+        for (Account account : imported) {
+            Account original = accountService.getAccountsPage(account.getId() - 1, 1).get(0);
+            assertEquals(original.getNumber(), account.getNumber());
+            assertEquals(original.getAmount(), account.getAmount());
+            assertEquals(original.getType(), account.getType());
+        }
+
+        byte[] truncated = new byte[out.size() - 10];
+        System.arraycopy(out.toByteArray(), 0, truncated, 0, truncated.length);
+        assertThrows(IOException.class, () -> AccountExporter.readBinary(new ByteArrayInputStream(truncated), account -> {
+        }));
+    }
+}
@@ -0,0 +1,141 @@
+package ru.otus.bank.service;
+
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.service.exception.AccountException;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IdempotencyCacheTest {
+
+    AtomicLong now = new AtomicLong();
+
+    AtomicInteger calls = new AtomicInteger();
+
+    IdempotencyCache<String, Integer> cache = new IdempotencyCache<>(64, Duration.ofSeconds(10), 4, now::get);
+
+    @Test
+    public void testRetryReturnsFirstResult() {
+        assertEquals(1, cache.execute("key", 7, calls::incrementAndGet));
+        assertEquals(1, cache.execute("key", 7, calls::incrementAndGet));
+        assertEquals(2, cache.execute("other", 7, calls::incrementAndGet));
+        assertEquals(2, calls.get());
+
+        assertThrows(IllegalArgumentException.class, () -> cache.execute("key", 8, calls::incrementAndGet));
+    }
+
+    @Test
+    public void testExpiredKeyRunsAgain() {
+        cache.execute("key", 7, calls::incrementAndGet);
+        now.addAndGet(Duration.ofSeconds(10).toNanos());
+
+        assertEquals(2, cache.execute("key", 7, calls::incrementAndGet));
+    }
+
+    @Test
+    public void testFailureReleasesKey() {
+        assertThrows(AccountException.class, () -> cache.execute("key", 7, () -> {
+            throw new AccountException("No source account");
+        }));
+
+        assertEquals(1, cache.execute("key", 7, calls::incrementAndGet));
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        for (int i = 0; i < 10_000; i++) {
+            cache.execute("key" + i, i, calls::incrementAndGet);
+        }
+
+        assertTrue(cache.size() <= 64);
+    }
+
+    @Test
+    public void testConcurrentRetriesRunOnce() throws Exception {
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        Future<?>[] results = new Future[threads];
+        for (int t = 0; t < threads; t++) {
+            results[t] = executor.submit(() -> {
+                start.await();
+                return cache.execute("key", 7, () -> {
+                    sleep(50);
+                    return calls.incrementAndGet();
+                });
+            });
+        }
+        start.countDown();
+        for (Future<?> result : results) {
+            assertEquals(1, result.get(10, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testRunningEntryIsNotEvicted() throws Exception {
+        IdempotencyCache<String, Integer> small = new IdempotencyCache<>(1, Duration.ofSeconds(10), 1, now::get);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Integer> running = executor.submit(() -> small.execute("running", 7, () -> {
+                started.countDown();
+                await(release);
+                return calls.incrementAndGet();
+            }));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            // neither overflow nor expiry may drop the entry while its operation runs
+            for (int i = 0; i < 10; i++) {
+                small.execute("key" + i, i, () -> 0);
+            }
+            assertEquals(2, small.size());
+            now.addAndGet(Duration.ofSeconds(10).toNanos());
+            small.execute("late", 7, () -> 0);
+            assertEquals(2, small.size());
+            release.countDown();
+
+            assertEquals(1, running.get(10, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testErrorReleasesKeyAndWaiters() {
+        assertThrows(AssertionError.class, () -> cache.execute("key", 7, () -> {
+            throw new AssertionError("failed");
+        }));
+
+        assertEquals(1, cache.execute("key", 7, calls::incrementAndGet));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package ru.otus.bank.service.fee;
+
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.impl.PaymentProcessorImpl;
+import ru.otus.bank.service.impl.StripedLockAccountServiceImpl;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FeeEngineTest {
+
+    // 1% below 1000, 0.5% + 2 from 1000, 0.1% + 5 from 100000
+    FeeSchedule tiered = new FeeSchedule(List.of(
+            new FeeTier(new BigDecimal(100_000), new BigDecimal("0.001"), new BigDecimal(5)),
+            FeeTier.rate(BigDecimal.ZERO, new BigDecimal("0.01")),
+            new FeeTier(new BigDecimal(1000), new BigDecimal("0.005"), new BigDecimal(2))));
+
+    @Test
+    public void testTiers() {
+        assertEquals(3, tiered.getTierCount());
+        assertEquals(new BigDecimal("0.01"), tiered.fee(BigDecimal.ONE));
+        assertEquals(new BigDecimal("9.99"), tiered.fee(new BigDecimal(999)));
+        assertEquals(new BigDecimal("7.00"), tiered.fee(new BigDecimal(1000)));
+        assertEquals(new BigDecimal("105.00"), tiered.fee(new BigDecimal(100_000)));
+        assertEquals(new BigDecimal("0.00"), tiered.fee(BigDecimal.ZERO));
+        // 0.33 * 1% = 0.0033 rounds to nothing, 0.50 * 1% = 0.005 rounds half up to one minor unit
+        assertEquals(new BigDecimal("0.00"), tiered.fee(new BigDecimal("0.33")));
+        assertEquals(new BigDecimal("0.01"), tiered.fee(new BigDecimal("0.50")));
+
+        assertThrows(IllegalArgumentException.class, () -> new FeeSchedule(List.of(
+                FeeTier.rate(BigDecimal.ZERO, BigDecimal.ONE), FeeTier.rate(BigDecimal.ZERO, BigDecimal.TEN))));
+    }
+
+    @Test
+    public void testAgreementSchedules() {
+        FeeEngine engine = new FeeEngine(tiered, Map.of(7L, FeeSchedule.FREE, 3L, FeeSchedule.flat(new BigDecimal("0.02"))), 1L);
+
+        assertEquals(0, engine.feeMinor(7, 100_00));
+        assertEquals(2_00, engine.feeMinor(3, 100_00));
+        assertEquals(1_00, engine.feeMinor(5, 100_00));
+        assertEquals(1L, engine.getFeeAccountId());
+    }
+
+    @Test
+    public void testTransferWithFeeCreditsFeeAccount() {
+        StripedLockAccountServiceImpl accountService = new StripedLockAccountServiceImpl(new AccountDao());
+        Agreement client = agreement(1L);
+        Agreement bank = agreement(2L);
+        Account source = accountService.addAccount(client, "client_acc", 0, new BigDecimal(100));
+        Account destination = accountService.addAccount(bank, "bank_acc", 0, BigDecimal.ZERO);
+        Account fees = accountService.addAccount(bank, "bank_fees", 1, BigDecimal.ZERO);
+        PaymentProcessorImpl paymentProcessor = new PaymentProcessorImpl(accountService,
+                new FeeEngine(FeeSchedule.flat(new BigDecimal("0.01")), fees.getId()));
+
+        assertTrue(paymentProcessor.makeTransferWithFee(client, bank, 0, 0, new BigDecimal(50)));
+        // 50 + 0.50 fee leaves 49.50; the next 49.50 would need 0.50 more for its own fee
+        assertFalse(paymentProcessor.makeTransferWithFee(client, bank, 0, 0, new BigDecimal("49.50")));
+
+        assertEquals(new BigDecimal("49.50"), source.getAmount());
+        assertEquals(new BigDecimal(50), destination.getAmount());
+        assertEquals(new BigDecimal("0.50"), fees.getAmount());
+    }
+
+    @Test
+    public void testCommissionIsPostedWithTransfer() {
+        StripedLockAccountServiceImpl accountService = new StripedLockAccountServiceImpl(new AccountDao());
+        Agreement client = agreement(1L);
+        Agreement bank = agreement(2L);
+        Account source = accountService.addAccount(client, "client_acc", 0, new BigDecimal(100));
+        Account destination = accountService.addAccount(bank, "bank_acc", 0, BigDecimal.ZERO);
+        Account fees = accountService.addAccount(bank, "bank_fees", 1, BigDecimal.ZERO);
+        PaymentProcessorImpl paymentProcessor = new PaymentProcessorImpl(accountService,
+                new FeeEngine(FeeSchedule.FREE, fees.getId()));
+
+        // 10% of 22.55 is 2.255, posted as 2.26
+        assertTrue(paymentProcessor.makeTransferWithComission(client, bank, 0, 0,
+                new BigDecimal("22.55"), new BigDecimal("0.1")));
+        // the source cannot cover 70 + 7, so neither the transfer nor the commission is posted
+        assertFalse(paymentProcessor.makeTransferWithComission(client, bank, 0, 0,
+                new BigDecimal(70), new BigDecimal("0.1")));
+
+        assertEquals(new BigDecimal("75.19"), source.getAmount());
+        assertEquals(new BigDecimal("22.55"), destination.getAmount());
+        assertEquals(new BigDecimal("2.26"), fees.getAmount());
+    }
+
+    @Test
+    public void testFeeOfAmountFinerThanMinorUnits() {
+        FeeEngine engine = new FeeEngine(FeeSchedule.flat(new BigDecimal("0.01")), 1L);
+
+        // 99.995 rounds half up to 100.00 before the 1% rate applies
+        assertEquals(new BigDecimal("1.00"), engine.fee(agreement(5L), new BigDecimal("99.995")));
+        assertEquals(new BigDecimal("1.00"), FeeSchedule.flat(new BigDecimal("0.01")).fee(new BigDecimal("99.995")));
+    }
+
+    private Agreement agreement(Long id) {
+        Agreement agreement = new Agreement();
+        agreement.setId(id);
+        return agreement;
+    }
+}
@@ -80,7 +80,6 @@ public class AccountServiceImplTest {
 
         accountServiceImpl.makeTransfer(1L, 2L, new BigDecimal(10));
 
-        verify(accountDao).save(argThat(sourceMatcher));
-        verify(accountDao).save(argThat(destinationMatcher));
+        verify(accountDao).saveAll(argThat(sourceMatcher), argThat(destinationMatcher));
         }
 }
@@ -0,0 +1,105 @@
+package ru.otus.bank.service.impl;
+
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.dao.AgreementDao;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.AccountService;
+import ru.otus.bank.service.AgreementService;
+import ru.otus.bank.service.TransferResult;
+import ru.otus.bank.service.metrics.PaymentMetrics;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class AsyncPaymentServiceTest {
+
+    AgreementService agreementService = new AgreementServiceImpl(new AgreementDao());
+
+    @Test
+    public void testTransferByAgreementName() {
+        AccountService accountService = new CachingAccountServiceImpl(new StripedLockAccountServiceImpl(new AccountDao()));
+        Account source = accountService.addAccount(agreementService.addAgreement("Client1"), "acc1", 0, new BigDecimal(100));
+        Account destination = accountService.addAccount(agreementService.addAgreement("Client2"), "acc2", 1, BigDecimal.ZERO);
+
+        try (AsyncPaymentService paymentService = new AsyncPaymentService(agreementService, accountService,
+                new PaymentProcessorImpl(accountService))) {
+            assertEquals(TransferResult.success(),
+                    paymentService.makeTransferAsync("Client1", "Client2", 0, 1, BigDecimal.TEN).join());
+            assertEquals(TransferResult.rejected(),
+                    paymentService.makeTransferAsync("Client1", "Client2", 0, 1, new BigDecimal(1000)).join());
+            assertEquals(TransferResult.failed("No agreement Unknown"),
+                    paymentService.makeTransferAsync("Unknown", "Client2", 0, 1, BigDecimal.TEN).join());
+            assertEquals(TransferResult.failed("Account not found"),
+                    paymentService.makeTransferAsync("Client1", "Client2", 0, 5, BigDecimal.TEN).join());
+            assertEquals(TransferResult.failed("No source account"),
+                    paymentService.chargeAsync(100L, BigDecimal.ONE).join());
+        }
+
+        assertEquals(new BigDecimal(90), source.getAmount());
+        assertEquals(BigDecimal.TEN, destination.getAmount());
+    }
+
+    // Shard threads complete the futures, so two executor threads are enough for any number in flight
+    @Test
+    public void testManyInFlightOnSmallPool() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (ShardedAccountServiceImpl accountService = new ShardedAccountServiceImpl(4);
+             AsyncPaymentService paymentService = new AsyncPaymentService(agreementService, accountService,
+                     new PaymentProcessorImpl(accountService), executor)) {
+            Agreement agreement = new Agreement();
+            agreement.setId(1L);
+            List<Long> ids = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                ids.add(accountService.addAccount(agreement, "acc" + i, i, new BigDecimal(10_000)).getId());
+            }
+
+            List<CompletableFuture<TransferResult>> results = new ArrayList<>();
+            for (int i = 0; i < 20_000; i++) {
+                results.add(paymentService.makeTransferAsync(ids.get(i % 16), ids.get((i * 7 + 3) % 16), BigDecimal.ONE));
+            }
+            CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).join();
+
+            BigDecimal total = BigDecimal.ZERO;
+            for (Account account : accountService.getAccounts()) {
+                total = total.add(account.getAmount());
+            }
+            assertEquals(new BigDecimal(160_000), total);
+            assertEquals(20_000, results.stream().filter(result -> result.join().isSuccess()).count());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testDecoratedShardedServiceCompletesOnShards() {
+        Executor unused = command -> {
+            throw new AssertionError("executor used");
+        };
+        PaymentMetrics metrics = new PaymentMetrics();
+        try (ShardedAccountServiceImpl sharded = new ShardedAccountServiceImpl(4)) {
+            AccountService accountService = new InstrumentedAccountServiceImpl(new CachingAccountServiceImpl(sharded), metrics);
+            Agreement agreement = new Agreement();
+            agreement.setId(1L);
+            Account source = accountService.addAccount(agreement, "acc1", 0, new BigDecimal(100));
+            Account destination = accountService.addAccount(agreement, "acc2", 1, BigDecimal.ZERO);
+            AsyncPaymentService paymentService = new AsyncPaymentService(agreementService, accountService,
+                    new PaymentProcessorImpl(accountService), unused);
+
+            assertEquals(TransferResult.success(),
+                    paymentService.makeTransferAsync(source.getId(), destination.getId(), BigDecimal.TEN).join());
+            assertEquals(TransferResult.success(), paymentService.chargeAsync(source.getId(), BigDecimal.ONE).join());
+
+            assertEquals(1, metrics.operation("makeTransfer").getSuccesses());
+            assertEquals(1, metrics.operation("charge").getSuccesses());
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package ru.otus.bank.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.exception.AccountException;
+import ru.otus.bank.service.metrics.PaymentMetrics;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CachingAccountServiceImplTest {
+
+    AtomicInteger daoLookups = new AtomicInteger();
+
+    AccountDao accountDao;
+
+    CachingAccountServiceImpl accountService;
+
+    Agreement source;
+
+    Agreement destination;
+
+    @BeforeEach
+    public void init() {
+        accountDao = new AccountDao() {
+            @Override
+            public Iterable<Account> findByAgreementId(Long agreementId) {
+                daoLookups.incrementAndGet();
+                return super.findByAgreementId(agreementId);
+            }
+        };
+        accountService = new CachingAccountServiceImpl(new AccountServiceImpl(accountDao));
+
+        source = new Agreement();
+        source.setId(1L);
+        destination = new Agreement();
+        destination.setId(2L);
+        accountService.addAccount(source, "acc1", 0, new BigDecimal(1000));
+        accountService.addAccount(destination, "acc2", 0, BigDecimal.ZERO);
+    }
+
+    @Test
+    public void testRepeatedPaymentsSkipDao() {
+        PaymentProcessorImpl paymentProcessor = new PaymentProcessorImpl(accountService);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(paymentProcessor.makeTransfer(source, destination, 0, 0, BigDecimal.ONE));
+        }
+
+        assertEquals(2, daoLookups.get());
+        assertEquals(2, accountService.getMisses());
+        assertEquals(18, accountService.getHits());
+        assertEquals(new BigDecimal(10), accountService.getAccounts(destination).get(0).getAmount());
+    }
+
+    @Test
+    public void testAddAccountInvalidates() {
+        assertNull(accountService.findAccountId(source, 1));
+        assertThrows(AccountException.class,
+                () -> new PaymentProcessorImpl(accountService).makeTransfer(source, destination, 1, 0, BigDecimal.ONE));
+
+        Account account = accountService.addAccount(source, "acc3", 1, BigDecimal.TEN);
+
+        assertEquals(account.getId(), accountService.findAccountId(source, 1));
+        assertEquals(2, accountService.getMisses());
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        CachingAccountServiceImpl small = new CachingAccountServiceImpl(new AccountServiceImpl(new AccountDao()), 64);
+        for (long id = 0; id < 1000; id++) {
+            Agreement agreement = new Agreement();
+            agreement.setId(id);
+            small.findAccountId(agreement, 0);
+        }
+
+        assertTrue(small.size() <= 64);
+        assertEquals(1000 - small.size(), small.getEvictions());
+    }
+
+    @Test
+    public void testDirectDaoWritesInvalidate() {
+        Long accountId = accountService.findAccountId(source, 0);
+        Account account = accountDao.findById(accountId).orElseThrow();
+
+        account.setType(1);
+        accountDao.save(account);
+
+        assertNull(accountService.findAccountId(source, 0));
+        assertEquals(accountId, accountService.findAccountId(source, 1));
+
+        account.setAgreementId(destination.getId());
+        accountDao.save(account);
+
+        assertNull(accountService.findAccountId(source, 1));
+        assertEquals(accountId, accountService.findAccountId(destination, 1));
+    }
+
+    @Test
+    public void testCacheWorksBehindOtherDecorators() {
+        InstrumentedAccountServiceImpl instrumented = new InstrumentedAccountServiceImpl(accountService, new PaymentMetrics());
+        PaymentProcessorImpl paymentProcessor = new PaymentProcessorImpl(instrumented);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(paymentProcessor.makeTransfer(source, destination, 0, 0, BigDecimal.ONE));
+        }
+
+        assertEquals(2, daoLookups.get());
+        assertEquals(18, accountService.getHits());
+    }
+
+    @Test
+    public void testSmallCacheHoldsNoMoreThanAsked() {
+        for (int maxAgreements : new int[]{1, 3, 100}) {
+            CachingAccountServiceImpl small = new CachingAccountServiceImpl(
+                    new AccountServiceImpl(new AccountDao()), maxAgreements);
+            for (long id = 0; id < 1000; id++) {
+                Agreement agreement = new Agreement();
+                agreement.setId(id);
+                small.findAccountId(agreement, 0);
+            }
+
+            assertEquals(maxAgreements, small.size());
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package ru.otus.bank.service.impl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.TransferCode;
+import ru.otus.bank.service.exception.AccountException;
+import ru.otus.bank.service.exception.InsufficientFundsException;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FixedPointAccountServiceImplTest {
+
+    FixedPointAccountServiceImpl accountService;
+
+    Account sourceAccount;
+
+    Account destinationAccount;
+
+    @BeforeEach
+    public void init() {
+        accountService = new FixedPointAccountServiceImpl(new AccountDao());
+
+        Agreement agreement = new Agreement();
+        agreement.setId(1L);
+        sourceAccount = accountService.addAccount(agreement, "acc1", 0, new BigDecimal(100));
+        destinationAccount = accountService.addAccount(agreement, "acc2", 1, new BigDecimal(10));
+    }
+
+    @AfterEach
+    public void close() {
+        accountService.close();
+    }
+
+    @Test
+    public void testTransfer() {
+        assertTrue(accountService.makeTransfer(sourceAccount.getId(), destinationAccount.getId(), new BigDecimal("10.50")));
+
+        assertEquals(8950, accountService.getAmountMinor(sourceAccount.getId()));
+        assertEquals(2050, accountService.getAmountMinor(destinationAccount.getId()));
+
+        Account copy = accountService.streamAccounts()
+                .filter(account -> account.getId().equals(sourceAccount.getId()))
+                .findFirst().orElseThrow();
+        assertEquals(new BigDecimal("89.50"), copy.getAmount());
+        assertNotSame(sourceAccount, copy);
+
+        accountService.flush();
+        assertEquals(new BigDecimal("89.50"), sourceAccount.getAmount());
+        assertEquals(new BigDecimal("20.50"), destinationAccount.getAmount());
+    }
+
+    @Test
+    public void testTransferValidation() {
+        assertFalse(accountService.makeTransferMinor(sourceAccount.getId(), destinationAccount.getId(), 10001));
+        assertFalse(accountService.makeTransferMinor(sourceAccount.getId(), destinationAccount.getId(), 0));
+
+        assertEquals(10000, accountService.getAmountMinor(sourceAccount.getId()));
+    }
+
+    @Test
+    public void testCharge() {
+        assertTrue(accountService.chargeMinor(sourceAccount.getId(), 150));
+
+        assertEquals(9850, accountService.getAmountMinor(sourceAccount.getId()));
+    }
+
+    @Test
+    public void testCommissionIsRounded() {
+        Agreement agreement = new Agreement();
+        agreement.setId(1L);
+        PaymentProcessorImpl paymentProcessor = new PaymentProcessorImpl(accountService);
+
+        // 10% of 22.55 is 2.255, posted as 2.26
+        assertTrue(paymentProcessor.makeTransferWithComission(agreement, agreement, 0, 1,
+                new BigDecimal("22.55"), new BigDecimal("0.1")));
+        assertEquals(10000 - 2255 - 226, accountService.getAmountMinor(sourceAccount.getId()));
+        assertTrue(accountService.charge(sourceAccount.getId(), new BigDecimal("0.005")));
+        assertEquals(10000 - 2255 - 226 - 1, accountService.getAmountMinor(sourceAccount.getId()));
+    }
+
+    @Test
+    public void testCommissionRefundedWhenTransferFails() {
+        Agreement agreement = new Agreement();
+        agreement.setId(1L);
+        PaymentProcessorImpl paymentProcessor = new PaymentProcessorImpl(accountService);
+
+        // 95 + 9.50 commission is more than the 100 on the source
+        assertFalse(paymentProcessor.makeTransferWithComission(agreement, agreement, 0, 1,
+                new BigDecimal(95), new BigDecimal("0.1")));
+
+        assertEquals(10000, accountService.getAmountMinor(sourceAccount.getId()));
+        assertEquals(1000, accountService.getAmountMinor(destinationAccount.getId()));
+    }
+
+    @Test
+    public void testTransferCodes() {
+        long source = sourceAccount.getId();
+        long destination = destinationAccount.getId();
+
+        assertEquals(TransferCode.OK, accountService.tryTransferMinor(source, destination, 100));
+        assertEquals(TransferCode.NON_POSITIVE_SUM, accountService.tryTransferMinor(source, destination, -1));
+        assertEquals(TransferCode.INSUFFICIENT_FUNDS, accountService.tryTransferMinor(source, destination, 10000));
+        assertEquals(TransferCode.NO_SOURCE_ACCOUNT, accountService.tryTransferMinor(100, destination, 1));
+        assertEquals(TransferCode.NO_DESTINATION_ACCOUNT, accountService.tryTransferMinor(source, 100, 1));
+        assertEquals(TransferCode.BALANCE_OVERFLOW, accountService.tryChargeMinor(source, Long.MIN_VALUE));
+
+        assertEquals(9900, accountService.getAmountMinor(source));
+        assertEquals(1100, accountService.getAmountMinor(destination));
+
+        AccountException exception = assertThrows(AccountException.class,
+                () -> accountService.makeTransferMinor(100, destination, 1));
+        assertEquals("No source account", exception.getMessage());
+        assertEquals(0, exception.getStackTrace().length);
+    }
+
+    @Test
+    public void testTransferDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long source = sourceAccount.getId();
+        long destination = destinationAccount.getId();
+        for (int i = 0; i < 1000; i++) {
+            transferBackAndForth(source, destination);
+        }
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 100_000; i++) {
+            transferBackAndForth(source, destination);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        // a few hundred bytes of slack for the measurement itself, far below one object per transfer
+        assertTrue(allocated < 1024, "allocated " + allocated + " bytes");
+        assertEquals(10000, accountService.getAmountMinor(source));
+    }
+
+    @Test
+    public void testOverdrawingBatchChangesNothing() {
+        Map<Long, BigDecimal> changes = new LinkedHashMap<>();
+        changes.put(sourceAccount.getId(), new BigDecimal(-50));
+        changes.put(destinationAccount.getId(), new BigDecimal(-20));
+
+        assertThrows(InsufficientFundsException.class, () -> accountService.applyBalanceChanges(changes));
+
+        assertEquals(10000, accountService.getAmountMinor(sourceAccount.getId()));
+        assertEquals(1000, accountService.getAmountMinor(destinationAccount.getId()));
+    }
+
+    @Test
+    public void testProcessorTransferDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Agreement agreement = new Agreement();
+        agreement.setId(1L);
+        PaymentProcessorImpl direct = new PaymentProcessorImpl(accountService);
+        PaymentProcessorImpl cached = new PaymentProcessorImpl(new CachingAccountServiceImpl(accountService));
+        for (int i = 0; i < 1000; i++) {
+            direct.tryTransferMinor(agreement, agreement, 0, 1, 150);
+            cached.tryTransferMinor(agreement, agreement, 1, 0, 150);
+        }
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 100_000; i++) {
+            direct.tryTransferMinor(agreement, agreement, 0, 1, 150);
+            cached.tryTransferMinor(agreement, agreement, 1, 0, 150);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        assertTrue(allocated < 1024, "allocated " + allocated + " bytes");
+        assertEquals(10000, accountService.getAmountMinor(sourceAccount.getId()));
+        assertEquals(TransferCode.NO_DESTINATION_ACCOUNT, direct.tryTransferMinor(agreement, agreement, 0, 7, 150));
+    }
+
+    @Test
+    public void testBalancesReachTheRepository() {
+        AccountDao accountDao = new AccountDao();
+        Agreement agreement = new Agreement();
+        agreement.setId(2L);
+        Long source;
+        Long destination;
+        try (FixedPointAccountServiceImpl service = new FixedPointAccountServiceImpl(accountDao)) {
+            source = service.addAccount(agreement, "acc3", 0, new BigDecimal(100)).getId();
+            destination = service.addAccount(agreement, "acc4", 1, BigDecimal.ZERO).getId();
+            assertEquals(TransferCode.OK, service.tryTransferMinor(source, destination, 2550));
+            assertEquals(TransferCode.OK, service.tryChargeMinor(source, 50));
+        }
+
+        assertEquals(new BigDecimal("74.00"), accountDao.findById(source).orElseThrow().getAmount());
+        assertEquals(new BigDecimal("25.50"), accountDao.findById(destination).orElseThrow().getAmount());
+    }
+
+    private void transferBackAndForth(long source, long destination) {
+        accountService.tryTransferMinor(source, destination, 150);
+        accountService.tryTransferMinor(destination, source, 150);
+        accountService.tryTransferMinor(source, destination, 0);
+    }
+}
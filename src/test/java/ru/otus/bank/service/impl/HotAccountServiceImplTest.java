@@ -0,0 +1,210 @@
+package ru.otus.bank.service.impl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.exception.AccountException;
+import ru.otus.bank.service.exception.InsufficientFundsException;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HotAccountServiceImplTest {
+
+    private static final int ACCOUNTS = 20;
+
+    private static final BigDecimal INITIAL_AMOUNT = new BigDecimal(1000);
+
+    AccountDao accountDao;
+
+    HotAccountServiceImpl accountService;
+
+    List<Long> accountIds;
+
+    Long bankAccountId;
+
+    @BeforeEach
+    public void init() {
+        accountDao = new AccountDao();
+        accountService = new HotAccountServiceImpl(accountDao, 8, Duration.ofMillis(1));
+        accountIds = new ArrayList<>();
+
+        Agreement agreement = new Agreement();
+        agreement.setId(1L);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accountIds.add(accountService.addAccount(agreement, "acc" + i, i, INITIAL_AMOUNT).getId());
+        }
+        bankAccountId = accountIds.get(0);
+        accountService.makeHot(bankAccountId);
+    }
+
+    @AfterEach
+    public void close() {
+        accountService.close();
+    }
+
+    @Test
+    public void testConcurrentTransfersThroughHotAccount() throws InterruptedException {
+        int threads = 8;
+        int transfersPerThread = 20_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < transfersPerThread; i++) {
+                    Long client = accountIds.get(random.nextInt(1, ACCOUNTS));
+                    BigDecimal sum = new BigDecimal(random.nextInt(1, 50));
+                    switch (random.nextInt(3)) {
+                        case 0 -> accountService.makeTransfer(client, bankAccountId, sum);
+                        case 1 -> accountService.makeTransfer(bankAccountId, client, sum);
+                        default -> accountService.makeTransfer(client, accountIds.get(random.nextInt(1, ACCOUNTS)),
+                                sum, bankAccountId, BigDecimal.ONE);
+                    }
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (Account account : accountService.getAccounts()) {
+            assertFalse(account.getAmount().signum() < 0);
+            total = total.add(account.getAmount());
+        }
+        assertEquals(0, INITIAL_AMOUNT.multiply(new BigDecimal(ACCOUNTS)).compareTo(total));
+    }
+
+    @Test
+    public void testDebitIsExactAcrossSubBalances() {
+        Long client = accountIds.get(1);
+        // credits from several threads land in different sub-balances
+        List<Thread> writers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            writers.add(new Thread(() -> accountService.makeTransfer(client, bankAccountId, new BigDecimal(100))));
+        }
+        writers.forEach(Thread::start);
+        writers.forEach(this::join);
+
+        assertFalse(accountService.makeTransfer(bankAccountId, client, new BigDecimal("1400.01")));
+        assertTrue(accountService.makeTransfer(bankAccountId, client, new BigDecimal(1400)));
+        assertEquals(0, BigDecimal.ZERO.compareTo(balance(bankAccountId)));
+        assertEquals(0, INITIAL_AMOUNT.add(new BigDecimal(1000)).compareTo(balance(client)));
+    }
+
+    @Test
+    public void testOverdrawnByChargeRejectsDebits() {
+        Long client = accountIds.get(1);
+        accountService.charge(bankAccountId, new BigDecimal(1500));
+
+        assertEquals(0, new BigDecimal(-500).compareTo(balance(bankAccountId)));
+        assertFalse(accountService.makeTransfer(bankAccountId, client, BigDecimal.ONE));
+
+        accountService.makeTransfer(client, bankAccountId, new BigDecimal(501));
+        assertTrue(accountService.makeTransfer(bankAccountId, client, BigDecimal.ONE));
+        assertEquals(0, BigDecimal.ZERO.compareTo(balance(bankAccountId)));
+    }
+
+    @Test
+    public void testNettingSavesBalance() {
+        accountService.applyBalanceChanges(Map.of(bankAccountId, new BigDecimal(10), accountIds.get(1), BigDecimal.ONE));
+        accountService.net();
+
+        assertEquals(0, new BigDecimal(1010).compareTo(accountDao.getById(bankAccountId).getAmount()));
+        assertEquals(new BigDecimal(1001), accountDao.getById(accountIds.get(1)).getAmount());
+        assertThrows(AccountException.class, () -> accountService.makeTransfer(bankAccountId, 100L, BigDecimal.ONE));
+    }
+
+    @Test
+    public void testOverdrawingBatchChangesNothing() {
+        Map<Long, BigDecimal> changes = new LinkedHashMap<>();
+        changes.put(bankAccountId, new BigDecimal(-500));
+        changes.put(accountIds.get(1), new BigDecimal(-1500));
+        changes.put(accountIds.get(2), new BigDecimal(2000));
+
+        assertThrows(InsufficientFundsException.class, () -> accountService.applyBalanceChanges(changes));
+        assertThrows(InsufficientFundsException.class, () -> accountService.applyBalanceChanges(
+                Map.of(bankAccountId, new BigDecimal(-1500), accountIds.get(1), new BigDecimal(1500))));
+
+        for (Long accountId : List.of(bankAccountId, accountIds.get(1), accountIds.get(2))) {
+            assertEquals(0, INITIAL_AMOUNT.compareTo(balance(accountId)));
+        }
+    }
+
+    @Test
+    public void testChargeIsRounded() {
+        assertTrue(accountService.charge(bankAccountId, new BigDecimal("0.005")));
+        assertTrue(accountService.charge(bankAccountId, new BigDecimal("-0.004")));
+
+        assertEquals(0, new BigDecimal("999.99").compareTo(balance(bankAccountId)));
+    }
+
+    @Test
+    public void testNettingSkipsUnchangedAccounts() {
+        AtomicInteger saves = new AtomicInteger();
+        AccountDao countingDao = new AccountDao() {
+            @Override
+            public Account save(Account account) {
+                saves.incrementAndGet();
+                return super.save(account);
+            }
+        };
+        Agreement agreement = new Agreement();
+        agreement.setId(1L);
+        try (HotAccountServiceImpl service = new HotAccountServiceImpl(countingDao, 8, Duration.ofHours(1))) {
+            Long hot = service.addAccount(agreement, "hot", 0, INITIAL_AMOUNT).getId();
+            Long client = service.addAccount(agreement, "client", 1, INITIAL_AMOUNT).getId();
+            service.makeHot(hot);
+            int initial = saves.get();
+
+            service.net();
+            service.net();
+            assertEquals(initial, saves.get());
+
+            assertTrue(service.makeTransfer(client, hot, BigDecimal.ONE));
+            int afterTransfer = saves.get();
+            service.net();
+            service.net();
+
+            assertEquals(afterTransfer + 1, saves.get());
+            assertEquals(0, new BigDecimal(1001).compareTo(countingDao.getById(hot).getAmount()));
+        }
+    }
+
+    private BigDecimal balance(Long accountId) {
+        for (Account account : accountService.getAccounts()) {
+            if (account.getId().equals(accountId)) {
+                return account.getAmount();
+            }
+        }
+        throw new AssertionError("No account " + accountId);
+    }
+
+    private void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package ru.otus.bank.service.impl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.PaymentProcessor;
+import ru.otus.bank.service.TransferRequest;
+import ru.otus.bank.service.TransferResult;
+import ru.otus.bank.service.exception.AccountException;
+import ru.otus.bank.service.exception.ContentionException;
+import ru.otus.bank.service.metrics.OperationMetrics;
+import ru.otus.bank.service.metrics.PaymentMetrics;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class InstrumentedAccountServiceImplTest {
+
+    PaymentMetrics metrics = new PaymentMetrics();
+
+    StripedLockAccountServiceImpl stripedService = new StripedLockAccountServiceImpl(new AccountDao());
+
+    InstrumentedAccountServiceImpl accountService = new InstrumentedAccountServiceImpl(stripedService, metrics);
+
+    @AfterEach
+    public void unregister() {
+        metrics.unregisterMBeans();
+    }
+
+    @Test
+    public void testOutcomesByReason() {
+        Agreement agreement = new Agreement();
+        agreement.setId(1L);
+        Account source = accountService.addAccount(agreement, "acc1", 0, new BigDecimal(100));
+        Account destination = accountService.addAccount(agreement, "acc2", 1, BigDecimal.ZERO);
+
+        assertTrue(accountService.makeTransfer(source.getId(), destination.getId(), BigDecimal.TEN));
+        assertFalse(accountService.makeTransfer(source.getId(), destination.getId(), BigDecimal.ZERO));
+        assertFalse(accountService.makeTransfer(source.getId(), destination.getId(), new BigDecimal(1000)));
+        assertThrows(AccountException.class,
+                () -> accountService.makeTransfer(100L, destination.getId(), BigDecimal.ONE));
+
+        OperationMetrics makeTransfer = metrics.operation("makeTransfer");
+        assertEquals(4, makeTransfer.getCount());
+        assertEquals(1, makeTransfer.getSuccesses());
+        assertEquals(3, makeTransfer.getFailures());
+        assertEquals(Map.of(InstrumentedAccountServiceImpl.NON_POSITIVE_SUM, 1L,
+                InstrumentedAccountServiceImpl.INSUFFICIENT_FUNDS, 1L,
+                "No source account", 1L), makeTransfer.getFailuresByReason());
+        assertTrue(makeTransfer.getMaxMicros() > 0);
+    }
+
+    @Test
+    public void testReasonsDropIds() {
+        assertThrows(AccountException.class, () -> accountService.applyBalanceChanges(Map.of(41L, BigDecimal.ONE)));
+        assertThrows(AccountException.class, () -> accountService.applyBalanceChanges(Map.of(42L, BigDecimal.ONE)));
+
+        assertEquals(Map.of("No account N", 2L), metrics.operation("applyBalanceChanges").getFailuresByReason());
+    }
+
+    @Test
+    public void testLockContention() throws Exception {
+        CountDownLatch saving = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean armed = new AtomicBoolean();
+        AccountDao blockingDao = new AccountDao() {
+            @Override
+            public Account save(Account account) {
+                if (armed.compareAndSet(true, false)) {
+                    saving.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.save(account);
+            }
+        };
+        InstrumentedAccountServiceImpl service = new InstrumentedAccountServiceImpl(
+                new StripedLockAccountServiceImpl(blockingDao), metrics);
+        Agreement agreement = new Agreement();
+        agreement.setId(1L);
+        Account account = service.addAccount(agreement, "acc1", 0, new BigDecimal(100));
+        armed.set(true);
+
+        // the first charge holds the account's stripe inside save, the second one has to wait for it
+        Thread first = new Thread(() -> service.charge(account.getId(), BigDecimal.ONE));
+        first.start();
+        saving.await();
+        Thread second = new Thread(() -> service.charge(account.getId(), BigDecimal.ONE));
+        second.start();
+        while (metrics.operation("charge").getContention() == 0) {
+            Thread.onSpinWait();
+        }
+        release.countDown();
+        first.join();
+        second.join();
+
+        assertEquals(1, metrics.operation("charge").getContention());
+        assertEquals(2, metrics.operation("charge").getSuccesses());
+        assertEquals(new BigDecimal(98), account.getAmount());
+    }
+
+    @Test
+    public void testRenderAndJmx() throws Exception {
+        Agreement agreement = new Agreement();
+        agreement.setId(1L);
+        Account account = accountService.addAccount(agreement, "acc1", 0, new BigDecimal(100));
+        accountService.charge(account.getId(), BigDecimal.ONE);
+
+        String text = metrics.render();
+        assertTrue(text.contains("payment_operation_successes{operation=\"charge\"} 1\n"));
+        assertTrue(text.contains("payment_operation_latency_micros{operation=\"charge\",quantile=\"0.99\"}"));
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        metrics.registerMBeans(server);
+        ObjectName name = new ObjectName(PaymentMetrics.JMX_DOMAIN + ":type=PaymentMetrics,operation="
+                + ObjectName.quote("charge"));
+        assertEquals(1L, server.getAttribute(name, "Successes"));
+
+        metrics.unregisterMBeans();
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    public void testContentionBehindOtherDecorators() {
+        AccountDao accountDao = new AccountDao();
+        Account account = new Account() {
+            @Override
+            public boolean compareAndSetAmount(BigDecimal expectedAmount, BigDecimal newAmount) {
+                return false;
+            }
+        };
+        account.setAmount(new BigDecimal(100));
+        accountDao.save(account);
+        InstrumentedAccountServiceImpl service = new InstrumentedAccountServiceImpl(
+                new CachingAccountServiceImpl(new OptimisticAccountServiceImpl(accountDao, 3)), metrics);
+
+        ContentionException e = assertThrows(ContentionException.class,
+                () -> service.charge(account.getId(), BigDecimal.ONE));
+
+        assertEquals(3, metrics.operation("charge").getContention());
+        assertEquals(Map.of(InstrumentedAccountServiceImpl.reason(e), 1L),
+                metrics.operation("charge").getFailuresByReason());
+    }
+
+    @Test
+    public void testBatchFailureReasonsDropIds() {
+        PaymentProcessor failing = new PaymentProcessor() {
+            @Override
+            public boolean makeTransfer(Agreement source, Agreement destination, int sourceType,
+                                        int destinationType, BigDecimal amount) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public boolean makeTransferWithComission(Agreement source, Agreement destination, int sourceType,
+                                                     int destinationType, BigDecimal amount,
+                                                     BigDecimal comissionPercent) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public boolean makeTransferWithFee(Agreement source, Agreement destination, int sourceType,
+                                               int destinationType, BigDecimal amount) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public List<TransferResult> makeTransfers(List<TransferRequest> requests) {
+                List<TransferResult> results = new ArrayList<>();
+                for (int i = 0; i < requests.size(); i++) {
+                    results.add(TransferResult.failed("No account " + i));
+                }
+                return results;
+            }
+        };
+        InstrumentedPaymentProcessorImpl paymentProcessor = new InstrumentedPaymentProcessorImpl(failing, metrics);
+        Agreement agreement = new Agreement();
+        agreement.setId(1L);
+        TransferRequest request = new TransferRequest(agreement, agreement, 0, 1, BigDecimal.ONE);
+
+        paymentProcessor.makeTransfers(Collections.nCopies(100, request));
+
+        assertEquals(Map.of("No account N", 100L), metrics.operation("payment.makeTransfers").getFailuresByReason());
+    }
+
+    @Test
+    public void testReasonCollapsesNumbers() {
+        assertEquals("No account N", InstrumentedAccountServiceImpl.reason("No account 42"));
+        assertEquals("N to N, N left", InstrumentedAccountServiceImpl.reason("10 to 2, 300 left"));
+        String plain = "Insufficient funds";
+        assertSame(plain, InstrumentedAccountServiceImpl.reason(plain));
+    }
+
+    @Test
+    public void testContentionIsNotInsufficientFunds() {
+        AccountDao accountDao = new AccountDao();
+        Account source = new Account() {
+            @Override
+            public boolean compareAndSetAmount(BigDecimal expectedAmount, BigDecimal newAmount) {
+                return false;
+            }
+        };
+        source.setAmount(new BigDecimal(100));
+        accountDao.save(source);
+        Account destination = new Account();
+        destination.setAmount(BigDecimal.ZERO);
+        accountDao.save(destination);
+        InstrumentedAccountServiceImpl service = new InstrumentedAccountServiceImpl(
+                new OptimisticAccountServiceImpl(accountDao, 2), metrics);
+
+        assertThrows(ContentionException.class,
+                () -> service.makeTransfer(source.getId(), destination.getId(), BigDecimal.ONE));
+        assertFalse(service.makeTransfer(source.getId(), destination.getId(), new BigDecimal(1000)));
+
+        Map<String, Long> failures = metrics.operation("makeTransfer").getFailuresByReason();
+        assertEquals(1L, failures.get(InstrumentedAccountServiceImpl.INSUFFICIENT_FUNDS));
+        assertEquals(2, failures.size());
+    }
+}
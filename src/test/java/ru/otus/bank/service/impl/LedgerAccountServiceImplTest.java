@@ -0,0 +1,97 @@
+package ru.otus.bank.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.dao.ledger.Ledger;
+import ru.otus.bank.dao.ledger.Posting;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.exception.AccountException;
+import ru.otus.bank.service.exception.InsufficientFundsException;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LedgerAccountServiceImplTest {
+
+    LedgerAccountServiceImpl accountService;
+
+    Agreement agreement;
+
+    Account source;
+
+    Account destination;
+
+    @BeforeEach
+    public void init() {
+        accountService = new LedgerAccountServiceImpl(new AccountDao());
+        agreement = new Agreement();
+        agreement.setId(1L);
+        source = accountService.addAccount(agreement, "acc1", 0, new BigDecimal(100));
+        destination = accountService.addAccount(agreement, "acc2", 1, BigDecimal.ZERO);
+    }
+
+    @Test
+    public void testTransferIsRecorded() {
+        assertTrue(accountService.makeTransfer(source.getId(), destination.getId(), BigDecimal.TEN));
+        assertFalse(accountService.makeTransfer(source.getId(), destination.getId(), new BigDecimal(1000)));
+        accountService.charge(source.getId(), BigDecimal.ONE);
+        accountService.applyBalanceChanges(Map.of(source.getId(), new BigDecimal(-2), destination.getId(), new BigDecimal(2)));
+
+        List<Posting> history = accountService.getHistory(source.getId(), 0, 10);
+        assertEquals(3, history.size());
+        assertEquals(new BigDecimal("87.00"), history.get(2).balance());
+
+        accountService.getAccounts(agreement);
+        assertEquals(new BigDecimal("87.00"), source.getAmount());
+        assertEquals(new BigDecimal("12.00"), destination.getAmount());
+    }
+
+    @Test
+    public void testMissingAccount() {
+        AccountException exception = assertThrows(AccountException.class,
+                () -> accountService.makeTransfer(source.getId(), 100L, BigDecimal.ONE));
+        assertEquals("No destination account", exception.getLocalizedMessage());
+    }
+
+    @Test
+    public void testOverdrawingBatchChangesNothing() {
+        assertThrows(InsufficientFundsException.class, () -> accountService.applyBalanceChanges(
+                Map.of(source.getId(), new BigDecimal(-150), destination.getId(), new BigDecimal(150))));
+
+        assertEquals(10000, accountService.getLedger().getBalanceMinor(source.getId()));
+        assertEquals(0, accountService.getLedger().getBalanceMinor(destination.getId()));
+    }
+
+    @Test
+    public void testCommissionLegsAreRounded() {
+        BigDecimal commission = new BigDecimal("22.55").multiply(new BigDecimal("0.1"));
+
+        assertTrue(accountService.charge(source.getId(), commission));
+        assertTrue(accountService.makeTransfer(source.getId(), destination.getId(), BigDecimal.TEN,
+                destination.getId(), new BigDecimal("0.125")));
+
+        assertEquals(new BigDecimal("87.61"), accountService.getLedger().getBalance(source.getId()));
+        assertEquals(new BigDecimal("10.13"), accountService.getLedger().getBalance(destination.getId()));
+    }
+
+    @Test
+    public void testExternalAccountIsNotAnAccount() {
+        Long external = Ledger.EXTERNAL_ACCOUNT;
+        AccountException exception = assertThrows(AccountException.class,
+                () -> accountService.makeTransfer(external, destination.getId(), BigDecimal.ONE));
+        assertEquals("No source account", exception.getLocalizedMessage());
+        assertThrows(AccountException.class, () -> accountService.charge(external, BigDecimal.ONE.negate()));
+        assertThrows(AccountException.class, () -> accountService.makeTransfer(source.getId(), external, BigDecimal.ONE));
+
+        assertEquals(0, accountService.getLedger().getBalanceMinor(destination.getId()));
+        assertEquals(10000, accountService.getLedger().getBalanceMinor(source.getId()));
+    }
+}
@@ -0,0 +1,166 @@
+package ru.otus.bank.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.exception.ContentionException;
+import ru.otus.bank.service.exception.InsufficientFundsException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OptimisticAccountServiceImplTest {
+
+    OptimisticAccountServiceImpl accountService;
+
+    Account bankAccount;
+
+    Account clientAccount;
+
+    @BeforeEach
+    public void init() {
+        accountService = new OptimisticAccountServiceImpl(new AccountDao());
+
+        Agreement bank = new Agreement();
+        bank.setId(1L);
+        Agreement client = new Agreement();
+        client.setId(2L);
+
+        bankAccount = accountService.addAccount(bank, "Bank_acc1", 0, new BigDecimal(1000000));
+        clientAccount = accountService.addAccount(client, "Client1_acc1", 0, new BigDecimal(1000000));
+    }
+
+    @Test
+    public void testTransfer() {
+        assertTrue(accountService.makeTransfer(clientAccount.getId(), bankAccount.getId(), BigDecimal.TEN));
+
+        assertEquals(new BigDecimal(999990), clientAccount.getAmount());
+        assertEquals(new BigDecimal(1000010), bankAccount.getAmount());
+        assertEquals(1, accountService.getCommits());
+        assertEquals(0, accountService.getRetries());
+    }
+
+    @Test
+    public void testTransferValidation() {
+        assertFalse(accountService.makeTransfer(clientAccount.getId(), bankAccount.getId(), new BigDecimal(2000000)));
+        assertFalse(accountService.makeTransfer(clientAccount.getId(), bankAccount.getId(), BigDecimal.ZERO));
+
+        assertEquals(new BigDecimal(1000000), clientAccount.getAmount());
+        assertEquals(0, accountService.getCommits());
+    }
+
+    @Test
+    public void testHotAccountBalanceConserved() throws InterruptedException {
+        int threads = 8;
+        int operationsPerThread = 10_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            boolean toBank = t % 2 == 0;
+            executor.execute(() -> {
+                for (int i = 0; i < operationsPerThread; i++) {
+                    try {
+                        if (toBank) {
+                            accountService.makeTransfer(clientAccount.getId(), bankAccount.getId(), BigDecimal.ONE);
+                        } else {
+                            accountService.makeTransfer(bankAccount.getId(), clientAccount.getId(), BigDecimal.ONE);
+                        }
+                    } catch (ContentionException e) {
+                        // counted in getContentionFailures
+                    }
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        assertEquals(new BigDecimal(2000000), bankAccount.getAmount().add(clientAccount.getAmount()));
+        assertEquals(threads * operationsPerThread,
+                accountService.getCommits() + accountService.getContentionFailures());
+        assertEquals(accountService.getRetries(),
+                accountService.getRetries(bankAccount.getId()) + accountService.getRetries(clientAccount.getId()));
+    }
+
+    @Test
+    public void testOverdrawingBatchChangesNothing() {
+        Map<Long, BigDecimal> changes = new LinkedHashMap<>();
+        changes.put(clientAccount.getId(), new BigDecimal(-10));
+        changes.put(bankAccount.getId(), new BigDecimal(-1000010));
+
+        assertThrows(InsufficientFundsException.class, () -> accountService.applyBalanceChanges(changes));
+
+        assertEquals(new BigDecimal(1000000), bankAccount.getAmount());
+        assertEquals(new BigDecimal(1000000), clientAccount.getAmount());
+    }
+
+    @Test
+    public void testGivingUpIsNotInsufficientFunds() {
+        AccountDao accountDao = new AccountDao();
+        OptimisticAccountServiceImpl service = new OptimisticAccountServiceImpl(accountDao, 3);
+        Account contended = new Account() {
+            @Override
+            public boolean compareAndSetAmount(BigDecimal expectedAmount, BigDecimal newAmount) {
+                return false;
+            }
+        };
+        contended.setAmount(new BigDecimal(100));
+        accountDao.save(contended);
+        Account destination = new Account();
+        destination.setAmount(BigDecimal.ZERO);
+        accountDao.save(destination);
+
+        assertThrows(ContentionException.class,
+                () -> service.makeTransfer(contended.getId(), destination.getId(), BigDecimal.ONE));
+        assertThrows(ContentionException.class, () -> service.charge(contended.getId(), BigDecimal.ONE));
+        assertFalse(service.makeTransfer(contended.getId(), destination.getId(), new BigDecimal(1000)));
+
+        assertEquals(2, service.getContentionFailures());
+        assertEquals(6, service.getRetries(contended.getId()));
+        assertEquals(new BigDecimal(100), contended.getAmount());
+        assertEquals(BigDecimal.ZERO, destination.getAmount());
+    }
+
+    @Test
+    public void testRetriesTrackedForBoundedNumberOfAccounts() {
+        AccountDao accountDao = new AccountDao();
+        OptimisticAccountServiceImpl service = new OptimisticAccountServiceImpl(accountDao, 2);
+        List<Account> accounts = new ArrayList<>();
+        for (int i = 0; i <= OptimisticAccountServiceImpl.TRACKED_ACCOUNTS; i++) {
+            Account account = new Account() {
+                @Override
+                public boolean compareAndSetAmount(BigDecimal expectedAmount, BigDecimal newAmount) {
+                    return false;
+                }
+            };
+            account.setAmount(BigDecimal.TEN);
+            accountDao.save(account);
+            accounts.add(account);
+        }
+        // the first account is the hot one and must survive the eviction of a colder one
+        assertThrows(ContentionException.class, () -> service.charge(accounts.get(0).getId(), BigDecimal.ONE));
+        for (Account account : accounts) {
+            assertThrows(ContentionException.class, () -> service.charge(account.getId(), BigDecimal.ONE));
+        }
+
+        assertEquals(4, service.getRetries(accounts.get(0).getId()));
+        assertEquals(2, service.getRetries(accounts.get(accounts.size() - 1).getId()));
+        assertEquals(1, accounts.stream().filter(account -> service.getRetries(account.getId()) == 0).count());
+        assertEquals(2L * accounts.size() + 2, service.getRetries());
+    }
+}
@@ -2,18 +2,22 @@ package ru.otus.bank.service.impl;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.ArgumentMatcher;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import ru.otus.bank.entity.Account;
 import ru.otus.bank.entity.Agreement;
 import ru.otus.bank.service.AccountService;
+import ru.otus.bank.service.TransferRequest;
+import ru.otus.bank.service.TransferResult;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 
-import static org.mockito.Mockito.argThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -33,31 +37,49 @@ public class PaymentProcessorImplTest {
         Agreement destinationAgreement = new Agreement();
         destinationAgreement.setId(2L);
 
+        when(accountService.findAccountId(sourceAgreement, 0)).thenReturn(10L);
+        when(accountService.findAccountId(destinationAgreement, 0)).thenReturn(20L);
+
+        paymentProcessor.makeTransfer(sourceAgreement, destinationAgreement,
+                0, 0, BigDecimal.ONE);
+
+        verify(accountService).makeTransfer(10L, 20L, BigDecimal.ONE);
+    }
+
+    @Test
+    public void testBatchTransfer() {
+        Agreement sourceAgreement = new Agreement();
+        sourceAgreement.setId(1L);
+
+        Agreement destinationAgreement = new Agreement();
+        destinationAgreement.setId(2L);
+
         Account sourceAccount = new Account();
+        sourceAccount.setId(10L);
         sourceAccount.setAmount(BigDecimal.TEN);
         sourceAccount.setType(0);
 
         Account destinationAccount = new Account();
+        destinationAccount.setId(20L);
         destinationAccount.setAmount(BigDecimal.ZERO);
         destinationAccount.setType(0);
 
-        when(accountService.getAccounts(argThat(new ArgumentMatcher<Agreement>() {
-            @Override
-            public boolean matches(Agreement argument) {
-                return argument != null && argument.getId() == 1L;
-            }
-        }))).thenReturn(List.of(sourceAccount));
+        when(accountService.getAccounts(sourceAgreement)).thenReturn(List.of(sourceAccount));
+        when(accountService.getAccounts(destinationAgreement)).thenReturn(List.of(destinationAccount));
 
-        when(accountService.getAccounts(argThat(new ArgumentMatcher<Agreement>() {
-            @Override
-            public boolean matches(Agreement argument) {
-                return argument != null && argument.getId() == 2L;
-            }
-        }))).thenReturn(List.of(destinationAccount));
+        List<TransferResult> results = paymentProcessor.makeTransfers(List.of(
+                new TransferRequest(sourceAgreement, destinationAgreement, 0, 0, new BigDecimal(4)),
+                new TransferRequest(sourceAgreement, destinationAgreement, 0, 0, new BigDecimal(4)),
+                new TransferRequest(sourceAgreement, destinationAgreement, 0, 0, new BigDecimal(4)),
+                new TransferRequest(destinationAgreement, sourceAgreement, 0, 0, BigDecimal.ONE),
+                new TransferRequest(sourceAgreement, destinationAgreement, 0, 1, BigDecimal.ONE)));
 
-        paymentProcessor.makeTransfer(sourceAgreement, destinationAgreement,
-                0, 0, BigDecimal.ONE);
+        assertEquals(List.of(TransferResult.success(), TransferResult.success(), TransferResult.rejected(),
+                TransferResult.success(), TransferResult.failed("Account not found")), results);
 
+        verify(accountService, times(1)).getAccounts(sourceAgreement);
+        verify(accountService, times(1)).getAccounts(destinationAgreement);
+        verify(accountService).applyBalanceChanges(Map.of(10L, new BigDecimal(-7), 20L, new BigDecimal(7)));
     }
 
 }
@@ -3,7 +3,6 @@ package ru.otus.bank.service.impl;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.ArgumentMatcher;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
@@ -15,7 +14,6 @@ import ru.otus.bank.entity.Account;
 import ru.otus.bank.entity.Agreement;
 
 import java.math.BigDecimal;
-import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -58,20 +56,8 @@ public class PaymentProcessorImplWithSpyTest {
         destinationAccount.setType(0);
         destinationAccount.setId(20L);
 
-        doReturn(List.of(sourceAccount)).when(accountService).getAccounts(argThat(new ArgumentMatcher<Agreement>() {
-            @Override
-            public boolean matches(Agreement argument) {
-                return argument != null && argument.getId() == 1L;
-            }
-        }));
-
-        doReturn(List.of(destinationAccount)).when(accountService).getAccounts(argThat(new ArgumentMatcher<Agreement>() {
-            @Override
-            public boolean matches(Agreement argument) {
-                return argument != null && argument.getId() == 2L;
-            }
-        }));
-
+        when(accountDao.getByAgreementIdAndType(1L, 0)).thenReturn(sourceAccount);
+        when(accountDao.getByAgreementIdAndType(2L, 0)).thenReturn(destinationAccount);
         when(accountDao.findById(10L)).thenReturn(Optional.of(sourceAccount));
         when(accountDao.findById(20L)).thenReturn(Optional.of(destinationAccount));
 //        when(accountDao.findById(30L)).thenReturn(Optional.of(destinationAccount));
@@ -0,0 +1,166 @@
+package ru.otus.bank.service.impl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.exception.AccountException;
+import ru.otus.bank.service.exception.InsufficientFundsException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ShardedAccountServiceImplTest {
+
+    private static final int ACCOUNTS = 50;
+
+    private static final BigDecimal INITIAL_AMOUNT = new BigDecimal(1000);
+
+    ShardedAccountServiceImpl accountService;
+
+    Agreement agreement;
+
+    List<Long> accountIds;
+
+    @BeforeEach
+    public void init() {
+        accountService = new ShardedAccountServiceImpl(4);
+        accountIds = new ArrayList<>();
+
+        agreement = new Agreement();
+        agreement.setId(1L);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Account account = accountService.addAccount(agreement, "acc" + i, i, INITIAL_AMOUNT);
+            accountIds.add(account.getId());
+        }
+    }
+
+    @AfterEach
+    public void close() {
+        accountService.close();
+    }
+
+    @Test
+    public void testTotalBalanceConserved() throws InterruptedException {
+        int threads = 8;
+        int transfersPerThread = 10_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < transfersPerThread; i++) {
+                    Long source = accountIds.get(random.nextInt(ACCOUNTS));
+                    Long destination = accountIds.get(random.nextInt(ACCOUNTS));
+                    accountService.makeTransfer(source, destination, new BigDecimal(random.nextInt(1, 50)));
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (Account account : accountService.getAccounts()) {
+            assertFalse(account.getAmount().signum() < 0);
+            total = total.add(account.getAmount());
+        }
+        assertEquals(INITIAL_AMOUNT.multiply(new BigDecimal(ACCOUNTS)), total);
+    }
+
+    @Test
+    public void testCrossShardTransfer() {
+        Long source = accountIds.get(0);
+        Long destination = accountIds.get(1);
+
+        assertTrue(accountService.makeTransfer(source, destination, new BigDecimal(300)));
+        assertFalse(accountService.makeTransfer(source, destination, new BigDecimal(800)));
+
+        List<Account> accounts = accountService.getAccounts(agreement);
+        assertEquals(ACCOUNTS, accounts.size());
+        for (Account account : accounts) {
+            if (account.getId().equals(source)) {
+                assertEquals(new BigDecimal(700), account.getAmount());
+            } else if (account.getId().equals(destination)) {
+                assertEquals(new BigDecimal(1300), account.getAmount());
+            }
+        }
+    }
+
+    @Test
+    public void testMissingDestinationLeavesSourceUntouched() {
+        Long source = accountIds.get(0);
+
+        AccountException exception = assertThrows(AccountException.class,
+                () -> accountService.makeTransfer(source, 10_000L, BigDecimal.TEN));
+        assertEquals("No destination account", exception.getLocalizedMessage());
+
+        for (Account account : accountService.getAccounts()) {
+            assertEquals(INITIAL_AMOUNT, account.getAmount());
+        }
+    }
+
+    @Test
+    public void testOverdrawingBatchChangesNoShard() {
+        Map<Long, BigDecimal> changes = new LinkedHashMap<>();
+        changes.put(accountIds.get(0), new BigDecimal(-500));
+        changes.put(accountIds.get(1), new BigDecimal(-1500));
+        changes.put(accountIds.get(2), new BigDecimal(2000));
+
+        assertThrows(InsufficientFundsException.class, () -> accountService.applyBalanceChanges(changes));
+
+        for (Account account : accountService.getAccounts()) {
+            assertEquals(INITIAL_AMOUNT, account.getAmount());
+        }
+    }
+
+    @Test
+    public void testCloseFinishesAdmittedTransfers() throws Exception {
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < 20_000; i++) {
+            futures.add(accountService.makeTransferAsync(accountIds.get(random.nextInt(ACCOUNTS)),
+                    accountIds.get(random.nextInt(ACCOUNTS)), BigDecimal.ONE));
+        }
+        accountService.close();
+
+        for (CompletableFuture<Boolean> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        BigDecimal total = BigDecimal.ZERO;
+        for (Account account : accountService.getAccounts()) {
+            total = total.add(account.getAmount());
+        }
+        assertEquals(INITIAL_AMOUNT.multiply(new BigDecimal(ACCOUNTS)), total);
+    }
+
+    @Test
+    public void testClosedServiceRejectsOperations() {
+        accountService.close();
+
+        CompletableFuture<Boolean> transfer = accountService.makeTransferAsync(accountIds.get(0), accountIds.get(1),
+                BigDecimal.ONE);
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> transfer.get(10, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof IllegalStateException);
+        assertThrows(IllegalStateException.class, () -> accountService.charge(accountIds.get(0), BigDecimal.ONE));
+        assertThrows(IllegalStateException.class,
+                () -> accountService.applyBalanceChanges(Map.of(accountIds.get(0), BigDecimal.ONE)));
+    }
+}
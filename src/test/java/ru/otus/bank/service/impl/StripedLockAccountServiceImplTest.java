@@ -0,0 +1,179 @@
+package ru.otus.bank.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.TransferRequest;
+import ru.otus.bank.service.TransferResult;
+import ru.otus.bank.service.exception.InsufficientFundsException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StripedLockAccountServiceImplTest {
+
+    private static final int ACCOUNTS = 50;
+
+    private static final BigDecimal INITIAL_AMOUNT = new BigDecimal(1000);
+
+    StripedLockAccountServiceImpl accountService;
+
+    List<Long> accountIds;
+
+    @BeforeEach
+    public void init() {
+        accountService = new StripedLockAccountServiceImpl(new AccountDao(), 16);
+        accountIds = new ArrayList<>();
+
+        Agreement agreement = new Agreement();
+        agreement.setId(1L);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Account account = accountService.addAccount(agreement, "acc" + i, i, INITIAL_AMOUNT);
+            accountIds.add(account.getId());
+        }
+    }
+
+    @Test
+    public void testTotalBalanceConserved() throws InterruptedException {
+        int threads = 8;
+        int transfersPerThread = 20_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < transfersPerThread; i++) {
+                    Long source = accountIds.get(random.nextInt(ACCOUNTS));
+                    Long destination = accountIds.get(random.nextInt(ACCOUNTS));
+                    accountService.makeTransfer(source, destination, new BigDecimal(random.nextInt(1, 50)));
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (Account account : accountService.getAccounts()) {
+            assertFalse(account.getAmount().signum() < 0);
+            total = total.add(account.getAmount());
+        }
+        assertEquals(INITIAL_AMOUNT.multiply(new BigDecimal(ACCOUNTS)), total);
+    }
+
+    @Test
+    public void testConcurrentTransfersWithFeeConserveTotal() throws InterruptedException {
+        int threads = 8;
+        int transfersPerThread = 10_000;
+        Long feeAccount = accountIds.get(0);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < transfersPerThread; i++) {
+                    Long source = accountIds.get(random.nextInt(ACCOUNTS));
+                    Long destination = accountIds.get(random.nextInt(ACCOUNTS));
+                    accountService.makeTransfer(source, destination, new BigDecimal(random.nextInt(1, 50)),
+                            feeAccount, BigDecimal.ONE);
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (Account account : accountService.getAccounts()) {
+            assertFalse(account.getAmount().signum() < 0);
+            total = total.add(account.getAmount());
+        }
+        assertEquals(INITIAL_AMOUNT.multiply(new BigDecimal(ACCOUNTS)), total);
+    }
+
+    @Test
+    public void testFailedTransferKeepsBalances() {
+        Long source = accountIds.get(0);
+        Long destination = accountIds.get(1);
+
+        assertFalse(accountService.makeTransfer(source, destination, new BigDecimal(5000)));
+        assertFalse(accountService.makeTransfer(source, destination, new BigDecimal(995), accountIds.get(2),
+                BigDecimal.TEN));
+
+        List<Account> accounts = accountService.getAccounts();
+        for (Account account : accounts) {
+            assertEquals(INITIAL_AMOUNT, account.getAmount());
+        }
+    }
+
+    @Test
+    public void testStripesArePowerOfTwo() {
+        StripedLockAccountServiceImpl service = new StripedLockAccountServiceImpl(new AccountDao(), 10);
+
+        for (long id = 0; id < 100; id++) {
+            assertTrue(service.stripe(id) < 16);
+        }
+    }
+
+    @Test
+    public void testOverdrawingBatchChangesNothing() {
+        Long source = accountIds.get(0);
+        Long destination = accountIds.get(1);
+
+        assertThrows(InsufficientFundsException.class, () -> accountService.applyBalanceChanges(
+                Map.of(source, new BigDecimal(-1001), destination, new BigDecimal(1001))));
+
+        for (Account account : accountService.getAccounts()) {
+            assertEquals(INITIAL_AMOUNT, account.getAmount());
+        }
+    }
+
+    @Test
+    public void testBatchIsCheckedWhenApplied() {
+        Agreement payer = new Agreement();
+        payer.setId(1L);
+        Agreement payee = new Agreement();
+        payee.setId(2L);
+        AtomicBoolean raced = new AtomicBoolean();
+        List<Long> ids = new ArrayList<>();
+        // a transfer lands between the processor reading the balances and the batch being applied
+        StripedLockAccountServiceImpl racingService = new StripedLockAccountServiceImpl(new AccountDao()) {
+            @Override
+            public void applyBalanceChanges(Map<Long, BigDecimal> changes) {
+                if (raced.compareAndSet(false, true)) {
+                    makeTransfer(ids.get(0), ids.get(2), new BigDecimal(800));
+                }
+                super.applyBalanceChanges(changes);
+            }
+        };
+        ids.add(racingService.addAccount(payer, "payer", 0, INITIAL_AMOUNT).getId());
+        ids.add(racingService.addAccount(payee, "payee", 0, BigDecimal.ZERO).getId());
+        ids.add(racingService.addAccount(payer, "savings", 1, BigDecimal.ZERO).getId());
+
+        List<TransferResult> results = new PaymentProcessorImpl(racingService).makeTransfers(List.of(
+                new TransferRequest(payer, payee, 0, 0, new BigDecimal(150)),
+                new TransferRequest(payer, payee, 0, 0, new BigDecimal(150))));
+
+        assertEquals(List.of(TransferResult.success(), TransferResult.rejected()), results);
+        assertEquals(Map.of(ids.get(0), new BigDecimal(50), ids.get(1), new BigDecimal(150), ids.get(2), new BigDecimal(800)),
+                racingService.getAccounts().stream().collect(Collectors.toMap(Account::getId, Account::getAmount)));
+    }
+}
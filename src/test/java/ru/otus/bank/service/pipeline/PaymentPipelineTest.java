@@ -0,0 +1,183 @@
+package ru.otus.bank.service.pipeline;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.TransferRequest;
+import ru.otus.bank.service.TransferResult;
+import ru.otus.bank.service.impl.AccountServiceImpl;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PaymentPipelineTest {
+
+    private static final int AGREEMENTS = 20;
+
+    private static final BigDecimal INITIAL_AMOUNT = new BigDecimal(1000);
+
+    AccountServiceImpl accountService;
+
+    List<Agreement> agreements;
+
+    LongAdder successes;
+
+    AtomicLong lastSequence;
+
+    PaymentPipeline pipeline;
+
+    @BeforeEach
+    public void init() {
+        AccountDao accountDao = new AccountDao();
+        accountService = new AccountServiceImpl(accountDao);
+        agreements = new ArrayList<>();
+        for (int i = 0; i < AGREEMENTS; i++) {
+            Agreement agreement = new Agreement();
+            agreement.setId((long) i + 1);
+            accountService.addAccount(agreement, "acc" + i, 0, INITIAL_AMOUNT);
+            agreements.add(agreement);
+        }
+
+        successes = new LongAdder();
+        lastSequence = new AtomicLong(-1);
+        // a small ring so that producers wrap around it many times
+        pipeline = new PaymentPipeline(accountDao, 64, (sequence, slot) -> {
+            lastSequence.compareAndSet(sequence - 1, sequence);
+            if (slot.getResult().isSuccess()) {
+                successes.increment();
+            }
+        });
+    }
+
+    @AfterEach
+    public void close() {
+        pipeline.close();
+    }
+
+    @Test
+    public void testTransferResults() {
+        Agreement source = agreements.get(0);
+        Agreement destination = agreements.get(1);
+
+        assertEquals(TransferResult.success(), pipeline.makeTransfer(source, destination, 0, 0, new BigDecimal(400)));
+        assertEquals(TransferResult.rejected(), pipeline.makeTransfer(source, destination, 0, 0, new BigDecimal(700)));
+        assertEquals(TransferResult.rejected(), pipeline.makeTransfer(source, destination, 0, 0, BigDecimal.ZERO));
+        assertEquals(PaymentPipeline.ACCOUNT_NOT_FOUND, pipeline.makeTransfer(source, destination, 0, 1, BigDecimal.ONE));
+
+        assertEquals(new BigDecimal(600), accountService.getAccounts(source).get(0).getAmount());
+        assertEquals(new BigDecimal(1400), accountService.getAccounts(destination).get(0).getAmount());
+        assertEquals(1, successes.sum());
+    }
+
+    @Test
+    public void testBatchKeepsOrder() {
+        Agreement source = agreements.get(0);
+        Agreement destination = agreements.get(1);
+        List<TransferRequest> requests = List.of(
+                new TransferRequest(source, destination, 0, 0, new BigDecimal(600)),
+                new TransferRequest(source, destination, 0, 0, new BigDecimal(600)),
+                new TransferRequest(destination, source, 0, 0, new BigDecimal(1600)));
+
+        List<TransferResult> results = pipeline.makeTransfers(requests);
+
+        assertEquals(List.of(TransferResult.success(), TransferResult.rejected(), TransferResult.success()), results);
+        assertEquals(new BigDecimal(2000), accountService.getAccounts(source).get(0).getAmount());
+    }
+
+    @Test
+    public void testTotalBalanceConserved() throws InterruptedException {
+        int threads = 4;
+        int transfersPerThread = 20_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < transfersPerThread; i++) {
+                    pipeline.publish(agreements.get(random.nextInt(AGREEMENTS)), agreements.get(random.nextInt(AGREEMENTS)),
+                            0, 0, new BigDecimal(random.nextInt(1, 50)));
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        executor.shutdown();
+        pipeline.awaitPublished(threads * transfersPerThread - 1);
+
+        assertEquals(threads * transfersPerThread - 1, lastSequence.get());
+        assertTrue(successes.sum() > 0);
+        BigDecimal total = BigDecimal.ZERO;
+        for (Account account : accountService.getAccounts()) {
+            assertFalse(account.getAmount().signum() < 0);
+            total = total.add(account.getAmount());
+        }
+        assertEquals(INITIAL_AMOUNT.multiply(new BigDecimal(AGREEMENTS)), total);
+    }
+
+    @Test
+    public void testListenerFailuresAreCounted() {
+        IllegalStateException failure = new IllegalStateException("listener failed");
+        try (PaymentPipeline failing = new PaymentPipeline(new AccountDao(), 64, (sequence, slot) -> {
+            throw failure;
+        })) {
+            Agreement source = agreements.get(0);
+            assertEquals(PaymentPipeline.ACCOUNT_NOT_FOUND, failing.makeTransfer(source, source, 0, 0, BigDecimal.ONE));
+            assertEquals(PaymentPipeline.ACCOUNT_NOT_FOUND, failing.makeTransfer(source, source, 0, 0, BigDecimal.ONE));
+
+            assertEquals(2, failing.getListenerFailures());
+            assertSame(failure, failing.getLastListenerFailure());
+        }
+        assertEquals(0, pipeline.getListenerFailures());
+    }
+
+    @Test
+    public void testCloseDuringPublishNeverStrandsACaller() throws InterruptedException {
+        int threads = 4;
+        CountDownLatch started = new CountDownLatch(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+        LongAdder completed = new LongAdder();
+        for (int t = 0; t < threads; t++) {
+            Thread thread = new Thread(() -> {
+                started.countDown();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    while (true) {
+                        pipeline.makeTransfer(agreements.get(random.nextInt(AGREEMENTS)),
+                                agreements.get(random.nextInt(AGREEMENTS)), 0, 0, BigDecimal.ONE);
+                        completed.increment();
+                    }
+                } catch (IllegalStateException e) {
+                    // the pipeline closed before this transfer was claimed
+                } finally {
+                    done.countDown();
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+        started.await();
+        while (completed.sum() < 1000) {
+            Thread.onSpinWait();
+        }
+        pipeline.close();
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,138 @@
+package ru.otus.bank.service.reconciliation;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.otus.bank.dao.AccountDao;
+import ru.otus.bank.dao.ledger.Ledger;
+import ru.otus.bank.entity.Account;
+import ru.otus.bank.entity.Agreement;
+import ru.otus.bank.service.impl.LedgerAccountServiceImpl;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReconciliationEngineTest {
+
+    private static final int AGREEMENTS = 100;
+
+    AccountDao accountDao;
+
+    Ledger ledger;
+
+    LedgerAccountServiceImpl accountService;
+
+    List<Long> accountIds;
+
+    ReconciliationEngine engine;
+
+    @BeforeEach
+    public void init() {
+        accountDao = new AccountDao();
+        ledger = new Ledger();
+        accountService = new LedgerAccountServiceImpl(accountDao, ledger);
+        accountIds = new ArrayList<>();
+        for (long id = 1; id <= AGREEMENTS; id++) {
+            Agreement agreement = new Agreement();
+            agreement.setId(id);
+            accountIds.add(accountService.addAccount(agreement, "acc" + id + "_0", 0, new BigDecimal(1000)).getId());
+            accountIds.add(accountService.addAccount(agreement, "acc" + id + "_1", 1, new BigDecimal("0.50")).getId());
+        }
+        engine = new ReconciliationEngine(accountDao, ledger, new ForkJoinPool(4));
+    }
+
+    @Test
+    public void testTotals() {
+        accountService.makeTransfer(accountIds.get(0), accountIds.get(1), new BigDecimal(100));
+        accountService.charge(accountIds.get(2), BigDecimal.TEN);
+
+        ReconciliationReport report = engine.reconcile();
+
+        assertEquals(AGREEMENTS * 2, report.accountCount());
+        assertEquals(new BigDecimal("100040.00"), report.total());
+        assertEquals(new BigDecimal("1000.50"), report.totalsByAgreement().get(1L));
+        assertEquals(new BigDecimal("990.50"), report.totalsByAgreement().get(2L));
+        assertEquals(new BigDecimal("99890.00"), report.totalsByType().get(0));
+        assertEquals(new BigDecimal("150.00"), report.totalsByType().get(1));
+        assertEquals(new BigDecimal("10.00"), report.externalBalance());
+
+        // the ledger service writes balances to the repository only when they are read
+        assertFalse(report.isBalanced());
+        assertEquals(Map.of(accountIds.get(0), new BigDecimal("100.00"), accountIds.get(1), new BigDecimal("-100.00"),
+                accountIds.get(2), new BigDecimal("10.00")), report.differences());
+        assertEquals(new BigDecimal("10.00"), report.difference());
+
+        accountService.getAccounts();
+        ReconciliationReport refreshed = engine.reconcile();
+        assertTrue(refreshed.isBalanced());
+        assertEquals(0, refreshed.difference().signum());
+    }
+
+    @Test
+    public void testUnopenedAccountsJoinTheCut() {
+        Account account = new Account();
+        account.setAgreementId(1L);
+        account.setType(2);
+        account.setAmount(new BigDecimal("7.25"));
+        accountDao.save(account);
+
+        ReconciliationReport report = engine.reconcile();
+
+        assertTrue(ledger.isOpen(account.getId()));
+        assertEquals(new BigDecimal("1007.75"), report.totalsByAgreement().get(1L));
+        assertEquals(new BigDecimal("100057.25"), report.ledgerOpeningTotal());
+        assertTrue(report.isBalanced());
+    }
+
+    @Test
+    public void testConsistentWhileTransfersRun() throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (running.get()) {
+                    Long source = accountIds.get(random.nextInt(accountIds.size()));
+                    if (random.nextInt(20) == 0) {
+                        accountService.charge(source, BigDecimal.ONE);
+                    } else {
+                        accountService.makeTransfer(source, accountIds.get(random.nextInt(accountIds.size())),
+                                new BigDecimal(random.nextInt(1, 100)));
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        BigDecimal opening = new BigDecimal("100050.00");
+        long lastTransactionId = -1;
+        try {
+            for (int i = 0; i < 50; i++) {
+                ReconciliationReport report = engine.reconcile();
+                assertEquals(opening, report.ledgerOpeningTotal());
+                assertEquals(opening, report.ledgerTotal());
+                assertEquals(0, report.difference().compareTo(report.differences().values().stream()
+                        .reduce(BigDecimal.ZERO, BigDecimal::add)));
+                // every account is in the repository, so the cut must add up including the external side
+                assertEquals(opening, report.total().add(report.externalBalance()));
+                assertTrue(report.transactionId() >= lastTransactionId);
+                lastTransactionId = report.transactionId();
+            }
+        } finally {
+            running.set(false);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+        assertTrue(lastTransactionId > 0);
+    }
+}